@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.framework;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.capabilityset.CapabilitySet;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+
+/**
+ * Matches package requirements against a capability set indexed by package
+ * name, the way the framework finds the providers of an import.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CapabilitySetBenchmark
+{
+    @Param({"1000", "10000"})
+    public int size;
+
+    private CapabilitySet m_capSet;
+
+    private SimpleFilter m_indexedFilter;
+
+    private SimpleFilter m_unindexedFilter;
+
+    @Setup
+    public void setUp()
+    {
+        m_capSet = new CapabilitySet(
+            Collections.singletonList(PackageNamespace.PACKAGE_NAMESPACE), true);
+        for (int i = 0; i < size; i++)
+        {
+            // Every package is exported in two versions by different bundles
+            for (int v = 1; v <= 2; v++)
+            {
+                Map<String, Object> attrs = new HashMap<String, Object>();
+                attrs.put(PackageNamespace.PACKAGE_NAMESPACE, "org.example.p" + i);
+                attrs.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, new Version(v, i % 10, 0));
+                attrs.put(PackageNamespace.CAPABILITY_BUNDLE_SYMBOLICNAME_ATTRIBUTE, "org.example.b" + i);
+                m_capSet.addCapability(new BundleCapabilityImpl(
+                    null, PackageNamespace.PACKAGE_NAMESPACE,
+                    Collections.<String, String>emptyMap(), attrs));
+            }
+        }
+        int i = size / 2;
+        m_indexedFilter = SimpleFilter.parse("(&(osgi.wiring.package=org.example.p" + i
+            + ")(version>=1.0.0)(!(version>=2.0.0)))");
+        m_unindexedFilter = SimpleFilter.parse("(&(bundle-symbolic-name=org.example.b" + i
+            + ")(version>=1.0.0)(!(version>=2.0.0)))");
+    }
+
+    @Benchmark
+    public Set<Capability> matchIndexed()
+    {
+        return m_capSet.match(m_indexedFilter, true);
+    }
+
+    @Benchmark
+    public Set<Capability> matchUnindexed()
+    {
+        return m_capSet.match(m_unindexedFilter, true);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.framework;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.benchmarks.framework.payload.Payload;
+import org.apache.felix.framework.Felix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+/**
+ * Loads classes through bundle class loaders: from the bundle itself,
+ * through an import wire, from the boot class path and classes that
+ * cannot be found, which are looked up again every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassLoadingBenchmark
+{
+    private static final String PAYLOAD = Payload.class.getName();
+
+    private static final String MISSING =
+        Payload.class.getPackage().getName() + ".Missing";
+
+    private File m_storage;
+
+    private Felix m_felix;
+
+    private Bundle m_exporter;
+
+    private Bundle m_importer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_storage = Frameworks.createStorage();
+        m_felix = Frameworks.start(m_storage);
+
+        String pkg = Payload.class.getPackage().getName();
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "exporter");
+        headers.put(Constants.EXPORT_PACKAGE, pkg);
+        m_exporter = m_felix.getBundleContext().installBundle(
+            "exporter", Frameworks.createBundle(headers, Payload.class));
+
+        headers = new HashMap<String, String>();
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "importer");
+        headers.put(Constants.IMPORT_PACKAGE, pkg);
+        m_importer = m_felix.getBundleContext().installBundle(
+            "importer", Frameworks.createBundle(headers));
+
+        m_exporter.start();
+        m_importer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_felix, m_storage);
+    }
+
+    @Benchmark
+    public Class<?> loadOwnClass() throws ClassNotFoundException
+    {
+        return m_exporter.loadClass(PAYLOAD);
+    }
+
+    @Benchmark
+    public Class<?> loadImportedClass() throws ClassNotFoundException
+    {
+        return m_importer.loadClass(PAYLOAD);
+    }
+
+    @Benchmark
+    public Class<?> loadBootClass() throws ClassNotFoundException
+    {
+        return m_importer.loadClass("java.lang.String");
+    }
+
+    @Benchmark
+    public Object loadMissingClass()
+    {
+        try
+        {
+            return m_importer.loadClass(MISSING);
+        }
+        catch (ClassNotFoundException ex)
+        {
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.framework;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.FilterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * Parses filters and matches them against service properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilterBenchmark
+{
+    private static final String SIMPLE = "(objectClass=org.example.Service)";
+
+    private static final String COMPLEX = "(&(objectClass=org.example.Service)"
+        + "(|(service.ranking>=10)(name=example*))(!(disabled=true)))";
+
+    private FilterImpl m_simple;
+
+    private FilterImpl m_complex;
+
+    private Dictionary<String, Object> m_properties;
+
+    @Setup
+    public void setUp() throws InvalidSyntaxException
+    {
+        m_simple = new FilterImpl(SIMPLE);
+        m_complex = new FilterImpl(COMPLEX);
+        m_properties = new Hashtable<String, Object>();
+        m_properties.put(Constants.OBJECTCLASS, new String[] { "org.example.Other", "org.example.Service" });
+        m_properties.put(Constants.SERVICE_RANKING, 5);
+        m_properties.put(Constants.SERVICE_ID, 42L);
+        m_properties.put("name", "example.service");
+        m_properties.put("disabled", "false");
+    }
+
+    @Benchmark
+    public FilterImpl parse() throws InvalidSyntaxException
+    {
+        return new FilterImpl(COMPLEX);
+    }
+
+    @Benchmark
+    public boolean matchSimple()
+    {
+        return m_simple.match(m_properties);
+    }
+
+    @Benchmark
+    public boolean matchComplex()
+    {
+        return m_complex.match(m_properties);
+    }
+}
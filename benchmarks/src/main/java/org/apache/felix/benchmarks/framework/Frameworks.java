@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.felix.framework.Felix;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * Starts and stops the frameworks of the benchmarks and creates the
+ * bundles they install.
+ */
+class Frameworks
+{
+    static Felix start(File storage) throws BundleException
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put(Constants.FRAMEWORK_STORAGE, storage.getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+        Felix felix = new Felix(config);
+        felix.start();
+        return felix;
+    }
+
+    static void stop(Felix felix, File storage) throws Exception
+    {
+        felix.stop();
+        felix.waitForStop(10000);
+        delete(storage);
+    }
+
+    static File createStorage() throws IOException
+    {
+        File storage = File.createTempFile("felix-benchmark", ".cache");
+        storage.delete();
+        return storage;
+    }
+
+    /**
+     * Creates a bundle with the specified headers containing the specified
+     * classes, which are copied from the class path.
+     */
+    static InputStream createBundle(Map<String, String> headers, Class<?>... classes) throws IOException
+    {
+        Manifest manifest = new Manifest();
+        Attributes attrs = manifest.getMainAttributes();
+        attrs.putValue("Manifest-Version", "1.0");
+        attrs.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        for (Map.Entry<String, String> entry : headers.entrySet())
+        {
+            attrs.putValue(entry.getKey(), entry.getValue());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream jar = new JarOutputStream(bytes, manifest);
+        try
+        {
+            for (Class<?> clazz : classes)
+            {
+                String name = clazz.getName().replace('.', '/') + ".class";
+                jar.putNextEntry(new JarEntry(name));
+                InputStream is = clazz.getClassLoader().getResourceAsStream(name);
+                try
+                {
+                    byte[] buffer = new byte[4096];
+                    for (int n = is.read(buffer); n != -1; n = is.read(buffer))
+                    {
+                        jar.write(buffer, 0, n);
+                    }
+                }
+                finally
+                {
+                    is.close();
+                }
+                jar.closeEntry();
+            }
+        }
+        finally
+        {
+            jar.close();
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
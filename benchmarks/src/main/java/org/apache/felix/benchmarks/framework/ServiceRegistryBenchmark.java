@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.framework;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.framework.Felix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Gets and ungets services and looks them up in a registry holding the
+ * specified number of services. Run with JMH's <tt>-t</tt> option to
+ * measure contention between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ServiceRegistryBenchmark
+{
+    @Param({"100", "10000"})
+    public int services;
+
+    private File m_storage;
+
+    private Felix m_felix;
+
+    private BundleContext m_context;
+
+    private ServiceReference<Runnable> m_singleton;
+
+    private ServiceReference<Runnable> m_factory;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_storage = Frameworks.createStorage();
+        m_felix = Frameworks.start(m_storage);
+        m_context = m_felix.getBundleContext();
+        Runnable service = new Runnable()
+        {
+            public void run()
+            {
+            }
+        };
+        for (int i = 0; i < services; i++)
+        {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("id", i);
+            m_context.registerService(Runnable.class, service, props);
+        }
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("id", -1);
+        ServiceRegistration<Runnable> singleton =
+            m_context.registerService(Runnable.class, service, props);
+        m_singleton = singleton.getReference();
+        props.put("id", -2);
+        ServiceRegistration<?> factory = m_context.registerService(
+            Runnable.class.getName(), new ServiceFactory<Runnable>()
+            {
+                public Runnable getService(Bundle bundle, ServiceRegistration<Runnable> registration)
+                {
+                    return new Thread();
+                }
+
+                public void ungetService(Bundle bundle, ServiceRegistration<Runnable> registration, Runnable service)
+                {
+                }
+            }, props);
+        @SuppressWarnings("unchecked")
+        ServiceReference<Runnable> factoryRef = (ServiceReference<Runnable>) factory.getReference();
+        m_factory = factoryRef;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Frameworks.stop(m_felix, m_storage);
+    }
+
+    @Benchmark
+    public boolean getUngetService()
+    {
+        m_context.getService(m_singleton);
+        return m_context.ungetService(m_singleton);
+    }
+
+    @Benchmark
+    public boolean getUngetServiceFactory()
+    {
+        // The last unget releases the service object
+        m_context.getService(m_factory);
+        return m_context.ungetService(m_factory);
+    }
+
+    @Benchmark
+    public Collection<ServiceReference<Runnable>> getServiceReferences() throws Exception
+    {
+        return m_context.getServiceReferences(Runnable.class, "(id=-1)");
+    }
+}
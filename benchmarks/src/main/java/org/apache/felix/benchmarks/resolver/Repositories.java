@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.benchmarks.resolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.felix.resolver.test.BigResolutionTest;
+import org.apache.felix.resolver.test.util.CandidateComparator;
+import org.apache.felix.resolver.test.util.CapabilitySet;
+import org.apache.felix.resolver.test.util.JsonReader;
+import org.apache.felix.resolver.test.util.SimpleFilter;
+import org.osgi.framework.BundleException;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.HostedCapability;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Repositories to resolve, either recorded from real-world resolutions in
+ * the JSON format of the resolver tests or generated.
+ */
+public class Repositories
+{
+    /**
+     * Returns the repository with the specified name, either
+     * <tt>synthetic-</tt><i>size</i> or <tt>conflicts-</tt><i>size</i> for
+     * a generated repository of that size, without or with imports of old
+     * versions, or the class path name of a recorded repository.
+     */
+    public static ResolveContext get(String name) throws IOException, BundleException
+    {
+        if (name.startsWith("synthetic-"))
+        {
+            return synthetic(Integer.parseInt(name.substring("synthetic-".length())), 20, 4, 0, 42);
+        }
+        if (name.startsWith("conflicts-"))
+        {
+            return synthetic(Integer.parseInt(name.substring("conflicts-".length())), 20, 4, 10, 42);
+        }
+        return recorded(name);
+    }
+
+    /**
+     * Loads a recorded repository from the class path. The repository holds
+     * the resources to resolve against and the mandatory resources.
+     */
+    public static ResolveContext recorded(String name) throws IOException, BundleException
+    {
+        InputStream is = Repositories.class.getClassLoader().getResourceAsStream(name);
+        if (is == null)
+        {
+            throw new IOException("Repository not found: " + name);
+        }
+        Object resolution;
+        try
+        {
+            resolution = JsonReader.read(is);
+        }
+        finally
+        {
+            is.close();
+        }
+
+        List<Resource> resources = new ArrayList<Resource>();
+        resources.add(parseResource(Arrays.asList(
+            "osgi.ee; osgi.ee=JavaSE; version=1.5",
+            "osgi.ee; osgi.ee=JavaSE; version=1.6",
+            "osgi.ee; osgi.ee=JavaSE; version=1.7"),
+            Collections.<String>emptyList()));
+        for (Object r : (Collection<?>) ((Map<?, ?>) resolution).get("resources"))
+        {
+            resources.add(BigResolutionTest.parseResource(r));
+        }
+        List<Resource> mandatory = new ArrayList<Resource>();
+        for (Object r : (Collection<?>) ((Map<?, ?>) resolution).get("mandatory"))
+        {
+            mandatory.add(BigResolutionTest.parseResource(r));
+        }
+        return createResolveContext(resources, mandatory);
+    }
+
+    /**
+     * Generates a repository of the specified number of bundles. Bundle i
+     * exports package <tt>synthetic.p</tt>i and imports the packages of up
+     * to <tt>fanout</tt> random bundles before it. The bundles form chains
+     * of the specified depth: within a chain, each package uses the package
+     * of the previous bundle, so uses constraints reach that deep. Every
+     * third bundle also has a second major version. If <tt>oldImports</tt>
+     * is positive, one import in that many only accepts the first version,
+     * so the resolver has to find its way around many uses constraint
+     * violations. The last tenth of the bundles are resolved.
+     */
+    public static ResolveContext synthetic(int size, int depth, int fanout, int oldImports, long seed)
+        throws BundleException
+    {
+        Random random = new Random(seed);
+        List<Resource> resources = new ArrayList<Resource>();
+        List<Resource> mandatory = new ArrayList<Resource>();
+        for (int i = 0; i < size; i++)
+        {
+            Integer used = (i % depth != 0) ? Integer.valueOf(i - 1) : null;
+            List<Integer> imports = new ArrayList<Integer>();
+            if (used != null)
+            {
+                imports.add(used);
+            }
+            for (int j = 0; (j < fanout) && (i > 1); j++)
+            {
+                Integer imported = random.nextInt(i - 1);
+                if (!imports.contains(imported))
+                {
+                    imports.add(imported);
+                }
+            }
+            int versions = (i % 3 == 0) ? 2 : 1;
+            for (int v = 1; v <= versions; v++)
+            {
+                List<String> reqs = new ArrayList<String>();
+                for (Integer imported : imports)
+                {
+                    String ceiling = ((oldImports > 0) && (random.nextInt(oldImports) == 0))
+                        ? "2.0.0" : "3.0.0";
+                    reqs.add("osgi.wiring.package; filter:=\"(&(osgi.wiring.package=synthetic.p"
+                        + imported + ")(version>=1.0.0)(!(version>=" + ceiling + ")))\"");
+                }
+                List<String> caps = new ArrayList<String>();
+                caps.add("osgi.identity; osgi.identity=synthetic.b" + i
+                    + "; type=osgi.bundle; version:Version=" + v + ".0.0");
+                caps.add("osgi.wiring.package; osgi.wiring.package=synthetic.p" + i
+                    + "; version:Version=" + v + ".0.0"
+                    + ((used != null) ? "; uses:=synthetic.p" + used : ""));
+                Resource resource = parseResource(caps, reqs);
+                resources.add(resource);
+                if ((i >= size - Math.max(1, size / 10)) && (v == versions))
+                {
+                    mandatory.add(resource);
+                }
+            }
+        }
+        return createResolveContext(resources, mandatory);
+    }
+
+    private static Resource parseResource(List<String> caps, List<String> reqs) throws BundleException
+    {
+        Map<String, Object> resource = new HashMap<String, Object>();
+        resource.put("capabilities", caps);
+        resource.put("requirements", reqs);
+        return BigResolutionTest.parseResource(resource);
+    }
+
+    private static ResolveContext createResolveContext(
+        List<Resource> resources, final List<Resource> mandatory)
+    {
+        final Map<String, CapabilitySet> capSets = new HashMap<String, CapabilitySet>();
+        for (Resource resource : resources)
+        {
+            for (Capability cap : resource.getCapabilities(null))
+            {
+                String ns = cap.getNamespace();
+                CapabilitySet set = capSets.get(ns);
+                if (set == null)
+                {
+                    set = new CapabilitySet(Collections.singletonList(ns));
+                    capSets.put(ns, set);
+                }
+                set.addCapability(cap);
+            }
+        }
+
+        return new ResolveContext()
+        {
+            @Override
+            public Collection<Resource> getMandatoryResources()
+            {
+                return mandatory;
+            }
+
+            @Override
+            public List<Capability> findProviders(Requirement requirement)
+            {
+                SimpleFilter sf;
+                if (requirement.getDirectives().containsKey("filter"))
+                {
+                    sf = SimpleFilter.parse(requirement.getDirectives().get("filter"));
+                }
+                else
+                {
+                    sf = SimpleFilter.convert(requirement.getAttributes());
+                }
+                CapabilitySet set = capSets.get(requirement.getNamespace());
+                if (set == null)
+                {
+                    return new ArrayList<Capability>();
+                }
+                List<Capability> caps = new ArrayList<Capability>(set.match(sf, true));
+                Collections.sort(caps, new CandidateComparator());
+                return caps;
+            }
+
+            @Override
+            public int insertHostedCapability(List<Capability> capabilities, HostedCapability hostedCapability)
+            {
+                capabilities.add(hostedCapability);
+                return capabilities.size() - 1;
+            }
+
+            @Override
+            public boolean isEffective(Requirement requirement)
+            {
+                return true;
+            }
+
+            @Override
+            public Map<Resource, Wiring> getWirings()
+            {
+                return Collections.emptyMap();
+            }
+        };
+    }
+}
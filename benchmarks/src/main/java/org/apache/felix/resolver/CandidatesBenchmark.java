@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.benchmarks.resolver.Repositories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Populates and prepares the initial candidates of a repository, which is
+ * the part of a resolve operation that does not depend on uses constraints.
+ * It lives in the resolver package because candidates are internal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CandidatesBenchmark
+{
+    @Param({"resolution.json", "synthetic-1000"})
+    public String repository;
+
+    private ResolveContext m_context;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        m_context = Repositories.get(repository);
+    }
+
+    @Benchmark
+    public Candidates populate()
+    {
+        ResolverImpl.ResolveSession session = new ResolverImpl.ResolveSession(
+            m_context, new ResolverImpl.DumbExecutor(), null, null, null);
+        Candidates candidates = new Candidates(session);
+        candidates.populate(m_context.getMandatoryResources());
+        candidates.prepare();
+        return candidates;
+    }
+}
@@ -0,0 +1,4 @@
+package org.apache.felix.benchmarks.framework.generated;
+public class CapabilitySetBenchmark_jmhType extends CapabilitySetBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.felix.benchmarks.framework.generated;
+public class ClassLoadingBenchmark_jmhType extends ClassLoadingBenchmark_jmhType_B3 {
+}
+
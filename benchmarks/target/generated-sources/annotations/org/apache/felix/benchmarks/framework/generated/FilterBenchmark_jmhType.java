@@ -0,0 +1,4 @@
+package org.apache.felix.benchmarks.framework.generated;
+public class FilterBenchmark_jmhType extends FilterBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.felix.benchmarks.framework.generated;
+public class ServiceRegistryBenchmark_jmhType extends ServiceRegistryBenchmark_jmhType_B3 {
+}
+
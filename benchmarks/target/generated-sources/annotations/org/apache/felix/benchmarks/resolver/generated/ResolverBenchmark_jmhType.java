@@ -0,0 +1,4 @@
+package org.apache.felix.benchmarks.resolver.generated;
+public class ResolverBenchmark_jmhType extends ResolverBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.felix.resolver.generated;
+public class CandidatesBenchmark_jmhType extends CandidatesBenchmark_jmhType_B3 {
+}
+
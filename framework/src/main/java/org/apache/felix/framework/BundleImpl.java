@@ -79,9 +79,6 @@ class BundleImpl implements Bundle, BundleRevisions
     // Indicates whether the bundle is stale, meaning that it has
     // been refreshed and completely removed from the framework.
     private boolean m_stale = false;
-    // Used for bundle locking.
-    private int m_lockCount = 0;
-    private Thread m_lockThread = null;
 
     /**
      * This constructor is used by the system bundle (i.e., the framework),
@@ -100,6 +97,19 @@ class BundleImpl implements Bundle, BundleRevisions
     }
 
     BundleImpl(Felix felix, Bundle installingBundle, BundleArchive archive) throws Exception
+    {
+        this(felix, installingBundle, archive, true);
+    }
+
+    /**
+     * Creates a bundle for the specified archive. If <tt>addRevision</tt> is
+     * <tt>false</tt>, the bundle has no revision yet; the caller parses it with
+     * {@link #parseRevision()}, which can be done concurrently for several
+     * bundles, and adds it with {@link #checkUniqueness(BundleRevisionImpl, boolean)}
+     * and {@link #addRevision(BundleRevisionImpl)}.
+    **/
+    BundleImpl(Felix felix, Bundle installingBundle, BundleArchive archive,
+        boolean addRevision) throws Exception
     {
         __m_felix = felix;
         m_archive = archive;
@@ -110,8 +120,11 @@ class BundleImpl implements Bundle, BundleRevisions
         m_context = null;
         m_installingBundle = installingBundle;
 
-        BundleRevisionImpl revision = createRevision(false);
-        addRevision(revision);
+        if (addRevision)
+        {
+            BundleRevisionImpl revision = createRevision(false);
+            addRevision(revision);
+        }
     }
 
     // This method exists because the system bundle extends BundleImpl
@@ -1268,6 +1281,18 @@ class BundleImpl implements Bundle, BundleRevisions
     }
 
     private BundleRevisionImpl createRevision(boolean isUpdate) throws Exception
+    {
+        BundleRevisionImpl revision = parseRevision();
+        checkUniqueness(revision, isUpdate);
+        return revision;
+    }
+
+    /**
+     * Creates a revision for the current archive revision, without adding it
+     * to the bundle. This only reads the archive, so it does not need any
+     * framework lock.
+    **/
+    BundleRevisionImpl parseRevision() throws Exception
     {
         // Get and parse the manifest from the most recent revision and
         // create an associated revision object for it.
@@ -1280,7 +1305,15 @@ class BundleImpl implements Bundle, BundleRevisions
                 + "." + m_archive.getCurrentRevisionNumber().toString(),
             headerMap,
             m_archive.getCurrentRevision().getContent());
+        return revision;
+    }
 
+    /**
+     * Verifies that the symbolic name and version of the specified revision
+     * do not collide with those of the installed bundles.
+    **/
+    void checkUniqueness(BundleRevisionImpl revision, boolean isUpdate) throws Exception
+    {
         // For R4 bundles, verify that the bundle symbolic name + version
         // is unique unless this check has been disabled.
         String allowMultiple =
@@ -1346,8 +1379,6 @@ class BundleImpl implements Bundle, BundleRevisions
                     + symName + ':' + bundleVersion, BundleException.DUPLICATE_BUNDLE_ERROR);
             }
         }
-
-        return revision;
     }
 
     synchronized ProtectionDomain getProtectionDomain()
@@ -1362,47 +1393,6 @@ class BundleImpl implements Bundle, BundleRevisions
         return pd;
     }
 
-    //
-    // Locking related methods.
-    //
-
-    synchronized boolean isLockable()
-    {
-        return (m_lockCount == 0) || (m_lockThread == Thread.currentThread());
-    }
-
-    synchronized Thread getLockingThread()
-    {
-        return m_lockThread;
-    }
-
-    synchronized void lock()
-    {
-        if ((m_lockCount > 0) && (m_lockThread != Thread.currentThread()))
-        {
-            throw new IllegalStateException("Bundle is locked by another thread.");
-        }
-        m_lockCount++;
-        m_lockThread = Thread.currentThread();
-    }
-
-    synchronized void unlock()
-    {
-        if (m_lockCount == 0)
-        {
-            throw new IllegalStateException("Bundle is not locked.");
-        }
-        if ((m_lockCount > 0) && (m_lockThread != Thread.currentThread()))
-        {
-            throw new IllegalStateException("Bundle is locked by another thread.");
-        }
-        m_lockCount--;
-        if (m_lockCount == 0)
-        {
-            m_lockThread = null;
-        }
-    }
-
     BundleContext _getBundleContext()
     {
         return m_context;
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages the bundle locks and the global lock of the framework.
+ * <p>
+ * A bundle lock is held by one thread at a time and may be acquired
+ * several times by that thread. The global lock starts a phase during which
+ * no other thread acquires a bundle lock it does not already hold, while
+ * the bundle locks held before the phase started are kept. Threads waiting
+ * for a lock are queued and the lock is handed off to the first of them
+ * when it is released, so waiters are served in order and a release only
+ * wakes the threads waiting for that bundle.
+ * <p>
+ * A thread holding a bundle lock may try to promote it to the global lock.
+ * If the thread holding the global lock then waits for that bundle lock,
+ * the promotion fails to avoid the deadlock.
+ */
+class BundleLockManager
+{
+    private final ReentrantLock m_lock = new ReentrantLock();
+    // Locks of the bundles that are locked or waited for.
+    private final Map<BundleImpl, BundleLock> m_bundleLocks =
+        new HashMap<BundleImpl, BundleLock>();
+    // Threads waiting for the global lock, in order.
+    private final LinkedList<Thread> m_globalLockWaiters = new LinkedList<Thread>();
+    private final Condition m_globalLockCondition = m_lock.newCondition();
+    // The thread holding the global lock, or the thread the global lock
+    // was handed off to if the count is zero.
+    private Thread m_globalLockThread = null;
+    private int m_globalLockCount = 0;
+    private long m_globalLockTime;
+    // The bundle lock the thread holding the global lock waits for.
+    private BundleLock m_globalLockWaitsFor = null;
+    private final BundleLockStatistics m_statistics = new BundleLockStatistics(this);
+
+    BundleLockStatistics getStatistics()
+    {
+        return m_statistics;
+    }
+
+    /**
+     * Acquires the lock of the specified bundle as long as the bundle is in
+     * one of the specified states.
+     * @throws IllegalStateException if the bundle is not in one of the
+     *         specified states or the thread is interrupted while waiting.
+    **/
+    void acquireBundleLock(BundleImpl bundle, int desiredStates)
+        throws IllegalStateException
+    {
+        Thread current = Thread.currentThread();
+        m_lock.lock();
+        try
+        {
+            BundleLock lock = m_bundleLocks.get(bundle);
+            if (lock == null)
+            {
+                lock = new BundleLock(bundle);
+                m_bundleLocks.put(bundle, lock);
+            }
+
+            long waitTime = 0;
+            if (!canAcquire(lock, current))
+            {
+                long start = System.nanoTime();
+                lock.m_waiters.add(current);
+                if (m_globalLockThread == current)
+                {
+                    m_globalLockWaitsFor = lock;
+                    // Let the owner fail if it tries to promote its lock.
+                    if (m_globalLockWaiters.contains(lock.m_owner))
+                    {
+                        m_globalLockCondition.signalAll();
+                    }
+                }
+                boolean acquirable = false;
+                try
+                {
+                    while (!canAcquire(lock, current))
+                    {
+                        if ((desiredStates & bundle.getState()) == 0)
+                        {
+                            throw new IllegalStateException("Bundle in unexpected state.");
+                        }
+                        try
+                        {
+                            lock.m_condition.await();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            throw new IllegalStateException(
+                                "Unable to acquire bundle lock, thread interrupted.");
+                        }
+                    }
+                    acquirable = true;
+                }
+                finally
+                {
+                    lock.m_waiters.remove(current);
+                    if (m_globalLockWaitsFor == lock)
+                    {
+                        m_globalLockWaitsFor = null;
+                    }
+                    if (!acquirable && (lock.m_count == 0)
+                        && ((lock.m_owner == null) || (lock.m_owner == current)))
+                    {
+                        // Pass the lock on if it was handed off to this
+                        // thread, or discard it if no one else waits.
+                        handOff(lock);
+                    }
+                    waitTime = System.nanoTime() - start;
+                }
+            }
+
+            // Now that we can acquire the bundle lock, let's check to make sure
+            // it is in a desired state; if not, throw an exception and do not
+            // lock it.
+            if ((desiredStates & bundle.getState()) == 0)
+            {
+                if (lock.m_count == 0)
+                {
+                    handOff(lock);
+                }
+                throw new IllegalStateException("Bundle in unexpected state.");
+            }
+
+            if (lock.m_count++ == 0)
+            {
+                lock.m_owner = current;
+                lock.m_time = System.nanoTime();
+                m_statistics.bundleLockAcquired(waitTime);
+            }
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the lock of the specified bundle.
+     * @throws IllegalStateException if the calling thread does not hold
+     *         the bundle lock.
+    **/
+    void releaseBundleLock(BundleImpl bundle)
+    {
+        m_lock.lock();
+        try
+        {
+            BundleLock lock = m_bundleLocks.get(bundle);
+            if ((lock == null) || (lock.m_count == 0))
+            {
+                throw new IllegalStateException("Bundle is not locked.");
+            }
+            if (lock.m_owner != Thread.currentThread())
+            {
+                throw new IllegalStateException("Bundle is locked by another thread.");
+            }
+            if (--lock.m_count == 0)
+            {
+                m_statistics.bundleLockReleased(System.nanoTime() - lock.m_time);
+                handOff(lock);
+            }
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the state of the specified bundle and wakes the threads waiting
+     * for its lock, so they can check whether it is still in a desired state.
+    **/
+    void setBundleState(BundleImpl bundle, int state)
+    {
+        m_lock.lock();
+        try
+        {
+            bundle.__setState(state);
+            BundleLock lock = m_bundleLocks.get(bundle);
+            if (lock != null)
+            {
+                lock.m_condition.signalAll();
+            }
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the global lock. Fails if the calling thread holds a bundle
+     * lock the thread holding the global lock waits for, or if it is
+     * interrupted while waiting.
+     * @return <tt>true</tt> if the global lock was acquired,
+     *         <tt>false</tt> otherwise.
+    **/
+    boolean acquireGlobalLock()
+    {
+        Thread current = Thread.currentThread();
+        m_lock.lock();
+        try
+        {
+            long waitTime = 0;
+            if ((m_globalLockThread != null) && (m_globalLockThread != current))
+            {
+                long start = System.nanoTime();
+                m_globalLockWaiters.add(current);
+                try
+                {
+                    while ((m_globalLockThread != null) && (m_globalLockThread != current))
+                    {
+                        if ((m_globalLockWaitsFor != null)
+                            && (m_globalLockWaitsFor.m_owner == current))
+                        {
+                            m_statistics.globalLockFailed();
+                            return false;
+                        }
+                        try
+                        {
+                            m_globalLockCondition.await();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            m_statistics.globalLockFailed();
+                            return false;
+                        }
+                    }
+                }
+                finally
+                {
+                    m_globalLockWaiters.remove(current);
+                    if ((m_globalLockThread == current) && (m_globalLockCount == 0))
+                    {
+                        // The lock was handed off to this thread, but it
+                        // fails, so pass it on.
+                        m_globalLockThread = null;
+                        handOffGlobalLock();
+                    }
+                    waitTime = System.nanoTime() - start;
+                }
+            }
+
+            if (m_globalLockCount++ == 0)
+            {
+                m_globalLockThread = current;
+                m_globalLockTime = System.nanoTime();
+                m_statistics.globalLockAcquired(waitTime);
+            }
+            return true;
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the global lock.
+     * @throws IllegalStateException if the calling thread does not hold
+     *         the global lock.
+    **/
+    void releaseGlobalLock()
+    {
+        m_lock.lock();
+        try
+        {
+            if ((m_globalLockThread != Thread.currentThread()) || (m_globalLockCount == 0))
+            {
+                throw new IllegalStateException(
+                    "The current thread doesn't own the global lock.");
+            }
+            if (--m_globalLockCount == 0)
+            {
+                m_statistics.globalLockReleased(System.nanoTime() - m_globalLockTime);
+                m_globalLockThread = null;
+                m_globalLockWaitsFor = null;
+                handOffGlobalLock();
+            }
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the bundle locks and the global lock currently held, with the
+     * holding thread and for how long they have been held.
+    **/
+    String[] getHeldLocks()
+    {
+        List<String> locks = new ArrayList<String>();
+        m_lock.lock();
+        try
+        {
+            long now = System.nanoTime();
+            if (m_globalLockCount > 0)
+            {
+                locks.add("global lock held by " + m_globalLockThread.getName()
+                    + " for " + ((now - m_globalLockTime) / 1000000) + " ms, "
+                    + m_globalLockWaiters.size() + " waiting");
+            }
+            for (BundleLock lock : m_bundleLocks.values())
+            {
+                if (lock.m_count > 0)
+                {
+                    locks.add("bundle " + lock.m_bundle.getBundleId()
+                        + " held by " + lock.m_owner.getName()
+                        + " for " + ((now - lock.m_time) / 1000000) + " ms, "
+                        + lock.m_waiters.size() + " waiting");
+                }
+            }
+        }
+        finally
+        {
+            m_lock.unlock();
+        }
+        return locks.toArray(new String[locks.size()]);
+    }
+
+    private boolean canAcquire(BundleLock lock, Thread current)
+    {
+        // A thread holding the bundle lock already, or to which it was
+        // handed off, gets it even during the global lock phase of another
+        // thread.
+        return (lock.m_owner == current)
+            || ((lock.m_owner == null)
+                && ((m_globalLockThread == null) || (m_globalLockThread == current)));
+    }
+
+    // Hands the free bundle lock off to the first waiting thread that can
+    // acquire it, or discards it if no thread waits for it.
+    private void handOff(BundleLock lock)
+    {
+        lock.m_owner = null;
+        if (lock.m_waiters.isEmpty())
+        {
+            m_bundleLocks.remove(lock.m_bundle);
+            return;
+        }
+        Thread next = null;
+        if ((m_globalLockThread == null) || (m_globalLockCount == 0))
+        {
+            next = lock.m_waiters.getFirst();
+        }
+        else if (lock.m_waiters.contains(m_globalLockThread))
+        {
+            next = m_globalLockThread;
+        }
+        // Otherwise, the waiters wait for the end of the global lock phase.
+        lock.m_owner = next;
+        lock.m_condition.signalAll();
+    }
+
+    private void handOffGlobalLock()
+    {
+        if (!m_globalLockWaiters.isEmpty())
+        {
+            m_globalLockThread = m_globalLockWaiters.getFirst();
+            m_globalLockCondition.signalAll();
+        }
+        // Hand off the free bundle locks the global lock phase held back.
+        for (BundleLock lock : new ArrayList<BundleLock>(m_bundleLocks.values()))
+        {
+            if ((lock.m_owner == null) && !lock.m_waiters.isEmpty())
+            {
+                handOff(lock);
+            }
+        }
+    }
+
+    private class BundleLock
+    {
+        final BundleImpl m_bundle;
+        final LinkedList<Thread> m_waiters = new LinkedList<Thread>();
+        final Condition m_condition = m_lock.newCondition();
+        // The thread holding the lock, or the thread the lock was handed
+        // off to if the count is zero.
+        Thread m_owner;
+        int m_count;
+        long m_time;
+
+        BundleLock(BundleImpl bundle)
+        {
+            m_bundle = bundle;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+/**
+ * Keeps the statistics of the bundle locks and the global lock of the
+ * framework. They are shown by the <tt>felix:locks</tt> command and through
+ * the {@link BundleLockStatisticsMBean management interface}.
+ */
+public class BundleLockStatistics implements BundleLockStatisticsMBean
+{
+    private final BundleLockManager m_manager;
+    private long m_bundleLockCount;
+    private long m_bundleLockWaitCount;
+    private long m_bundleLockWaitNanos;
+    private long m_maxBundleLockWaitNanos;
+    private long m_maxBundleLockHoldNanos;
+    private long m_globalLockCount;
+    private long m_globalLockWaitCount;
+    private long m_globalLockFailureCount;
+    private long m_globalLockWaitNanos;
+    private long m_maxGlobalLockWaitNanos;
+    private long m_maxGlobalLockHoldNanos;
+
+    BundleLockStatistics(BundleLockManager manager)
+    {
+        m_manager = manager;
+    }
+
+    synchronized void bundleLockAcquired(long waitNanos)
+    {
+        m_bundleLockCount++;
+        if (waitNanos > 0)
+        {
+            m_bundleLockWaitCount++;
+            m_bundleLockWaitNanos += waitNanos;
+            m_maxBundleLockWaitNanos = Math.max(m_maxBundleLockWaitNanos, waitNanos);
+        }
+    }
+
+    synchronized void bundleLockReleased(long holdNanos)
+    {
+        m_maxBundleLockHoldNanos = Math.max(m_maxBundleLockHoldNanos, holdNanos);
+    }
+
+    synchronized void globalLockAcquired(long waitNanos)
+    {
+        m_globalLockCount++;
+        if (waitNanos > 0)
+        {
+            m_globalLockWaitCount++;
+            m_globalLockWaitNanos += waitNanos;
+            m_maxGlobalLockWaitNanos = Math.max(m_maxGlobalLockWaitNanos, waitNanos);
+        }
+    }
+
+    synchronized void globalLockFailed()
+    {
+        m_globalLockFailureCount++;
+    }
+
+    synchronized void globalLockReleased(long holdNanos)
+    {
+        m_maxGlobalLockHoldNanos = Math.max(m_maxGlobalLockHoldNanos, holdNanos);
+    }
+
+    /**
+     * Prints the statistics and the locks currently held.
+     */
+    public void locks()
+    {
+        System.out.println(this);
+        for (String lock : getHeldLocks())
+        {
+            System.out.println("    " + lock);
+        }
+    }
+
+    public synchronized long getBundleLockCount()
+    {
+        return m_bundleLockCount;
+    }
+
+    public synchronized long getBundleLockWaitCount()
+    {
+        return m_bundleLockWaitCount;
+    }
+
+    public synchronized double getBundleLockWaitTime()
+    {
+        return toMillis(m_bundleLockWaitNanos);
+    }
+
+    public synchronized double getMaxBundleLockWaitTime()
+    {
+        return toMillis(m_maxBundleLockWaitNanos);
+    }
+
+    public synchronized double getMaxBundleLockHoldTime()
+    {
+        return toMillis(m_maxBundleLockHoldNanos);
+    }
+
+    public synchronized long getGlobalLockCount()
+    {
+        return m_globalLockCount;
+    }
+
+    public synchronized long getGlobalLockWaitCount()
+    {
+        return m_globalLockWaitCount;
+    }
+
+    public synchronized long getGlobalLockFailureCount()
+    {
+        return m_globalLockFailureCount;
+    }
+
+    public synchronized double getGlobalLockWaitTime()
+    {
+        return toMillis(m_globalLockWaitNanos);
+    }
+
+    public synchronized double getMaxGlobalLockWaitTime()
+    {
+        return toMillis(m_maxGlobalLockWaitNanos);
+    }
+
+    public synchronized double getMaxGlobalLockHoldTime()
+    {
+        return toMillis(m_maxGlobalLockHoldNanos);
+    }
+
+    public String[] getHeldLocks()
+    {
+        return m_manager.getHeldLocks();
+    }
+
+    public synchronized void reset()
+    {
+        m_bundleLockCount = 0;
+        m_bundleLockWaitCount = 0;
+        m_bundleLockWaitNanos = 0;
+        m_maxBundleLockWaitNanos = 0;
+        m_maxBundleLockHoldNanos = 0;
+        m_globalLockCount = 0;
+        m_globalLockWaitCount = 0;
+        m_globalLockFailureCount = 0;
+        m_globalLockWaitNanos = 0;
+        m_maxGlobalLockWaitNanos = 0;
+        m_maxGlobalLockHoldNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Bundle locks: " + m_bundleLockCount + " acquired, "
+            + m_bundleLockWaitCount + " waited for " + toMillis(m_bundleLockWaitNanos)
+            + " ms (max " + toMillis(m_maxBundleLockWaitNanos) + " ms), max held "
+            + toMillis(m_maxBundleLockHoldNanos) + " ms; global lock: "
+            + m_globalLockCount + " acquired, " + m_globalLockWaitCount + " waited for "
+            + toMillis(m_globalLockWaitNanos) + " ms (max "
+            + toMillis(m_maxGlobalLockWaitNanos) + " ms), "
+            + m_globalLockFailureCount + " failed, max held "
+            + toMillis(m_maxGlobalLockHoldNanos) + " ms";
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000d;
+    }
+}
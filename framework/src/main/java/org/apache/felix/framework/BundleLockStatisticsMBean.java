@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+/**
+ * Management interface of the statistics of the bundle locks and the global
+ * lock of the framework. Times are in milliseconds.
+ */
+public interface BundleLockStatisticsMBean
+{
+    /**
+     * Returns how many times a bundle lock was acquired, not counting
+     * reentrant acquisitions.
+     */
+    long getBundleLockCount();
+
+    /**
+     * Returns how many times a thread had to wait for a bundle lock.
+     */
+    long getBundleLockWaitCount();
+
+    /**
+     * Returns the total time threads waited for bundle locks.
+     */
+    double getBundleLockWaitTime();
+
+    /**
+     * Returns the longest time a thread waited for a bundle lock.
+     */
+    double getMaxBundleLockWaitTime();
+
+    /**
+     * Returns the longest time a bundle lock was held.
+     */
+    double getMaxBundleLockHoldTime();
+
+    /**
+     * Returns how many times the global lock was acquired, not counting
+     * reentrant acquisitions.
+     */
+    long getGlobalLockCount();
+
+    /**
+     * Returns how many times a thread had to wait for the global lock.
+     */
+    long getGlobalLockWaitCount();
+
+    /**
+     * Returns how many times a thread failed to acquire the global lock,
+     * because of a potential deadlock or an interruption.
+     */
+    long getGlobalLockFailureCount();
+
+    /**
+     * Returns the total time threads waited for the global lock.
+     */
+    double getGlobalLockWaitTime();
+
+    /**
+     * Returns the longest time a thread waited for the global lock.
+     */
+    double getMaxGlobalLockWaitTime();
+
+    /**
+     * Returns the longest time the global lock was held.
+     */
+    double getMaxGlobalLockHoldTime();
+
+    /**
+     * Returns the locks currently held, with the holding thread, for how
+     * long they have been held and how many threads wait for them.
+     */
+    String[] getHeldLocks();
+
+    /**
+     * Resets the statistics.
+     */
+    void reset();
+}
@@ -40,6 +40,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.cache.JarContent;
@@ -48,6 +49,7 @@ import org.apache.felix.framework.resolver.ResourceNotFoundException;
 import org.apache.felix.framework.util.CompoundEnumeration;
 import org.apache.felix.framework.util.FelixConstants;
 import org.apache.felix.framework.util.ImmutableList;
+import org.apache.felix.framework.util.NegativeCache;
 import org.apache.felix.framework.util.SecurityManagerEx;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.ManifestParser;
@@ -138,6 +140,14 @@ public class BundleWiringImpl implements BundleWiring
     private final boolean m_implicitBootDelegation;
     // Boolean flag to enable/disable local URLs.
     private final boolean m_useLocalURLs;
+    // Default number of names kept by the negative caches.
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 256;
+    // Classes that could not be found, neither through the imports nor in
+    // the bundle's content nor through a dynamic import, and packages that
+    // could not be dynamically imported; null if disabled. They are only
+    // valid for the resolver state generation they were recorded in.
+    private final NegativeCache m_missingClasses;
+    private final NegativeCache m_failedDynamicImports;
 
     // Re-usable security manager for accessing class context.
     private static SecurityManagerEx m_sm = new SecurityManagerEx();
@@ -446,6 +456,25 @@ public class BundleWiringImpl implements BundleWiring
                 m_useLocalURLs =
                         (m_configMap.get(FelixConstants.USE_LOCALURLS_PROP) == null)
                         ? false : true;
+
+                int cacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
+                String cacheSizeStr = (String) m_configMap.get(
+                        FelixConstants.CLASSLOADER_NEGATIVE_CACHE_PROP);
+                if (cacheSizeStr != null)
+                {
+                    try
+                    {
+                        cacheSize = Integer.parseInt(cacheSizeStr.trim());
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        m_logger.log(Logger.LOG_WARNING,
+                                "Invalid value for " + FelixConstants.CLASSLOADER_NEGATIVE_CACHE_PROP
+                                + ": " + cacheSizeStr);
+                    }
+                }
+                m_missingClasses = (cacheSize > 0) ? new NegativeCache(cacheSize) : null;
+                m_failedDynamicImports = (cacheSize > 0) ? new NegativeCache(cacheSize) : null;
                     }
 
     private static List<List<String>> parsePkgFilters(BundleCapability cap, String filtername)
@@ -661,6 +690,19 @@ public class BundleWiringImpl implements BundleWiring
         // to cause any issues.
         m_wires = ImmutableList.newInstance(wires);
         m_importedPkgs = importedPkgs;
+
+        // Classes of the newly imported package are found through it now.
+        clearNegativeCaches();
+    }
+
+    // Forgets the failed lookups, since the wiring may find them now.
+    private void clearNegativeCaches()
+    {
+        if (m_missingClasses != null)
+        {
+            m_missingClasses.clear();
+            m_failedDynamicImports.clear();
+        }
     }
 
     @Override
@@ -1459,6 +1501,9 @@ public class BundleWiringImpl implements BundleWiring
         }
         if (requestSet.add(name))
         {
+            // Read the generation before searching, so a provider appearing
+            // during the search invalidates a failure recorded afterwards.
+            long generation = m_resolver.getGeneration();
             try
             {
                 // Get the package of the target class/resource.
@@ -1495,37 +1540,48 @@ public class BundleWiringImpl implements BundleWiring
                             }
                         }
 
-                        // Look in the revision's imports. Note that the search may
-                        // be aborted if this method throws an exception, otherwise
-                        // it continues if a null is returned.
-                        result = searchImports(pkgName, name, isClass);
-
-                        // If not found, try the revision's own class path.
-                        if (result == null)
+                        // A class that was not found before is not searched for again
+                        // as long as the resolver state did not change; only implicit
+                        // boot delegation is tried, since it depends on the caller.
+                        if (isClass && (m_missingClasses != null)
+                                && m_missingClasses.contains(name, generation))
+                        {
+                            result = searchImplicitBootDelegation(name, isClass);
+                        }
+                        else
                         {
-                            if (isClass)
+                            // Look in the revision's imports. Note that the search may
+                            // be aborted if this method throws an exception, otherwise
+                            // it continues if a null is returned.
+                            result = searchImports(pkgName, name, isClass);
+
+                            // If not found, try the revision's own class path.
+                            if (result == null)
                             {
-                                ClassLoader cl = getClassLoaderInternal();
-                                if (cl == null)
+                                if (isClass)
                                 {
-                                    throw new ClassNotFoundException(
-                                            "Unable to load class '"
-                                                    + name
-                                                    + "' because the bundle wiring for "
-                                                    + m_revision.getSymbolicName()
-                                                    + " is no longer valid.");
+                                    ClassLoader cl = getClassLoaderInternal();
+                                    if (cl == null)
+                                    {
+                                        throw new ClassNotFoundException(
+                                                "Unable to load class '"
+                                                        + name
+                                                        + "' because the bundle wiring for "
+                                                        + m_revision.getSymbolicName()
+                                                        + " is no longer valid.");
+                                    }
+                                    result = ((BundleClassLoader) cl).findClass(name);
+                                }
+                                else
+                                {
+                                    result = m_revision.getResourceLocal(name);
                                 }
-                                result = ((BundleClassLoader) cl).findClass(name);
-                            }
-                            else
-                            {
-                                result = m_revision.getResourceLocal(name);
-                            }
 
-                            // If still not found, then try the revision's dynamic imports.
-                            if (result == null)
-                            {
-                                result = searchDynamicImports(pkgName, name, isClass);
+                                // If still not found, then try the revision's dynamic imports.
+                                if (result == null)
+                                {
+                                    result = searchDynamicImports(pkgName, name, isClass, generation);
+                                }
                             }
                         }
             }
@@ -1616,24 +1672,42 @@ public class BundleWiringImpl implements BundleWiring
     }
 
     private Object searchDynamicImports(
-            final String pkgName, final String name, final boolean isClass)
+            final String pkgName, final String name, final boolean isClass,
+            long generation)
                     throws ClassNotFoundException, ResourceNotFoundException
     {
         // At this point, the module's imports were searched and so was the
         // the module's content. Now we make an attempt to load the
-        // class/resource via a dynamic import, if possible.
+        // class/resource via a dynamic import, if possible, unless it
+        // already failed for the package and no provider appeared since.
         BundleRevision provider = null;
-        try
-        {
-            provider = m_resolver.resolve(m_revision, pkgName);
-        }
-        catch (ResolutionException ex)
-        {
-            // Ignore this since it is likely normal.
-        }
-        catch (BundleException ex)
-        {
-            // Ignore this since it is likely the result of a resolver hook.
+        boolean cacheable = true;
+        if ((m_failedDynamicImports == null)
+                || !m_failedDynamicImports.contains(pkgName, generation))
+        {
+            // A resolver hook may filter out the providers this time and
+            // let them through the next, so failures are only cached if
+            // there are no hooks.
+            boolean failed = !m_resolver.hasResolverHooks();
+            try
+            {
+                provider = m_resolver.resolve(m_revision, pkgName);
+            }
+            catch (ResolutionException ex)
+            {
+                // Ignore this since it is likely normal.
+            }
+            catch (BundleException ex)
+            {
+                // Ignore this since it is likely the result of a resolver hook,
+                // which may decide otherwise next time.
+                failed = false;
+            }
+            if (failed && (provider == null) && (m_failedDynamicImports != null))
+            {
+                m_failedDynamicImports.add(pkgName, generation);
+            }
+            cacheable = failed;
         }
 
         // If the dynamic import was successful, then this initial
@@ -1649,6 +1723,17 @@ public class BundleWiringImpl implements BundleWiring
                             : (Object) ((BundleWiringImpl) provider.getWiring()).getResourceByDelegation(name);
         }
 
+        if (isClass && cacheable && (m_missingClasses != null))
+        {
+            m_missingClasses.add(name, generation);
+        }
+
+        return searchImplicitBootDelegation(name, isClass);
+    }
+
+    private Object searchImplicitBootDelegation(final String name, final boolean isClass)
+            throws ClassNotFoundException, ResourceNotFoundException
+    {
         // If implicit boot delegation is enabled, then try to guess whether
         // we should boot delegate.
         if (m_implicitBootDelegation)
@@ -1885,19 +1970,6 @@ public class BundleWiringImpl implements BundleWiring
             }
 
             m_isParallel = registered;
-            try
-            {
-                Method method = BundleRevisionImpl.getSecureAction()
-                        .getDeclaredMethod(ClassLoader.class, "registerAsParallelCapable", null);
-
-                BundleRevisionImpl.getSecureAction().setAccesssible(method);
-
-                method.invoke(null);
-            }
-            catch (Throwable th)
-            {
-                // This is OK on older java versions
-            }
         }
 
         // Flag used to determine if a class has been loaded from this class
@@ -1908,7 +1980,10 @@ public class BundleWiringImpl implements BundleWiring
         private Object[][] m_cachedLibs = new Object[0][];
         private static final int LIBNAME_IDX = 0;
         private static final int LIBPATH_IDX = 1;
-        private final Map<String, Thread> m_classLocks = new HashMap<String, Thread>();
+        // The locks of the classes being defined, so that only one thread
+        // defines a given class while other classes are defined in parallel.
+        private final ConcurrentHashMap<String, ClassLock> m_classLocks =
+                new ConcurrentHashMap<String, ClassLock>();
         private final BundleWiringImpl m_wiring;
         private final Logger m_logger;
 
@@ -1945,11 +2020,17 @@ public class BundleWiringImpl implements BundleWiring
             Class clazz;
 
             // Make sure the class was not already loaded.
-            Object lock = (isParallel()) ? m_classLocks : this;
-            synchronized (lock)
+            if (isParallel())
             {
                 clazz = findLoadedClass(name);
             }
+            else
+            {
+                synchronized (this)
+                {
+                    clazz = findLoadedClass(name);
+                }
+            }
 
             if (clazz == null)
             {
@@ -2040,6 +2121,7 @@ public class BundleWiringImpl implements BundleWiring
                     // as a race condition, doing any necessary clean up in
                     // the error handling.
                     Felix felix = m_wiring.m_revision.getBundle().getFramework();
+                    ClassLoadingStatistics statistics = felix.getClassLoadingStatistics();
 
                     Set<ServiceReference<WeavingHook>> hooks =
                             felix.getHookRegistry().getHooks(WeavingHook.class);
@@ -2052,6 +2134,7 @@ public class BundleWiringImpl implements BundleWiring
                     {
                         // Create woven class to be used for hooks.
                         wci = new WovenClassImpl(name, m_wiring, bytes);
+                        long start = (statistics != null) ? System.nanoTime() : 0;
                         try
                         {
                             transformClass(felix, wci, hooks, wovenClassListeners,
@@ -2065,35 +2148,22 @@ public class BundleWiringImpl implements BundleWiring
                             callWovenClassListeners(felix, wovenClassListeners, wci);
                             throw e;
                         }
-                    }
-                    // Before we actually attempt to define the class, grab
-                    // the lock for this class loader and make sure than no
-                    // other thread has defined this class in the meantime.
-                    Object lock = (isParallel()) ? m_classLocks : this;
-                    synchronized (lock)
-                    {
-                        Thread me = Thread.currentThread();
-                        while (m_classLocks.containsKey(name) && (m_classLocks.get(name) != me))
+                        finally
                         {
-                            try
+                            if (statistics != null)
                             {
-                                lock.wait();
+                                statistics.classWoven(getBundle(), System.nanoTime() - start);
                             }
-                            catch (InterruptedException e)
-                            {
-                                // TODO: WHAT TO DO HERE?
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        // Lock released, try loading class.
-                        clazz = findLoadedClass(name);
-                        if (clazz == null)
-                        {
-                            // Not found, we should try load it.
-                            m_classLocks.put(name, me);
                         }
                     }
+                    // Before we actually attempt to define the class, grab
+                    // the lock for this class and make sure than no other
+                    // thread has defined this class in the meantime.
+                    ClassLock lock = lockClass(name);
+                    clazz = findLoadedClass(name);
 
+                    boolean timed = (statistics != null) && (clazz == null);
+                    long start = timed ? System.nanoTime() : 0;
                     try
                     {
                         clazz = defineClass(felix, wovenClassListeners, wci, name,
@@ -2108,6 +2178,10 @@ public class BundleWiringImpl implements BundleWiring
                         }
                         throw e;
                     }
+                    if (timed && (clazz != null))
+                    {
+                        statistics.classDefined(getBundle(), System.nanoTime() - start);
+                    }
 
                     // Perform deferred activation without holding the class loader lock,
                     // if the class we are returning is the instigating class.
@@ -2146,7 +2220,7 @@ public class BundleWiringImpl implements BundleWiring
         Class defineClass(Felix felix,
                 Set<ServiceReference<WovenClassListener>> wovenClassListeners,
                 WovenClassImpl wci, String name, Class clazz, byte[] bytes,
-                Content content, String pkgName, Object lock)
+                Content content, String pkgName, ClassLock lock)
                         throws ClassFormatError
         {
 
@@ -2230,6 +2304,9 @@ public class BundleWiringImpl implements BundleWiring
                                     allWovenReqs.addAll(0, m_wiring.m_wovenReqs);
                                 }
                                 m_wiring.m_wovenReqs = allWovenReqs;
+                                // Lookups that failed before may succeed
+                                // through the woven dynamic imports.
+                                m_wiring.clearNegativeCaches();
                             }
                         }
                     }
@@ -2337,13 +2414,72 @@ public class BundleWiringImpl implements BundleWiring
             }
             finally
             {
+                unlockClass(name, lock);
+            }
+            return clazz;
+        }
+
+        // Acquires the lock of the specified class, waiting for the thread
+        // holding it, if any, to release it. The lock is reentrant since
+        // defining a class may load its super classes.
+        private ClassLock lockClass(String name)
+        {
+            Thread me = Thread.currentThread();
+            ClassLock lock = new ClassLock(me);
+            boolean interrupted = false;
+            try
+            {
+                for (;;)
+                {
+                    ClassLock held = m_classLocks.putIfAbsent(name, lock);
+                    if (held == null)
+                    {
+                        return lock;
+                    }
+                    if (held.m_owner == me)
+                    {
+                        held.m_count++;
+                        return held;
+                    }
+                    synchronized (held)
+                    {
+                        while (!held.m_released)
+                        {
+                            try
+                            {
+                                held.wait();
+                            }
+                            catch (InterruptedException ex)
+                            {
+                                // The other thread will release the lock
+                                // shortly, so keep waiting and restore the
+                                // interrupt status afterwards.
+                                interrupted = true;
+                            }
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                if (interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void unlockClass(String name, ClassLock lock)
+        {
+            if (--lock.m_count == 0)
+            {
+                m_classLocks.remove(name, lock);
                 synchronized (lock)
                 {
-                    m_classLocks.remove(name);
+                    lock.m_released = true;
                     lock.notifyAll();
                 }
             }
-            return clazz;
         }
 
         void transformClass(Felix felix, WovenClassImpl wci,
@@ -2575,6 +2711,19 @@ public class BundleWiringImpl implements BundleWiring
             return m_isParallel;
         }
 
+        private static class ClassLock
+        {
+            // Only accessed by the owner, except for the released flag.
+            final Thread m_owner;
+            int m_count = 1;
+            boolean m_released;
+
+            ClassLock(Thread owner)
+            {
+                m_owner = owner;
+            }
+        }
+
         @Override
         public Enumeration getResources(String name)
         {
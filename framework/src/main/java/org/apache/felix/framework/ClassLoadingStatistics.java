@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the statistics of the classes defined by the bundle class loaders:
+ * the number of classes each bundle defined, the time spent defining them
+ * and the time spent in weaving hooks. They are shown by the
+ * <tt>felix:classes</tt> command and through the
+ * {@link ClassLoadingStatisticsMBean management interface}.
+ */
+public class ClassLoadingStatistics implements ClassLoadingStatisticsMBean
+{
+    private final ConcurrentHashMap<Long, BundleStatistics> m_bundles =
+        new ConcurrentHashMap<Long, BundleStatistics>();
+
+    void classWoven(BundleImpl bundle, long nanos)
+    {
+        getBundleStatistics(bundle).m_weavingNanos.addAndGet(nanos);
+    }
+
+    void classDefined(BundleImpl bundle, long nanos)
+    {
+        BundleStatistics statistics = getBundleStatistics(bundle);
+        statistics.m_classes.incrementAndGet();
+        statistics.m_defineNanos.addAndGet(nanos);
+    }
+
+    private BundleStatistics getBundleStatistics(BundleImpl bundle)
+    {
+        Long id = bundle.getBundleId();
+        BundleStatistics statistics = m_bundles.get(id);
+        if (statistics == null)
+        {
+            statistics = new BundleStatistics(bundle);
+            BundleStatistics existing = m_bundles.putIfAbsent(id, statistics);
+            if (existing != null)
+            {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Prints the statistics of all bundles and of each bundle.
+     */
+    public void classes()
+    {
+        System.out.println(this);
+        for (String bundle : getBundleStatistics())
+        {
+            System.out.println("    " + bundle);
+        }
+    }
+
+    public long getClassCount()
+    {
+        long count = 0;
+        for (BundleStatistics statistics : m_bundles.values())
+        {
+            count += statistics.m_classes.get();
+        }
+        return count;
+    }
+
+    public double getDefineTime()
+    {
+        long nanos = 0;
+        for (BundleStatistics statistics : m_bundles.values())
+        {
+            nanos += statistics.m_defineNanos.get();
+        }
+        return toMillis(nanos);
+    }
+
+    public double getWeavingTime()
+    {
+        long nanos = 0;
+        for (BundleStatistics statistics : m_bundles.values())
+        {
+            nanos += statistics.m_weavingNanos.get();
+        }
+        return toMillis(nanos);
+    }
+
+    public String[] getBundleStatistics()
+    {
+        List<BundleStatistics> bundles = new ArrayList<BundleStatistics>(m_bundles.values());
+        Collections.sort(bundles, new Comparator<BundleStatistics>()
+        {
+            public int compare(BundleStatistics s1, BundleStatistics s2)
+            {
+                long t1 = s1.m_defineNanos.get() + s1.m_weavingNanos.get();
+                long t2 = s2.m_defineNanos.get() + s2.m_weavingNanos.get();
+                return (t1 < t2) ? 1 : ((t1 > t2) ? -1 : 0);
+            }
+        });
+        String[] result = new String[bundles.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = bundles.get(i).toString();
+        }
+        return result;
+    }
+
+    public void reset()
+    {
+        m_bundles.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Classes: " + getClassCount() + " defined in " + getDefineTime()
+            + " ms, weaving " + getWeavingTime() + " ms";
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000d;
+    }
+
+    private static class BundleStatistics
+    {
+        final long m_id;
+        final String m_symbolicName;
+        final AtomicLong m_classes = new AtomicLong();
+        final AtomicLong m_defineNanos = new AtomicLong();
+        final AtomicLong m_weavingNanos = new AtomicLong();
+
+        BundleStatistics(BundleImpl bundle)
+        {
+            m_id = bundle.getBundleId();
+            m_symbolicName = bundle.getSymbolicName();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "bundle " + m_id + " (" + m_symbolicName + "): "
+                + m_classes.get() + " classes defined in "
+                + toMillis(m_defineNanos.get()) + " ms, weaving "
+                + toMillis(m_weavingNanos.get()) + " ms";
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+/**
+ * Management interface of the statistics of the classes defined by the
+ * bundle class loaders. Times are in milliseconds.
+ */
+public interface ClassLoadingStatisticsMBean
+{
+    /**
+     * Returns how many classes were defined by all bundles.
+     */
+    long getClassCount();
+
+    /**
+     * Returns the total time spent defining classes, not including the
+     * time spent in weaving hooks.
+     */
+    double getDefineTime();
+
+    /**
+     * Returns the total time spent in weaving hooks.
+     */
+    double getWeavingTime();
+
+    /**
+     * Returns the statistics of each bundle that defined classes, the bundle
+     * that spent the most time defining classes first.
+     */
+    String[] getBundleStatistics();
+
+    /**
+     * Resets the statistics.
+     */
+    void reset();
+}
@@ -20,6 +20,7 @@ package org.apache.felix.framework;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,10 +29,19 @@ import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.framework.util.*;
 import org.osgi.framework.AllServiceListener;
@@ -39,6 +49,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
@@ -64,6 +75,13 @@ public class EventDispatcher
         m_syncBndlListeners = Collections.EMPTY_MAP;
     private Map<BundleContext, List<ListenerInfo>>
         m_svcListeners = Collections.EMPTY_MAP;
+    // Service listeners are also indexed by the object classes their filters
+    // require, so a service event only touches listeners that could match it;
+    // listeners whose filters do not restrict the object class are residual.
+    private Map<String, List<ListenerInfo>>
+        m_svcListenersByClass = Collections.EMPTY_MAP;
+    private List<ListenerInfo>
+        m_svcListenersResidual = Collections.EMPTY_LIST;
 
     // A single thread is used to deliver events for all dispatchers.
     private static Thread m_thread = null;
@@ -78,14 +96,75 @@ public class EventDispatcher
 
     private static final SecureAction m_secureAction = new SecureAction();
 
+    // Optionally, asynchronous events are delivered by a pool of threads
+    // owned by this dispatcher, with a serial queue per listener so every
+    // listener still receives its events in order.
+    private final int m_threads;
+    private final EventDispatcherStatistics m_statistics;
+    private volatile ThreadPoolExecutor m_executor = null;
+    private final ConcurrentMap<ListenerKey, ListenerQueue> m_queues =
+        new ConcurrentHashMap<ListenerKey, ListenerQueue>();
+
     public EventDispatcher(Logger logger, ServiceRegistry registry)
+    {
+        this(logger, registry, 0);
+    }
+
+    /**
+     * Creates an event dispatcher. If the number of threads is positive,
+     * asynchronous events are delivered by a pool of that many threads
+     * instead of the single dispatch thread shared by all dispatchers, so a
+     * slow listener only delays its own events.
+     * @param logger the logger.
+     * @param registry the service registry.
+     * @param threads the number of threads delivering asynchronous events,
+     *        or zero to use the shared dispatch thread.
+     */
+    public EventDispatcher(Logger logger, ServiceRegistry registry, int threads)
     {
         m_logger = logger;
         m_registry = registry;
+        m_threads = Math.max(threads, 0);
+        m_statistics = (m_threads > 0) ? new EventDispatcherStatistics(this) : null;
+    }
+
+    /**
+     * Returns the statistics of the asynchronous event delivery, which are
+     * only kept if the dispatcher uses a thread pool.
+     * @return the statistics or <tt>null</tt>.
+    **/
+    EventDispatcherStatistics getStatistics()
+    {
+        return m_statistics;
     }
 
     public void startDispatching()
     {
+        if (m_threads > 0)
+        {
+            synchronized (m_queues)
+            {
+                if (m_executor == null)
+                {
+                    final AtomicInteger count = new AtomicInteger();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                        m_threads, m_threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r)
+                            {
+                                return new Thread(
+                                    r, "FelixDispatchQueue-" + count.incrementAndGet());
+                            }
+                        });
+                    executor.allowCoreThreadTimeOut(true);
+                    m_executor = executor;
+                }
+            }
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Start event dispatching thread if necessary.
@@ -125,6 +204,33 @@ public class EventDispatcher
 
     public void stopDispatching()
     {
+        if (m_threads > 0)
+        {
+            ThreadPoolExecutor executor;
+            synchronized (m_queues)
+            {
+                executor = m_executor;
+                m_executor = null;
+            }
+            if (executor != null)
+            {
+                // Like the dispatch thread, deliver pending events first.
+                executor.shutdown();
+                while (!executor.isTerminated())
+                {
+                    try
+                    {
+                        executor.awaitTermination(1, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                    }
+                }
+                m_queues.clear();
+            }
+            return;
+        }
+
         synchronized (m_threadLock)
         {
             // Return if already dead or stopping.
@@ -260,6 +366,7 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                indexServiceListener(info);
             }
         }
         return null;
@@ -311,6 +418,7 @@ public class EventDispatcher
             }
 
             // Try to find the instance in our list.
+            ListenerInfo removed = null;
             int idx = -1;
             for (Entry<BundleContext, List<ListenerInfo>> entry : listeners.entrySet())
             {
@@ -328,6 +436,7 @@ public class EventDispatcher
                         {
                             returnInfo = new ListenerInfo(infos.get(i), true);
                         }
+                        removed = info;
                         idx = i;
                         break;
                     }
@@ -338,6 +447,10 @@ public class EventDispatcher
             if (idx >= 0)
             {
                 listeners = removeListenerInfo(listeners, bc, idx);
+                if (ServiceListener.class != clazz)
+                {
+                    retireQueue(new ListenerKey(bc, l));
+                }
             }
 
             if (clazz == FrameworkListener.class)
@@ -358,6 +471,10 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                if (removed != null)
+                {
+                    deindexServiceListener(removed);
+                }
             }
         }
 
@@ -387,6 +504,88 @@ public class EventDispatcher
 
             // Remove all service listeners associated with the specified bundle.
             m_svcListeners = removeListenerInfos(m_svcListeners, bc);
+            deindexServiceListeners(bc);
+
+            for (ListenerKey key : m_queues.keySet())
+            {
+                if (key.m_context == bc)
+                {
+                    retireQueue(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retires the queue of a removed listener. The queue is dropped only once
+     * its pending events are delivered, so that a listener added again meanwhile
+     * keeps receiving its events in order, from a single thread.
+     * @param key the key of the listener.
+    **/
+    private void retireQueue(ListenerKey key)
+    {
+        ListenerQueue queue = m_queues.get(key);
+        if (queue != null)
+        {
+            queue.retire();
+        }
+    }
+
+    /**
+     * Returns the number of asynchronous events that are waiting to be
+     * delivered to listeners of this dispatcher.
+     * @return the number of pending events.
+    **/
+    int getQueueDepth()
+    {
+        int depth = 0;
+        if (m_threads > 0)
+        {
+            for (ListenerQueue queue : m_queues.values())
+            {
+                depth += queue.getDepth();
+            }
+        }
+        else
+        {
+            synchronized (m_requestList)
+            {
+                for (Request req : m_requestList)
+                {
+                    if (req.m_dispatcher == this)
+                    {
+                        for (List<ListenerInfo> infos : req.m_listeners.values())
+                        {
+                            depth += infos.size();
+                        }
+                    }
+                }
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns delivery statistics for every listener that has received
+     * asynchronous events through the thread pool of this dispatcher.
+     * Statistics are only collected if the dispatcher uses a thread pool.
+     * @return the listener statistics.
+    **/
+    List<ListenerStatistics> getListenerStatistics()
+    {
+        List<ListenerStatistics> stats = new ArrayList<ListenerStatistics>();
+        for (ListenerQueue queue : m_queues.values())
+        {
+            stats.add(queue.getStatistics());
+        }
+        return stats;
+    }
+
+    void resetListenerStatistics()
+    {
+        for (ListenerQueue queue : m_queues.values())
+        {
+            queue.resetStatistics();
         }
     }
 
@@ -427,6 +626,8 @@ public class EventDispatcher
                             info.getSecurityContext(),
                             info.isRemoved());
                         m_svcListeners = updateListenerInfo(m_svcListeners, i, newInfo);
+                        deindexServiceListener(info);
+                        indexServiceListener(newInfo);
                         return oldFilter;
                     }
                 }
@@ -531,13 +732,19 @@ public class EventDispatcher
     public void fireServiceEvent(
         final ServiceEvent event, final Dictionary oldProps, final Felix felix)
     {
-        // Take a snapshot of the listener array.
-        Map<BundleContext, List<ListenerInfo>> listeners = null;
+        // Take a snapshot of the listener index.
+        Map<String, List<ListenerInfo>> byClass = null;
+        List<ListenerInfo> residual = null;
         synchronized (this)
         {
-            listeners = m_svcListeners;
+            byClass = m_svcListenersByClass;
+            residual = m_svcListenersResidual;
         }
 
+        // Select the listeners that could match the service.
+        Map<BundleContext, List<ListenerInfo>> listeners =
+            selectServiceListeners(event.getServiceReference(), byClass, residual);
+
         // Use service registry hooks to filter target listeners.
         listeners = filterListenersUsingHooks(event, felix, listeners);
 
@@ -769,6 +976,12 @@ public class EventDispatcher
         Map<BundleContext, List<ListenerInfo>> listeners,
         EventObject event)
     {
+        if (dispatcher.m_threads > 0)
+        {
+            dispatcher.fireEventInParallel(type, listeners, event);
+            return;
+        }
+
         //TODO: should possibly check this within thread lock, seems to be ok though without
         // If dispatch thread is stopped, then ignore dispatch request.
         if (m_stopping || m_thread == null)
@@ -806,6 +1019,44 @@ public class EventDispatcher
         }
     }
 
+    private void fireEventInParallel(
+        int type, Map<BundleContext, List<ListenerInfo>> listeners, EventObject event)
+    {
+        // If the pool is stopped, then ignore dispatch request.
+        ThreadPoolExecutor executor = m_executor;
+        if ((executor == null) || listeners.isEmpty())
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (Entry<BundleContext, List<ListenerInfo>> entry : listeners.entrySet())
+        {
+            for (ListenerInfo info : entry.getValue())
+            {
+                ListenerKey key = new ListenerKey(info.getBundleContext(), info.getListener());
+                Delivery delivery = new Delivery(type, info, event, now);
+                // A queue that was dropped meanwhile refuses the event, in
+                // which case a new queue is created for it.
+                ListenerQueue queue;
+                do
+                {
+                    queue = m_queues.get(key);
+                    if (queue == null)
+                    {
+                        queue = new ListenerQueue(this, key, info);
+                        ListenerQueue prev = m_queues.putIfAbsent(key, queue);
+                        if (prev != null)
+                        {
+                            queue = prev;
+                        }
+                    }
+                }
+                while (!queue.offer(executor, delivery));
+            }
+        }
+    }
+
     private static void fireEventImmediately(
         EventDispatcher dispatcher, int type,
         Map<BundleContext, List<ListenerInfo>> listeners,
@@ -818,44 +1069,51 @@ public class EventDispatcher
             {
                 for (ListenerInfo info : entry.getValue())
                 {
-                    Bundle bundle = info.getBundle();
-                    EventListener l = info.getListener();
-                    Filter filter = info.getParsedFilter();
-                    Object acc = info.getSecurityContext();
-
-                    try
-                    {
-                        if (type == Request.FRAMEWORK_EVENT)
-                        {
-                            invokeFrameworkListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.BUNDLE_EVENT)
-                        {
-                            invokeBundleListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.SERVICE_EVENT)
-                        {
-                            invokeServiceListenerCallback(
-                                bundle, l, filter, acc, event, oldProps);
-                        }
-                    }
-                    catch (Throwable th)
-                    {
-                        if ((type != Request.FRAMEWORK_EVENT)
-                            || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
-                        {
-                            dispatcher.m_logger.log(bundle,
-                                Logger.LOG_ERROR,
-                                "EventDispatcher: Error during dispatch.", th);
-                            dispatcher.fireFrameworkEvent(
-                                new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
-                        }
-                    }
+                    invokeListener(dispatcher, type, info, event, oldProps);
                 }
             }
         }
     }
 
+    private static void invokeListener(
+        EventDispatcher dispatcher, int type, ListenerInfo info,
+        EventObject event, Dictionary oldProps)
+    {
+        Bundle bundle = info.getBundle();
+        EventListener l = info.getListener();
+        Filter filter = info.getParsedFilter();
+        Object acc = info.getSecurityContext();
+
+        try
+        {
+            if (type == Request.FRAMEWORK_EVENT)
+            {
+                invokeFrameworkListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.BUNDLE_EVENT)
+            {
+                invokeBundleListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.SERVICE_EVENT)
+            {
+                invokeServiceListenerCallback(
+                    bundle, l, filter, acc, event, oldProps);
+            }
+        }
+        catch (Throwable th)
+        {
+            if ((type != Request.FRAMEWORK_EVENT)
+                || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
+            {
+                dispatcher.m_logger.log(bundle,
+                    Logger.LOG_ERROR,
+                    "EventDispatcher: Error during dispatch.", th);
+                dispatcher.fireFrameworkEvent(
+                    new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
+            }
+        }
+    }
+
     private static void invokeFrameworkListenerCallback(
         Bundle bundle, final EventListener l, final EventObject event)
     {
@@ -1021,6 +1279,156 @@ public class EventDispatcher
         }
     }
 
+    private static Map<BundleContext, List<ListenerInfo>> selectServiceListeners(
+        ServiceReference ref, Map<String, List<ListenerInfo>> byClass,
+        List<ListenerInfo> residual)
+    {
+        Map<BundleContext, List<ListenerInfo>> listeners =
+            new HashMap<BundleContext, List<ListenerInfo>>();
+        for (ListenerInfo info : residual)
+        {
+            addSelectedListener(listeners, info);
+        }
+
+        Object value = ref.getProperty(Constants.OBJECTCLASS);
+        String[] classes = (value instanceof String[])
+            ? (String[]) value : new String[0];
+        // A listener is indexed under each of its object classes, so with
+        // more than one object class it may be found more than once.
+        Set<ListenerInfo> selected = (classes.length > 1)
+            ? Collections.newSetFromMap(new IdentityHashMap<ListenerInfo, Boolean>())
+            : null;
+        for (String clazz : classes)
+        {
+            List<ListenerInfo> infos = byClass.get(clazz);
+            if (infos != null)
+            {
+                for (ListenerInfo info : infos)
+                {
+                    if ((selected == null) || selected.add(info))
+                    {
+                        addSelectedListener(listeners, info);
+                    }
+                }
+            }
+        }
+        return listeners;
+    }
+
+    private static void addSelectedListener(
+        Map<BundleContext, List<ListenerInfo>> listeners, ListenerInfo info)
+    {
+        List<ListenerInfo> infos = listeners.get(info.getBundleContext());
+        if (infos == null)
+        {
+            infos = new ArrayList<ListenerInfo>();
+            listeners.put(info.getBundleContext(), infos);
+        }
+        infos.add(info);
+    }
+
+    private void indexServiceListener(ListenerInfo info)
+    {
+        Set<String> keys = info.getDispatchKeys();
+        if (keys == null)
+        {
+            List<ListenerInfo> residual =
+                new ArrayList<ListenerInfo>(m_svcListenersResidual);
+            residual.add(info);
+            m_svcListenersResidual = residual;
+        }
+        else
+        {
+            Map<String, List<ListenerInfo>> copy =
+                new HashMap<String, List<ListenerInfo>>(m_svcListenersByClass);
+            for (String key : keys)
+            {
+                List<ListenerInfo> infos = copy.get(key);
+                infos = (infos == null)
+                    ? new ArrayList<ListenerInfo>(1)
+                    : new ArrayList<ListenerInfo>(infos);
+                infos.add(info);
+                copy.put(key, infos);
+            }
+            m_svcListenersByClass = copy;
+        }
+    }
+
+    private void deindexServiceListener(ListenerInfo info)
+    {
+        Set<String> keys = info.getDispatchKeys();
+        if (keys == null)
+        {
+            m_svcListenersResidual = removeIdentical(m_svcListenersResidual, info);
+        }
+        else
+        {
+            Map<String, List<ListenerInfo>> copy =
+                new HashMap<String, List<ListenerInfo>>(m_svcListenersByClass);
+            for (String key : keys)
+            {
+                List<ListenerInfo> infos = copy.get(key);
+                if (infos != null)
+                {
+                    infos = removeIdentical(infos, info);
+                    if (infos.isEmpty())
+                    {
+                        copy.remove(key);
+                    }
+                    else
+                    {
+                        copy.put(key, infos);
+                    }
+                }
+            }
+            m_svcListenersByClass = copy;
+        }
+    }
+
+    private void deindexServiceListeners(BundleContext bc)
+    {
+        Map<String, List<ListenerInfo>> copy =
+            new HashMap<String, List<ListenerInfo>>();
+        for (Entry<String, List<ListenerInfo>> entry : m_svcListenersByClass.entrySet())
+        {
+            List<ListenerInfo> infos = removeListenerInfos(entry.getValue(), bc);
+            if (!infos.isEmpty())
+            {
+                copy.put(entry.getKey(), infos);
+            }
+        }
+        m_svcListenersByClass = copy;
+        m_svcListenersResidual = removeListenerInfos(m_svcListenersResidual, bc);
+    }
+
+    private static List<ListenerInfo> removeIdentical(
+        List<ListenerInfo> infos, ListenerInfo info)
+    {
+        List<ListenerInfo> copy = new ArrayList<ListenerInfo>(infos.size());
+        for (ListenerInfo i : infos)
+        {
+            if (i != info)
+            {
+                copy.add(i);
+            }
+        }
+        return copy;
+    }
+
+    private static List<ListenerInfo> removeListenerInfos(
+        List<ListenerInfo> infos, BundleContext bc)
+    {
+        List<ListenerInfo> copy = new ArrayList<ListenerInfo>(infos.size());
+        for (ListenerInfo info : infos)
+        {
+            if (info.getBundleContext() != bc)
+            {
+                copy.add(info);
+            }
+        }
+        return copy;
+    }
+
     private static Map<BundleContext, List<ListenerInfo>> addListenerInfo(
         Map<BundleContext, List<ListenerInfo>> listeners, ListenerInfo info)
     {
@@ -1171,4 +1579,259 @@ public class EventDispatcher
         public Map<BundleContext, List<ListenerInfo>> m_listeners = null;
         public EventObject m_event = null;
     }
+
+    /**
+     * Identifies a listener registered by a bundle context. Listeners are
+     * compared by identity, like when they are added or removed.
+     */
+    private static class ListenerKey
+    {
+        private final BundleContext m_context;
+        private final EventListener m_listener;
+
+        ListenerKey(BundleContext context, EventListener listener)
+        {
+            m_context = context;
+            m_listener = listener;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return (o instanceof ListenerKey)
+                && (((ListenerKey) o).m_context == m_context)
+                && (((ListenerKey) o).m_listener == m_listener);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(m_context) * 31
+                + System.identityHashCode(m_listener);
+        }
+    }
+
+    private static class Delivery
+    {
+        final int m_type;
+        final ListenerInfo m_info;
+        final EventObject m_event;
+        final long m_queued;
+
+        Delivery(int type, ListenerInfo info, EventObject event, long queued)
+        {
+            m_type = type;
+            m_info = info;
+            m_event = event;
+            m_queued = queued;
+        }
+    }
+
+    /**
+     * The pending events of a single listener. At most one pool thread
+     * drains a queue at any time, which keeps the events of a listener in
+     * order while other listeners are served by other threads.
+     */
+    private static class ListenerQueue implements Runnable
+    {
+        private final EventDispatcher m_dispatcher;
+        private final ListenerKey m_key;
+        private final ListenerInfo m_info;
+        private final ArrayDeque<Delivery> m_pending = new ArrayDeque<Delivery>();
+        private boolean m_scheduled = false;
+        // Set when the listener is removed; the queue is dropped once empty.
+        private boolean m_retired = false;
+        // Set once the queue is dropped from the dispatcher.
+        private boolean m_dropped = false;
+        private long m_delivered = 0;
+        private long m_queueNanos = 0;
+        private long m_deliveryNanos = 0;
+        private long m_maxDeliveryNanos = 0;
+
+        ListenerQueue(EventDispatcher dispatcher, ListenerKey key, ListenerInfo info)
+        {
+            m_dispatcher = dispatcher;
+            m_key = key;
+            m_info = info;
+        }
+
+        /**
+         * Queues an event for delivery.
+         * @return <tt>false</tt> if the queue was dropped and cannot take
+         *         the event.
+        **/
+        synchronized boolean offer(ThreadPoolExecutor executor, Delivery delivery)
+        {
+            if (m_dropped)
+            {
+                return false;
+            }
+            m_pending.add(delivery);
+            if (!m_scheduled)
+            {
+                try
+                {
+                    executor.execute(this);
+                    m_scheduled = true;
+                }
+                catch (RejectedExecutionException ex)
+                {
+                    // The pool is stopping, so ignore dispatch request.
+                    m_pending.clear();
+                }
+            }
+            return true;
+        }
+
+        synchronized void retire()
+        {
+            if (m_scheduled)
+            {
+                m_retired = true;
+            }
+            else
+            {
+                drop();
+            }
+        }
+
+        // Called with the lock of this queue held.
+        private void drop()
+        {
+            m_dropped = true;
+            m_dispatcher.m_queues.remove(m_key, this);
+        }
+
+        synchronized int getDepth()
+        {
+            return m_pending.size();
+        }
+
+        synchronized ListenerStatistics getStatistics()
+        {
+            return new ListenerStatistics(m_info.getBundle(), m_info.getListener(),
+                m_pending.size(), m_delivered, m_queueNanos, m_deliveryNanos,
+                m_maxDeliveryNanos);
+        }
+
+        synchronized void resetStatistics()
+        {
+            m_delivered = 0;
+            m_queueNanos = 0;
+            m_deliveryNanos = 0;
+            m_maxDeliveryNanos = 0;
+        }
+
+        @Override
+        public void run()
+        {
+            Delivery delivery = null;
+            long start = 0;
+            while (true)
+            {
+                synchronized (this)
+                {
+                    if (delivery != null)
+                    {
+                        long time = System.nanoTime() - start;
+                        m_delivered++;
+                        m_queueNanos += start - delivery.m_queued;
+                        m_deliveryNanos += time;
+                        m_maxDeliveryNanos = Math.max(m_maxDeliveryNanos, time);
+                    }
+                    delivery = m_pending.poll();
+                    if (delivery == null)
+                    {
+                        m_scheduled = false;
+                        if (m_retired)
+                        {
+                            drop();
+                        }
+                        return;
+                    }
+                }
+
+                start = System.nanoTime();
+                invokeListener(m_dispatcher, delivery.m_type, delivery.m_info,
+                    delivery.m_event, null);
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the asynchronous event delivery statistics of a listener.
+     * All times are in nanoseconds.
+     */
+    static class ListenerStatistics
+    {
+        private final Bundle m_bundle;
+        private final EventListener m_listener;
+        private final int m_queueDepth;
+        private final long m_delivered;
+        private final long m_queueNanos;
+        private final long m_deliveryNanos;
+        private final long m_maxDeliveryNanos;
+
+        ListenerStatistics(Bundle bundle, EventListener listener, int queueDepth,
+            long delivered, long queueNanos, long deliveryNanos, long maxDeliveryNanos)
+        {
+            m_bundle = bundle;
+            m_listener = listener;
+            m_queueDepth = queueDepth;
+            m_delivered = delivered;
+            m_queueNanos = queueNanos;
+            m_deliveryNanos = deliveryNanos;
+            m_maxDeliveryNanos = maxDeliveryNanos;
+        }
+
+        public Bundle getBundle()
+        {
+            return m_bundle;
+        }
+
+        public EventListener getListener()
+        {
+            return m_listener;
+        }
+
+        /**
+         * Returns the number of events waiting to be delivered.
+        **/
+        public int getQueueDepth()
+        {
+            return m_queueDepth;
+        }
+
+        /**
+         * Returns the number of events delivered so far.
+        **/
+        public long getDeliveredCount()
+        {
+            return m_delivered;
+        }
+
+        /**
+         * Returns the total time delivered events spent waiting in the queue.
+        **/
+        public long getTotalQueueTime()
+        {
+            return m_queueNanos;
+        }
+
+        /**
+         * Returns the total time spent in the listener.
+        **/
+        public long getTotalDeliveryTime()
+        {
+            return m_deliveryNanos;
+        }
+
+        /**
+         * Returns the longest time spent in the listener for a single event.
+        **/
+        public long getMaxDeliveryTime()
+        {
+            return m_maxDeliveryNanos;
+        }
+    }
 }
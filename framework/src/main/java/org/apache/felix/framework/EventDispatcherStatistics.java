@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.felix.framework.EventDispatcher.ListenerStatistics;
+
+/**
+ * Exposes the statistics of the asynchronous event delivery through the
+ * thread pool of the event dispatcher: the events waiting in the queues of
+ * the listeners and the time spent delivering them. They are shown by the
+ * <tt>felix:events</tt> command and through the
+ * {@link EventDispatcherStatisticsMBean management interface}.
+ */
+public class EventDispatcherStatistics implements EventDispatcherStatisticsMBean
+{
+    private final EventDispatcher m_dispatcher;
+
+    EventDispatcherStatistics(EventDispatcher dispatcher)
+    {
+        m_dispatcher = dispatcher;
+    }
+
+    /**
+     * Prints the statistics of all listeners and of each listener.
+     */
+    public void events()
+    {
+        System.out.println(this);
+        for (String listener : getListenerStatistics())
+        {
+            System.out.println("    " + listener);
+        }
+    }
+
+    public int getQueueDepth()
+    {
+        return m_dispatcher.getQueueDepth();
+    }
+
+    public long getDeliveredCount()
+    {
+        long count = 0;
+        for (ListenerStatistics statistics : m_dispatcher.getListenerStatistics())
+        {
+            count += statistics.getDeliveredCount();
+        }
+        return count;
+    }
+
+    public double getQueueTime()
+    {
+        long nanos = 0;
+        for (ListenerStatistics statistics : m_dispatcher.getListenerStatistics())
+        {
+            nanos += statistics.getTotalQueueTime();
+        }
+        return toMillis(nanos);
+    }
+
+    public double getDeliveryTime()
+    {
+        long nanos = 0;
+        for (ListenerStatistics statistics : m_dispatcher.getListenerStatistics())
+        {
+            nanos += statistics.getTotalDeliveryTime();
+        }
+        return toMillis(nanos);
+    }
+
+    public double getMaxDeliveryTime()
+    {
+        long nanos = 0;
+        for (ListenerStatistics statistics : m_dispatcher.getListenerStatistics())
+        {
+            nanos = Math.max(nanos, statistics.getMaxDeliveryTime());
+        }
+        return toMillis(nanos);
+    }
+
+    public String[] getListenerStatistics()
+    {
+        List<ListenerStatistics> listeners = m_dispatcher.getListenerStatistics();
+        Collections.sort(listeners, new Comparator<ListenerStatistics>()
+        {
+            public int compare(ListenerStatistics s1, ListenerStatistics s2)
+            {
+                long t1 = s1.getTotalDeliveryTime();
+                long t2 = s2.getTotalDeliveryTime();
+                return (t1 < t2) ? 1 : ((t1 > t2) ? -1 : 0);
+            }
+        });
+        String[] result = new String[listeners.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            ListenerStatistics s = listeners.get(i);
+            long delivered = s.getDeliveredCount();
+            result[i] = s.getListener().getClass().getName()
+                + " of " + s.getBundle() + ": " + s.getQueueDepth() + " queued, "
+                + delivered + " delivered, average queue time "
+                + toMillis((delivered > 0) ? s.getTotalQueueTime() / delivered : 0)
+                + " ms, average delivery time "
+                + toMillis((delivered > 0) ? s.getTotalDeliveryTime() / delivered : 0)
+                + " ms (max " + toMillis(s.getMaxDeliveryTime()) + " ms)";
+        }
+        return result;
+    }
+
+    public void reset()
+    {
+        m_dispatcher.resetListenerStatistics();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Events: " + getQueueDepth() + " queued, " + getDeliveredCount()
+            + " delivered, waited " + getQueueTime() + " ms, delivered in "
+            + getDeliveryTime() + " ms (max " + getMaxDeliveryTime() + " ms)";
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000d;
+    }
+}
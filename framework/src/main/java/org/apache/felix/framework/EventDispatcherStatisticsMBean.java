@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+/**
+ * Management interface of the statistics of the asynchronous event delivery
+ * of the framework. Times are in milliseconds.
+ */
+public interface EventDispatcherStatisticsMBean
+{
+    /**
+     * Returns how many asynchronous events wait to be delivered.
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns how many asynchronous events were delivered to the current
+     * listeners.
+     */
+    long getDeliveredCount();
+
+    /**
+     * Returns the total time the delivered events waited in the queues of
+     * the listeners.
+     */
+    double getQueueTime();
+
+    /**
+     * Returns the total time spent in the listeners.
+     */
+    double getDeliveryTime();
+
+    /**
+     * Returns the longest time a listener spent on a single event.
+     */
+    double getMaxDeliveryTime();
+
+    /**
+     * Returns the statistics of each current listener, the listener that
+     * spent the most time delivering events first.
+     */
+    String[] getListenerStatistics();
+
+    /**
+     * Resets the statistics.
+     */
+    void reset();
+}
@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLStreamHandler;
@@ -39,7 +40,9 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -49,6 +52,16 @@ import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.felix.framework.BundleWiringImpl.BundleClassLoader;
 import org.apache.felix.framework.ServiceRegistry.ServiceRegistryCallbacks;
@@ -65,6 +78,7 @@ import org.apache.felix.framework.util.ShrinkableCollection;
 import org.apache.felix.framework.util.StringMap;
 import org.apache.felix.framework.util.ThreadGate;
 import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.apache.felix.framework.util.manifestparser.NativeLibraryClause;
 import org.apache.felix.framework.wiring.BundleRequirementImpl;
 import org.osgi.framework.AdminPermission;
@@ -124,17 +138,17 @@ public class Felix extends BundleImpl implements Framework
     // Resolver and resolver state.
     private final StatefulResolver m_resolver;
 
-    // Lock object used to determine if an individual bundle
-    // lock or the global lock can be acquired.
-    private final Object[] m_bundleLock = new Object[0];
-    // Keeps track of threads wanting to acquire the global lock.
-    private final List<Thread> m_globalLockWaitersList = new ArrayList<Thread>();
-    // The thread currently holding the global lock.
-    private Thread m_globalLockThread = null;
-    // How many times the global lock was acquired by the thread holding
-    // the global lock; if this value is zero, then it means the global
-    // lock is free.
-    private int m_globalLockCount = 0;
+    // Manages the individual bundle locks and the global lock.
+    private final BundleLockManager m_lockManager = new BundleLockManager();
+    // Name of the lock statistics management bean, if registered.
+    private ObjectName m_lockStatisticsName = null;
+    // Statistics of the classes defined by the bundle class loaders;
+    // null if disabled.
+    private final ClassLoadingStatistics m_classLoadingStatistics;
+    // Name of the class loading statistics management bean, if registered.
+    private ObjectName m_classLoadingStatisticsName = null;
+    // Name of the management bean of the event delivery statistics.
+    private ObjectName m_eventStatisticsName = null;
 
     // Maps a bundle location to a bundle location;
     // used to reserve a location when installing a bundle.
@@ -168,6 +182,14 @@ public class Felix extends BundleImpl implements Framework
     // the old start level. Once the start level change is complete, the two
     // will become equal again.
     private volatile int m_targetStartLevel = FelixConstants.FRAMEWORK_INACTIVE_STARTLEVEL;
+    // Number of threads used to start the bundles of a start level
+    // concurrently; zero starts them one at a time.
+    private final int m_startLevelThreads;
+    // Marks the start level thread and the threads starting the bundles of
+    // a start level concurrently, whose starts are never queued.
+    private final ThreadLocal<Boolean> m_startLevelThread = new ThreadLocal<Boolean>();
+    // Number of threads used to cache and parse the bundles of a batch install.
+    private final int m_installThreads;
     // Keep track of bundles currently being processed by start level thread.
     private final SortedSet<StartLevelTuple> m_startLevelBundles =
         new TreeSet<StartLevelTuple>();
@@ -313,6 +335,72 @@ public class Felix extends BundleImpl implements Framework
      *       service will result in the <tt>URL.setURLStreamHandlerFactory()</tt>
      *       and <tt>URLConnection.setContentHandlerFactory()</tt> being called.
      *   </li>
+     *   <li><tt>felix.eventdispatcher.threads</tt> - The number of threads
+     *       used to deliver asynchronous framework and bundle events. By
+     *       default, a single thread delivers the events of all listeners in
+     *       turn. If set to a positive number, each listener gets its own
+     *       queue, so it still receives its events in order, but a slow
+     *       listener no longer delays the others.
+     *   </li>
+     *   <li><tt>felix.startlevel.threads</tt> - The number of threads used
+     *       to start the bundles of a start level when raising the active
+     *       start level. By default, bundles are started one at a time. If
+     *       set to a positive number, the bundles of each start level are
+     *       started concurrently, but all of them are processed before the
+     *       bundles of the next start level, so activators of the same
+     *       start level must not wait for each other. The time taken to
+     *       start each bundle is logged at debug level.
+     *   </li>
+     *   <li><tt>felix.install.threads</tt> - The number of threads used
+     *       by {@link #installBundles(List)} to copy bundle archives into
+     *       the cache and parse their manifests concurrently. The default
+     *       value is the number of available processors.
+     *   </li>
+     *   <li><tt>felix.bundlelock.statistics</tt> - Flag to indicate whether
+     *       the statistics of the bundle locks and the global lock, such as
+     *       the time threads waited for them and the locks currently held,
+     *       are shown by the <tt>felix:locks</tt> command and a management
+     *       bean, which helps to diagnose stalled start level changes. The
+     *       default value is "<tt>false</tt>".
+     *   </li>
+     *   <li><tt>felix.classloader.statistics</tt> - Flag to indicate whether
+     *       the bundle class loaders record how many classes each bundle
+     *       defines and the time spent defining them and in weaving hooks,
+     *       which are shown by the <tt>felix:classes</tt> command and a
+     *       management bean. The default value is "<tt>false</tt>".
+     *   </li>
+     *   <li><tt>felix.classloader.negativecache</tt> - The number of class
+     *       names and dynamically imported package names for which each
+     *       bundle class loader remembers that the lookup failed, until the
+     *       installed or resolved bundles change. The default value is
+     *       "<tt>256</tt>"; a value of "<tt>0</tt>" disables the caches.
+     *   </li>
+     *   <li><tt>felix.resolver.incremental</tt> - Flag to indicate whether
+     *       the resolver keeps the package spaces of resolved bundles across
+     *       resolve operations, so resolving a newly installed bundle does
+     *       not recompute them for every bundle it is wired to directly or
+     *       indirectly. The default value is "<tt>false</tt>".
+     *   </li>
+     *   <li><tt>felix.resolver.backjumping</tt> - Flag to indicate whether
+     *       the resolver remembers the candidate choices that caused each
+     *       uses constraint violation and skips the candidate permutations
+     *       that make the same choices again, instead of checking them one
+     *       by one. The default value is "<tt>false</tt>".
+     *   </li>
+     *   <li><tt>felix.resolver.statistics</tt> - The number of recent
+     *       resolve operations whose statistics, such as the time spent in
+     *       each resolver phase and the packages causing uses constraint
+     *       violations, are kept and shown by the <tt>felix:resolves</tt>
+     *       command and a management bean. The default value is "<tt>0</tt>",
+     *       which disables collecting statistics.
+     *   </li>
+     *   <li><tt>felix.service.indices</tt> - A comma-delimited list of
+     *       service property names, such as <tt>service.pid</tt>, by which
+     *       the service registry indexes services in addition to the object
+     *       class. Filters testing these properties for equality are then
+     *       answered from the index instead of evaluating the filter against
+     *       every service. The default is not to index any other properties.
+     *   </li>
      *   <li><tt>felix.fragment.validation</tt> - Determines if installing
      *       unsupported fragment bundles throws an exception or logs a warning.
      *       Possible values are "<tt>exception</tt>" or "<tt>warning</tt>". The
@@ -412,17 +500,22 @@ public class Felix extends BundleImpl implements Framework
         m_bundleStreamHandler = new URLHandlersBundleStreamHandler(this);
 
         // Create service registry.
+        String indices = (String) m_configMap.get(FelixConstants.SERVICE_INDICES_PROP);
         m_registry = new ServiceRegistry(m_logger, new ServiceRegistryCallbacks() {
             @Override
             public void serviceChanged(ServiceEvent event, Dictionary oldProps)
             {
                 fireServiceEvent(event, oldProps);
             }
-        });
+        }, (indices == null) ? null : ManifestParser.parseDelimitedString(indices, ","));
 
         // Create a resolver and its state.
         m_resolver = new StatefulResolver(this, m_registry);
 
+        m_classLoadingStatistics = "true".equalsIgnoreCase(
+            (String) m_configMap.get(FelixConstants.CLASSLOADER_STATISTICS_PROP))
+            ? new ClassLoadingStatistics() : null;
+
         // Create the extension manager, which we will use as the
         // revision for the system bundle.
         m_extensionManager = new ExtensionManager(m_logger, m_configMap, this);
@@ -438,7 +531,56 @@ public class Felix extends BundleImpl implements Framework
         }
 
         // Create event dispatcher.
-        m_dispatcher = new EventDispatcher(m_logger, m_registry);
+        int threads = 0;
+        String threadsStr = (String) m_configMap.get(FelixConstants.EVENT_DISPATCH_THREADS_PROP);
+        if (threadsStr != null)
+        {
+            try
+            {
+                threads = Integer.parseInt(threadsStr.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Invalid value for " + FelixConstants.EVENT_DISPATCH_THREADS_PROP
+                    + ": " + threadsStr);
+            }
+        }
+        m_dispatcher = new EventDispatcher(m_logger, m_registry, threads);
+
+        threads = 0;
+        threadsStr = (String) m_configMap.get(FelixConstants.STARTLEVEL_THREADS_PROP);
+        if (threadsStr != null)
+        {
+            try
+            {
+                threads = Integer.parseInt(threadsStr.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Invalid value for " + FelixConstants.STARTLEVEL_THREADS_PROP
+                    + ": " + threadsStr);
+            }
+        }
+        m_startLevelThreads = threads;
+
+        threads = Runtime.getRuntime().availableProcessors();
+        threadsStr = (String) m_configMap.get(FelixConstants.INSTALL_THREADS_PROP);
+        if (threadsStr != null)
+        {
+            try
+            {
+                threads = Math.max(1, Integer.parseInt(threadsStr.trim()));
+            }
+            catch (NumberFormatException ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Invalid value for " + FelixConstants.INSTALL_THREADS_PROP
+                    + ": " + threadsStr);
+            }
+        }
+        m_installThreads = threads;
 
         // Create framework wiring object.
         m_fwkWiring = new FrameworkWiringImpl(this, m_registry);
@@ -836,6 +978,9 @@ public class Felix extends BundleImpl implements Framework
 
                 // Start services
                 m_resolver.start();
+                registerLockStatistics();
+                registerClassLoadingStatistics();
+                registerEventStatistics();
                 m_fwkWiring.start();
                 m_fwkStartLevel.start();
 
@@ -898,6 +1043,10 @@ public class Felix extends BundleImpl implements Framework
                     }
                 }
 
+                // Restore the wirings persisted during the last shutdown,
+                // if any, before anything else triggers a resolve.
+                restoreWirings();
+
                 m_extensionManager.startPendingExtensionBundles(Felix.this);
                 m_fwkWiring.refreshBundles(null);
 
@@ -924,6 +1073,96 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    private boolean isWiringPersistenceEnabled()
+    {
+        String s = (String) m_configMap.get(BundleCache.CACHE_WIRING_PROP);
+        return (s != null) && s.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Restores the wirings of all cached bundles from the snapshots stored
+     * in their archives during the last shutdown. Snapshots are always
+     * consumed, even if wiring persistence is disabled, so that an outdated
+     * snapshot can never be picked up by a later session.
+    **/
+    private void restoreWirings()
+    {
+        boolean enabled = isWiringPersistenceEnabled();
+        Map<BundleRevision, WiringSnapshot> snapshots =
+            new HashMap<BundleRevision, WiringSnapshot>();
+        for (Object o : m_installedBundles[IDENTIFIER_MAP_IDX].values())
+        {
+            BundleImpl bundle = (BundleImpl) o;
+            if (bundle == this)
+            {
+                continue;
+            }
+            try
+            {
+                BundleArchive archive = bundle.getArchive();
+                byte[] bytes = archive.readWiringSnapshot();
+                BundleRevision revision = bundle.adapt(BundleRevision.class);
+                if (enabled && (bytes != null) && !bundle.isExtension()
+                    && (revision != null) && (revision.getWiring() == null))
+                {
+                    WiringSnapshot snapshot = WiringSnapshot.fromByteArray(bytes);
+                    if (snapshot.isCurrent(revision,
+                        archive.getCurrentRevisionNumber(), archive.getLastModified()))
+                    {
+                        snapshots.put(revision, snapshot);
+                    }
+                }
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(bundle, Logger.LOG_WARNING,
+                    "Unable to read persisted wiring.", ex);
+            }
+        }
+        if (!snapshots.isEmpty())
+        {
+            m_resolver.rehydrate(snapshots);
+        }
+    }
+
+    /**
+     * Stores a snapshot of the current wiring of every resolved bundle in
+     * its archive, if wiring persistence is enabled.
+    **/
+    private void persistWirings()
+    {
+        if (!isWiringPersistenceEnabled())
+        {
+            return;
+        }
+        for (Bundle b : getBundles())
+        {
+            BundleImpl bundle = (BundleImpl) b;
+            if ((bundle == this) || bundle.isExtension()
+                || (bundle.getState() == Bundle.UNINSTALLED))
+            {
+                continue;
+            }
+            try
+            {
+                BundleArchive archive = bundle.getArchive();
+                WiringSnapshot snapshot = WiringSnapshot.capture(
+                    bundle.adapt(BundleRevision.class),
+                    archive.getCurrentRevisionNumber(),
+                    archive.getLastModified());
+                if (snapshot != null)
+                {
+                    archive.writeWiringSnapshot(snapshot.toByteArray());
+                }
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(bundle, Logger.LOG_WARNING,
+                    "Unable to persist wiring.", ex);
+            }
+        }
+    }
+
     void setBundleProtectionDomain(BundleRevisionImpl revisionImpl) throws Exception
     {
         Object certificates = null;
@@ -1289,126 +1528,80 @@ public class Felix extends BundleImpl implements Framework
             int high = (isLowering) ? m_activeStartLevel : m_targetStartLevel;
             m_activeStartLevel = (isLowering) ? high : low;
 
-            // Process bundles and stop or start them accordingly.
-            while (bundlesRemaining)
+            // Optionally, the bundles of a start level are started
+            // concurrently; all of them are processed before moving on
+            // to the next start level.
+            ExecutorService executor = (!isLowering && (m_startLevelThreads > 0))
+                ? createStartLevelExecutor() : null;
+            try
             {
-                StartLevelTuple tuple;
-
-                // Remove our tuple to be processed while holding the queue lock
-                // and update the active start level accordingly, which allows
-                // us to determine in startBundle() if concurrent requests to
-                // start a bundle should be handled synchronously or just added
-                // to the queue and handled asynchronously.
-                synchronized (m_startLevelBundles)
+                // Process bundles and stop or start them accordingly.
+                while (bundlesRemaining)
                 {
-                    if (isLowering)
-                    {
-                        tuple = m_startLevelBundles.last();
-                    }
-                    else
-                    {
-                        tuple = m_startLevelBundles.first();
-                    }
+                    List<StartLevelTuple> tuples = new ArrayList<StartLevelTuple>();
 
-                    if ((tuple.m_level >= low) && (tuple.m_level <= high))
+                    // Remove our tuples to be processed while holding the queue
+                    // lock and update the active start level accordingly, which
+                    // allows us to determine in startBundle() if concurrent
+                    // requests to start a bundle should be handled synchronously
+                    // or just added to the queue and handled asynchronously.
+                    synchronized (m_startLevelBundles)
                     {
-                        m_activeStartLevel = tuple.m_level;
-                    }
-                }
-
-                // Ignore the system bundle, since its start() and
-                // stop() methods get called explicitly in Felix.start()
-                // and Felix.stop(), respectively.
-                if (tuple.m_bundle.getBundleId() != 0)
-                {
-                    // Lock the current bundle.
-                    try
-                    {
-                        acquireBundleLock(tuple.m_bundle,
-                            Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
-                            | Bundle.STARTING | Bundle.STOPPING);
-                    }
-                    catch (IllegalStateException ex)
-                    {
-                        // Ignore if the bundle has been uninstalled.
-                        if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                        StartLevelTuple tuple;
+                        if (isLowering)
                         {
-                            fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
-                            m_logger.log(tuple.m_bundle,
-                                Logger.LOG_ERROR,
-                                "Error locking " + tuple.m_bundle._getLocation(), ex);
+                            tuple = m_startLevelBundles.last();
                         }
                         else
                         {
-                            synchronized (m_startLevelBundles)
-                            {
-                                m_startLevelBundles.remove(tuple);
-                                bundlesRemaining = !m_startLevelBundles.isEmpty();
-                            }
+                            tuple = m_startLevelBundles.first();
                         }
-                        continue;
-                    }
 
-                    try
-                    {
-                        // Start the bundle if necessary.
-                        // Note that we only attempt to start the bundle if
-                        // its start level is equal to the active start level,
-                        // which means we assume lower bundles are in the state
-                        // they should be in (i.e., we won't attempt to restart
-                        // them if they previously failed to start).
-                        if (!isLowering
-                            && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+                        if ((tuple.m_level >= low) && (tuple.m_level <= high))
                         {
-                            try
-                            {
-// TODO: LAZY - Not sure if this is the best way...
-                                int options = Bundle.START_TRANSIENT;
-                                options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
-                                    ? options | Bundle.START_ACTIVATION_POLICY
-                                    : options;
-                                startBundle(tuple.m_bundle, options);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error starting " + tuple.m_bundle._getLocation(), th);
-                            }
+                            m_activeStartLevel = tuple.m_level;
                         }
-                        // Stop the bundle if necessary.
-                        else if (isLowering
-                            && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+
+                        tuples.add(tuple);
+                        if (executor != null)
                         {
-                            try
-                            {
-                                stopBundle(tuple.m_bundle, false);
-                            }
-                            catch (Throwable th)
+                            for (StartLevelTuple t : m_startLevelBundles.tailSet(tuple))
                             {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error stopping " + tuple.m_bundle._getLocation(), th);
+                                if (t.m_level != tuple.m_level)
+                                {
+                                    break;
+                                }
+                                else if (t != tuple)
+                                {
+                                    tuples.add(t);
+                                }
                             }
                         }
                     }
-                    finally
+
+                    List<StartLevelTuple> processed;
+                    if (tuples.size() == 1)
                     {
-                        // Always release bundle lock.
-                        releaseBundleLock(tuple.m_bundle);
+                        processed = processStartLevelTuple(tuples.get(0), isLowering)
+                            ? tuples : Collections.<StartLevelTuple>emptyList();
+                    }
+                    else
+                    {
+                        processed = processStartLevelTuples(executor, tuples);
                     }
-                }
 
-                synchronized (m_startLevelBundles)
+                    synchronized (m_startLevelBundles)
+                    {
+                        m_startLevelBundles.removeAll(processed);
+                        bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    }
+                }
+            }
+            finally
+            {
+                if (executor != null)
                 {
-                    m_startLevelBundles.remove(tuple);
-                    bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    executor.shutdown();
                 }
             }
 
@@ -1439,6 +1632,191 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    /**
+     * Stops or starts the bundle of the specified tuple as needed for the
+     * active start level while holding its bundle lock.
+     * @return <tt>true</tt> if the tuple was processed or <tt>false</tt> if
+     *         it must be processed again.
+    **/
+    private boolean processStartLevelTuple(StartLevelTuple tuple, boolean isLowering)
+    {
+        // Ignore the system bundle, since its start() and
+        // stop() methods get called explicitly in Felix.start()
+        // and Felix.stop(), respectively.
+        if (tuple.m_bundle.getBundleId() != 0)
+        {
+            // Lock the current bundle.
+            try
+            {
+                acquireBundleLock(tuple.m_bundle,
+                    Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
+                    | Bundle.STARTING | Bundle.STOPPING);
+            }
+            catch (IllegalStateException ex)
+            {
+                // Ignore if the bundle has been uninstalled.
+                if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                {
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error locking " + tuple.m_bundle._getLocation(), ex);
+                }
+                else
+                {
+                    return true;
+                }
+                return false;
+            }
+
+            try
+            {
+                // Start the bundle if necessary.
+                // Note that we only attempt to start the bundle if
+                // its start level is equal to the active start level,
+                // which means we assume lower bundles are in the state
+                // they should be in (i.e., we won't attempt to restart
+                // them if they previously failed to start).
+                if (!isLowering
+                    && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+// TODO: LAZY - Not sure if this is the best way...
+                        int options = Bundle.START_TRANSIENT;
+                        options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
+                            ? options | Bundle.START_ACTIVATION_POLICY
+                            : options;
+                        long time = System.nanoTime();
+                        startBundle(tuple.m_bundle, options);
+                        m_logger.log(tuple.m_bundle, Logger.LOG_DEBUG,
+                            "Started " + tuple.m_bundle._getLocation() + " in "
+                            + ((System.nanoTime() - time) / 1000000) + " ms.");
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error starting " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+                // Stop the bundle if necessary.
+                else if (isLowering
+                    && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+                        stopBundle(tuple.m_bundle, false);
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error stopping " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+            }
+            finally
+            {
+                // Always release bundle lock.
+                releaseBundleLock(tuple.m_bundle);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts the bundles of the specified tuples, which are all in the
+     * same start level, concurrently and waits until all of them have
+     * been processed.
+     * @return the tuples that were processed.
+    **/
+    private List<StartLevelTuple> processStartLevelTuples(
+        ExecutorService executor, List<StartLevelTuple> tuples)
+    {
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(tuples.size());
+        for (final StartLevelTuple tuple : tuples)
+        {
+            futures.add(executor.submit(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return processStartLevelTuple(tuple, false);
+                }
+            }));
+        }
+
+        // Wait for all of them, even if interrupted, so no bundle of the
+        // next start level is started too early.
+        boolean interrupted = false;
+        List<StartLevelTuple> processed = new ArrayList<StartLevelTuple>(tuples.size());
+        for (int i = 0; i < tuples.size(); )
+        {
+            try
+            {
+                if (futures.get(i).get())
+                {
+                    processed.add(tuples.get(i));
+                }
+                i++;
+            }
+            catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+            catch (ExecutionException ex)
+            {
+                m_logger.log(tuples.get(i).m_bundle, Logger.LOG_ERROR,
+                    "Error starting " + tuples.get(i).m_bundle._getLocation(),
+                    ex.getCause());
+                processed.add(tuples.get(i));
+                i++;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return processed;
+    }
+
+    private ExecutorService createStartLevelExecutor()
+    {
+        return Executors.newFixedThreadPool(m_startLevelThreads, new ThreadFactory()
+        {
+            private final AtomicInteger m_count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r)
+            {
+                Thread t = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        setStartLevelThread();
+                        r.run();
+                    }
+                }, FrameworkStartLevelImpl.THREAD_NAME + "-" + m_count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Marks the current thread as processing start level changes, so that
+     * bundles started from it are never queued by <tt>startBundle()</tt>.
+    **/
+    void setStartLevelThread()
+    {
+        m_startLevelThread.set(Boolean.TRUE);
+    }
+
     /**
      * Returns the start level into which newly installed bundles will
      * be placed by default; this method implements functionality for
@@ -2027,7 +2405,7 @@ public class Felix extends BundleImpl implements Framework
             // queued but processed synchronously.
             // Note: Don't queue starts from the start level thread, otherwise
             // we'd never get anything started.
-            if (!Thread.currentThread().getName().equals(FrameworkStartLevelImpl.THREAD_NAME))
+            if (m_startLevelThread.get() == null)
             {
                 synchronized (m_startLevelBundles)
                 {
@@ -3133,58 +3511,391 @@ public class Felix extends BundleImpl implements Framework
 
         if (existing != null)
         {
-            Set<ServiceReference<org.osgi.framework.hooks.bundle.FindHook>> hooks =
-                    getHookRegistry().getHooks(org.osgi.framework.hooks.bundle.FindHook.class);
-            if (!hooks.isEmpty())
+            invokeFindHooks(origin, existing);
+        }
+        else
+        {
+            // Fire bundle event.
+            fireBundleEvent(BundleEvent.INSTALLED, bundle, origin);
+        }
+
+        // Return new bundle.
+        return (existing != null) ? existing : bundle;
+    }
+
+    /**
+     * Installs the bundles at the specified locations as a single operation.
+     * The bundle archives are copied into the cache and their manifests are
+     * parsed concurrently, using the number of threads configured with
+     * <tt>felix.install.threads</tt>. The bundles are then added to the
+     * framework in the specified order while holding the global lock, so
+     * either all of them are installed or none of them is. The
+     * <tt>INSTALLED</tt> events are fired in the same order once all bundles
+     * are installed. As for a single install, a location that is already
+     * installed returns the existing bundle. Extension bundles cannot be
+     * installed this way.
+     * @param locations the locations of the bundles to install.
+     * @return the bundles, in the order of their locations.
+     * @throws BundleException if any of the bundles cannot be installed.
+    **/
+    public List<Bundle> installBundles(List<String> locations) throws BundleException
+    {
+        Map<String, BundleImpl> existing = new HashMap<String, BundleImpl>();
+        List<BundleImpl> installed;
+
+        // Acquire the install locks in a fixed order, so concurrent
+        // batch installs cannot deadlock.
+        List<String> acquired = new ArrayList<String>();
+        try
+        {
+            for (String location : new TreeSet<String>(locations))
             {
-                Collection<Bundle> bundles = new ArrayList<Bundle>(1);
-                bundles.add(existing);
-                bundles = new ShrinkableCollection<Bundle>(bundles);
-                for (ServiceReference<org.osgi.framework.hooks.bundle.FindHook> hook : hooks)
-                {
-                    org.osgi.framework.hooks.bundle.FindHook fh = getService(this, hook, false);
-                    if (fh != null)
-                    {
-                        try
-                        {
-                            m_secureAction.invokeBundleFindHook(
-                                fh, ((BundleImpl) origin)._getBundleContext(), bundles);
-                        }
-                        catch (Throwable th)
-                        {
-                            m_logger.doLog(
-                                hook.getBundle(),
-                                hook,
-                                Logger.LOG_WARNING,
-                                "Problem invoking bundle hook.",
-                                th);
-                        }
-                    }
+                acquireInstallLock(location);
+                acquired.add(location);
+            }
+
+            // Check to see if the framework is still running;
+            if ((getState() == Bundle.STOPPING) ||
+                (getState() == Bundle.UNINSTALLED))
+            {
+                throw new BundleException("The framework has been shutdown.");
+            }
+
+            // If bundle location is already installed, then
+            // return it as required by the OSGi specification.
+            List<String> toInstall = new ArrayList<String>();
+            for (String location : new LinkedHashSet<String>(locations))
+            {
+                BundleImpl bundle = (BundleImpl) getBundle(location);
+                if (bundle != null)
+                {
+                    existing.put(location, bundle);
+                }
+                else
+                {
+                    toInstall.add(location);
                 }
+            }
 
-                if (origin != this)
+            installed = addBundles(parseBundles(toInstall));
+        }
+        finally
+        {
+            // Always release install locks.
+            for (String location : acquired)
+            {
+                releaseInstallLock(location);
+            }
+        }
+
+        for (BundleImpl bundle : existing.values())
+        {
+            invokeFindHooks(this, bundle);
+        }
+        Map<String, BundleImpl> bundles = new HashMap<String, BundleImpl>(existing);
+        for (BundleImpl bundle : installed)
+        {
+            bundles.put(bundle._getLocation(), bundle);
+            // Fire bundle event.
+            fireBundleEvent(BundleEvent.INSTALLED, bundle, this);
+        }
+
+        List<Bundle> result = new ArrayList<Bundle>(locations.size());
+        for (String location : locations)
+        {
+            result.add(bundles.get(location));
+        }
+        return result;
+    }
+
+    /**
+     * Caches the bundles at the specified locations and parses their
+     * revisions concurrently. Identifiers are assigned in install order.
+     * If any of them fails, the archives of all of them are deleted.
+    **/
+    private List<BundleRevisionImpl> parseBundles(List<String> locations)
+        throws BundleException
+    {
+        if (locations.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        final int startLevel = getInitialBundleStartLevel();
+        List<Future<BundleRevisionImpl>> futures =
+            new ArrayList<Future<BundleRevisionImpl>>(locations.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(m_installThreads, locations.size()), new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "FelixBundleInstaller");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        try
+        {
+            for (final String location : locations)
+            {
+                final long id = getNextId();
+                futures.add(executor.submit(new Callable<BundleRevisionImpl>()
                 {
-                    // If the origin was something else than the system bundle, reject this action if
-                    // the bundle has been removed by the hooks. However, if it is the system bundle,
-                    // the install action should always succeed, regardless of whether the hooks are
-                    // trying to prevent it.
-                    if (bundles.isEmpty())
+                    public BundleRevisionImpl call() throws Exception
                     {
-                        throw new BundleException(
-                            "Bundle installation rejected by hook.",
-                            BundleException.REJECTED_BY_HOOK);
+                        return parseBundle(id, startLevel, location);
                     }
+                }));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        // Wait for all of them, even if interrupted or if one of them
+        // failed, so no archive is left behind.
+        boolean interrupted = false;
+        Throwable failure = null;
+        List<BundleRevisionImpl> revisions = new ArrayList<BundleRevisionImpl>(futures.size());
+        for (int i = 0; i < futures.size(); )
+        {
+            try
+            {
+                revisions.add(futures.get(i).get());
+                i++;
+            }
+            catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+            catch (ExecutionException ex)
+            {
+                if (failure == null)
+                {
+                    failure = ex.getCause();
                 }
+                i++;
             }
         }
-        else
+        if (interrupted)
         {
-            // Fire bundle event.
-            fireBundleEvent(BundleEvent.INSTALLED, bundle, origin);
+            Thread.currentThread().interrupt();
         }
 
-        // Return new bundle.
-        return (existing != null) ? existing : bundle;
+        if (failure != null)
+        {
+            deleteBundles(revisions, Collections.<BundleImpl>emptyList());
+            if (failure instanceof BundleException)
+            {
+                throw (BundleException) failure;
+            }
+            throw new BundleException("Could not create bundle object.", failure);
+        }
+        return revisions;
+    }
+
+    private BundleRevisionImpl parseBundle(long id, int startLevel, String location)
+        throws BundleException
+    {
+        BundleArchive ba;
+        try
+        {
+            // Add the bundle to the cache.
+            ba = m_cache.create(id, startLevel, location, null);
+        }
+        catch (Exception ex)
+        {
+            throw new BundleException(
+                "Unable to cache bundle: " + location, ex);
+        }
+
+        try
+        {
+            BundleRevisionImpl revision =
+                new BundleImpl(this, this, ba, false).parseRevision();
+            if (revision.isExtension())
+            {
+                revision.close();
+                throw new BundleException(
+                    "Extension bundles cannot be installed in a batch: " + location);
+            }
+            return revision;
+        }
+        catch (Throwable ex)
+        {
+            // Remove bundle from the cache.
+            try
+            {
+                ba.closeAndDelete();
+            }
+            catch (Exception ex1)
+            {
+                m_logger.log(
+                    Logger.LOG_ERROR,
+                    "Could not remove from cache.", ex1);
+            }
+            if (ex instanceof BundleException)
+            {
+                throw (BundleException) ex;
+            }
+            throw new BundleException("Could not create bundle object.", ex);
+        }
+    }
+
+    /**
+     * Adds the bundles of the specified revisions to the installed bundles
+     * in order, while holding the global lock. Each bundle is checked for
+     * uniqueness against the installed bundles and the bundles added before
+     * it; if any of them cannot be added, none of them is.
+    **/
+    private List<BundleImpl> addBundles(List<BundleRevisionImpl> revisions)
+        throws BundleException
+    {
+        List<BundleImpl> bundles = new ArrayList<BundleImpl>(revisions.size());
+        if (revisions.isEmpty())
+        {
+            return bundles;
+        }
+
+        // Acquire global lock.
+        boolean locked = acquireGlobalLock();
+        if (!locked)
+        {
+            deleteBundles(revisions, bundles);
+            throw new BundleException(
+                "Unable to acquire the global lock to install the bundles.");
+        }
+        Map[] original = m_installedBundles;
+        try
+        {
+            Object sm = System.getSecurityManager();
+            for (BundleRevisionImpl revision : revisions)
+            {
+                BundleImpl bundle = (BundleImpl) revision.getBundle();
+                bundle.checkUniqueness(revision, false);
+                bundle.addRevision(revision);
+                bundles.add(bundle);
+
+                if (sm != null)
+                {
+                    ((SecurityManager) sm).checkPermission(
+                        new AdminPermission(bundle, AdminPermission.LIFECYCLE));
+                }
+
+                // Use a copy-on-write approach to add the bundle
+                // to the installed maps.
+                Map[] maps = new Map[] {
+                    new HashMap<String, BundleImpl>(m_installedBundles[LOCATION_MAP_IDX]),
+                    new TreeMap<Long, BundleImpl>(m_installedBundles[IDENTIFIER_MAP_IDX])
+                };
+                maps[LOCATION_MAP_IDX].put(bundle._getLocation(), bundle);
+                maps[IDENTIFIER_MAP_IDX].put(new Long(bundle.getBundleId()), bundle);
+                m_installedBundles = maps;
+            }
+        }
+        catch (Throwable ex)
+        {
+            m_installedBundles = original;
+            deleteBundles(revisions, bundles);
+            if (ex instanceof BundleException)
+            {
+                throw (BundleException) ex;
+            }
+            else if (ex instanceof AccessControlException)
+            {
+                throw (AccessControlException) ex;
+            }
+            throw new BundleException("Could not create bundle object.", ex);
+        }
+        finally
+        {
+            // Always release the global lock.
+            releaseGlobalLock();
+        }
+        return bundles;
+    }
+
+    /**
+     * Removes the bundles of a failed batch install from the cache; the
+     * specified bundles already have their revision added.
+    **/
+    private void deleteBundles(List<BundleRevisionImpl> revisions, List<BundleImpl> added)
+    {
+        for (BundleRevisionImpl revision : revisions)
+        {
+            BundleImpl bundle = (BundleImpl) revision.getBundle();
+            try
+            {
+                if (added.contains(bundle))
+                {
+                    bundle.closeAndDelete();
+                }
+                else
+                {
+                    revision.close();
+                    bundle.getArchive().closeAndDelete();
+                }
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(bundle,
+                    Logger.LOG_ERROR,
+                    "Could not remove from cache.", ex);
+            }
+        }
+    }
+
+    /**
+     * Invokes the find hooks for a bundle that is already installed at the
+     * location of a bundle to install.
+     * @throws BundleException if the hooks reject the bundle.
+    **/
+    private void invokeFindHooks(Bundle origin, BundleImpl existing) throws BundleException
+    {
+        Set<ServiceReference<org.osgi.framework.hooks.bundle.FindHook>> hooks =
+                getHookRegistry().getHooks(org.osgi.framework.hooks.bundle.FindHook.class);
+        if (!hooks.isEmpty())
+        {
+            Collection<Bundle> bundles = new ArrayList<Bundle>(1);
+            bundles.add(existing);
+            bundles = new ShrinkableCollection<Bundle>(bundles);
+            for (ServiceReference<org.osgi.framework.hooks.bundle.FindHook> hook : hooks)
+            {
+                org.osgi.framework.hooks.bundle.FindHook fh = getService(this, hook, false);
+                if (fh != null)
+                {
+                    try
+                    {
+                        m_secureAction.invokeBundleFindHook(
+                            fh, ((BundleImpl) origin)._getBundleContext(), bundles);
+                    }
+                    catch (Throwable th)
+                    {
+                        m_logger.doLog(
+                            hook.getBundle(),
+                            hook,
+                            Logger.LOG_WARNING,
+                            "Problem invoking bundle hook.",
+                            th);
+                    }
+                }
+            }
+
+            if (origin != this)
+            {
+                // If the origin was something else than the system bundle, reject this action if
+                // the bundle has been removed by the hooks. However, if it is the system bundle,
+                // the install action should always succeed, regardless of whether the hooks are
+                // trying to prevent it.
+                if (bundles.isEmpty())
+                {
+                    throw new BundleException(
+                        "Bundle installation rejected by hook.",
+                        BundleException.REJECTED_BY_HOOK);
+                }
+            }
+        }
     }
 
     /**
@@ -3594,7 +4305,7 @@ public class Felix extends BundleImpl implements Framework
         {
             try
             {
-                filter = SimpleFilter.parse(expr);
+                filter = SimpleFilter.parseCached(expr);
             }
             catch (Exception ex)
             {
@@ -4888,6 +5599,14 @@ public class Felix extends BundleImpl implements Framework
             // non-spec setStartLevelAndWait() method.
             m_fwkStartLevel.setStartLevelAndWait(0);
 
+            // Unregister the resolver statistics.
+            m_resolver.stop();
+            // Unregister the bundle lock statistics.
+            unregisterLockStatistics();
+            // Unregister the class loading statistics.
+            unregisterClassLoadingStatistics();
+            // Unregister the event delivery statistics.
+            unregisterEventStatistics();
             // Stop framework wiring thread.
             m_fwkWiring.stop();
             // Stop framework start level thread.
@@ -4938,6 +5657,10 @@ public class Felix extends BundleImpl implements Framework
                 }
             }
 
+            // Persist the wirings of all resolved bundles so that they
+            // can be restored on the next start.
+            persistWirings();
+
             // Dispose of the bundles to close their associated contents.
             bundles = getBundles();
             for (int i = 0; i < bundles.length; i++)
@@ -5230,11 +5953,7 @@ public class Felix extends BundleImpl implements Framework
 
     void setBundleStateAndNotify(BundleImpl bundle, int state)
     {
-        synchronized (m_bundleLock)
-        {
-            bundle.__setState(state);
-            m_bundleLock.notifyAll();
-        }
+        m_lockManager.setBundleState(bundle, state);
     }
 
     /**
@@ -5249,53 +5968,7 @@ public class Felix extends BundleImpl implements Framework
     void acquireBundleLock(BundleImpl bundle, int desiredStates)
         throws IllegalStateException
     {
-        synchronized (m_bundleLock)
-        {
-            // Wait if the desired bundle is already locked by someone else
-            // or if any thread has the global lock, unless the current thread
-            // holds the global lock or the bundle lock already.
-            while (!bundle.isLockable() ||
-                ((m_globalLockThread != null)
-                    && (m_globalLockThread != Thread.currentThread())
-                    && (bundle.getLockingThread() != Thread.currentThread())))
-            {
-                // Check to make sure the bundle is in a desired state.
-                // If so, keep waiting. If not, throw an exception.
-                if ((desiredStates & bundle.getState()) == 0)
-                {
-                    throw new IllegalStateException("Bundle in unexpected state.");
-                }
-                // If the calling thread already owns the global lock, then make
-                // sure no other thread is trying to promote a bundle lock to a
-                // global lock. If so, interrupt the other thread to avoid deadlock.
-                else if (m_globalLockThread == Thread.currentThread()
-                    && (bundle.getLockingThread() != null)
-                    && m_globalLockWaitersList.contains(bundle.getLockingThread()))
-                {
-                    bundle.getLockingThread().interrupt();
-                }
-
-                try
-                {
-                    m_bundleLock.wait();
-                }
-                catch (InterruptedException ex)
-                {
-                    throw new IllegalStateException("Unable to acquire bundle lock, thread interrupted.");
-                }
-            }
-
-            // Now that we can acquire the bundle lock, let's check to make sure
-            // it is in a desired state; if not, throw an exception and do not
-            // lock it.
-            if ((desiredStates & bundle.getState()) == 0)
-            {
-                throw new IllegalStateException("Bundle in unexpected state.");
-            }
-
-            // Acquire the bundle lock.
-            bundle.lock();
-        }
+        m_lockManager.acquireBundleLock(bundle, desiredStates);
     }
 
     /**
@@ -5306,17 +5979,7 @@ public class Felix extends BundleImpl implements Framework
     **/
     void releaseBundleLock(BundleImpl bundle)
     {
-        synchronized (m_bundleLock)
-        {
-            // Unlock the bundle.
-            bundle.unlock();
-            // If the thread no longer holds the bundle lock,
-            // then remove it from the held lock map.
-            if (bundle.getLockingThread() == null)
-            {
-                m_bundleLock.notifyAll();
-            }
-        }
+        m_lockManager.releaseBundleLock(bundle);
     }
 
     /**
@@ -5331,53 +5994,7 @@ public class Felix extends BundleImpl implements Framework
     **/
     boolean acquireGlobalLock()
     {
-        synchronized (m_bundleLock)
-        {
-            // Wait as long as some other thread holds the global lock
-            // and the current thread is not interrupted.
-            boolean interrupted = false;
-            while (!interrupted
-                && (m_globalLockThread != null)
-                && (m_globalLockThread != Thread.currentThread()))
-            {
-                // Add calling thread to global lock waiters list.
-                m_globalLockWaitersList.add(Thread.currentThread());
-                // We need to wake up all waiting threads so we can
-                // recheck for potential deadlock in acquireBundleLock()
-                // if this thread was holding a bundle lock and is now
-                // trying to promote it to a global lock.
-                m_bundleLock.notifyAll();
-                // Now wait for the global lock.
-                try
-                {
-                    m_bundleLock.wait();
-                }
-                catch (InterruptedException ex)
-                {
-                    interrupted = true;
-                }
-                // At this point we are either interrupted or will get the
-                // global lock, so remove the thread from the waiters list.
-                m_globalLockWaitersList.remove(Thread.currentThread());
-            }
-
-            // Check to see if we were interrupted, which means someone
-            // with the global lock wants our bundle lock, so we should
-            // fail gracefully.
-            if (!interrupted)
-            {
-                // Increment the current thread's global lock count.
-                m_globalLockCount++;
-                m_globalLockThread = Thread.currentThread();
-            }
-
-            // Note: If the thread was interrupted, there is no reason to notify
-            // anyone, since the thread was likely interrupted to force it to give
-            // up a bundle lock it is holding. When it does give up the bundle
-            // lock, it will do a notifyAll() in there.
-
-            return !interrupted;
-        }
+        return m_lockManager.acquireGlobalLock();
     }
 
     /**
@@ -5387,22 +6004,104 @@ public class Felix extends BundleImpl implements Framework
     **/
     void releaseGlobalLock()
     {
-        synchronized (m_bundleLock)
+        m_lockManager.releaseGlobalLock();
+    }
+
+    private void registerLockStatistics()
+    {
+        if ("true".equalsIgnoreCase(
+            (String) m_configMap.get(FelixConstants.BUNDLE_LOCK_STATISTICS_PROP)))
+        {
+            m_lockStatisticsName = registerStatistics(
+                BundleLockStatistics.class, m_lockManager.getStatistics(), "locks");
+        }
+    }
+
+    private void unregisterLockStatistics()
+    {
+        unregisterStatistics(m_lockStatisticsName);
+        m_lockStatisticsName = null;
+    }
+
+    ClassLoadingStatistics getClassLoadingStatistics()
+    {
+        return m_classLoadingStatistics;
+    }
+
+    private void registerClassLoadingStatistics()
+    {
+        if (m_classLoadingStatistics != null)
+        {
+            m_classLoadingStatisticsName = registerStatistics(
+                ClassLoadingStatistics.class, m_classLoadingStatistics, "classes");
+        }
+    }
+
+    private void unregisterClassLoadingStatistics()
+    {
+        unregisterStatistics(m_classLoadingStatisticsName);
+        m_classLoadingStatisticsName = null;
+    }
+
+    private void registerEventStatistics()
+    {
+        if (m_dispatcher.getStatistics() != null)
+        {
+            m_eventStatisticsName = registerStatistics(
+                EventDispatcherStatistics.class, m_dispatcher.getStatistics(), "events");
+        }
+    }
+
+    private void unregisterEventStatistics()
+    {
+        unregisterStatistics(m_eventStatisticsName);
+        m_eventStatisticsName = null;
+    }
+
+    // Registers the statistics as a service providing the specified felix
+    // command and as a management bean, whose name is returned, or null if
+    // JMX is not available.
+    ObjectName registerStatistics(Class clazz, Object statistics, String command)
+    {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("osgi.command.scope", "felix");
+        props.put("osgi.command.function", new String[] { command });
+        m_registry.registerService(this,
+            new String[] { clazz.getName() },
+            statistics,
+            props);
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(
+                "org.apache.felix.framework:type=" + clazz.getSimpleName() + ",uuid="
+                + getProperty(Constants.FRAMEWORK_UUID));
+            server.registerMBean(statistics, name);
+            return name;
+        }
+        catch (Throwable ex)
         {
-            // Decrement the current thread's global lock count;
-            if (m_globalLockThread == Thread.currentThread())
+            // JMX may not be available on this platform.
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to register the " + clazz.getSimpleName()
+                + " management bean.", ex);
+            return null;
+        }
+    }
+
+    void unregisterStatistics(ObjectName name)
+    {
+        if (name != null)
+        {
+            try
             {
-                m_globalLockCount--;
-                if (m_globalLockCount == 0)
-                {
-                    m_globalLockThread = null;
-                    m_bundleLock.notifyAll();
-                }
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
             }
-            else
+            catch (Throwable ex)
             {
-                throw new IllegalStateException(
-                    "The current thread doesn't own the global lock.");
+                m_logger.log(Logger.LOG_WARNING,
+                    "Unable to unregister the " + name + " management bean.", ex);
             }
         }
     }
@@ -39,17 +39,19 @@ import org.osgi.framework.wiring.BundleRevision;
 public class FilterImpl implements Filter
 {
     private final SimpleFilter m_filter;
+    private final String m_filterStr;
 
     public FilterImpl(String filterStr) throws InvalidSyntaxException
     {
         try
         {
-            m_filter = SimpleFilter.parse(filterStr);
+            m_filter = SimpleFilter.parseCached(filterStr);
         }
         catch (Throwable th)
         {
             throw new InvalidSyntaxException(th.getMessage(), filterStr);
         }
+        m_filterStr = m_filter.toString();
     }
 
     public boolean match(ServiceReference sr)
@@ -91,7 +93,7 @@ public class FilterImpl implements Filter
 
     public String toString()
     {
-        return m_filter.toString();
+        return m_filterStr;
     }
 
     static class WrapperCapability extends BundleCapabilityImpl
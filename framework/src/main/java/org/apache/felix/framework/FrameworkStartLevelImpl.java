@@ -262,6 +262,7 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
     {
         // This thread loops forever, thus it should
         // be a daemon thread.
+        m_felix.setStartLevelThread();
         Object previousRequest = null;
         while (true)
         {
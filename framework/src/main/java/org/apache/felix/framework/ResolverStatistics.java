@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.felix.resolver.ResolveStatistics;
+
+/**
+ * Keeps the statistics of the last resolve operations of the framework.
+ * They are shown by the <tt>felix:resolves</tt> command and through the
+ * {@link ResolverStatisticsMBean management interface}.
+ */
+public class ResolverStatistics implements ResolverStatisticsMBean
+{
+    private static final ResolveStatistics.Phase[] PHASES = ResolveStatistics.Phase.values();
+
+    private final int m_size;
+    private final LinkedList<ResolveStatistics> m_statistics = new LinkedList<ResolveStatistics>();
+    // Sequence number of the last resolve operation.
+    private long m_count = 0;
+
+    ResolverStatistics(int size)
+    {
+        m_size = size;
+    }
+
+    synchronized void add(ResolveStatistics statistics)
+    {
+        m_statistics.addLast(statistics);
+        if (m_statistics.size() > m_size)
+        {
+            m_statistics.removeFirst();
+        }
+        m_count++;
+    }
+
+    /**
+     * Prints the statistics of the last resolve operations, the most
+     * recent last.
+     */
+    public void resolves()
+    {
+        List<ResolveStatistics> statistics;
+        long count;
+        synchronized (this)
+        {
+            statistics = new ArrayList<ResolveStatistics>(m_statistics);
+            count = m_count;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        long index = count - statistics.size();
+        for (ResolveStatistics s : statistics)
+        {
+            System.out.println("#" + (++index) + " "
+                + format.format(new Date(s.getStartTime())) + " " + s);
+            if (!s.isSuccessful())
+            {
+                String error = s.getError();
+                int eol = (error != null) ? error.indexOf('\n') : -1;
+                System.out.println("    " + ((eol >= 0) ? error.substring(0, eol) : error));
+            }
+        }
+    }
+
+    public TabularData getLastResolves() throws OpenDataException
+    {
+        List<String> names = new ArrayList<String>();
+        List<OpenType<?>> types = new ArrayList<OpenType<?>>();
+        names.add("index");
+        types.add(SimpleType.LONG);
+        names.add("startTime");
+        types.add(SimpleType.DATE);
+        names.add("dynamic");
+        types.add(SimpleType.BOOLEAN);
+        names.add("successful");
+        types.add(SimpleType.BOOLEAN);
+        names.add("error");
+        types.add(SimpleType.STRING);
+        names.add("duration");
+        types.add(SimpleType.DOUBLE);
+        for (ResolveStatistics.Phase phase : PHASES)
+        {
+            names.add(getItemName(phase));
+            types.add(SimpleType.DOUBLE);
+        }
+        for (String name : new String[] { "resources", "requirements", "candidates",
+            "permutations", "skippedPermutations", "retries" })
+        {
+            names.add(name);
+            types.add(SimpleType.INTEGER);
+        }
+        names.add("conflicts");
+        types.add(SimpleType.STRING);
+
+        String[] itemNames = names.toArray(new String[names.size()]);
+        CompositeType rowType = new CompositeType(
+            "ResolveStatistics", "Statistics of a resolve operation",
+            itemNames, itemNames, types.toArray(new OpenType<?>[types.size()]));
+        TabularData table = new TabularDataSupport(new TabularType(
+            "LastResolves", "Statistics of the last resolve operations",
+            rowType, new String[] { "index" }));
+
+        List<ResolveStatistics> statistics;
+        long index;
+        synchronized (this)
+        {
+            statistics = new ArrayList<ResolveStatistics>(m_statistics);
+            index = m_count - statistics.size();
+        }
+        for (ResolveStatistics s : statistics)
+        {
+            List<Object> values = new ArrayList<Object>();
+            values.add(++index);
+            values.add(new Date(s.getStartTime()));
+            values.add(s.isDynamic());
+            values.add(s.isSuccessful());
+            values.add(s.getError());
+            values.add(toMillis(s.getDuration()));
+            for (ResolveStatistics.Phase phase : PHASES)
+            {
+                values.add(toMillis(s.getDuration(phase)));
+            }
+            values.add(s.getResourceCount());
+            values.add(s.getRequirementCount());
+            values.add(s.getCandidateCount());
+            values.add(s.getPermutationCount());
+            values.add(s.getSkippedPermutationCount());
+            values.add(s.getRetryCount());
+            values.add(s.getConflicts().toString());
+            table.put(new CompositeDataSupport(rowType, itemNames, values.toArray()));
+        }
+        return table;
+    }
+
+    public synchronized void clear()
+    {
+        m_statistics.clear();
+    }
+
+    // Converts PACKAGE_SPACES to packageSpaces.
+    private static String getItemName(ResolveStatistics.Phase phase)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String part : phase.name().toLowerCase().split("_"))
+        {
+            sb.append((sb.length() == 0)
+                ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+        }
+        return sb.toString();
+    }
+
+    private static Double toMillis(long nanos)
+    {
+        return nanos / 1000000d;
+    }
+}
@@ -37,6 +37,9 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
@@ -48,6 +51,8 @@ import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.NativeLibrary;
 import org.apache.felix.framework.wiring.BundleRequirementImpl;
 import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.apache.felix.resolver.ResolveStatistics;
+import org.apache.felix.resolver.ResolveStatisticsListener;
 import org.apache.felix.resolver.ResolverImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
@@ -79,6 +84,9 @@ class StatefulResolver
     private final ServiceRegistry m_registry;
     private final Executor m_executor;
     private final ResolverImpl m_resolver;
+    // Statistics of the last resolve operations; null if disabled.
+    private final ResolverStatistics m_statistics;
+    private ObjectName m_statisticsName;
     private boolean m_isResolving = false;
 
     // Set of all revisions.
@@ -91,6 +99,12 @@ class StatefulResolver
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
     private final Set<BundleRevision> m_selectedSingletons;
+    // Incremented by addRevision() and removeRevision(), which also re-index
+    // a revision once it is resolved, so failed lookups can tell whether a
+    // provider may have appeared. The indexing of unresolved singletons
+    // selected for a resolve operation does not change it, since every
+    // resolve operation selects them again.
+    private final AtomicLong m_generation = new AtomicLong();
 
     StatefulResolver(Felix felix, ServiceRegistry registry)
     {
@@ -98,7 +112,10 @@ class StatefulResolver
         m_registry = registry;
         m_logger = m_felix.getLogger();
         m_executor = getExecutor();
-        m_resolver = new ResolverImpl(m_logger, m_executor);
+        m_resolver = new ResolverImpl(m_logger, m_executor,
+            Boolean.parseBoolean(m_felix.getProperty(FelixConstants.RESOLVER_INCREMENTAL)),
+            Boolean.parseBoolean(m_felix.getProperty(FelixConstants.RESOLVER_BACKJUMPING)));
+        m_statistics = getStatistics();
 
         m_revisions = new HashSet<BundleRevision>();
         m_fragments = new HashSet<BundleRevision>();
@@ -166,12 +183,58 @@ class StatefulResolver
         }
     }
 
+    private ResolverStatistics getStatistics()
+    {
+        String str = m_felix.getProperty(FelixConstants.RESOLVER_STATISTICS);
+        if (str != null)
+        {
+            try
+            {
+                int size = Integer.parseInt(str);
+                if (size > 0)
+                {
+                    return new ResolverStatistics(size);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                // Ignore
+            }
+        }
+        return null;
+    }
+
     void start()
     {
         m_registry.registerService(m_felix,
                 new String[] { Resolver.class.getName() },
                 new ResolverImpl(m_logger, 1),
                 null);
+
+        if (m_statistics != null)
+        {
+            m_statisticsName = m_felix.registerStatistics(
+                ResolverStatistics.class, m_statistics, "resolves");
+        }
+    }
+
+    void stop()
+    {
+        m_felix.unregisterStatistics(m_statisticsName);
+        m_statisticsName = null;
+    }
+
+    private ResolveContextImpl createResolveContext(
+        ResolverHookRecord record, Collection<BundleRevision> mandatory,
+        Collection<BundleRevision> optional)
+    {
+        if (m_statistics != null)
+        {
+            return new StatisticsResolveContext(
+                this, getWirings(), record, mandatory, optional, getFragments());
+        }
+        return new ResolveContextImpl(
+            this, getWirings(), record, mandatory, optional, getFragments());
     }
 
     synchronized void addRevision(BundleRevision br)
@@ -203,12 +266,14 @@ class StatefulResolver
             }
             indexCapabilities(br);
         }
+        m_generation.incrementAndGet();
     }
 
     synchronized void removeRevision(BundleRevision br)
     {
         if (m_revisions.remove(br))
         {
+            m_generation.incrementAndGet();
             m_fragments.remove(br);
             deindexCapabilities(br);
 
@@ -226,6 +291,25 @@ class StatefulResolver
         }
     }
 
+    /**
+     * Returns the generation of the resolver state, which changes whenever
+     * revisions are added, resolved or removed.
+    **/
+    long getGeneration()
+    {
+        return m_generation.get();
+    }
+
+    /**
+     * Returns whether resolver hooks are registered, in which case the
+     * outcome of a resolve operation may change without the generation
+     * changing.
+    **/
+    boolean hasResolverHooks()
+    {
+        return !m_felix.getHookRegistry().getHooks(ResolverHookFactory.class).isEmpty();
+    }
+
     boolean isEffective(Requirement req)
     {
         String effective = req.getDirectives().get(Constants.EFFECTIVE_DIRECTIVE);
@@ -476,13 +560,7 @@ class StatefulResolver
             {
                 // Resolve the revision.
                 wireMap = m_resolver.resolve(
-                    new ResolveContextImpl(
-                        this,
-                        getWirings(),
-                        record,
-                        mandatory,
-                        optional,
-                        getFragments()));
+                    createResolveContext(record, mandatory, optional));
             }
             catch (ResolutionException ex)
             {
@@ -512,6 +590,117 @@ class StatefulResolver
         fireResolvedEvents(wireMap);
     }
 
+    /**
+     * Restores the wirings of the specified revisions from the snapshots
+     * persisted during the last framework shutdown, without invoking the
+     * resolver. A revision is only restored if its snapshot is still
+     * consistent with the current state and if every other revision its
+     * snapshot refers to is restored too, so any revision whose inputs
+     * changed (and transitively everything wired to it) is simply left
+     * unresolved and goes through a regular resolve later on.
+     * @param snapshots current snapshots mapped to the revisions they belong to.
+     */
+    void rehydrate(Map<BundleRevision, WiringSnapshot> snapshots)
+    {
+        // Acquire global lock.
+        boolean locked = m_felix.acquireGlobalLock();
+        if (!locked)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to acquire global lock to restore persisted wirings.");
+            return;
+        }
+
+        // Never restore wirings while another resolve is in progress.
+        if (m_isResolving)
+        {
+            m_felix.releaseGlobalLock();
+            return;
+        }
+        m_isResolving = true;
+
+        Map<Resource, List<Wire>> wireMap = null;
+        try
+        {
+            Map<Long, BundleRevision> revisions = new HashMap<Long, BundleRevision>();
+            for (BundleRevision br : snapshots.keySet())
+            {
+                revisions.put(br.getBundle().getBundleId(), br);
+            }
+            BundleRevision system = m_felix.adapt(BundleRevision.class);
+            revisions.put(system.getBundle().getBundleId(), system);
+
+            // Recreate the wires of every candidate; this fails for any
+            // snapshot that refers to capabilities or requirements which
+            // do not exist anymore.
+            Map<BundleRevision, List<BundleWire>> candidates =
+                new HashMap<BundleRevision, List<BundleWire>>();
+            for (Entry<BundleRevision, WiringSnapshot> entry : snapshots.entrySet())
+            {
+                BundleRevision br = entry.getKey();
+                List<BundleWire> wires = entry.getValue().createWires(br, revisions);
+                // Competing singletons are left to singleton selection.
+                if ((wires != null) && !hasCompetingSingletons(br))
+                {
+                    candidates.put(br, wires);
+                }
+            }
+
+            // Drop candidates referring to revisions that changed or are not
+            // restored themselves until no more candidates are dropped.
+            boolean changed = true;
+            while (changed)
+            {
+                changed = false;
+                for (Iterator<BundleRevision> it = candidates.keySet().iterator(); it.hasNext(); )
+                {
+                    BundleRevision br = it.next();
+                    WiringSnapshot snapshot = snapshots.get(br);
+                    for (Long refId : snapshot.getReferences())
+                    {
+                        BundleRevision ref = revisions.get(refId);
+                        if ((ref == null)
+                            || ((ref != system) && !candidates.containsKey(ref))
+                            || !snapshot.isReferenceCurrent(ref))
+                        {
+                            it.remove();
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            if (!candidates.isEmpty())
+            {
+                wireMap = new HashMap<Resource, List<Wire>>(candidates.size());
+                for (Entry<BundleRevision, List<BundleWire>> entry : candidates.entrySet())
+                {
+                    wireMap.put(entry.getKey(), new ArrayList<Wire>(entry.getValue()));
+                }
+                markResolvedRevisions(wireMap);
+                m_logger.log(Logger.LOG_DEBUG,
+                    "Restored " + candidates.size() + " of " + snapshots.size()
+                    + " persisted wirings.");
+            }
+        }
+        catch (ResolveException ex)
+        {
+            m_logger.log(Logger.LOG_WARNING,
+                "Unable to restore persisted wirings.", ex);
+            wireMap = null;
+        }
+        finally
+        {
+            // Clear resolving flag.
+            m_isResolving = false;
+            // Always release the global lock.
+            m_felix.releaseGlobalLock();
+        }
+
+        fireResolvedEvents(wireMap);
+    }
+
     BundleRevision resolve(BundleRevision revision, String pkgName)
         throws ResolutionException, BundleException
     {
@@ -620,13 +809,10 @@ class StatefulResolver
                         }
 
                         wireMap = m_resolver.resolve(
-                            new ResolveContextImpl(
-                                this,
-                                getWirings(),
+                            createResolveContext(
                                 record,
                                 Collections.<BundleRevision>emptyList(),
-                                Collections.<BundleRevision>emptyList(),
-                                getFragments()),
+                                Collections.<BundleRevision>emptyList()),
                             revision, dynReq, new ArrayList<Capability>(candidates));
                     }
                     catch (ResolutionException ex)
@@ -1407,6 +1593,12 @@ class StatefulResolver
         }
     }
 
+    private synchronized boolean hasCompetingSingletons(BundleRevision br)
+    {
+        List<BundleRevision> singletons = m_singletons.get(br.getSymbolicName());
+        return Util.isSingleton(br) && (singletons != null) && (singletons.size() > 1);
+    }
+
     private synchronized boolean isSelectedSingleton(BundleRevision br)
     {
         return m_selectedSingletons.contains(br);
@@ -1709,6 +1901,29 @@ class StatefulResolver
         singletons.put(br.getSymbolicName(), revisions);
     }
 
+    /**
+     * Resolve context that records the statistics of its resolve operation.
+     */
+    private static class StatisticsResolveContext extends ResolveContextImpl
+        implements ResolveStatisticsListener
+    {
+        private final ResolverStatistics m_statistics;
+
+        StatisticsResolveContext(
+            StatefulResolver state, Map<Resource, Wiring> wirings,
+            ResolverHookRecord resolverHookRecord, Collection<BundleRevision> mandatory,
+            Collection<BundleRevision> optional, Collection<BundleRevision> ondemand)
+        {
+            super(state, wirings, resolverHookRecord, mandatory, optional, ondemand);
+            m_statistics = state.m_statistics;
+        }
+
+        public void resolveCompleted(ResolveStatistics statistics)
+        {
+            m_statistics.add(statistics);
+        }
+    }
+
     static class ResolverHookRecord
     {
         final Map<ServiceReference<ResolverHookFactory>, ResolverHook> m_resolveHookMap;
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * A persistent form of the required wires of a resolved bundle revision.
+ * Capabilities and requirements are recorded by the identifier of their
+ * declaring bundle and their index in that revision's declared
+ * capabilities or requirements. To detect changes, the snapshot records the
+ * revision number and last modification time of the archive along with a
+ * fingerprint of the declared capabilities and requirements of the revision
+ * itself and of every other revision it refers to.
+ */
+class WiringSnapshot
+{
+    private static final int VERSION = 1;
+
+    private final long m_revisionNumber;
+    private final long m_lastModified;
+    private final long m_fingerprint;
+    // Maps the identifier of every other referenced bundle to its fingerprint.
+    private final Map<Long, Long> m_references;
+    // Each wire is encoded as requirement owner, requirement index,
+    // provider, capability owner, and capability index.
+    private final List<long[]> m_wires;
+
+    private WiringSnapshot(
+        long revisionNumber, long lastModified, long fingerprint,
+        Map<Long, Long> references, List<long[]> wires)
+    {
+        m_revisionNumber = revisionNumber;
+        m_lastModified = lastModified;
+        m_fingerprint = fingerprint;
+        m_references = references;
+        m_wires = wires;
+    }
+
+    /**
+     * Captures the current wiring of the specified revision.
+     * @param revision the resolved revision.
+     * @param revisionNumber the revision number of the associated archive.
+     * @param lastModified the last modification time of the associated archive.
+     * @return the snapshot or <tt>null</tt> if the wiring cannot be captured.
+    **/
+    static WiringSnapshot capture(
+        BundleRevision revision, long revisionNumber, long lastModified)
+    {
+        BundleWiring wiring = revision.getWiring();
+        if ((wiring == null) || !wiring.isCurrent())
+        {
+            return null;
+        }
+
+        long id = revision.getBundle().getBundleId();
+        Map<Long, Long> references = new LinkedHashMap<Long, Long>();
+        List<long[]> wires = new ArrayList<long[]>();
+        for (BundleWire wire : wiring.getRequiredWires(null))
+        {
+            BundleRequirement req = wire.getRequirement();
+            // Dynamic wires are established lazily again on demand.
+            if (FelixConstants.RESOLUTION_DYNAMIC.equals(
+                req.getDirectives().get(Constants.RESOLUTION_DIRECTIVE)))
+            {
+                continue;
+            }
+            BundleCapability cap = wire.getCapability();
+            int reqIdx = req.getRevision().getDeclaredRequirements(null).indexOf(req);
+            int capIdx = cap.getRevision().getDeclaredCapabilities(null).indexOf(cap);
+            if ((reqIdx < 0) || (capIdx < 0))
+            {
+                return null;
+            }
+            wires.add(new long[] {
+                addReference(references, id, req.getRevision()),
+                reqIdx,
+                addReference(references, id, wire.getProvider()),
+                addReference(references, id, cap.getRevision()),
+                capIdx });
+        }
+
+        // A host wiring also depends on the fragments attached to it.
+        for (BundleWire wire : wiring.getProvidedWires(BundleRevision.HOST_NAMESPACE))
+        {
+            addReference(references, id, wire.getRequirer());
+        }
+
+        return new WiringSnapshot(
+            revisionNumber, lastModified, fingerprint(revision), references, wires);
+    }
+
+    private static long addReference(
+        Map<Long, Long> references, long id, BundleRevision revision)
+    {
+        long refId = revision.getBundle().getBundleId();
+        if ((refId != id) && !references.containsKey(refId))
+        {
+            references.put(refId, fingerprint(revision));
+        }
+        return refId;
+    }
+
+    /**
+     * Calculates a fingerprint of the declared capabilities and requirements
+     * of the specified revision, which changes whenever the metadata of the
+     * revision changes in a way that could affect its wiring.
+     * @param revision the revision to fingerprint.
+     * @return the fingerprint.
+    **/
+    static long fingerprint(BundleRevision revision)
+    {
+        long h = 17;
+        for (BundleCapability cap : revision.getDeclaredCapabilities(null))
+        {
+            h = 31 * h + cap.getNamespace().hashCode();
+            h = 31 * h + hash(cap.getDirectives());
+            h = 31 * h + hash(cap.getAttributes());
+        }
+        for (BundleRequirement req : revision.getDeclaredRequirements(null))
+        {
+            h = 31 * h + req.getNamespace().hashCode();
+            h = 31 * h + hash(req.getDirectives());
+            h = 31 * h + hash(req.getAttributes());
+        }
+        return h;
+    }
+
+    private static long hash(Map<String, ?> map)
+    {
+        long h = 0;
+        for (Map.Entry<String, ?> entry : new TreeMap<String, Object>(map).entrySet())
+        {
+            // The framework UUID is part of the system bundle's native
+            // capability, but it changes every time the framework is
+            // initialized without affecting any wiring.
+            if (!entry.getKey().equals(Constants.FRAMEWORK_UUID))
+            {
+                h = 31 * h + entry.getKey().hashCode();
+                h = 31 * h + hash(entry.getValue());
+            }
+        }
+        return h;
+    }
+
+    private static long hash(Object value)
+    {
+        long h = 0;
+        if (value instanceof Object[])
+        {
+            for (Object o : (Object[]) value)
+            {
+                h = 31 * h + hash(o);
+            }
+        }
+        else if (value instanceof Collection)
+        {
+            for (Object o : (Collection<?>) value)
+            {
+                h = 31 * h + hash(o);
+            }
+        }
+        else if (value != null)
+        {
+            h = value.toString().hashCode();
+        }
+        return h;
+    }
+
+    /**
+     * Checks whether the snapshot was taken from the specified revision in
+     * its current form.
+    **/
+    boolean isCurrent(BundleRevision revision, long revisionNumber, long lastModified)
+    {
+        return (m_revisionNumber == revisionNumber)
+            && (m_lastModified == lastModified)
+            && (m_fingerprint == fingerprint(revision));
+    }
+
+    /**
+     * Returns the identifiers of all other bundles this snapshot refers to.
+    **/
+    Iterable<Long> getReferences()
+    {
+        return Collections.unmodifiableSet(m_references.keySet());
+    }
+
+    /**
+     * Checks whether the specified revision still matches the one referred
+     * to by this snapshot.
+    **/
+    boolean isReferenceCurrent(BundleRevision revision)
+    {
+        Long fingerprint = m_references.get(revision.getBundle().getBundleId());
+        return (fingerprint != null) && (fingerprint.longValue() == fingerprint(revision));
+    }
+
+    /**
+     * Recreates the wires recorded by this snapshot for the specified
+     * requirer.
+     * @param requirer the revision the snapshot was taken from.
+     * @param revisions the current revisions of all referenced bundles.
+     * @return the wires or <tt>null</tt> if they can no longer be recreated.
+    **/
+    List<BundleWire> createWires(BundleRevision requirer, Map<Long, BundleRevision> revisions)
+    {
+        List<BundleWire> wires = new ArrayList<BundleWire>(m_wires.size());
+        for (long[] w : m_wires)
+        {
+            BundleRevision reqOwner = revisions.get(w[0]);
+            BundleRevision provider = revisions.get(w[2]);
+            BundleRevision capOwner = revisions.get(w[3]);
+            if ((reqOwner == null) || (provider == null) || (capOwner == null))
+            {
+                return null;
+            }
+            List<BundleRequirement> reqs = reqOwner.getDeclaredRequirements(null);
+            List<BundleCapability> caps = capOwner.getDeclaredCapabilities(null);
+            if ((w[1] >= reqs.size()) || (w[4] >= caps.size()))
+            {
+                return null;
+            }
+            wires.add(new BundleWireImpl(
+                requirer, reqs.get((int) w[1]), provider, caps.get((int) w[4])));
+        }
+        return wires;
+    }
+
+    byte[] toByteArray() throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(VERSION);
+        out.writeLong(m_revisionNumber);
+        out.writeLong(m_lastModified);
+        out.writeLong(m_fingerprint);
+        out.writeInt(m_references.size());
+        for (Map.Entry<Long, Long> entry : m_references.entrySet())
+        {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(m_wires.size());
+        for (long[] w : m_wires)
+        {
+            out.writeLong(w[0]);
+            out.writeInt((int) w[1]);
+            out.writeLong(w[2]);
+            out.writeLong(w[3]);
+            out.writeInt((int) w[4]);
+        }
+        out.close();
+        return baos.toByteArray();
+    }
+
+    static WiringSnapshot fromByteArray(byte[] bytes) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != VERSION)
+        {
+            throw new IOException("Unsupported wiring snapshot version.");
+        }
+        long revisionNumber = in.readLong();
+        long lastModified = in.readLong();
+        long fingerprint = in.readLong();
+        int count = in.readInt();
+        Map<Long, Long> references = new LinkedHashMap<Long, Long>();
+        for (int i = 0; i < count; i++)
+        {
+            references.put(in.readLong(), in.readLong());
+        }
+        count = in.readInt();
+        List<long[]> wires = new ArrayList<long[]>(count);
+        for (int i = 0; i < count; i++)
+        {
+            wires.add(new long[] {
+                in.readLong(), in.readInt(), in.readLong(), in.readLong(), in.readInt() });
+        }
+        return new WiringSnapshot(
+            revisionNumber, lastModified, fingerprint, references, wires);
+    }
+}
@@ -73,6 +73,7 @@ public class BundleArchive
 
     private static final transient String BUNDLE_INFO_FILE = "bundle.info";
     private static final transient String REVISION_LOCATION_FILE = "revision.location";
+    private static final transient String WIRING_SNAPSHOT_FILE = "bundle.wiring";
     private static final transient String REVISION_DIRECTORY = "version";
     private static final transient String DATA_DIRECTORY = "data";
 
@@ -475,6 +476,67 @@ public class BundleArchive
         return new File(dataDir, fileName);
     }
 
+    /**
+     * <p>
+     * Returns the wiring snapshot that was stored for this archive when the
+     * framework was last shut down and removes it from the archive. The
+     * snapshot is removed so that it can only ever be applied to the session
+     * directly following the one that wrote it; if that session does not
+     * shut down cleanly, no stale snapshot is left behind.
+     * </p>
+     * @return the snapshot content or <tt>null</tt> if there is none.
+     * @throws Exception if any error occurs.
+    **/
+    public synchronized byte[] readWiringSnapshot() throws Exception
+    {
+        File file = new File(m_archiveRootDir, WIRING_SNAPSHOT_FILE);
+        if (!BundleCache.getSecureAction().fileExists(file))
+        {
+            return null;
+        }
+
+        InputStream is = null;
+        try
+        {
+            is = BundleCache.getSecureAction().getFileInputStream(file);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[BundleCache.BUFSIZE];
+            for (int n = is.read(buf); n >= 0; n = is.read(buf))
+            {
+                baos.write(buf, 0, n);
+            }
+            return baos.toByteArray();
+        }
+        finally
+        {
+            if (is != null) is.close();
+            BundleCache.getSecureAction().deleteFile(file);
+        }
+    }
+
+    /**
+     * <p>
+     * Stores a wiring snapshot for the current revision of this archive,
+     * replacing any existing one.
+     * </p>
+     * @param snapshot the snapshot content to store.
+     * @throws Exception if any error occurs.
+    **/
+    public synchronized void writeWiringSnapshot(byte[] snapshot) throws Exception
+    {
+        OutputStream os = null;
+        try
+        {
+            os = BundleCache.getSecureAction().getFileOutputStream(
+                new File(m_archiveRootDir, WIRING_SNAPSHOT_FILE));
+            os.write(snapshot);
+        }
+        finally
+        {
+            if (os != null) os.close();
+        }
+    }
+
     /**
      * <p>
      * Returns the current revision object for the archive.
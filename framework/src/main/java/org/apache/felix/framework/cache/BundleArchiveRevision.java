@@ -18,10 +18,15 @@
  */
 package org.apache.felix.framework.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.util.Map;
 
 import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.StringMap;
 
 /**
  * <p>
@@ -41,6 +46,9 @@ import org.apache.felix.framework.Logger;
 **/
 public abstract class BundleArchiveRevision
 {
+    private static final transient String MANIFEST_CACHE_FILE = "manifest.cache";
+    private static final transient int MANIFEST_CACHE_VERSION = 1;
+
     private final Logger m_logger;
     private final Map m_configMap;
     private final File m_revisionRootDir;
@@ -129,6 +137,126 @@ public abstract class BundleArchiveRevision
 
     public abstract Content getContent() throws Exception;
 
+    /**
+     * <p>
+     * Returns the manifest header cached in the revision directory for the
+     * specified source file, if there is one and the source file did not
+     * change since the header was cached. This allows subclasses to avoid
+     * reading and parsing the manifest of unchanged bundles on every
+     * framework start.
+     * </p>
+     * @param source the file the manifest header is read from.
+     * @return the cached case-insensitive manifest header or <tt>null</tt>.
+    **/
+    protected Map<String, Object> getCachedManifestHeader(File source)
+    {
+        File cacheFile = new File(m_revisionRootDir, MANIFEST_CACHE_FILE);
+        if (!BundleCache.getSecureAction().fileExists(cacheFile))
+        {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                BundleCache.getSecureAction().getFileInputStream(cacheFile)));
+            if ((in.readInt() != MANIFEST_CACHE_VERSION)
+                || (in.readLong() != source.lastModified())
+                || (in.readLong() != source.length()))
+            {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, Object> headers = new StringMap();
+            for (int i = 0; i < count; i++)
+            {
+                headers.put(readString(in), readString(in));
+            }
+            return headers;
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "Ignoring unreadable manifest cache - " + cacheFile, ex);
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                if (in != null) in.close();
+            }
+            catch (Exception ex)
+            {
+                // Not much we can do.
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Caches the manifest header read from the specified source file in the
+     * revision directory. Failures are only logged, since the cache is
+     * merely an optimization.
+     * </p>
+     * @param source the file the manifest header was read from.
+     * @param headers the manifest header to cache.
+    **/
+    protected void cacheManifestHeader(File source, Map<String, Object> headers)
+    {
+        File cacheFile = new File(m_revisionRootDir, MANIFEST_CACHE_FILE);
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                BundleCache.getSecureAction().getFileOutputStream(cacheFile)));
+            out.writeInt(MANIFEST_CACHE_VERSION);
+            out.writeLong(source.lastModified());
+            out.writeLong(source.length());
+            out.writeInt(headers.size());
+            for (Map.Entry<String, Object> entry : headers.entrySet())
+            {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue().toString());
+            }
+            out.close();
+            out = null;
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "Unable to cache manifest - " + cacheFile, ex);
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (Exception ex2)
+                {
+                    // Not much we can do.
+                }
+            }
+            BundleCache.getSecureAction().deleteFile(cacheFile);
+        }
+    }
+
+    // Header values may exceed the 64k limit of DataOutput.writeUTF().
+    private static String readString(DataInputStream in) throws Exception
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws Exception
+    {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
     /**
      * <p>
      * This method is called when the revision is no longer needed. The directory
@@ -43,6 +43,13 @@ import org.osgi.framework.Constants;
  *       sets an upper limit on how many files the cache will open. The default
  *       value is zero, which means there is no limit.
  *   </li>
+ *   <li><tt>felix.cache.mmap</tt> - Enables or disables memory mapping of
+ *       bundle JAR files. Mapped JAR files are opened once, do not hold a
+ *       file descriptor, and are not subject to the file limit. This is
+ *       disabled by default; it should not be enabled on platforms that
+ *       prevent deleting mapped files, since the mapping is only released
+ *       when it is garbage collected.
+ *   </li>
  *   <li><tt>org.osgi.framework.storage</tt> - Sets the directory to use as
  *       the bundle cache; by default bundle cache directory is
  *       <tt>felix-cache</tt> in the current working directory. The value
@@ -68,6 +75,11 @@ import org.osgi.framework.Constants;
  *       string provides control over the size of the internal buffer of the
  *       disk cache for performance reasons.
  *   </li>
+ *   <li><tt>felix.cache.wiring</tt> - Enables or disables persisting the
+ *       resolved wirings of all bundles on framework shutdown, so that they
+ *       can be restored without a full resolve on the next start as long as
+ *       the bundles did not change. This is disabled by default.
+ *   </li>
  * <p>
  * For specific information on how to configure the Felix framework, refer
  * to the Felix framework usage documentation.
@@ -80,6 +92,8 @@ public class BundleCache
     public static final String CACHE_ROOTDIR_PROP = "felix.cache.rootdir";
     public static final String CACHE_LOCKING_PROP = "felix.cache.locking";
     public static final String CACHE_FILELIMIT_PROP = "felix.cache.filelimit";
+    public static final String CACHE_MMAP_PROP = "felix.cache.mmap";
+    public static final String CACHE_WIRING_PROP = "felix.cache.wiring";
     // TODO: CACHE - This should eventually be removed along with the code
     //       supporting the old multi-file bundle cache format.
     public static final String CACHE_SINGLEBUNDLEFILE_PROP = "felix.cache.singlebundlefile";
@@ -117,7 +131,8 @@ public class BundleCache
                 limit = 0;
             }
         }
-        m_zipFactory = new WeakZipFileFactory(limit);
+        m_zipFactory = new WeakZipFileFactory(limit,
+            Boolean.parseBoolean((String) m_configMap.get(CACHE_MMAP_PROP)));
 
         // Create the cache directory, if it does not exist.
         File cacheDir = determineCacheDir(m_configMap);
@@ -72,14 +72,22 @@ class DirectoryRevision extends BundleArchiveRevision
     public synchronized Map<String, Object> getManifestHeader()
         throws Exception
     {
+        File manifest = new File(m_refDir, "META-INF/MANIFEST.MF");
+
+        // Use the cached headers if the manifest file did not change.
+        Map<String, Object> headers = getCachedManifestHeader(manifest);
+        if (headers != null)
+        {
+            return headers;
+        }
+
         // Read the header file from the reference directory.
         InputStream is = null;
 
         try
         {
             // Open manifest file.
-            is = BundleCache.getSecureAction()
-                .getFileInputStream(new File(m_refDir, "META-INF/MANIFEST.MF"));
+            is = BundleCache.getSecureAction().getFileInputStream(manifest);
             // Error if no jar file.
             if (is == null)
             {
@@ -89,7 +97,9 @@ class DirectoryRevision extends BundleArchiveRevision
             // Get manifest.
             Manifest mf = new Manifest(is);
             // Create a case insensitive map of manifest attributes.
-            return new StringMap(mf.getMainAttributes());
+            headers = new StringMap(mf.getMainAttributes());
+            cacheManifestHeader(manifest, headers);
+            return headers;
         }
         finally
         {
@@ -19,7 +19,10 @@
 package org.apache.felix.framework.cache;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,8 +30,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import org.apache.felix.framework.Logger;
 import org.apache.felix.framework.util.FelixConstants;
@@ -42,6 +47,8 @@ public class JarContent implements Content
     private static final int BUFSIZE = 4096;
     private static final transient String EMBEDDED_DIRECTORY = "-embedded";
     private static final transient String LIBRARY_DIRECTORY = "-lib";
+    private static final transient String INDEX_FILE_SUFFIX = ".index";
+    private static final transient int INDEX_VERSION = 2;
 
     private final Logger m_logger;
     private final Map m_configMap;
@@ -52,6 +59,9 @@ public class JarContent implements Content
     private final WeakZipFile m_zipFile;
     private final boolean m_isZipFileOwner;
     private Map m_nativeLibMap;
+    // The directories containing entries, used to answer negative lookups
+    // without touching the ZIP file; lazily loaded or built on first use.
+    private volatile Set<String> m_index;
 
     public JarContent(Logger logger, Map configMap, WeakZipFileFactory zipFactory,
         Object revisionLock, File rootDir, File file, WeakZipFile zipFile)
@@ -105,6 +115,10 @@ public class JarContent implements Content
 
     public boolean hasEntry(String name) throws IllegalStateException
     {
+        if (!mayContain(name))
+        {
+            return false;
+        }
         try
         {
             ZipEntry ze = m_zipFile.getEntry(name);
@@ -134,6 +148,11 @@ public class JarContent implements Content
         InputStream is = null;
         ByteArrayOutputStream baos = null;
 
+        if (!mayContain(name))
+        {
+            return null;
+        }
+
         try
         {
             ZipEntry ze = m_zipFile.getEntry(name);
@@ -188,6 +207,11 @@ public class JarContent implements Content
         // Get the embedded resource.
         InputStream is = null;
 
+        if (!mayContain(name))
+        {
+            return null;
+        }
+
         try
         {
             ZipEntry ze = m_zipFile.getEntry(name);
@@ -432,6 +456,149 @@ public class JarContent implements Content
         return m_file;
     }
 
+    /**
+     * Determines whether the JAR file may contain the specified entry by
+     * checking whether its directory contains any entries at all, which
+     * is the case for most failed class and resource lookups across the
+     * bundle class path.
+     * @param name the entry name.
+     * @return <tt>false</tt> if the entry definitely does not exist.
+    **/
+    private boolean mayContain(String name)
+    {
+        Set<String> index = m_index;
+        if (index == null)
+        {
+            synchronized (this)
+            {
+                index = m_index;
+                if (index == null)
+                {
+                    index = loadIndex();
+                    m_index = index;
+                }
+            }
+        }
+        if (index.isEmpty())
+        {
+            return true;
+        }
+        int end = (name.endsWith("/")) ? name.length() - 1 : name.length();
+        return index.contains(name.substring(0, name.lastIndexOf('/', end - 1) + 1));
+    }
+
+    /**
+     * Loads the directory index of the JAR file from the index file next to
+     * the extracted content, or builds and stores it if there is no valid
+     * index file. An empty set is returned if no index can be built, in
+     * which case every lookup goes to the JAR file.
+     * @return the directory index.
+    **/
+    private Set<String> loadIndex()
+    {
+        // JAR files with the same name may share the root directory, so the
+        // index file is named after a hash of the full path, which is stored
+        // in the index to tell apart JAR files whose paths have the same hash.
+        String path = m_file.getAbsolutePath();
+        File indexFile = new File(m_rootDir, m_file.getName() + "-"
+            + Integer.toHexString(path.hashCode()) + INDEX_FILE_SUFFIX);
+        if (BundleCache.getSecureAction().fileExists(indexFile))
+        {
+            DataInputStream in = null;
+            try
+            {
+                in = new DataInputStream(new BufferedInputStream(
+                    BundleCache.getSecureAction().getFileInputStream(indexFile)));
+                if ((in.readInt() == INDEX_VERSION)
+                    && in.readUTF().equals(path)
+                    && (in.readLong() == m_file.lastModified())
+                    && (in.readLong() == m_file.length()))
+                {
+                    int count = in.readInt();
+                    Set<String> index = new HashSet<String>(count * 2);
+                    for (int i = 0; i < count; i++)
+                    {
+                        index.add(in.readUTF());
+                    }
+                    return index;
+                }
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(Logger.LOG_DEBUG,
+                    "JarContent: Ignoring unreadable index " + indexFile, ex);
+            }
+            finally
+            {
+                try
+                {
+                    if (in != null) in.close();
+                }
+                catch (IOException ex)
+                {
+                    // Not much we can do.
+                }
+            }
+        }
+
+        Set<String> index = new HashSet<String>();
+        try
+        {
+            for (Enumeration<ZipEntry> e = m_zipFile.entries(); e.hasMoreElements(); )
+            {
+                // Record the directory of the entry and all of its parents,
+                // since ZIP files do not necessarily contain directory entries.
+                String name = e.nextElement().getName();
+                int end = (name.endsWith("/")) ? name.length() - 1 : name.length();
+                for (int idx = name.lastIndexOf('/', end - 1);
+                    index.add(name.substring(0, idx + 1)) && (idx > 0);
+                    idx = name.lastIndexOf('/', idx - 1))
+                {
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "JarContent: Unable to index " + m_file, ex);
+            return new HashSet<String>();
+        }
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                BundleCache.getSecureAction().getFileOutputStream(indexFile)));
+            out.writeInt(INDEX_VERSION);
+            out.writeUTF(path);
+            out.writeLong(m_file.lastModified());
+            out.writeLong(m_file.length());
+            out.writeInt(index.size());
+            for (String dir : index)
+            {
+                out.writeUTF(dir);
+            }
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG,
+                "JarContent: Unable to store index " + indexFile, ex);
+        }
+        finally
+        {
+            try
+            {
+                if (out != null) out.close();
+            }
+            catch (IOException ex)
+            {
+                // Not much we can do.
+            }
+        }
+
+        return index;
+    }
+
     /**
      * This method extracts an embedded JAR file from the bundle's
      * JAR file.
@@ -98,10 +98,16 @@ class JarRevision extends BundleArchiveRevision
 
     public Map<String, Object> getManifestHeader() throws Exception
     {
-        // Create a case insensitive map of manifest attributes.
-        Map<String, Object> headers = new StringMap();
-        // Read and parse headers.
-        getMainAttributes(headers, m_zipFile);
+        // Use the cached headers if the JAR file did not change.
+        Map<String, Object> headers = getCachedManifestHeader(m_bundleFile);
+        if (headers == null)
+        {
+            // Create a case insensitive map of manifest attributes.
+            headers = new StringMap();
+            // Read and parse headers.
+            getMainAttributes(headers, m_zipFile);
+            cacheManifestHeader(m_bundleFile, headers);
+        }
         return headers;
     }
 
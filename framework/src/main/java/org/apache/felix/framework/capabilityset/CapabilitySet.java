@@ -22,18 +22,24 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.felix.framework.util.SecureAction;
 import org.apache.felix.framework.util.StringComparator;
@@ -45,21 +51,31 @@ import org.osgi.resource.Capability;
 
 public class CapabilitySet
 {
-    private final SortedMap<String, Map<Object, Set<BundleCapability>>> m_indices; // Should also be concurrent!
-    private final Set<Capability> m_capSet = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
+    // The set of indices is fixed on construction. The capabilities of each
+    // index value are kept in an immutable array, which is replaced as a whole
+    // whenever a capability is added or removed, so lookups never block and
+    // can hand out the array without copying it.
+    private final Map<String, ConcurrentMap<Object, Capability[]>> m_indices;
+    // The capabilities with the values of their indexed attributes.
+    private final ConcurrentMap<Capability, Map<String, Object>> m_caps =
+        new ConcurrentHashMap<Capability, Map<String, Object>>();
+    private final Set<Capability> m_capSet = m_caps.keySet();
     private final static SecureAction m_secureAction = new SecureAction();
+    private final static Capability[] EMPTY_CAPS = new Capability[0];
+    // Index key for all capabilities with non-string attribute values.
+    private final static Object UNINDEXED = new Object();
 
     public void dump()
     {
-        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        for (Entry<String, ConcurrentMap<Object, Capability[]>> entry : m_indices.entrySet())
         {
             boolean header1 = false;
-            for (Entry<Object, Set<BundleCapability>> entry2 : entry.getValue().entrySet())
+            for (Entry<Object, Capability[]> entry2 : entry.getValue().entrySet())
             {
                 boolean header2 = false;
-                for (BundleCapability cap : entry2.getValue())
+                for (Capability cap : entry2.getValue())
                 {
-                    if (cap.getRevision().getBundle().getBundleId() != 0)
+                    if (((BundleCapability) cap).getRevision().getBundle().getBundleId() != 0)
                     {
                         if (!header1)
                         {
@@ -80,88 +96,170 @@ public class CapabilitySet
 
     public CapabilitySet(final List<String> indexProps, final boolean caseSensitive)
     {
-        m_indices = (caseSensitive)
-            ? new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>()
-            : new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>(
+        Map<String, ConcurrentMap<Object, Capability[]>> indices = (caseSensitive)
+            ? new TreeMap<String, ConcurrentMap<Object, Capability[]>>()
+            : new TreeMap<String, ConcurrentMap<Object, Capability[]>>(
                 StringComparator.COMPARATOR);
         for (int i = 0; (indexProps != null) && (i < indexProps.size()); i++)
         {
-            m_indices.put(
-                indexProps.get(i), new ConcurrentHashMap<Object, Set<BundleCapability>>());
+            indices.put(
+                indexProps.get(i), new ConcurrentHashMap<Object, Capability[]>());
         }
+        m_indices = Collections.unmodifiableMap(indices);
     }
 
+    // Adding, updating and removing a capability are serialized on the
+    // capability, so racing updates cannot leave it indexed under stale
+    // values or index it again after it was removed.
     public void addCapability(final BundleCapability cap)
     {
-        m_capSet.add(cap);
-
-        // Index capability.
-        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        synchronized (cap)
         {
-            Object value = cap.getAttributes().get(entry.getKey());
-            if (value != null)
+            Map<String, Object> values = getIndexedValues(cap);
+            m_caps.put(cap, values);
+
+            // Index capability.
+            for (Entry<String, ConcurrentMap<Object, Capability[]>> entry : m_indices.entrySet())
             {
-                if (value.getClass().isArray())
+                for (Object key : getIndexKeys(values.get(entry.getKey())))
                 {
-                    value = convertArrayToList(value);
+                    indexCapability(entry.getValue(), cap, key);
                 }
+            }
+        }
+    }
 
-                ConcurrentMap<Object, Set<BundleCapability>> index =
-                        (ConcurrentMap<Object, Set<BundleCapability>>) entry.getValue();
-
-                if (value instanceof Collection)
+    /**
+     * Updates the indices for a capability whose attributes have changed.
+     * The capability is added to the indices for its new attribute values
+     * before it is removed from the ones it was indexed under, so it does
+     * not disappear from lookups in between.
+     * @param cap the capability with its new attributes.
+     */
+    public void updateCapability(final BundleCapability cap)
+    {
+        synchronized (cap)
+        {
+            Map<String, Object> oldValues = m_caps.get(cap);
+            if (oldValues == null)
+            {
+                return;
+            }
+            Map<String, Object> values = getIndexedValues(cap);
+            for (Entry<String, ConcurrentMap<Object, Capability[]>> entry : m_indices.entrySet())
+            {
+                Set<Object> oldKeys = getIndexKeys(oldValues.get(entry.getKey()));
+                Set<Object> newKeys = getIndexKeys(values.get(entry.getKey()));
+                for (Object key : newKeys)
                 {
-                    Collection c = (Collection) value;
-                    for (Object o : c)
+                    if (!oldKeys.contains(key))
                     {
-                        indexCapability(index, cap, o);
+                        indexCapability(entry.getValue(), cap, key);
                     }
                 }
-                else
+                for (Object key : oldKeys)
                 {
-                    indexCapability(index, cap, value);
+                    if (!newKeys.contains(key))
+                    {
+                        deindexCapability(entry.getValue(), cap, key);
+                    }
                 }
             }
+            m_caps.put(cap, values);
+        }
+    }
+
+    /**
+     * Returns the values of the indexed attributes of a capability, which
+     * are kept to remove the capability from exactly the index entries it
+     * was added to.
+     */
+    private Map<String, Object> getIndexedValues(BundleCapability cap)
+    {
+        Map<String, Object> values = new HashMap<String, Object>(m_indices.size());
+        for (String name : m_indices.keySet())
+        {
+            Object value = cap.getAttributes().get(name);
+            if (value != null)
+            {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the index keys for an attribute value. String values are
+     * indexed by value. All other values are put into a single bucket,
+     * since filter values are strings that only match them after type
+     * coercion, so they always have to be evaluated.
+     */
+    private static Set<Object> getIndexKeys(Object value)
+    {
+        if (value == null)
+        {
+            return Collections.emptySet();
+        }
+        if (value.getClass().isArray())
+        {
+            value = convertArrayToList(value);
+        }
+        if (value instanceof Collection)
+        {
+            Set<Object> keys = new HashSet<Object>();
+            for (Object o : (Collection) value)
+            {
+                keys.add((o instanceof String) ? o : UNINDEXED);
+            }
+            return keys;
         }
+        return Collections.singleton((value instanceof String) ? value : UNINDEXED);
     }
 
     private void indexCapability(
-        ConcurrentMap<Object, Set<BundleCapability>> index, BundleCapability cap, Object capValue)
+        ConcurrentMap<Object, Capability[]> index, BundleCapability cap, Object capValue)
     {
-        Set<BundleCapability> caps = Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
-        Set<BundleCapability> prevval = index.putIfAbsent(capValue, caps);
-        if (prevval != null)
-            caps = prevval;
-        caps.add(cap);
+        // Arrays use identity equality, so replace() only succeeds if no
+        // other thread changed the value in the meantime.
+        for (;;)
+        {
+            Capability[] caps = index.get(capValue);
+            if (caps == null)
+            {
+                if (index.putIfAbsent(capValue, new Capability[] { cap }) == null)
+                {
+                    return;
+                }
+            }
+            else if (indexOf(caps, cap) >= 0)
+            {
+                return;
+            }
+            else
+            {
+                Capability[] newCaps = new Capability[caps.length + 1];
+                System.arraycopy(caps, 0, newCaps, 0, caps.length);
+                newCaps[caps.length] = cap;
+                if (index.replace(capValue, caps, newCaps))
+                {
+                    return;
+                }
+            }
+        }
     }
 
     public void removeCapability(final BundleCapability cap)
     {
-        if (m_capSet.remove(cap))
+        synchronized (cap)
         {
-            for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+            Map<String, Object> values = m_caps.remove(cap);
+            if (values != null)
             {
-                Object value = cap.getAttributes().get(entry.getKey());
-                if (value != null)
+                for (Entry<String, ConcurrentMap<Object, Capability[]>> entry : m_indices.entrySet())
                 {
-                    if (value.getClass().isArray())
-                    {
-                        value = convertArrayToList(value);
-                    }
-
-                    Map<Object, Set<BundleCapability>> index = entry.getValue();
-
-                    if (value instanceof Collection)
+                    for (Object key : getIndexKeys(values.get(entry.getKey())))
                     {
-                        Collection c = (Collection) value;
-                        for (Object o : c)
-                        {
-                            deindexCapability(index, cap, o);
-                        }
-                    }
-                    else
-                    {
-                        deindexCapability(index, cap, value);
+                        deindexCapability(entry.getValue(), cap, key);
                     }
                 }
             }
@@ -169,17 +267,46 @@ public class CapabilitySet
     }
 
     private void deindexCapability(
-        Map<Object, Set<BundleCapability>> index, BundleCapability cap, Object value)
+        ConcurrentMap<Object, Capability[]> index, BundleCapability cap, Object value)
+    {
+        for (;;)
+        {
+            Capability[] caps = index.get(value);
+            int idx = (caps == null) ? -1 : indexOf(caps, cap);
+            if (idx < 0)
+            {
+                return;
+            }
+            else if (caps.length == 1)
+            {
+                if (index.remove(value, caps))
+                {
+                    return;
+                }
+            }
+            else
+            {
+                Capability[] newCaps = new Capability[caps.length - 1];
+                System.arraycopy(caps, 0, newCaps, 0, idx);
+                System.arraycopy(caps, idx + 1, newCaps, idx, newCaps.length - idx);
+                if (index.replace(value, caps, newCaps))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int indexOf(Capability[] caps, Capability cap)
     {
-        Set<BundleCapability> caps = index.get(value);
-        if (caps != null)
+        for (int i = 0; i < caps.length; i++)
         {
-            caps.remove(cap);
-            if (caps.isEmpty())
+            if (caps[i].equals(cap))
             {
-                index.remove(value);
+                return i;
             }
         }
+        return -1;
     }
 
     public Set<Capability> match(final SimpleFilter sf, final boolean obeyMandatory)
@@ -192,11 +319,11 @@ public class CapabilitySet
 
     private Set<Capability> match(Set<Capability> caps, final SimpleFilter sf)
     {
-        Set<Capability> matches = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
+        Set<Capability> matches;
 
         if (sf.getOperation() == SimpleFilter.MATCH_ALL)
         {
-            matches.addAll(caps);
+            matches = new HashSet<Capability>(caps);
         }
         else if (sf.getOperation() == SimpleFilter.AND)
         {
@@ -204,17 +331,44 @@ public class CapabilitySet
             // For AND we calculate the intersection of each subfilter.
             // We can short-circuit the AND operation if there are no
             // remaining capabilities.
+            matches = new HashSet<Capability>();
             final List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            // If any subfilter can be answered from an index, start with the
+            // one with the fewest capabilities, which is then intersected
+            // with the remaining subfilters.
+            SimpleFilter first = null;
+            if (caps == m_capSet)
+            {
+                int min = Integer.MAX_VALUE;
+                for (SimpleFilter sub : sfs)
+                {
+                    int size = getIndexedSize(sub);
+                    if (size < min)
+                    {
+                        first = sub;
+                        min = size;
+                    }
+                }
+                if (first != null)
+                {
+                    matches = match(caps, first);
+                    caps = matches;
+                }
+            }
             for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
             {
-                matches = match(caps, sfs.get(i));
-                caps = matches;
+                if (sfs.get(i) != first)
+                {
+                    matches = match(caps, sfs.get(i));
+                    caps = matches;
+                }
             }
         }
         else if (sf.getOperation() == SimpleFilter.OR)
         {
             // Evaluate each subfilter against the remaining capabilities.
             // For OR we calculate the union of each subfilter.
+            matches = new HashSet<Capability>();
             List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
             for (int i = 0; i < sfs.size(); i++)
             {
@@ -225,7 +379,7 @@ public class CapabilitySet
         {
             // Evaluate each subfilter against the remaining capabilities.
             // For OR we calculate the union of each subfilter.
-            matches.addAll(caps);
+            matches = new HashSet<Capability>(caps);
             List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
             for (int i = 0; i < sfs.size(); i++)
             {
@@ -234,39 +388,112 @@ public class CapabilitySet
         }
         else
         {
-            Map<Object, Set<BundleCapability>> index = m_indices.get(sf.getName());
-            if ((sf.getOperation() == SimpleFilter.EQ) && (index != null))
+            Capability[] indexedCaps = getIndexed(sf);
+            if (indexedCaps != null)
             {
-                Set<BundleCapability> existingCaps = index.get(sf.getValue());
-                if (existingCaps != null)
+                Capability[] unindexedCaps = getUnindexed(sf.getName());
+                if ((caps == m_capSet) && (unindexedCaps.length == 0))
                 {
-                    matches.addAll(existingCaps);
-                    if (caps != m_capSet)
-                    {
-                        matches.retainAll(caps);
-                    }
+                    // Hand out the indexed capabilities directly; they are
+                    // only copied if the caller modifies the result.
+                    matches = new SnapshotSet(indexedCaps);
                 }
-            }
-            else
-            {
-                for (Iterator<Capability> it = caps.iterator(); it.hasNext(); )
+                else if ((caps == m_capSet)
+                    || ((caps instanceof HashSet)
+                        && (caps.size() > indexedCaps.length + unindexedCaps.length)))
                 {
-                    Capability cap = it.next();
-                    Object lhs = cap.getAttributes().get(sf.getName());
-                    if (lhs != null)
+                    // Intersect the index entries with the candidates.
+                    matches = new HashSet<Capability>();
+                    for (Capability cap : indexedCaps)
+                    {
+                        if ((caps == m_capSet) || caps.contains(cap))
+                        {
+                            matches.add(cap);
+                        }
+                    }
+                    for (Capability cap : unindexedCaps)
                     {
-                        if (compare(lhs, sf.getValue(), sf.getOperation()))
+                        if (((caps == m_capSet) || caps.contains(cap))
+                            && compare(cap.getAttributes().get(sf.getName()), sf))
                         {
                             matches.add(cap);
                         }
                     }
                 }
+                else
+                {
+                    matches = matchScan(caps, sf);
+                }
+            }
+            else
+            {
+                matches = matchScan(caps, sf);
             }
         }
 
         return matches;
     }
 
+    private Set<Capability> matchScan(Set<Capability> caps, SimpleFilter sf)
+    {
+        Set<Capability> matches = new HashSet<Capability>();
+        for (Iterator<Capability> it = caps.iterator(); it.hasNext(); )
+        {
+            Capability cap = it.next();
+            Object lhs = cap.getAttributes().get(sf.getName());
+            if (lhs != null)
+            {
+                if (compare(lhs, sf))
+                {
+                    matches.add(cap);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the indexed capabilities with a string value equal to the one
+     * of the specified filter, or <tt>null</tt> if the filter cannot be
+     * answered from an index.
+     */
+    private Capability[] getIndexed(SimpleFilter sf)
+    {
+        if ((sf.getOperation() == SimpleFilter.EQ) && (sf.getValue() instanceof String))
+        {
+            Map<Object, Capability[]> index = m_indices.get(sf.getName());
+            if (index != null)
+            {
+                Capability[] caps = index.get(sf.getValue());
+                return (caps == null) ? EMPTY_CAPS : caps;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the capabilities with non-string values for the specified
+     * indexed attribute.
+     */
+    private Capability[] getUnindexed(String name)
+    {
+        Capability[] caps = m_indices.get(name).get(UNINDEXED);
+        return (caps == null) ? EMPTY_CAPS : caps;
+    }
+
+    /**
+     * Returns an upper bound of the number of capabilities matching the
+     * specified filter if it can be answered from an index, otherwise
+     * <tt>Integer.MAX_VALUE</tt>.
+     */
+    private int getIndexedSize(SimpleFilter sf)
+    {
+        Capability[] caps = getIndexed(sf);
+        return (caps == null)
+            ? Integer.MAX_VALUE
+            : caps.length + getUnindexed(sf.getName()).length;
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf)
     {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
@@ -319,7 +546,7 @@ public class CapabilitySet
             Object lhs = cap.getAttributes().get(sf.getName());
             if (lhs != null)
             {
-                matched = compare(lhs, sf.getValue(), sf.getOperation());
+                matched = compare(lhs, sf);
             }
         }
 
@@ -377,10 +604,18 @@ public class CapabilitySet
     }
 
     private static final Class<?>[] STRING_CLASS = new Class[] { String.class };
+    // Types whose coerced filter values can safely be shared.
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class,
+        Integer.class, Long.class, Float.class, Double.class, BigInteger.class,
+        BigDecimal.class, Version.class));
     private static final String VALUE_OF_METHOD_NAME = "valueOf";
 
-    private static boolean compare(Object lhs, Object rhsUnknown, int op)
+    private static boolean compare(Object lhs, SimpleFilter sf)
     {
+        final Object rhsUnknown = sf.getValue();
+        final int op = sf.getOperation();
+
         if (lhs == null)
         {
             return false;
@@ -397,15 +632,7 @@ public class CapabilitySet
         //Version is comparable so we need to check this first
         if(lhs instanceof Version && op == SimpleFilter.EQ)
         {
-            Object rhs = null;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
-            {
-                //Do nothing will check later if rhs is null
-            }
+            Object rhs = coerce(lhs, sf);
 
             if(rhs != null && rhs instanceof VersionRange)
             {
@@ -430,11 +657,8 @@ public class CapabilitySet
             }
             else
             {
-                try
-                {
-                    rhs = coerceType(lhs, (String) rhsUnknown);
-                }
-                catch (Exception ex)
+                rhs = coerce(lhs, sf);
+                if (rhs == null)
                 {
                     return false;
                 }
@@ -481,12 +705,8 @@ public class CapabilitySet
         // Booleans do not implement comparable, so special case them.
         else if (lhs instanceof Boolean)
         {
-            Object rhs;
-            try
-            {
-                rhs = coerceType(lhs, (String) rhsUnknown);
-            }
-            catch (Exception ex)
+            Object rhs = coerce(lhs, sf);
+            if (rhs == null)
             {
                 return false;
             }
@@ -518,7 +738,7 @@ public class CapabilitySet
         {
             for (Iterator iter = ((Collection) lhs).iterator(); iter.hasNext(); )
             {
-                if (compare(iter.next(), rhsUnknown, op))
+                if (compare(iter.next(), sf))
                 {
                     return true;
                 }
@@ -535,14 +755,8 @@ public class CapabilitySet
 
         // Since we cannot identify the LHS type, then we can only perform
         // equality comparison.
-        try
-        {
-            return lhs.equals(coerceType(lhs, (String) rhsUnknown));
-        }
-        catch (Exception ex)
-        {
-            return false;
-        }
+        Object rhs = coerce(lhs, sf);
+        return (rhs != null) && lhs.equals(rhs);
     }
 
     private static boolean compareApproximate(Object lhs, Object rhs)
@@ -573,6 +787,43 @@ public class CapabilitySet
         return sb.toString();
     }
 
+    /**
+     * Returns the value of the specified filter coerced to the type of the
+     * specified attribute value, or <tt>null</tt> if it cannot be coerced.
+     * For immutable value types the result is remembered in the filter, so
+     * evaluating the same filter again against attributes of the same type
+     * does not need to convert the value again.
+     */
+    private static Object coerce(Object lhs, SimpleFilter sf)
+    {
+        Class<?> type = lhs.getClass();
+        if ((type == String.class) && (sf.getValue() instanceof String))
+        {
+            return sf.getValue();
+        }
+
+        Object[] coerced = sf.m_coerced;
+        if ((coerced != null) && (coerced[0] == type))
+        {
+            return coerced[1];
+        }
+
+        Object rhs;
+        try
+        {
+            rhs = coerceType(lhs, (String) sf.getValue());
+        }
+        catch (Exception ex)
+        {
+            rhs = null;
+        }
+        if (IMMUTABLE_TYPES.contains(type))
+        {
+            sf.m_coerced = new Object[] { type, rhs };
+        }
+        return rhs;
+    }
+
     private static Object coerceType(Object lhs, String rhsString) throws Exception
     {
         // If the LHS expects a string, then we can just return
@@ -660,4 +911,89 @@ public class CapabilitySet
         }
         return list;
     }
+
+    /**
+     * A set backed by an immutable capability array of an index. The array
+     * is shared until the set is modified for the first time, at which point
+     * the set switches to a private copy.
+     */
+    private static class SnapshotSet extends AbstractSet<Capability>
+    {
+        private Capability[] m_caps;
+        private int m_size;
+        private boolean m_shared = true;
+
+        SnapshotSet(Capability[] caps)
+        {
+            m_caps = caps;
+            m_size = caps.length;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_size;
+        }
+
+        @Override
+        public boolean add(Capability cap)
+        {
+            if (contains(cap))
+            {
+                return false;
+            }
+            ensureCapacity(m_size + 1);
+            m_caps[m_size++] = cap;
+            return true;
+        }
+
+        @Override
+        public Iterator<Capability> iterator()
+        {
+            return new Iterator<Capability>()
+            {
+                private int m_idx = 0;
+                private int m_last = -1;
+
+                public boolean hasNext()
+                {
+                    return m_idx < m_size;
+                }
+
+                public Capability next()
+                {
+                    if (m_idx >= m_size)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    m_last = m_idx;
+                    return m_caps[m_idx++];
+                }
+
+                public void remove()
+                {
+                    if (m_last < 0)
+                    {
+                        throw new IllegalStateException();
+                    }
+                    ensureCapacity(m_size);
+                    System.arraycopy(m_caps, m_last + 1, m_caps, m_last, m_size - m_last - 1);
+                    m_caps[--m_size] = null;
+                    m_idx = m_last;
+                    m_last = -1;
+                }
+            };
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (m_shared || (capacity > m_caps.length))
+            {
+                Capability[] caps = new Capability[Math.max(capacity, m_size * 2)];
+                System.arraycopy(m_caps, 0, caps, 0, m_size);
+                m_caps = caps;
+                m_shared = false;
+            }
+        }
+    }
 }
@@ -19,6 +19,7 @@
 package org.apache.felix.framework.capabilityset;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -37,9 +38,25 @@ public class SimpleFilter
     public static final int PRESENT = 8;
     public static final int APPROX = 9;
 
+    static final int CACHE_SIZE = 1024;
+    // Recently parsed filters; the least recently used one is evicted once
+    // the cache is full. Guarded by itself.
+    private static final Map<String, SimpleFilter> m_cache =
+        new LinkedHashMap<String, SimpleFilter>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Entry<String, SimpleFilter> eldest)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+
     private final String m_name;
     private final Object m_value;
     private final int m_op;
+    // The value coerced to the type of the attribute it was last compared
+    // to, as a pair of type and value; maintained by CapabilitySet.
+    volatile Object[] m_coerced;
 
     public SimpleFilter(String attr, Object value, int op)
     {
@@ -155,6 +172,39 @@ public class SimpleFilter
         return o.toString();
     }
 
+    /**
+     * Parses the specified filter or returns a previously parsed instance
+     * for the same filter string. Since the returned instance may be shared,
+     * it must not be modified. Sharing instances also shares the values they
+     * cached for evaluation, which only need to be computed once.
+     * @param filter the filter string.
+     * @return the parsed filter.
+     */
+    public static SimpleFilter parseCached(String filter)
+    {
+        SimpleFilter sf;
+        synchronized (m_cache)
+        {
+            sf = m_cache.get(filter);
+        }
+        if (sf == null)
+        {
+            // Parse without holding the lock; if another thread parsed the
+            // same filter in the meantime, share its instance.
+            SimpleFilter parsed = parse(filter);
+            synchronized (m_cache)
+            {
+                sf = m_cache.get(filter);
+                if (sf == null)
+                {
+                    sf = parsed;
+                    m_cache.put(filter, sf);
+                }
+            }
+        }
+        return sf;
+    }
+
     public static SimpleFilter parse(String filter)
     {
         int idx = skipWhitespace(filter, 0);
@@ -48,13 +48,23 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String SYSTEMBUNDLE_ACTIVATORS_PROP = "felix.systembundle.activators";
     String BUNDLE_STARTLEVEL_PROP = "felix.startlevel.bundle";
     String SERVICE_URLHANDLERS_PROP = "felix.service.urlhandlers";
+    String SERVICE_INDICES_PROP = "felix.service.indices";
+    String EVENT_DISPATCH_THREADS_PROP = "felix.eventdispatcher.threads";
+    String STARTLEVEL_THREADS_PROP = "felix.startlevel.threads";
+    String INSTALL_THREADS_PROP = "felix.install.threads";
+    String BUNDLE_LOCK_STATISTICS_PROP = "felix.bundlelock.statistics";
     String IMPLICIT_BOOT_DELEGATION_PROP = "felix.bootdelegation.implicit";
     String BOOT_CLASSLOADERS_PROP = "felix.bootdelegation.classloaders";
+    String CLASSLOADER_NEGATIVE_CACHE_PROP = "felix.classloader.negativecache";
+    String CLASSLOADER_STATISTICS_PROP = "felix.classloader.statistics";
     String USE_LOCALURLS_PROP = "felix.jarurls";
     String NATIVE_OS_NAME_ALIAS_PREFIX = "felix.native.osname.alias";
     String NATIVE_PROC_NAME_ALIAS_PREFIX = "felix.native.processor.alias";
     String USE_CACHEDURLS_PROPS = "felix.bundlecodesource.usecachedurls";
     String RESOLVER_PARALLELISM = "felix.resolver.parallelism";
+    String RESOLVER_INCREMENTAL = "felix.resolver.incremental";
+    String RESOLVER_BACKJUMPING = "felix.resolver.backjumping";
+    String RESOLVER_STATISTICS = "felix.resolver.statistics";
 
     // Missing OSGi constant for resolution directive.
     String RESOLUTION_DYNAMIC = "dynamic";
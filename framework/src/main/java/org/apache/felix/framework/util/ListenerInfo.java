@@ -18,10 +18,19 @@
  */
 package org.apache.felix.framework.util;
 
+import java.util.Collections;
 import java.util.EventListener;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.UnfilteredServiceListener;
 import org.osgi.framework.hooks.service.ListenerHook;
 
 
@@ -34,6 +43,7 @@ public class ListenerInfo implements ListenerHook.ListenerInfo
     private final Filter m_filter;
     private final Object m_acc;
     private final boolean m_removed;
+    private final Set<String> m_dispatchKeys;
 
     public ListenerInfo(
         Bundle bundle, BundleContext context, Class listenerClass, EventListener listener,
@@ -49,6 +59,7 @@ public class ListenerInfo implements ListenerHook.ListenerInfo
         m_filter = filter;
         m_acc = acc;
         m_removed = removed;
+        m_dispatchKeys = getDispatchKeys(listenerClass, listener, filter);
     }
 
     public ListenerInfo(ListenerInfo info, boolean removed)
@@ -60,6 +71,7 @@ public class ListenerInfo implements ListenerHook.ListenerInfo
         m_filter = info.m_filter;
         m_acc = info.m_acc;
         m_removed = removed;
+        m_dispatchKeys = info.m_dispatchKeys;
     }
 
     public Bundle getBundle()
@@ -106,6 +118,87 @@ public class ListenerInfo implements ListenerHook.ListenerInfo
         return m_removed;
     }
 
+    /**
+     * Returns the <tt>objectClass</tt> values of which a service must have at
+     * least one to be delivered to this listener, as required by its filter.
+     * @return the values or <tt>null</tt> if this is not a service listener
+     *         or its filter does not restrict the object class.
+    **/
+    public Set<String> getDispatchKeys()
+    {
+        return m_dispatchKeys;
+    }
+
+    private static Set<String> getDispatchKeys(
+        Class listenerClass, EventListener listener, Filter filter)
+    {
+        // An unfiltered service listener receives all events regardless
+        // of its filter.
+        if ((listenerClass != ServiceListener.class) || (filter == null)
+            || (listener instanceof UnfilteredServiceListener))
+        {
+            return null;
+        }
+        try
+        {
+            Set<String> keys = getDispatchKeys(SimpleFilter.parseCached(filter.toString()));
+            return (keys == null) ? null : Collections.unmodifiableSet(keys);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    private static Set<String> getDispatchKeys(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.EQ:
+                if (sf.getName().equalsIgnoreCase(Constants.OBJECTCLASS)
+                    && (sf.getValue() instanceof String))
+                {
+                    Set<String> keys = new HashSet<String>(1);
+                    keys.add((String) sf.getValue());
+                    return keys;
+                }
+                return null;
+            case SimpleFilter.AND:
+            {
+                // Every operand must match, so any restricting operand will
+                // do; prefer the most selective one.
+                Set<String> keys = null;
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    Set<String> childKeys = getDispatchKeys(child);
+                    if ((childKeys != null)
+                        && ((keys == null) || (childKeys.size() < keys.size())))
+                    {
+                        keys = childKeys;
+                    }
+                }
+                return keys;
+            }
+            case SimpleFilter.OR:
+            {
+                // Any operand may match, so all of them must restrict.
+                Set<String> keys = new HashSet<String>();
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    Set<String> childKeys = getDispatchKeys(child);
+                    if (childKeys == null)
+                    {
+                        return null;
+                    }
+                    keys.addAll(childKeys);
+                }
+                return keys;
+            }
+            default:
+                return null;
+        }
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -0,0 +1,518 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a zip file that is memory mapped in its entirety.
+ * The central directory is parsed once when the file is opened and stays
+ * in the mapped region; only a small table of offsets into it is kept on
+ * the heap. Stored entries are served directly from the mapping and
+ * deflated entries are inflated straight out of it. The underlying file
+ * channel is closed as soon as the mapping is established, so an open
+ * instance does not hold a file descriptor.
+ */
+class MappedZipFile
+{
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private final File m_file;
+    // Offset of the archive within the file, if data is prepended to it.
+    private final int m_base;
+    private volatile ByteBuffer m_buffer;
+    // Offsets of the central directory headers of all entries, in file order.
+    private final int[] m_offsets;
+    // Open addressing hash table of indices into m_offsets, plus one.
+    private final int[] m_table;
+
+    private MappedZipFile(File file, int base, ByteBuffer buffer, int[] offsets)
+    {
+        m_file = file;
+        m_base = base;
+        m_buffer = buffer;
+        m_offsets = offsets;
+        m_table = new int[tableSize(offsets.length)];
+        for (int i = 0; i < offsets.length; i++)
+        {
+            int slot = hash(buffer, offsets[i] + CENHDR, getShort(buffer, offsets[i] + 28))
+                & (m_table.length - 1);
+            while (m_table[slot] != 0)
+            {
+                slot = (slot + 1) & (m_table.length - 1);
+            }
+            m_table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Maps the specified zip file and parses its central directory.
+     * @param secureAction the secure action used to open the file.
+     * @param file the zip file to map.
+     * @return the mapped zip file or <tt>null</tt> if the file cannot be
+     *         mapped, e.g., because it is too large or uses zip64 extensions.
+     * @throws IOException if the file cannot be read or is not a zip file.
+     */
+    static MappedZipFile open(SecureAction secureAction, File file) throws IOException
+    {
+        ByteBuffer buffer;
+        FileInputStream fis = secureAction.getFileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        finally
+        {
+            fis.close();
+        }
+
+        int end = findEnd(buffer);
+        if (end < 0)
+        {
+            throw new ZipException("Not a zip file: " + file);
+        }
+        int count = getShort(buffer, end + 10);
+        long cenSize = getInt(buffer, end + 12) & 0xFFFFFFFFL;
+        long cenOffset = getInt(buffer, end + 16) & 0xFFFFFFFFL;
+        if ((count == 0xFFFF) || (cenSize == 0xFFFFFFFFL) || (cenOffset == 0xFFFFFFFFL))
+        {
+            // Zip64 archives are left to java.util.zip.
+            return null;
+        }
+        // Tolerate data prepended to the archive, like ZipFile does.
+        int base = (int) (end - cenSize - cenOffset);
+        if ((base < 0) || (cenOffset + base + cenSize > end))
+        {
+            throw new ZipException("Invalid central directory: " + file);
+        }
+
+        List<Integer> offsets = new ArrayList<Integer>(count);
+        int pos = (int) cenOffset + base;
+        while (pos < end)
+        {
+            if ((pos + CENHDR > end) || (getInt(buffer, pos) != CENSIG)
+                || (pos + CENHDR + getShort(buffer, pos + 28) > end))
+            {
+                throw new ZipException("Invalid central directory header: " + file);
+            }
+            offsets.add(pos);
+            pos += CENHDR + getShort(buffer, pos + 28)
+                + getShort(buffer, pos + 30) + getShort(buffer, pos + 32);
+        }
+        // The extra field or comment of the last entry must not overlap
+        // the end of the central directory either.
+        if (pos > end)
+        {
+            throw new ZipException("Invalid central directory header: " + file);
+        }
+        int[] result = new int[offsets.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = offsets.get(i);
+        }
+        return new MappedZipFile(file, base, buffer, result);
+    }
+
+    /**
+     * Returns the specified entry or, if it does not exist, the directory
+     * entry of the same name.
+     * @param name the name of the entry to return.
+     * @return the zip entry or <tt>null</tt> if it does not exist.
+     */
+    ZipEntry getEntry(String name)
+    {
+        ByteBuffer buffer = getBuffer();
+        int idx = find(buffer, name);
+        if ((idx < 0) && !name.endsWith("/"))
+        {
+            idx = find(buffer, name + '/');
+        }
+        return (idx < 0) ? null : createEntry(buffer, m_offsets[idx]);
+    }
+
+    /**
+     * Returns all entries in the order of the central directory.
+     * @return the list of zip entries.
+     */
+    List<ZipEntry> entries()
+    {
+        ByteBuffer buffer = getBuffer();
+        List<ZipEntry> entries = new ArrayList<ZipEntry>(m_offsets.length);
+        for (int offset : m_offsets)
+        {
+            entries.add(createEntry(buffer, offset));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns an input stream for the specified entry that reads directly
+     * from the mapped file.
+     * @param ze the entry to read.
+     * @return the input stream.
+     * @throws IOException if the entry does not exist or is malformed.
+     */
+    InputStream getInputStream(ZipEntry ze) throws IOException
+    {
+        ByteBuffer buffer = getBuffer();
+        int idx = find(buffer, ze.getName());
+        if (idx < 0)
+        {
+            throw new ZipException("No such entry: " + ze.getName());
+        }
+        int cen = m_offsets[idx];
+        int method = getShort(buffer, cen + 10);
+        int csize = getInt(buffer, cen + 20);
+        int loc = getInt(buffer, cen + 42) + m_base;
+        if ((csize < 0) || (loc < 0) || (loc + LOCHDR > buffer.limit())
+            || (getInt(buffer, loc) != LOCSIG))
+        {
+            throw new ZipException("Invalid local header: " + ze.getName());
+        }
+        int start = loc + LOCHDR + getShort(buffer, loc + 26) + getShort(buffer, loc + 28);
+        if ((start + csize < 0) || (start + csize > buffer.limit()))
+        {
+            throw new ZipException("Invalid entry size: " + ze.getName());
+        }
+
+        ByteBuffer data = buffer.duplicate();
+        data.limit(start + csize).position(start);
+        data = data.slice();
+        if (method == ZipEntry.STORED)
+        {
+            return new ByteBufferInputStream(data);
+        }
+        else if (method == ZipEntry.DEFLATED)
+        {
+            long size = getInt(buffer, cen + 24) & 0xFFFFFFFFL;
+            return new MappedInflaterInputStream(new ByteBufferInputStream(data), size);
+        }
+        throw new ZipException("Unsupported compression method: " + ze.getName());
+    }
+
+    /**
+     * Releases the mapping. The memory is returned to the system once the
+     * buffer is garbage collected; streams that are still open keep it alive.
+     */
+    void close()
+    {
+        m_buffer = null;
+    }
+
+    private ByteBuffer getBuffer()
+    {
+        ByteBuffer buffer = m_buffer;
+        if (buffer == null)
+        {
+            throw new IllegalStateException("Zip file is closed: " + m_file);
+        }
+        return buffer;
+    }
+
+    private int find(ByteBuffer buffer, String name)
+    {
+        byte[] bytes;
+        try
+        {
+            bytes = name.getBytes("UTF-8");
+        }
+        catch (IOException ex)
+        {
+            return -1;
+        }
+        int slot = hash(bytes) & (m_table.length - 1);
+        while (m_table[slot] != 0)
+        {
+            int idx = m_table[slot] - 1;
+            int cen = m_offsets[idx];
+            if (equals(buffer, cen + CENHDR, getShort(buffer, cen + 28), bytes))
+            {
+                return idx;
+            }
+            slot = (slot + 1) & (m_table.length - 1);
+        }
+        return -1;
+    }
+
+    private static ZipEntry createEntry(ByteBuffer buffer, int cen)
+    {
+        int nameLen = getShort(buffer, cen + 28);
+        int extraLen = getShort(buffer, cen + 30);
+        int commentLen = getShort(buffer, cen + 32);
+        ZipEntry ze = new ZipEntry(getString(buffer, cen + CENHDR, nameLen));
+        ze.setMethod(getShort(buffer, cen + 10));
+        ze.setTime(dosToJavaTime(getInt(buffer, cen + 12) & 0xFFFFFFFFL));
+        ze.setCrc(getInt(buffer, cen + 16) & 0xFFFFFFFFL);
+        ze.setCompressedSize(getInt(buffer, cen + 20) & 0xFFFFFFFFL);
+        ze.setSize(getInt(buffer, cen + 24) & 0xFFFFFFFFL);
+        if (extraLen > 0)
+        {
+            byte[] extra = new byte[extraLen];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(cen + CENHDR + nameLen);
+            dup.get(extra);
+            try
+            {
+                ze.setExtra(extra);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Ignore malformed extra fields.
+            }
+        }
+        if (commentLen > 0)
+        {
+            ze.setComment(getString(buffer, cen + CENHDR + nameLen + extraLen, commentLen));
+        }
+        return ze;
+    }
+
+    private static int findEnd(ByteBuffer buffer)
+    {
+        int min = Math.max(0, buffer.limit() - ENDHDR - MAX_COMMENT);
+        for (int pos = buffer.limit() - ENDHDR; pos >= min; pos--)
+        {
+            if ((getInt(buffer, pos) == ENDSIG)
+                && (pos + ENDHDR + getShort(buffer, pos + 20) <= buffer.limit()))
+            {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static int tableSize(int count)
+    {
+        int size = 16;
+        while (size < count * 2)
+        {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(ByteBuffer buffer, int pos, int len)
+    {
+        int h = 0;
+        for (int i = 0; i < len; i++)
+        {
+            h = 31 * h + buffer.get(pos + i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] bytes)
+    {
+        int h = 0;
+        for (byte b : bytes)
+        {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(ByteBuffer buffer, int pos, int len, byte[] bytes)
+    {
+        if (len != bytes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < len; i++)
+        {
+            if (buffer.get(pos + i) != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getString(ByteBuffer buffer, int pos, int len)
+    {
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos);
+        dup.get(bytes);
+        try
+        {
+            return new String(bytes, "UTF-8");
+        }
+        catch (IOException ex)
+        {
+            return new String(bytes);
+        }
+    }
+
+    private static int getShort(ByteBuffer buffer, int pos)
+    {
+        return buffer.getShort(pos) & 0xFFFF;
+    }
+
+    private static int getInt(ByteBuffer buffer, int pos)
+    {
+        return buffer.getInt(pos);
+    }
+
+    private static long dosToJavaTime(long dtime)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(
+            (int) (((dtime >> 25) & 0x7f) + 1980),
+            (int) (((dtime >> 21) & 0x0f) - 1),
+            (int) ((dtime >> 16) & 0x1f),
+            (int) ((dtime >> 11) & 0x1f),
+            (int) ((dtime >> 5) & 0x3f),
+            (int) ((dtime << 1) & 0x3e));
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * An input stream over a slice of the mapped file.
+     */
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer m_data;
+
+        ByteBufferInputStream(ByteBuffer data)
+        {
+            m_data = data;
+        }
+
+        @Override
+        public int available()
+        {
+            return m_data.remaining();
+        }
+
+        public int read()
+        {
+            return m_data.hasRemaining() ? (m_data.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!m_data.hasRemaining())
+            {
+                return -1;
+            }
+            len = Math.min(len, m_data.remaining());
+            m_data.get(bytes, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int len = (int) Math.max(0, Math.min(n, m_data.remaining()));
+            m_data.position(m_data.position() + len);
+            return len;
+        }
+    }
+
+    /**
+     * An inflater stream that releases its native inflater on close and,
+     * like the one used by ZipFile, supplies the extra dummy byte that a
+     * raw inflater may need at the end of the input.
+     */
+    private static class MappedInflaterInputStream extends InflaterInputStream
+    {
+        private final long m_size;
+        private boolean m_eof = false;
+        private boolean m_closed = false;
+
+        MappedInflaterInputStream(InputStream in, long size)
+        {
+            super(in, new Inflater(true), (int) Math.min(Math.max(size, 64), 8192));
+            m_size = size;
+        }
+
+        @Override
+        protected void fill() throws IOException
+        {
+            if (m_eof)
+            {
+                throw new EOFException("Unexpected end of zip entry.");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1)
+            {
+                buf[0] = 0;
+                len = 1;
+                m_eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            if (m_closed || inf.finished())
+            {
+                return 0;
+            }
+            long avail = m_size - inf.getBytesWritten();
+            return (avail > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) Math.max(avail, 0);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!m_closed)
+            {
+                m_closed = true;
+                inf.end();
+                in.close();
+            }
+        }
+    }
+}
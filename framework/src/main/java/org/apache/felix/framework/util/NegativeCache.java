@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A bounded set of names for which a lookup failed. Each name is kept with
+ * the generation of the state the lookup failed against, and is only known
+ * to fail as long as the state has the same generation. Once the cache is
+ * full, the oldest names are evicted first. The cache is thread safe and
+ * checking a name does not lock.
+ */
+public class NegativeCache
+{
+    private final int m_size;
+    private final ConcurrentHashMap<String, Long> m_generations =
+        new ConcurrentHashMap<String, Long>();
+    private final Queue<String> m_names = new ConcurrentLinkedQueue<String>();
+
+    public NegativeCache(int size)
+    {
+        m_size = size;
+    }
+
+    /**
+     * Returns whether a lookup for the specified name failed against the
+     * state of the specified generation.
+     */
+    public boolean contains(String name, long generation)
+    {
+        Long failed = m_generations.get(name);
+        return (failed != null) && (failed.longValue() == generation);
+    }
+
+    /**
+     * Records that a lookup for the specified name failed against the state
+     * of the specified generation.
+     */
+    public void add(String name, long generation)
+    {
+        if (m_generations.put(name, generation) == null)
+        {
+            m_names.add(name);
+            while (m_generations.size() > m_size)
+            {
+                String eldest = m_names.poll();
+                if (eldest == null)
+                {
+                    break;
+                }
+                m_generations.remove(eldest);
+            }
+        }
+    }
+
+    public void clear()
+    {
+        m_generations.clear();
+        m_names.clear();
+    }
+}
@@ -32,7 +32,8 @@ import java.util.zip.ZipFile;
 /**
  * This class implements a factory for creating weak zip files, which behave
  * mostly like a ZipFile, but can be weakly closed to limit the number of
- * open files.
+ * open files. Alternatively, the factory can memory map the zip files, in
+ * which case no file remains open and there is nothing to weakly close.
  */
 public class WeakZipFileFactory
 {
@@ -46,6 +47,7 @@ public class WeakZipFileFactory
     private final List<WeakZipFile> m_openFiles = new ArrayList<WeakZipFile>();
     private final Mutex m_globalMutex = new Mutex();
     private final int m_limit;
+    private final boolean m_mapped;
 
     /**
      * Constructs a weak zip file factory with the specified file limit. A limit
@@ -53,12 +55,25 @@ public class WeakZipFileFactory
      * @param limit maximum number of open zip files at any given time.
      */
     public WeakZipFileFactory(int limit)
+    {
+        this(limit, false);
+    }
+
+    /**
+     * Constructs a weak zip file factory with the specified file limit, which
+     * optionally memory maps zip files. Mapped zip files do not count against
+     * the limit; it only applies to zip files that cannot be mapped.
+     * @param limit maximum number of open zip files at any given time.
+     * @param mapped whether zip files should be memory mapped.
+     */
+    public WeakZipFileFactory(int limit, boolean mapped)
     {
         if (limit < 0)
         {
             throw new IllegalArgumentException("Limit must be non-negative.");
         }
         m_limit = limit;
+        m_mapped = mapped;
     }
 
     /**
@@ -69,6 +84,15 @@ public class WeakZipFileFactory
      */
     public WeakZipFile create(File file) throws IOException
     {
+        if (m_mapped)
+        {
+            MappedZipFile mzf = MappedZipFile.open(m_secureAction, file);
+            if (mzf != null)
+            {
+                return new WeakZipFile(file, mzf);
+            }
+        }
+
         WeakZipFile wzf = new WeakZipFile(file);
 
         if (m_limit > 0)
@@ -170,6 +194,7 @@ public class WeakZipFileFactory
     {
         private final File m_file;
         private final Mutex m_localMutex = new Mutex();
+        private final MappedZipFile m_mappedFile;
         private ZipFile m_zipFile;
         private int m_status = OPEN;
         private long m_timestamp;
@@ -184,10 +209,24 @@ public class WeakZipFileFactory
         private WeakZipFile(File file) throws IOException
         {
             m_file = file;
+            m_mappedFile = null;
             m_zipFile = m_secureAction.openZipFile(m_file);
             m_timestamp = System.currentTimeMillis();
         }
 
+        /**
+         * Constructs a weak zip file backed by a memory mapped zip file,
+         * which is not subject to the file limit and never weakly closed.
+         * @param file the target zip file.
+         * @param mappedFile the mapped zip file.
+         */
+        private WeakZipFile(File file, MappedZipFile mappedFile)
+        {
+            m_file = file;
+            m_mappedFile = mappedFile;
+            m_timestamp = System.currentTimeMillis();
+        }
+
         /**
          * Returns the specified entry from the zip file.
          * @param name the name of the entry to return.
@@ -196,6 +235,11 @@ public class WeakZipFileFactory
          */
         public ZipEntry getEntry(String name)
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.getEntry(name);
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -227,6 +271,11 @@ public class WeakZipFileFactory
          */
         public Enumeration<ZipEntry> entries()
         {
+            if (m_mappedFile != null)
+            {
+                return Collections.enumeration(m_mappedFile.entries());
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -278,6 +327,11 @@ public class WeakZipFileFactory
          */
         public InputStream getInputStream(ZipEntry ze) throws IOException
         {
+            if (m_mappedFile != null)
+            {
+                return m_mappedFile.getInputStream(ze);
+            }
+
             ensureZipFileIsOpen();
 
             try
@@ -297,6 +351,11 @@ public class WeakZipFileFactory
          */
         void closeWeakly()
         {
+            if (m_mappedFile != null)
+            {
+                return;
+            }
+
             try
             {
                 m_globalMutex.down();
@@ -369,6 +428,13 @@ public class WeakZipFileFactory
          */
         public void close() throws IOException
         {
+            if (m_mappedFile != null)
+            {
+                m_status = CLOSED;
+                m_mappedFile.close();
+                return;
+            }
+
             if (m_limit > 0)
             {
                 try
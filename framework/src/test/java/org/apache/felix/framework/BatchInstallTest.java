@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+
+public class BatchInstallTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.INSTALL_THREADS_PROP, "3");
+        m_felix = new Felix(params);
+        m_felix.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testInstallBundles() throws Exception
+    {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        m_felix.getBundleContext().addBundleListener(new SynchronousBundleListener()
+        {
+            public void bundleChanged(BundleEvent event)
+            {
+                if (event.getType() == BundleEvent.INSTALLED)
+                {
+                    events.add(event.getBundle().getSymbolicName());
+                }
+            }
+        });
+
+        String existing = m_felix.getBundleContext().installBundle(
+            createBundle("existing")).getLocation();
+        events.clear();
+
+        List<String> locations = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 10; i++)
+        {
+            names.add("b" + i);
+            locations.add(createBundle("b" + i));
+        }
+        locations.add(4, existing);
+        locations.add(locations.get(0));
+
+        List<Bundle> bundles = m_felix.installBundles(locations);
+        assertEquals(locations.size(), bundles.size());
+        for (int i = 0; i < locations.size(); i++)
+        {
+            assertEquals(locations.get(i), bundles.get(i).getLocation());
+            assertEquals(Bundle.INSTALLED, bundles.get(i).getState());
+        }
+        assertSame(bundles.get(0), bundles.get(bundles.size() - 1));
+        assertEquals("existing", bundles.get(4).getSymbolicName());
+
+        // Identifiers and events follow the install order.
+        assertEquals(names, events);
+        List<Bundle> installed = new ArrayList<Bundle>(bundles.subList(0, bundles.size() - 1));
+        installed.remove(4);
+        for (int i = 1; i < installed.size(); i++)
+        {
+            assertEquals(installed.get(i - 1).getBundleId() + 1, installed.get(i).getBundleId());
+        }
+        assertEquals(12, m_felix.getBundleContext().getBundles().length);
+    }
+
+    public void testInstallBundlesIsAtomic() throws Exception
+    {
+        List<String> locations = new ArrayList<String>();
+        for (int i = 0; i < 5; i++)
+        {
+            locations.add(createBundle("b" + i));
+        }
+        // Same symbolic name and version as the first bundle.
+        locations.add(createBundle("b0"));
+
+        try
+        {
+            m_felix.installBundles(locations);
+            fail("Duplicate bundle should not be installed");
+        }
+        catch (BundleException ex)
+        {
+            assertEquals(BundleException.DUPLICATE_BUNDLE_ERROR, ex.getType());
+        }
+        assertEquals(1, m_felix.getBundleContext().getBundles().length);
+        for (String location : locations)
+        {
+            assertNull(m_felix.getBundleContext().getBundle(location));
+        }
+
+        // An archive that cannot be read fails the whole batch as well.
+        locations.set(5, new File(m_cacheDir, "missing.jar").toURI().toString());
+        try
+        {
+            m_felix.installBundles(locations);
+            fail("Missing bundle should not be installed");
+        }
+        catch (BundleException ex)
+        {
+            // Expected
+        }
+        assertEquals(1, m_felix.getBundleContext().getBundles().length);
+
+        locations.remove(5);
+        assertEquals(5, m_felix.installBundles(locations).size());
+        assertEquals(6, m_felix.getBundleContext().getBundles().length);
+    }
+
+    private String createBundle(String name) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        String manifest = "Bundle-SymbolicName: " + name + "\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.osgi.framework\n";
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f.toURI().toString();
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
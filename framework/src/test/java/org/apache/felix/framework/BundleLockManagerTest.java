@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.Bundle;
+
+public class BundleLockManagerTest extends TestCase
+{
+    private final BundleLockManager m_manager = new BundleLockManager();
+    private final BundleImpl m_bundle = new BundleImpl()
+    {
+        @Override
+        public long getBundleId()
+        {
+            return 1;
+        }
+    };
+
+    public void testWaitersAreServedInOrder() throws Exception
+    {
+        final String me = Thread.currentThread().getName();
+        m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+        m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++)
+        {
+            final String name = "t" + i;
+            Thread t = new Thread(name)
+            {
+                @Override
+                public void run()
+                {
+                    m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+                    order.add(name);
+                    m_manager.releaseBundleLock(m_bundle);
+                }
+            };
+            t.start();
+            threads.add(t);
+            waitForHeldLock("bundle 1 held by " + me, (i + 1) + " waiting");
+        }
+
+        m_manager.releaseBundleLock(m_bundle);
+        Thread.sleep(50);
+        assertTrue(order.isEmpty());
+        m_manager.releaseBundleLock(m_bundle);
+        for (Thread t : threads)
+        {
+            t.join(10000);
+        }
+        assertEquals(Arrays.asList("t0", "t1", "t2"), order);
+        assertEquals(0, m_manager.getHeldLocks().length);
+
+        BundleLockStatistics statistics = m_manager.getStatistics();
+        assertEquals(4, statistics.getBundleLockCount());
+        assertEquals(3, statistics.getBundleLockWaitCount());
+        assertTrue(statistics.getMaxBundleLockHoldTime() >= 50);
+    }
+
+    public void testGlobalLockHoldsBackBundleLocks() throws Exception
+    {
+        final String me = Thread.currentThread().getName();
+        assertTrue(m_manager.acquireGlobalLock());
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+                locked.countDown();
+                m_manager.releaseBundleLock(m_bundle);
+            }
+        };
+        t.start();
+        waitForHeldLock("global lock held by " + me, "0 waiting");
+        assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+
+        // The thread holding the global lock still gets the bundle lock.
+        m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+        m_manager.releaseBundleLock(m_bundle);
+        assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+
+        m_manager.releaseGlobalLock();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        t.join(10000);
+        assertEquals(1, m_manager.getStatistics().getGlobalLockCount());
+    }
+
+    public void testPromotionFailsOnDeadlock() throws Exception
+    {
+        final String me = Thread.currentThread().getName();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final boolean[] promoted = new boolean[] { true };
+        Thread t = new Thread("promoter")
+        {
+            @Override
+            public void run()
+            {
+                m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+                locked.countDown();
+                waitForHeldLock("global lock held by " + me, "0 waiting");
+                promoted[0] = m_manager.acquireGlobalLock();
+                m_manager.releaseBundleLock(m_bundle);
+            }
+        };
+        t.start();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        assertTrue(m_manager.acquireGlobalLock());
+        try
+        {
+            waitForHeldLock("global lock held by " + me, "1 waiting");
+            m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+            m_manager.releaseBundleLock(m_bundle);
+        }
+        finally
+        {
+            m_manager.releaseGlobalLock();
+        }
+        t.join(10000);
+        assertFalse(promoted[0]);
+        assertEquals(1, m_manager.getStatistics().getGlobalLockFailureCount());
+    }
+
+    public void testStateChangeFailsWaiters() throws Exception
+    {
+        final String me = Thread.currentThread().getName();
+        m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED | Bundle.RESOLVED);
+
+        final Exception[] failure = new Exception[1];
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    m_manager.acquireBundleLock(m_bundle, Bundle.INSTALLED);
+                }
+                catch (IllegalStateException ex)
+                {
+                    failure[0] = ex;
+                }
+            }
+        };
+        t.start();
+        waitForHeldLock("bundle 1 held by " + me, "1 waiting");
+
+        m_manager.setBundleState(m_bundle, Bundle.RESOLVED);
+        t.join(10000);
+        assertNotNull(failure[0]);
+
+        m_manager.releaseBundleLock(m_bundle);
+        assertEquals(0, m_manager.getHeldLocks().length);
+        try
+        {
+            m_manager.releaseBundleLock(m_bundle);
+            fail("Bundle should not be locked");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected
+        }
+    }
+
+    private void waitForHeldLock(String prefix, String suffix)
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < end)
+        {
+            for (String lock : m_manager.getHeldLocks())
+            {
+                if (lock.startsWith(prefix) && lock.endsWith(suffix))
+                {
+                    return;
+                }
+            }
+            try
+            {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException ex)
+            {
+                break;
+            }
+        }
+        fail("Lock not held: " + prefix + " ... " + suffix);
+    }
+}
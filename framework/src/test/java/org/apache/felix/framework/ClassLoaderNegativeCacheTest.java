@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.NegativeCache;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.hooks.resolver.ResolverHook;
+import org.osgi.framework.hooks.resolver.ResolverHookFactory;
+import org.osgi.framework.hooks.weaving.WeavingHook;
+import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class ClassLoaderNegativeCacheTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.CLASSLOADER_NEGATIVE_CACHE_PROP, "16");
+        m_felix = new Felix(params);
+        m_felix.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testNegativeCacheEvictsOldestNames()
+    {
+        NegativeCache cache = new NegativeCache(2);
+        cache.add("a", 1);
+        cache.add("b", 1);
+        assertTrue(cache.contains("a", 1));
+        assertFalse(cache.contains("a", 2));
+
+        cache.add("a", 2);
+        assertTrue(cache.contains("a", 2));
+        cache.add("c", 2);
+        assertFalse(cache.contains("a", 2));
+        assertTrue(cache.contains("b", 1));
+        assertTrue(cache.contains("c", 2));
+
+        cache.clear();
+        assertFalse(cache.contains("c", 2));
+    }
+
+    public void testExporterInvalidatesFailedDynamicImport() throws Exception
+    {
+        Bundle importer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "DynamicImport-Package: test.dyn\n", null));
+        assertTrue(m_felix.adapt(FrameworkWiring.class).resolveBundles(
+            Collections.singleton(importer)));
+
+        // Repeated misses are answered from the caches.
+        for (int i = 0; i < 2; i++)
+        {
+            assertNull(importer.getResource("test/dyn/resource.txt"));
+            try
+            {
+                importer.loadClass("test.dyn.Missing");
+                fail("Class should not be found");
+            }
+            catch (ClassNotFoundException ex)
+            {
+                // Expected
+            }
+        }
+
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: test.dyn\n", "test/dyn/resource.txt"));
+        assertNotNull(importer.getResource("test/dyn/resource.txt"));
+        try
+        {
+            importer.loadClass("test.dyn.Missing");
+            fail("Class should not be found");
+        }
+        catch (ClassNotFoundException ex)
+        {
+            // Expected
+        }
+    }
+
+    public void testWovenDynamicImportInvalidatesFailedLookup() throws Exception
+    {
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: test.dyn\n", "test/dyn/resource.txt"));
+        Bundle importer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n", null, Woven.class));
+        assertTrue(m_felix.adapt(FrameworkWiring.class).resolveBundles(null));
+
+        // The importer has no dynamic import yet.
+        assertNull(importer.getResource("test/dyn/resource.txt"));
+
+        m_felix.getBundleContext().registerService(WeavingHook.class, new WeavingHook()
+        {
+            public void weave(WovenClass wovenClass)
+            {
+                if (wovenClass.getClassName().equals(Woven.class.getName()))
+                {
+                    wovenClass.getDynamicImports().add("test.dyn");
+                }
+            }
+        }, null);
+        assertNotNull(importer.loadClass(Woven.class.getName()));
+
+        // Nothing was installed or removed, but the woven dynamic import
+        // finds the package now.
+        assertNotNull(importer.getResource("test/dyn/resource.txt"));
+    }
+
+    public void testResolverHookFailureIsNotCached() throws Exception
+    {
+        m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: test.dyn\n", "test/dyn/resource.txt"));
+        Bundle importer = m_felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "DynamicImport-Package: test.dyn\n", null));
+        assertTrue(m_felix.adapt(FrameworkWiring.class).resolveBundles(null));
+
+        final boolean[] deny = new boolean[] { true };
+        m_felix.getBundleContext().registerService(ResolverHookFactory.class, new ResolverHookFactory()
+        {
+            public ResolverHook begin(Collection<BundleRevision> triggers)
+            {
+                return new ResolverHook()
+                {
+                    public void filterResolvable(Collection<BundleRevision> candidates)
+                    {
+                    }
+
+                    public void filterSingletonCollisions(
+                        BundleCapability singleton, Collection<BundleCapability> collisionCandidates)
+                    {
+                    }
+
+                    public void filterMatches(
+                        BundleRequirement requirement, Collection<BundleCapability> candidates)
+                    {
+                        if (deny[0])
+                        {
+                            candidates.clear();
+                        }
+                    }
+
+                    public void end()
+                    {
+                    }
+                };
+            }
+        }, null);
+
+        assertNull(importer.getResource("test/dyn/resource.txt"));
+        assertNull(importer.getResource("test/dyn/resource.txt"));
+
+        // The hook lets the exporter through now.
+        deny[0] = false;
+        assertNotNull(importer.getResource("test/dyn/resource.txt"));
+    }
+
+    private String createBundle(String manifest, String resource, Class<?>... classes)
+        throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        if (resource != null)
+        {
+            os.putNextEntry(new ZipEntry(resource));
+            os.write("test".getBytes("utf-8"));
+            os.closeEntry();
+        }
+        for (Class<?> clazz : classes)
+        {
+            String path = clazz.getName().replace('.', '/') + ".class";
+            os.putNextEntry(new ZipEntry(path));
+            InputStream is = clazz.getClassLoader().getResourceAsStream(path);
+            byte[] buffer = new byte[4096];
+            for (int n = is.read(buffer); n != -1; n = is.read(buffer))
+            {
+                os.write(buffer, 0, n);
+            }
+            is.close();
+            os.closeEntry();
+        }
+        os.close();
+        return f.toURI().toString();
+    }
+
+    public static class Woven
+    {
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
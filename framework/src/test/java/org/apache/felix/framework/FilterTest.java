@@ -23,6 +23,7 @@ import java.util.Hashtable;
 import junit.framework.TestCase;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.Version;
 
 public class FilterTest extends TestCase
 {
@@ -43,4 +44,33 @@ public class FilterTest extends TestCase
         }
         assertFalse("Filter should not match: " + filter, filter.match(dict));
     }
+
+    public void testRepeatedMatchAcrossTypes() throws Exception
+    {
+        Filter filter = new FilterImpl("(&(value>=10)(version=[1.0,2.0\\)))");
+        for (int i = 0; i < 2; i++)
+        {
+            Dictionary dict = new Hashtable();
+            dict.put("value", Integer.valueOf(10));
+            dict.put("version", new Version(1, 5, 0));
+            assertTrue(filter.match(dict));
+            dict.put("value", Long.valueOf(9));
+            assertFalse(filter.match(dict));
+            dict.put("value", "2");
+            assertTrue(filter.match(dict));
+            dict.put("value", Double.valueOf(10.5));
+            assertTrue(filter.match(dict));
+            dict.put("version", new Version(2, 0, 0));
+            assertFalse(filter.match(dict));
+        }
+
+        Filter other = new FilterImpl("(value=abc)");
+        Dictionary dict = new Hashtable();
+        dict.put("value", Integer.valueOf(1));
+        assertFalse(other.match(dict));
+        assertFalse(other.match(dict));
+        dict.put("value", "abc");
+        assertTrue(other.match(dict));
+        assertEquals(other, new FilterImpl("(value=abc)"));
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+public class ParallelClassLoadingTest extends TestCase
+{
+    private File m_cacheDir;
+    private Felix m_felix;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.CLASSLOADER_STATISTICS_PROP, "true");
+        m_felix = new Felix(params);
+        m_felix.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_felix.stop();
+        m_felix.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testClassesAreDefinedOnceInParallel() throws Exception
+    {
+        final Class[] classes = new Class[] {
+            Loaded0.class, Loaded1.class, Loaded2.class, Loaded3.class };
+        final Bundle bundle = m_felix.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: loaded\n"
+                + "Bundle-ManifestVersion: 2\n", classes));
+
+        final int threadCount = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Class[][] loaded = new Class[threadCount][classes.length];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for (int j = 0; j < classes.length; j++)
+                        {
+                            // Each thread loads the classes in a different order.
+                            int k = (j + index) % classes.length;
+                            loaded[index][k] = bundle.loadClass(classes[k].getName());
+                        }
+                    }
+                    catch (Throwable th)
+                    {
+                        failure[0] = th;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads)
+        {
+            t.join(10000);
+        }
+        assertNull(failure[0]);
+
+        for (int j = 0; j < classes.length; j++)
+        {
+            assertNotSame(classes[j], loaded[0][j]);
+            for (int i = 1; i < threadCount; i++)
+            {
+                assertSame(loaded[0][j], loaded[i][j]);
+            }
+        }
+
+        ClassLoadingStatistics statistics = m_felix.getClassLoadingStatistics();
+        assertEquals(classes.length, statistics.getClassCount());
+        assertEquals(1, statistics.getBundleStatistics().length);
+        assertTrue(statistics.getBundleStatistics()[0].startsWith(
+            "bundle " + bundle.getBundleId() + " (loaded): " + classes.length + " classes"));
+        statistics.reset();
+        assertEquals(0, statistics.getClassCount());
+    }
+
+    public static class Loaded0
+    {
+    }
+
+    public static class Loaded1
+    {
+    }
+
+    public static class Loaded2
+    {
+    }
+
+    public static class Loaded3
+    {
+    }
+
+    private String createBundle(String manifest, Class... classes) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        for (Class clazz : classes)
+        {
+            String path = clazz.getName().replace('.', '/') + ".class";
+            os.putNextEntry(new ZipEntry(path));
+
+            InputStream is = clazz.getClassLoader().getResourceAsStream(path);
+            byte[] buffer = new byte[8 * 1024];
+            for (int i = is.read(buffer); i != -1; i = is.read(buffer))
+            {
+                os.write(buffer, 0, i);
+            }
+            is.close();
+            os.closeEntry();
+        }
+        os.close();
+        return f.toURI().toString();
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.launch.Framework;
+
+public class ParallelEventDispatchTest extends TestCase
+{
+    private File m_cacheDir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteDir(m_cacheDir);
+    }
+
+    public void testSlowListenerDoesNotDelayOthers() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.EVENT_DISPATCH_THREADS_PROP, "2");
+
+        Framework f = new Felix(params);
+        f.init();
+        f.start();
+        try
+        {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Long> slowEvents = Collections.synchronizedList(new ArrayList<Long>());
+            f.getBundleContext().addBundleListener(new BundleListener()
+            {
+                public void bundleChanged(BundleEvent event)
+                {
+                    try
+                    {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    slowEvents.add(event.getBundle().getBundleId());
+                }
+            });
+            final CountDownLatch installed = new CountDownLatch(3);
+            f.getBundleContext().addBundleListener(new BundleListener()
+            {
+                public void bundleChanged(BundleEvent event)
+                {
+                    if (event.getType() == BundleEvent.INSTALLED)
+                    {
+                        installed.countDown();
+                    }
+                }
+            });
+
+            List<Long> ids = new ArrayList<Long>();
+            for (int i = 0; i < 3; i++)
+            {
+                Bundle b = f.getBundleContext().installBundle(createBundle(
+                    "Bundle-SymbolicName: test" + i + "\n"
+                    + "Bundle-ManifestVersion: 2\n").toURI().toString());
+                ids.add(b.getBundleId());
+            }
+
+            assertTrue("Fast listener was blocked by slow listener.",
+                installed.await(5, TimeUnit.SECONDS));
+            assertTrue(slowEvents.isEmpty());
+
+            release.countDown();
+            for (int i = 0; (i < 50) && (slowEvents.size() < 3); i++)
+            {
+                Thread.sleep(100);
+            }
+            assertEquals(ids, slowEvents);
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+        }
+    }
+
+    public void testReaddedListenerKeepsEventOrder() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.EVENT_DISPATCH_THREADS_PROP, "2");
+
+        Framework f = new Felix(params);
+        f.init();
+        f.start();
+        try
+        {
+            final CountDownLatch delivering = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicBoolean concurrent = new AtomicBoolean();
+            final List<Long> events = Collections.synchronizedList(new ArrayList<Long>());
+            BundleListener listener = new BundleListener()
+            {
+                public void bundleChanged(BundleEvent event)
+                {
+                    if (event.getType() != BundleEvent.INSTALLED)
+                    {
+                        return;
+                    }
+                    if (active.incrementAndGet() > 1)
+                    {
+                        concurrent.set(true);
+                    }
+                    delivering.countDown();
+                    try
+                    {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    events.add(event.getBundle().getBundleId());
+                    active.decrementAndGet();
+                }
+            };
+            f.getBundleContext().addBundleListener(listener);
+
+            Bundle b0 = f.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: test0\n"
+                + "Bundle-ManifestVersion: 2\n").toURI().toString());
+            assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+            // Remove and add the listener again while its first event is
+            // still being delivered.
+            f.getBundleContext().removeBundleListener(listener);
+            f.getBundleContext().addBundleListener(listener);
+            Bundle b1 = f.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: test1\n"
+                + "Bundle-ManifestVersion: 2\n").toURI().toString());
+            Thread.sleep(200);
+
+            release.countDown();
+            for (int i = 0; (i < 50) && (events.size() < 2); i++)
+            {
+                Thread.sleep(100);
+            }
+            assertFalse("Listener was called concurrently.", concurrent.get());
+            assertEquals(Arrays.asList(b0.getBundleId(), b1.getBundleId()), events);
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+        }
+    }
+
+    public void testStatistics() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.EVENT_DISPATCH_THREADS_PROP, "2");
+
+        Framework f = new Felix(params);
+        f.init();
+        f.start();
+        ObjectName name = new ObjectName(
+            "org.apache.felix.framework:type=EventDispatcherStatistics,uuid="
+            + f.getBundleContext().getProperty(Constants.FRAMEWORK_UUID));
+        try
+        {
+            final CountDownLatch installed = new CountDownLatch(2);
+            f.getBundleContext().addBundleListener(new BundleListener()
+            {
+                public void bundleChanged(BundleEvent event)
+                {
+                    if (event.getType() == BundleEvent.INSTALLED)
+                    {
+                        installed.countDown();
+                    }
+                }
+            });
+            for (int i = 0; i < 2; i++)
+            {
+                f.getBundleContext().installBundle(createBundle(
+                    "Bundle-SymbolicName: test" + i + "\n"
+                    + "Bundle-ManifestVersion: 2\n").toURI().toString());
+            }
+            assertTrue(installed.await(5, TimeUnit.SECONDS));
+
+            ServiceReference ref = f.getBundleContext().getServiceReference(
+                EventDispatcherStatistics.class.getName());
+            assertEquals("felix", ref.getProperty("osgi.command.scope"));
+
+            for (int i = 0; (i < 50) && (getDelivered(name) < 2); i++)
+            {
+                Thread.sleep(100);
+            }
+            assertEquals(2L, getDelivered(name));
+            String[] listeners = (String[]) ManagementFactory
+                .getPlatformMBeanServer().getAttribute(name, "ListenerStatistics");
+            assertEquals(1, listeners.length);
+            assertTrue(listeners[0], listeners[0].contains("2 delivered"));
+
+            ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+            assertEquals(0L, getDelivered(name));
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private static long getDelivered(ObjectName name) throws Exception
+    {
+        return (Long) ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(name, "DeliveredCount");
+    }
+
+    private File createBundle(String manifest) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
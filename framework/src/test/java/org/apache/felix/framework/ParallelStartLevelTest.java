@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.startlevel.BundleStartLevel;
+
+public class ParallelStartLevelTest extends TestCase
+{
+    private File m_cacheDir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteDir(m_cacheDir);
+    }
+
+    public void testBundlesOfStartLevelStartedConcurrently() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(Constants.FRAMEWORK_BEGINNING_STARTLEVEL, "3");
+        params.put(FelixConstants.STARTLEVEL_THREADS_PROP, "3");
+
+        Framework f = new Felix(params);
+        f.init();
+        try
+        {
+            final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+            final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+            f.getBundleContext().addBundleListener(new SynchronousBundleListener()
+            {
+                public void bundleChanged(BundleEvent event)
+                {
+                    if (event.getBundle().getBundleId() == 0)
+                    {
+                        return;
+                    }
+                    else if (event.getType() == BundleEvent.STARTING)
+                    {
+                        events.add("starting " + event.getBundle().getSymbolicName());
+                        if (!event.getBundle().getSymbolicName().equals("d"))
+                        {
+                            threads.add(Thread.currentThread().getName());
+                        }
+                    }
+                    else if (event.getType() == BundleEvent.STARTED)
+                    {
+                        events.add("started " + event.getBundle().getSymbolicName());
+                    }
+                }
+            });
+
+            List<Bundle> bundles = new ArrayList<Bundle>();
+            for (String name : new String[] { "a", "b", "c", "d" })
+            {
+                Bundle b = f.getBundleContext().installBundle(
+                    createBundle("Bundle-SymbolicName: " + name + "\n"
+                        + "Bundle-ManifestVersion: 2\n"
+                        + "Import-Package: org.osgi.framework\n"
+                        + "Bundle-Activator: " + SlowActivator.class.getName() + "\n",
+                        SlowActivator.class).toURI().toString());
+                b.adapt(BundleStartLevel.class).setStartLevel(name.equals("d") ? 3 : 2);
+                b.start();
+                bundles.add(b);
+            }
+
+            f.start();
+            for (Bundle b : bundles)
+            {
+                assertEquals(Bundle.ACTIVE, b.getState());
+            }
+
+            // All bundles of start level 2 are starting before any of them
+            // has been started, and the bundle of start level 3 is only
+            // started afterwards.
+            assertEquals(8, events.size());
+            for (int i = 0; i < 3; i++)
+            {
+                assertTrue(events.get(i), events.get(i).startsWith("starting "));
+                assertTrue(events.get(i + 3), events.get(i + 3).startsWith("started "));
+            }
+            assertEquals("starting d", events.get(6));
+            assertEquals("started d", events.get(7));
+
+            // Each bundle of start level 2 was started by a thread of its own.
+            assertEquals(threads.toString(), 3, threads.size());
+            assertFalse(threads.toString(), threads.contains(FrameworkStartLevelImpl.THREAD_NAME));
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+        }
+    }
+
+    public static class SlowActivator implements BundleActivator
+    {
+        public void start(BundleContext context) throws Exception
+        {
+            Thread.sleep(300);
+        }
+
+        public void stop(BundleContext context)
+        {
+        }
+    }
+
+    private File createBundle(String manifest, Class... classes) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        for (Class clazz : classes)
+        {
+            String path = clazz.getName().replace('.', '/') + ".class";
+            os.putNextEntry(new ZipEntry(path));
+
+            InputStream is = clazz.getClassLoader().getResourceAsStream(path);
+            byte[] buffer = new byte[8 * 1024];
+            for (int i = is.read(buffer); i != -1; i = is.read(buffer))
+            {
+                os.write(buffer, 0, i);
+            }
+            is.close();
+            os.closeEntry();
+        }
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
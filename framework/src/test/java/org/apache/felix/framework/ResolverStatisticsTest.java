@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.util.FelixConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class ResolverStatisticsTest extends TestCase
+{
+    private File m_cacheDir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteDir(m_cacheDir);
+    }
+
+    public void testLastResolves() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        params.put(FelixConstants.RESOLVER_STATISTICS, "2");
+
+        Framework f = new Felix(params);
+        f.start();
+        ObjectName name = new ObjectName(
+            "org.apache.felix.framework:type=ResolverStatistics,uuid="
+            + f.getBundleContext().getProperty(Constants.FRAMEWORK_UUID));
+        try
+        {
+            for (String bsn : new String[] { "a", "b", "c" })
+            {
+                Bundle b = f.getBundleContext().installBundle(createBundle(
+                    "Bundle-SymbolicName: " + bsn + "\n"
+                    + "Bundle-ManifestVersion: 2\n"
+                    + "Import-Package: org.osgi.framework\n").toURI().toString());
+                assertTrue(f.adapt(FrameworkWiring.class)
+                    .resolveBundles(Collections.singleton(b)));
+            }
+            Bundle unresolvable = f.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: d\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: missing\n").toURI().toString());
+            try
+            {
+                unresolvable.start();
+                fail("Bundle with a missing import should not start.");
+            }
+            catch (BundleException ex)
+            {
+                // Expected
+            }
+
+            ServiceReference ref = f.getBundleContext().getServiceReference(
+                ResolverStatistics.class.getName());
+            assertEquals("felix", ref.getProperty("osgi.command.scope"));
+
+            // Only the last two resolve operations are kept
+            TabularData resolves = (TabularData) ManagementFactory
+                .getPlatformMBeanServer().getAttribute(name, "LastResolves");
+            assertEquals(2, resolves.size());
+            SortedMap<Long, CompositeData> rows = new TreeMap<Long, CompositeData>();
+            for (Object row : resolves.values())
+            {
+                rows.put((Long) ((CompositeData) row).get("index"), (CompositeData) row);
+            }
+            CompositeData resolved = rows.get(rows.firstKey());
+            assertEquals(Boolean.TRUE, resolved.get("successful"));
+            assertEquals(1, resolved.get("resources"));
+            assertEquals(1, resolved.get("permutations"));
+            CompositeData failed = rows.get(rows.lastKey());
+            assertEquals(rows.firstKey() + 1, (long) rows.lastKey());
+            assertEquals(Boolean.FALSE, failed.get("successful"));
+            assertTrue((String) failed.get("error"), ((String) failed.get("error")).contains("missing"));
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private File createBundle(String manifest) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
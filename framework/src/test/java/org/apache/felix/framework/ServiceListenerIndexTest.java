@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.launch.Framework;
+
+public class ServiceListenerIndexTest extends TestCase
+{
+    private File m_cacheDir;
+    private Framework m_framework;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        m_framework = new Felix(params);
+        m_framework.init();
+        m_framework.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        m_framework.stop();
+        m_framework.waitForStop(10000);
+        deleteDir(m_cacheDir);
+    }
+
+    public void testIndexedDispatch() throws Exception
+    {
+        BundleContext bc = m_framework.getBundleContext();
+        RecordingListener foo = new RecordingListener();
+        RecordingListener fooOrBar = new RecordingListener();
+        RecordingListener fooAndRanked = new RecordingListener();
+        RecordingListener wildcard = new RecordingListener();
+        RecordingListener all = new RecordingListener();
+        bc.addServiceListener(foo, "(objectClass=java.lang.Runnable)");
+        bc.addServiceListener(fooOrBar, "(|(objectClass=java.lang.Runnable)(objectClass=java.io.Serializable))");
+        bc.addServiceListener(fooAndRanked, "(&(rank=1)(objectClass=java.lang.Runnable))");
+        bc.addServiceListener(wildcard, "(objectClass=java.lang.R*)");
+        bc.addServiceListener(all);
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("rank", 1);
+        bc.registerService(new String[] { "java.lang.Runnable", "java.io.Serializable" }, new TestService(), props);
+        bc.registerService("java.io.Serializable", new TestService(), null);
+        bc.registerService("java.lang.Object", new TestService(), null);
+
+        assertEquals(Collections.singletonList("[java.lang.Runnable, java.io.Serializable]"), foo.m_events);
+        assertEquals(2, fooOrBar.m_events.size());
+        assertEquals(Collections.singletonList("[java.lang.Runnable, java.io.Serializable]"), fooAndRanked.m_events);
+        assertEquals(Collections.singletonList("[java.lang.Runnable, java.io.Serializable]"), wildcard.m_events);
+        assertEquals(3, all.m_events.size());
+    }
+
+    public void testUpdatedAndRemovedListener() throws Exception
+    {
+        BundleContext bc = m_framework.getBundleContext();
+        RecordingListener l = new RecordingListener();
+        bc.addServiceListener(l, "(objectClass=java.lang.Runnable)");
+        bc.addServiceListener(l, "(objectClass=java.io.Serializable)");
+
+        bc.registerService("java.lang.Runnable", new TestService(), null);
+        ServiceRegistration reg = bc.registerService("java.io.Serializable", new TestService(), null);
+        assertEquals(Collections.singletonList("[java.io.Serializable]"), l.m_events);
+
+        bc.removeServiceListener(l);
+        reg.unregister();
+        assertEquals(1, l.m_events.size());
+    }
+
+    private static class TestService implements Runnable, Serializable
+    {
+        public void run()
+        {
+        }
+    }
+
+    private static class RecordingListener implements ServiceListener
+    {
+        final List<String> m_events =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        public void serviceChanged(ServiceEvent event)
+        {
+            m_events.add(Arrays.toString((String[])
+                event.getServiceReference().getProperty(Constants.OBJECTCLASS)));
+        }
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
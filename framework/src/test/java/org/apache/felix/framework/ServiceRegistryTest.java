@@ -37,6 +37,7 @@ import junit.framework.TestCase;
 import org.apache.felix.framework.ServiceRegistrationImpl.ServiceReferenceImpl;
 import org.apache.felix.framework.ServiceRegistry.ServiceHolder;
 import org.apache.felix.framework.ServiceRegistry.UsageCount;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.easymock.MockControl;
 import org.mockito.AdditionalAnswers;
 import org.mockito.InOrder;
@@ -53,6 +54,7 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.hooks.service.EventHook;
 import org.osgi.framework.hooks.service.FindHook;
 import org.osgi.framework.hooks.service.ListenerHook;
+import org.osgi.resource.Capability;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -1255,6 +1257,113 @@ public class ServiceRegistryTest extends TestCase
         assertThat(sr.getUsingBundles(reg.getReference()), is(new Bundle[]{clientBundle2}));
     }
 
+    public void testSetPropertiesRacingUnregister() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(null, null, Collections.singletonList("tenant"));
+        Bundle b = Mockito.mock(Bundle.class);
+
+        for (int i = 0; i < 500; i++)
+        {
+            final ServiceRegistration reg = sr.registerService(
+                b, new String [] {String.class.getName()}, "hi", tenant(0));
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread t = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for (int j = 1; j <= 20; j++)
+                        {
+                            reg.setProperties(tenant(j));
+                        }
+                    }
+                    catch (IllegalStateException ex)
+                    {
+                        // Unregistered meanwhile.
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            t.start();
+            start.countDown();
+            reg.unregister();
+            t.join();
+
+            for (int j = 0; j <= 20; j++)
+            {
+                assertTrue("Unregistered service still indexed",
+                    sr.getServiceReferences(null, SimpleFilter.parse("(tenant=" + j + ")")).isEmpty());
+            }
+            assertTrue(sr.getServiceReferences(String.class.getName(), null).isEmpty());
+        }
+    }
+
+    public void testConcurrentSetProperties() throws Exception
+    {
+        ServiceRegistry sr = new ServiceRegistry(null, null, Collections.singletonList("tenant"));
+        Bundle b = Mockito.mock(Bundle.class);
+
+        for (int i = 0; i < 500; i++)
+        {
+            final ServiceRegistration reg = sr.registerService(
+                b, new String [] {String.class.getName()}, "hi", tenant(0));
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int k = 0; k < 2; k++)
+            {
+                final int first = 1 + k * 10;
+                Thread t = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            start.await();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        for (int j = first; j < first + 10; j++)
+                        {
+                            reg.setProperties(tenant(j));
+                        }
+                    }
+                };
+                threads.add(t);
+                t.start();
+            }
+            start.countDown();
+            for (Thread t : threads)
+            {
+                t.join();
+            }
+
+            // Only the last properties of the service are indexed.
+            Object current = reg.getReference().getProperty("tenant");
+            for (int j = 0; j <= 20; j++)
+            {
+                Collection<Capability> matches =
+                    sr.getServiceReferences(null, SimpleFilter.parse("(tenant=" + j + ")"));
+                assertEquals("Stale index entry for " + j,
+                    String.valueOf(j).equals(current), matches.contains(reg.getReference()));
+            }
+            reg.unregister();
+        }
+    }
+
+    private static Hashtable<String, Object> tenant(int tenant)
+    {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("tenant", String.valueOf(tenant));
+        return props;
+    }
+
     private Object getPrivateField(Object obj, String fieldName) throws NoSuchFieldException,
             IllegalAccessException
     {
@@ -37,7 +37,6 @@ public class StartBundleTest extends TestCase
         final Felix f = new Felix(config);
 
         BundleImpl b = Mockito.mock(BundleImpl.class);
-        Mockito.when(b.isLockable()).thenReturn(true);
         Mockito.when(b.getState()).thenReturn(Bundle.INSTALLED);
         Mockito.when(b.getStartLevel(1)).thenReturn(3);
 
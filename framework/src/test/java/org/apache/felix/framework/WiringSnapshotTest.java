@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.cache.BundleCache;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class WiringSnapshotTest extends TestCase
+{
+    private File m_cacheDir;
+    private Map<String, String> m_params;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        m_params = new HashMap<String, String>();
+        m_params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0");
+        m_params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        m_params.put(BundleCache.CACHE_WIRING_PROP, "true");
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteDir(m_cacheDir);
+    }
+
+    public void testWiringRestoredOnRestart() throws Exception
+    {
+        Framework f = new Felix(m_params);
+        f.init();
+        Bundle exporter = f.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: exporter\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.pkg; version=1.0.0\n").toURI().toString());
+        Bundle importer = f.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: importer\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: test.pkg, org.osgi.framework\n").toURI().toString());
+        assertTrue(f.adapt(FrameworkWiring.class).resolveBundles(null));
+        stop(f);
+
+        f = new Felix(m_params);
+        f.init();
+        try
+        {
+            exporter = f.getBundleContext().getBundle(exporter.getBundleId());
+            importer = f.getBundleContext().getBundle(importer.getBundleId());
+            assertEquals(Bundle.RESOLVED, exporter.getState());
+            assertEquals(Bundle.RESOLVED, importer.getState());
+
+            List<BundleWire> wires = importer.adapt(BundleWiring.class)
+                .getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+            assertEquals(2, wires.size());
+            for (BundleWire wire : wires)
+            {
+                if ("test.pkg".equals(wire.getCapability().getAttributes()
+                    .get(BundleRevision.PACKAGE_NAMESPACE)))
+                {
+                    assertEquals(exporter, wire.getProvider().getBundle());
+                }
+                else
+                {
+                    assertEquals(0, wire.getProvider().getBundle().getBundleId());
+                }
+            }
+            assertEquals(1, exporter.adapt(BundleWiring.class)
+                .getProvidedWires(BundleRevision.PACKAGE_NAMESPACE).size());
+        }
+        finally
+        {
+            stop(f);
+        }
+    }
+
+    public void testWiringNotRestoredWhenProviderUninstalled() throws Exception
+    {
+        Framework f = new Felix(m_params);
+        f.init();
+        Bundle exporter = f.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: exporter\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.pkg\n").toURI().toString());
+        Bundle importer = f.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: importer\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: test.pkg\n").toURI().toString());
+        Bundle other = f.getBundleContext().installBundle(
+            createBundle("Bundle-SymbolicName: other\n"
+                + "Bundle-ManifestVersion: 2\n").toURI().toString());
+        assertTrue(f.adapt(FrameworkWiring.class).resolveBundles(null));
+        stop(f);
+
+        // Start once without persistence; the snapshots are consumed anyway.
+        m_params.put(BundleCache.CACHE_WIRING_PROP, "false");
+        f = new Felix(m_params);
+        f.init();
+        f.getBundleContext().getBundle(exporter.getBundleId()).uninstall();
+        stop(f);
+
+        m_params.put(BundleCache.CACHE_WIRING_PROP, "true");
+        f = new Felix(m_params);
+        f.init();
+        try
+        {
+            assertNull(f.getBundleContext().getBundle(exporter.getBundleId()));
+            assertEquals(Bundle.INSTALLED,
+                f.getBundleContext().getBundle(importer.getBundleId()).getState());
+            assertEquals(Bundle.INSTALLED,
+                f.getBundleContext().getBundle(other.getBundleId()).getState());
+        }
+        finally
+        {
+            stop(f);
+        }
+    }
+
+    private static void stop(Framework f) throws Exception
+    {
+        f.stop();
+        f.waitForStop(10000);
+    }
+
+    private File createBundle(String manifest) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.StringMap;
+import org.apache.felix.framework.util.WeakZipFileFactory;
+
+public class BundleArchiveRevisionTest extends TestCase
+{
+    private File m_rootDir;
+    private WeakZipFileFactory m_zipFactory;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_rootDir = File.createTempFile("felix-revision", ".dir");
+        m_rootDir.delete();
+        m_rootDir.mkdirs();
+        m_zipFactory = new WeakZipFileFactory(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        BundleCache.deleteDirectoryTree(m_rootDir);
+    }
+
+    public void testJarManifestHeaderCached() throws Exception
+    {
+        File jar = new File(m_rootDir, "bundle.jar");
+        createJar(jar, "1.0.0");
+        File revisionDir = new File(m_rootDir, "revision");
+
+        JarRevision revision = createJarRevision(jar, revisionDir);
+        try
+        {
+            // The first read parses the JAR file and caches the header.
+            assertEquals("1.0.0", revision.getManifestHeader().get("bundle-version"));
+            assertTrue(new File(revisionDir, "manifest.cache").isFile());
+            assertEquals(revision.getManifestHeader(), revision.getCachedManifestHeader(jar));
+
+            // Further reads are served from the cache.
+            revision.cacheManifestHeader(jar, createHeaders("cached"));
+            assertEquals("cached", revision.getManifestHeader().get("Bundle-Version"));
+        }
+        finally
+        {
+            revision.close();
+        }
+
+        // A changed JAR file invalidates the cache.
+        createJar(jar, "2.0.0.qualifier");
+        jar.setLastModified(jar.lastModified() + 2000);
+        revision = createJarRevision(jar, revisionDir);
+        try
+        {
+            assertNull(revision.getCachedManifestHeader(jar));
+            assertEquals("2.0.0.qualifier", revision.getManifestHeader().get("Bundle-Version"));
+            assertEquals("2.0.0.qualifier",
+                revision.getCachedManifestHeader(jar).get("Bundle-Version"));
+        }
+        finally
+        {
+            revision.close();
+        }
+    }
+
+    public void testDirectoryManifestHeaderCached() throws Exception
+    {
+        File dir = new File(m_rootDir, "bundle");
+        File manifest = new File(dir, "META-INF/MANIFEST.MF");
+        manifest.getParentFile().mkdirs();
+        writeManifest(manifest, "1.0.0");
+
+        DirectoryRevision revision = new DirectoryRevision(new Logger(), new HashMap(),
+            m_zipFactory, new File(m_rootDir, "revision"), BundleArchive.FILE_PROTOCOL + dir.getPath());
+        assertNull(revision.getCachedManifestHeader(manifest));
+        assertEquals("1.0.0", revision.getManifestHeader().get("Bundle-Version"));
+        assertEquals(revision.getManifestHeader(), revision.getCachedManifestHeader(manifest));
+
+        revision.cacheManifestHeader(manifest, createHeaders("cached"));
+        assertEquals("cached", revision.getManifestHeader().get("Bundle-Version"));
+
+        // A changed manifest file invalidates the cache, even if only its
+        // modification time changed.
+        manifest.setLastModified(manifest.lastModified() + 2000);
+        assertNull(revision.getCachedManifestHeader(manifest));
+        assertEquals("1.0.0", revision.getManifestHeader().get("Bundle-Version"));
+
+        writeManifest(manifest, "2.0.0.qualifier");
+        assertNull(revision.getCachedManifestHeader(manifest));
+        assertEquals("2.0.0.qualifier", revision.getManifestHeader().get("Bundle-Version"));
+    }
+
+    public void testUnreadableCacheIgnored() throws Exception
+    {
+        File jar = new File(m_rootDir, "bundle.jar");
+        createJar(jar, "1.0.0");
+        File revisionDir = new File(m_rootDir, "revision");
+
+        JarRevision revision = createJarRevision(jar, revisionDir);
+        try
+        {
+            OutputStream os = new FileOutputStream(new File(revisionDir, "manifest.cache"));
+            os.write(new byte[] { 0, 0, 0, 1, 0 });
+            os.close();
+
+            assertNull(revision.getCachedManifestHeader(jar));
+            assertEquals("1.0.0", revision.getManifestHeader().get("Bundle-Version"));
+            assertNotNull(revision.getCachedManifestHeader(jar));
+        }
+        finally
+        {
+            revision.close();
+        }
+    }
+
+    private JarRevision createJarRevision(File jar, File revisionDir) throws Exception
+    {
+        return new JarRevision(new Logger(), new HashMap(), m_zipFactory, revisionDir,
+            BundleArchive.FILE_PROTOCOL + jar.getPath(), true, null);
+    }
+
+    private static Map<String, Object> createHeaders(String version)
+    {
+        Map<String, Object> headers = new StringMap();
+        headers.put("Bundle-SymbolicName", "test");
+        headers.put("Bundle-Version", version);
+        return headers;
+    }
+
+    private static Manifest createManifest(String version) throws Exception
+    {
+        return new Manifest(new ByteArrayInputStream((
+            "Manifest-Version: 1.0\n"
+            + "Bundle-SymbolicName: test\n"
+            + "Bundle-Version: " + version + "\n").getBytes("utf-8")));
+    }
+
+    private static void createJar(File jar, String version) throws Exception
+    {
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(jar), createManifest(version));
+        os.close();
+    }
+
+    private static void writeManifest(File file, String version) throws Exception
+    {
+        OutputStream os = new FileOutputStream(file);
+        try
+        {
+            createManifest(version).write(os);
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.WeakZipFileFactory;
+
+public class JarContentTest extends TestCase
+{
+    private File m_rootDir;
+    private File m_jar;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_rootDir = File.createTempFile("felix-content", ".dir");
+        m_rootDir.delete();
+        m_rootDir.mkdirs();
+        m_jar = new File(m_rootDir, "bundle.jar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(m_jar));
+        zos.putNextEntry(new ZipEntry("root.txt"));
+        zos.putNextEntry(new ZipEntry("org/foo/Bar.class"));
+        zos.putNextEntry(new ZipEntry("empty/"));
+        zos.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        BundleCache.deleteDirectoryTree(m_rootDir);
+    }
+
+    public void testIndexedLookups() throws Exception
+    {
+        JarContent content = createContent();
+        try
+        {
+            assertTrue(content.hasEntry("root.txt"));
+            assertTrue(content.hasEntry("org/foo/Bar.class"));
+            assertTrue(content.hasEntry("empty/"));
+            assertFalse(content.hasEntry("org/foo/Baz.class"));
+            assertFalse(content.hasEntry("org/bar/Bar.class"));
+            assertNull(content.getEntryAsBytes("com/foo/Bar.class"));
+            assertNotNull(content.getEntryAsBytes("org/foo/Bar.class"));
+        }
+        finally
+        {
+            content.close();
+        }
+        String[] files = m_rootDir.list();
+        assertEquals(2, files.length);
+        assertTrue(files[0].startsWith("bundle.jar-") && files[0].endsWith(".index")
+            || files[1].startsWith("bundle.jar-") && files[1].endsWith(".index"));
+
+        // A second content for the same JAR uses the stored index.
+        content = createContent();
+        try
+        {
+            assertTrue(content.hasEntry("org/foo/Bar.class"));
+            assertFalse(content.hasEntry("org/bar/Bar.class"));
+        }
+        finally
+        {
+            content.close();
+        }
+    }
+
+    public void testStaleIndexIgnored() throws Exception
+    {
+        JarContent content = createContent();
+        assertFalse(content.hasEntry("org/bar/Bar.class"));
+        content.close();
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(m_jar));
+        zos.putNextEntry(new ZipEntry("org/bar/Bar.class"));
+        zos.close();
+        m_jar.setLastModified(m_jar.lastModified() + 2000);
+
+        content = createContent();
+        try
+        {
+            assertTrue(content.hasEntry("org/bar/Bar.class"));
+            assertFalse(content.hasEntry("org/foo/Bar.class"));
+        }
+        finally
+        {
+            content.close();
+        }
+    }
+
+    public void testSameNameJarsIndexedSeparately() throws Exception
+    {
+        // Two JAR files with the same name, length and modification time
+        // whose indexes are stored in the same directory.
+        File jar1 = createJar(new File(m_rootDir, "lib1/x.jar"), "org/aaa/A.class");
+        File jar2 = createJar(new File(m_rootDir, "lib2/x.jar"), "org/bbb/B.class");
+        assertEquals(jar1.length(), jar2.length());
+        jar2.setLastModified(jar1.lastModified());
+
+        JarContent content1 = createContent(jar1);
+        JarContent content2 = createContent(jar2);
+        try
+        {
+            assertTrue(content1.hasEntry("org/aaa/A.class"));
+            assertFalse(content1.hasEntry("org/bbb/B.class"));
+            assertTrue(content2.hasEntry("org/bbb/B.class"));
+            assertFalse(content2.hasEntry("org/aaa/A.class"));
+        }
+        finally
+        {
+            content1.close();
+            content2.close();
+        }
+
+        // The stored indexes are read back for the right JAR file.
+        content2 = createContent(jar2);
+        try
+        {
+            assertTrue(content2.hasEntry("org/bbb/B.class"));
+            assertFalse(content2.hasEntry("org/aaa/A.class"));
+        }
+        finally
+        {
+            content2.close();
+        }
+    }
+
+    private File createJar(File jar, String entry) throws Exception
+    {
+        jar.getParentFile().mkdirs();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+        ZipEntry ze = new ZipEntry(entry);
+        ze.setTime(0);
+        zos.putNextEntry(ze);
+        zos.close();
+        return jar;
+    }
+
+    private JarContent createContent()
+    {
+        return createContent(m_jar);
+    }
+
+    private JarContent createContent(File jar)
+    {
+        return new JarContent(new Logger(), new HashMap(), new WeakZipFileFactory(0),
+            this, m_rootDir, jar, null);
+    }
+}
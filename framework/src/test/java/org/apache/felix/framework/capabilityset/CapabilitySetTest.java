@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.resource.Capability;
+
+public class CapabilitySetTest extends TestCase
+{
+    public void testIndexedMatch()
+    {
+        CapabilitySet capSet = new CapabilitySet(
+            Collections.singletonList(Constants.OBJECTCLASS), false);
+        BundleCapability foo = createCapability(new String[] { "foo", "bar" }, 1);
+        BundleCapability bar = createCapability(new String[] { "bar" }, 2);
+        capSet.addCapability(foo);
+        capSet.addCapability(bar);
+
+        assertEquals(Collections.singleton(foo),
+            capSet.match(SimpleFilter.parse("(objectClass=foo)"), false));
+        assertEquals(2, capSet.match(SimpleFilter.parse("(objectClass=bar)"), false).size());
+        assertEquals(Collections.singleton(bar),
+            capSet.match(SimpleFilter.parse("(&(objectClass=bar)(rank>=2))"), false));
+        assertEquals(Collections.singleton(foo),
+            capSet.match(SimpleFilter.parse("(&(objectClass=bar)(objectClass=foo))"), false));
+        assertTrue(capSet.match(SimpleFilter.parse("(objectClass=baz)"), false).isEmpty());
+
+        capSet.removeCapability(foo);
+        assertTrue(capSet.match(SimpleFilter.parse("(objectClass=foo)"), false).isEmpty());
+        assertEquals(Collections.singleton(bar),
+            capSet.match(SimpleFilter.parse("(objectClass=bar)"), false));
+    }
+
+    public void testModifyingResultDoesNotAffectIndex()
+    {
+        CapabilitySet capSet = new CapabilitySet(
+            Collections.singletonList(Constants.OBJECTCLASS), false);
+        BundleCapability foo1 = createCapability(new String[] { "foo" }, 1);
+        BundleCapability foo2 = createCapability(new String[] { "foo" }, 2);
+        capSet.addCapability(foo1);
+        capSet.addCapability(foo2);
+
+        Set<Capability> matches = capSet.match(SimpleFilter.parse("(objectClass=foo)"), false);
+        for (Iterator<Capability> it = matches.iterator(); it.hasNext(); )
+        {
+            if (it.next() == foo1)
+            {
+                it.remove();
+            }
+        }
+        assertEquals(Collections.singleton(foo2), matches);
+        assertEquals(2, capSet.match(SimpleFilter.parse("(objectClass=foo)"), false).size());
+
+        // A result taken before a change is not affected by it.
+        capSet.removeCapability(foo2);
+        assertEquals(Collections.singleton(foo2), matches);
+        assertEquals(Collections.singleton(foo1),
+            capSet.match(SimpleFilter.parse("(objectClass=foo)"), false));
+    }
+
+    public void testSecondaryIndex()
+    {
+        CapabilitySet capSet = new CapabilitySet(
+            Arrays.asList(Constants.OBJECTCLASS, "tenant"), false);
+        BundleCapability foo1 = createCapability(new String[] { "foo" }, 1);
+        BundleCapability foo2 = createCapability(new String[] { "foo" }, 2);
+        BundleCapability bar1 = createCapability(new String[] { "bar" }, 1);
+        foo1.getAttributes().put("tenant", "42");
+        foo2.getAttributes().put("tenant", 42);
+        bar1.getAttributes().put("tenant", "42");
+        capSet.addCapability(foo1);
+        capSet.addCapability(foo2);
+        capSet.addCapability(bar1);
+
+        // Non-string values are matched after coercion like without an index.
+        assertEquals(new HashSet<Capability>(Arrays.asList(foo1, foo2)),
+            capSet.match(SimpleFilter.parse("(&(objectClass=foo)(tenant=42))"), false));
+        assertEquals(Collections.singleton(bar1),
+            capSet.match(SimpleFilter.parse("(&(tenant=42)(objectClass=bar))"), false));
+        assertEquals(Collections.singleton(foo2),
+            capSet.match(SimpleFilter.parse("(&(objectClass=foo)(tenant=42)(rank=2))"), false));
+
+        foo1.getAttributes().put("tenant", "7");
+        capSet.updateCapability(foo1);
+        assertEquals(Collections.singleton(foo2),
+            capSet.match(SimpleFilter.parse("(&(objectClass=foo)(tenant=42))"), false));
+        assertEquals(Collections.singleton(foo1),
+            capSet.match(SimpleFilter.parse("(&(objectClass=foo)(tenant=7))"), false));
+    }
+
+    private static BundleCapability createCapability(String[] objectClass, int rank)
+    {
+        final Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Constants.OBJECTCLASS, objectClass);
+        attrs.put("rank", rank);
+        // Like service references, the attributes are mutable.
+        return new BundleCapabilityImpl(
+            null, "service", Collections.<String, String>emptyMap(), attrs)
+        {
+            @Override
+            public Map<String, Object> getAttributes()
+            {
+                return attrs;
+            }
+        };
+    }
+}
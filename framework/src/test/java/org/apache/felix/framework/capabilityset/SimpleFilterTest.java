@@ -83,4 +83,16 @@ public class SimpleFilterTest extends TestCase
         pieces = SimpleFilter.parseSubstring("aaa**aaa");
         assertTrue("Should match!", SimpleFilter.compareSubstring(pieces, "aaaaaa"));
     }
+
+    public void testParseCachedEvictsLeastRecentlyUsed()
+    {
+        SimpleFilter used = SimpleFilter.parseCached("(lru=used)");
+        SimpleFilter unused = SimpleFilter.parseCached("(lru=unused)");
+        for (int i = 0; i < SimpleFilter.CACHE_SIZE; i++)
+        {
+            SimpleFilter.parseCached("(lru=" + i + ")");
+            assertSame(used, SimpleFilter.parseCached("(lru=used)"));
+        }
+        assertNotSame(unused, SimpleFilter.parseCached("(lru=unused)"));
+    }
 }
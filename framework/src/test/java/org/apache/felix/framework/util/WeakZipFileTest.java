@@ -22,7 +22,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipOutputStream;
 import junit.framework.TestCase;
 import org.apache.felix.framework.util.WeakZipFileFactory.WeakZipFile;
@@ -94,4 +99,116 @@ public class WeakZipFileTest extends TestCase
             fail("Unable to read zip file entry: " + ex);
         }
     }
-}
\ No newline at end of file
+
+    public void testMappedZipFile() throws IOException
+    {
+        byte[] contentBytes = new byte[16384];
+        for (int i = 0; i < contentBytes.length; i++)
+        {
+            contentBytes[i] = (byte) ((i % 65) + 65);
+        }
+
+        File tmpZip = File.createTempFile("felix.test", ".zip");
+        tmpZip.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tmpZip));
+        zos.putNextEntry(new ZipEntry("dir/"));
+        zos.putNextEntry(new ZipEntry(ENTRY_NAME));
+        zos.write(contentBytes, 0, contentBytes.length);
+        ZipEntry stored = new ZipEntry("stored.txt");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(contentBytes.length);
+        CRC32 crc = new CRC32();
+        crc.update(contentBytes);
+        stored.setCrc(crc.getValue());
+        zos.putNextEntry(stored);
+        zos.write(contentBytes, 0, contentBytes.length);
+        zos.close();
+
+        // Mapped zip files are not subject to the limit.
+        WeakZipFileFactory factory = new WeakZipFileFactory(1, true);
+        WeakZipFile zipFile = factory.create(tmpZip);
+        assertFalse("Mapped zip file recorded.",
+            factory.getZipZiles().contains(zipFile));
+
+        List<ZipEntry> entries = Collections.list(zipFile.entries());
+        assertEquals(3, entries.size());
+        assertEquals("dir/", entries.get(0).getName());
+        assertTrue(zipFile.getEntry("dir").isDirectory());
+        assertNull(zipFile.getEntry("missing.txt"));
+
+        for (String name : new String[] { ENTRY_NAME, "stored.txt" })
+        {
+            ZipEntry ze = zipFile.getEntry(name);
+            assertNotNull("Zip entry not found", ze);
+            assertEquals(contentBytes.length, ze.getSize());
+            byte[] read = new byte[contentBytes.length];
+            InputStream is = zipFile.getInputStream(ze);
+            int total = 0;
+            for (int len; (total < read.length)
+                && ((len = is.read(read, total, read.length - total)) > 0); )
+            {
+                total += len;
+            }
+            assertEquals(contentBytes.length, total);
+            assertEquals(-1, is.read());
+            is.close();
+            assertEquals(new String(contentBytes), new String(read));
+        }
+
+        zipFile.close();
+        try
+        {
+            zipFile.getEntry(ENTRY_NAME);
+            fail("Closed zip file still accessible.");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+    }
+
+    public void testMappedZipFileInvalidLengths() throws IOException
+    {
+        // The name, extra field and comment lengths of the last central
+        // directory header.
+        for (int field : new int[] { 28, 30, 32 })
+        {
+            File tmpZip = File.createTempFile("felix.test", ".zip");
+            tmpZip.deleteOnExit();
+            ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tmpZip));
+            zos.putNextEntry(new ZipEntry("dir/"));
+            zos.putNextEntry(new ZipEntry(ENTRY_NAME));
+            zos.close();
+
+            RandomAccessFile raf = new RandomAccessFile(tmpZip, "rw");
+            try
+            {
+                byte[] bytes = new byte[(int) raf.length()];
+                raf.readFully(bytes);
+                int cen = bytes.length - 4;
+                while ((bytes[cen] != 'P') || (bytes[cen + 1] != 'K')
+                    || (bytes[cen + 2] != 1) || (bytes[cen + 3] != 2))
+                {
+                    cen--;
+                }
+                raf.seek(cen + field);
+                raf.write(new byte[] { (byte) 0xFF, (byte) 0x7F });
+            }
+            finally
+            {
+                raf.close();
+            }
+
+            try
+            {
+                MappedZipFile.open(new SecureAction(), tmpZip);
+                fail("Invalid length at " + field + " not detected.");
+            }
+            catch (ZipException ex)
+            {
+                // Expected.
+            }
+            tmpZip.delete();
+        }
+    }
+}
@@ -49,7 +49,7 @@ class Candidates
     // Maps a capability to requirements that match it.
     private final OpenHashMapSet<Capability, Requirement> m_dependentMap;
     // Maps a requirement to the capability it matches.
-    private final OpenHashMapList m_candidateMap;
+    private final CandidateMap m_candidateMap;
     // Maps a bundle revision to its associated wrapped revision; this only happens
     // when a revision being resolved has fragments to attach to it.
     private final Map<Resource, WrappedResource> m_allWrappedHosts;
@@ -68,7 +68,7 @@ class Candidates
         ResolveSession session,
         AtomicBoolean candidateSelectorsUnmodifiable,
         OpenHashMapSet<Capability, Requirement> dependentMap,
-        OpenHashMapList candidateMap,
+        CandidateMap candidateMap,
         Map<Resource, WrappedResource> wrappedHosts,
         OpenHashMap<Resource, PopulateResult> populateResultCache,
         Map<Capability, Requirement> substitutableMap,
@@ -92,7 +92,7 @@ class Candidates
         m_session = session;
         m_candidateSelectorsUnmodifiable = new AtomicBoolean(false);
         m_dependentMap = new OpenHashMapSet<Capability, Requirement>();
-        m_candidateMap = new OpenHashMapList();
+        m_candidateMap = new CandidateMap();
         m_allWrappedHosts = new HashMap<Resource, WrappedResource>();
         m_populateResultCache = new OpenHashMap<Resource, PopulateResult>();
         m_subtitutableMap = new OpenHashMap<Capability, Requirement>();
@@ -104,6 +104,21 @@ class Candidates
         return m_populateResultCache.size();
     }
 
+    public int getNbRequirements()
+    {
+        return m_candidateMap.size();
+    }
+
+    public int getNbCandidates()
+    {
+        int count = 0;
+        for (Entry<Requirement, CandidateSelector> entry : m_candidateMap.fast())
+        {
+            count += entry.getValue().getRemainingCandidateCount();
+        }
+        return count;
+    }
+
     public Map<Resource, Resource> getRootHosts()
     {
         Map<Resource, Resource> hosts = new LinkedHashMap<Resource, Resource>();
@@ -351,6 +366,9 @@ class Candidates
                     CandidateSelector candidates = m_candidateMap.get(dependent);
                     if (candidates != null)
                     {
+                        // The selector is shared with other permutations,
+                        // so it is copied before the first removal
+                        boolean copied = false;
                         candidates:
                         while (!candidates.isEmpty())
                         {
@@ -368,6 +386,12 @@ class Candidates
                                 case SUBSTITUTED:
                                 default:
                                     // Need to remove any substituted that comes before an exported candidate
+                                    if (!copied)
+                                    {
+                                        candidates = candidates.copy();
+                                        m_candidateMap.put(dependent, candidates);
+                                        copied = true;
+                                    }
                                     candidates.removeCurrentCandidate();
                                     // continue to next candidate
                                     break;
@@ -712,13 +736,18 @@ class Candidates
 
     public void removeFirstCandidate(Requirement req)
     {
-        CandidateSelector candidates = m_candidateMap.get(req);
-        // Remove the conflicting candidate.
+        // The selector is shared with other permutations, so copy it
+        // before removing the conflicting candidate.
+        CandidateSelector candidates = m_candidateMap.get(req).copy();
         Capability cap = candidates.removeCurrentCandidate();
         if (candidates.isEmpty())
         {
             m_candidateMap.remove(req);
         }
+        else
+        {
+            m_candidateMap.put(req, candidates);
+        }
         // Update the delta with the removed capability
         CopyOnWriteSet<Capability> capPath = m_delta.getOrCompute(req);
         capPath.add(cap);
@@ -957,7 +986,7 @@ class Candidates
 
         populateSubstitutables();
 
-        m_candidateMap.trim();
+        m_candidateMap.freeze();
         m_dependentMap.trim();
 
         // mark the selectors as unmodifiable now
@@ -1140,7 +1169,7 @@ class Candidates
                 m_session,
                 m_candidateSelectorsUnmodifiable,
                 m_dependentMap,
-                m_candidateMap.deepClone(),
+                m_candidateMap.copy(),
                 m_allWrappedHosts,
                 m_populateResultCache,
                 m_subtitutableMap,
@@ -1152,7 +1181,7 @@ class Candidates
         // Create set of all revisions from requirements.
         Set<Resource> resources = new CopyOnWriteSet<Resource>();
         for (Entry<Requirement, CandidateSelector> entry
-            : m_candidateMap.entrySet())
+            : m_candidateMap.fast())
         {
             resources.add(entry.getKey().getResource());
         }
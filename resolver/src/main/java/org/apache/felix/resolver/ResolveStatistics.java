@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of a single resolve operation: the time spent in each phase,
+ * the number of candidates considered, the number of candidate permutations
+ * tried and the packages that caused uses constraint violations. The
+ * resolver collects the statistics of a resolve operation if its resolve
+ * context implements {@link ResolveStatisticsListener} and passes them to
+ * the context when the operation completes.
+ */
+public final class ResolveStatistics
+{
+    /**
+     * The phases of a resolve operation.
+     */
+    public enum Phase
+    {
+        /**
+         * Finding and processing the candidates of the requirements of the
+         * resources to resolve.
+         */
+        POPULATE,
+        /**
+         * Attaching fragments to their hosts.
+         */
+        PREPARE,
+        /**
+         * Checking the substitution of exported packages, once for each
+         * candidate permutation.
+         */
+        SUBSTITUTION,
+        /**
+         * Calculating the package spaces of the resources, once for each
+         * candidate permutation.
+         */
+        PACKAGE_SPACES,
+        /**
+         * Checking the package spaces for uses constraint violations, once
+         * for each candidate permutation.
+         */
+        CONSISTENCY,
+        /**
+         * Creating the wires of the consistent candidate permutation.
+         */
+        WIRES
+    }
+
+    private final long m_startTime = System.currentTimeMillis();
+    private final long m_startNanos = System.nanoTime();
+    private final boolean m_dynamic;
+    private final long[] m_phaseNanos = new long[Phase.values().length];
+    private final Map<String, Integer> m_conflicts = new HashMap<String, Integer>();
+    private long m_durationNanos;
+    private int m_resources;
+    private int m_requirements;
+    private int m_candidates;
+    private int m_permutations;
+    private int m_skippedPermutations;
+    private int m_retries;
+    private String m_error;
+
+    ResolveStatistics(boolean dynamic)
+    {
+        m_dynamic = dynamic;
+    }
+
+    void addPhaseTime(Phase phase, long nanos)
+    {
+        m_phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    void setCandidates(int resources, int requirements, int candidates)
+    {
+        m_resources = resources;
+        m_requirements = requirements;
+        m_candidates = candidates;
+    }
+
+    void permutationTried()
+    {
+        m_permutations++;
+    }
+
+    void permutationSkipped()
+    {
+        m_skippedPermutations++;
+    }
+
+    void retried()
+    {
+        m_retries++;
+    }
+
+    void conflict(String pkgName)
+    {
+        Integer count = m_conflicts.get(pkgName);
+        m_conflicts.put(pkgName, (count == null) ? 1 : count + 1);
+    }
+
+    void completed(String error)
+    {
+        m_durationNanos = System.nanoTime() - m_startNanos;
+        m_error = error;
+    }
+
+    /**
+     * Returns the time the resolve operation started, in milliseconds since
+     * the epoch.
+     */
+    public long getStartTime()
+    {
+        return m_startTime;
+    }
+
+    /**
+     * Returns whether the resolve operation resolved a dynamic requirement.
+     */
+    public boolean isDynamic()
+    {
+        return m_dynamic;
+    }
+
+    /**
+     * Returns whether the resolve operation succeeded.
+     */
+    public boolean isSuccessful()
+    {
+        return m_error == null;
+    }
+
+    /**
+     * Returns the message of the error the resolve operation failed with,
+     * or <tt>null</tt> if it succeeded.
+     */
+    public String getError()
+    {
+        return m_error;
+    }
+
+    /**
+     * Returns the duration of the resolve operation in nanoseconds.
+     */
+    public long getDuration()
+    {
+        return m_durationNanos;
+    }
+
+    /**
+     * Returns the time spent in the specified phase in nanoseconds, summed
+     * over all candidate permutations and retries.
+     */
+    public long getDuration(Phase phase)
+    {
+        return m_phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the number of resources whose candidates were populated.
+     */
+    public int getResourceCount()
+    {
+        return m_resources;
+    }
+
+    /**
+     * Returns the number of requirements that have candidates.
+     */
+    public int getRequirementCount()
+    {
+        return m_requirements;
+    }
+
+    /**
+     * Returns the number of candidates of all requirements.
+     */
+    public int getCandidateCount()
+    {
+        return m_candidates;
+    }
+
+    /**
+     * Returns the number of candidate permutations whose consistency was
+     * checked, including the initial one.
+     */
+    public int getPermutationCount()
+    {
+        return m_permutations;
+    }
+
+    /**
+     * Returns the number of candidate permutations that were skipped
+     * because they repeat the choices of a known uses constraint violation.
+     */
+    public int getSkippedPermutationCount()
+    {
+        return m_skippedPermutations;
+    }
+
+    /**
+     * Returns the number of times the resolve operation was retried without
+     * the optional resources that failed to resolve.
+     */
+    public int getRetryCount()
+    {
+        return m_retries;
+    }
+
+    /**
+     * Returns the packages that caused uses constraint violations along
+     * with the number of violations of each, the most conflicting first.
+     */
+    public Map<String, Integer> getConflicts()
+    {
+        List<Map.Entry<String, Integer>> entries =
+            new ArrayList<Map.Entry<String, Integer>>(m_conflicts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>()
+        {
+            public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2)
+            {
+                int c = e2.getValue().compareTo(e1.getValue());
+                return (c != 0) ? c : e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        Map<String, Integer> conflicts = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, Integer> entry : entries)
+        {
+            conflicts.put(entry.getKey(), entry.getValue());
+        }
+        return conflicts;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(m_dynamic ? "Dynamic resolve " : "Resolve ");
+        sb.append(isSuccessful() ? "succeeded" : "failed");
+        sb.append(" in ").append(toMillis(m_durationNanos)).append(" ms (");
+        for (Phase phase : Phase.values())
+        {
+            if (phase.ordinal() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(phase.name().toLowerCase().replace('_', ' ')).append(' ')
+                .append(toMillis(m_phaseNanos[phase.ordinal()])).append(" ms");
+        }
+        sb.append("), ").append(m_resources).append(" resources, ")
+            .append(m_requirements).append(" requirements, ")
+            .append(m_candidates).append(" candidates, ")
+            .append(m_permutations).append(" permutations tried, ")
+            .append(m_skippedPermutations).append(" skipped, ")
+            .append(m_retries).append(" retries");
+        if (!m_conflicts.isEmpty())
+        {
+            sb.append(", conflicts ").append(getConflicts());
+        }
+        return sb.toString();
+    }
+
+    private static String toMillis(long nanos)
+    {
+        return String.valueOf(Math.round(nanos / 1000d) / 1000d);
+    }
+}
@@ -45,6 +45,14 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
+    // Package spaces of resolved resources, kept across resolve operations
+    // in incremental mode; null otherwise.
+    private final ConcurrentMap<Resource, CachedPackages> m_packagesCache;
+
+    private final boolean m_backjumping;
+
+    private final boolean m_permutationMemo;
+
     enum PermutationType {
         USES,
         IMPORT,
@@ -87,12 +95,40 @@ public class ResolverImpl implements Resolver
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
         private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        private final ConcurrentMap<Resource, CachedPackages> m_packagesCache;
+        // Package spaces and consistency results of resources from previous
+        // permutations; they stay valid as long as the candidates of every
+        // resource they depend on are the same.
+        private final Map<Resource, PermutationResult> m_permutationResults = new HashMap<Resource, PermutationResult>();
+        private final boolean m_permutationMemo;
+        // The results that are valid for the current permutation.
+        private final Map<Resource, PermutationResult> m_currentResults = new HashMap<Resource, PermutationResult>();
+        // The resources checked by the current top-level consistency check.
+        private final List<Resource> m_checked = new ArrayList<Resource>();
+        private boolean m_checkedUnverified;
+        // Candidate choices that caused uses constraint violations in
+        // previous permutations; null if backjumping is disabled.
+        private final List<Nogood> m_nogoods;
+        // Statistics of this resolve operation; null unless the resolve
+        // context listens to them.
+        private final ResolveStatistics m_statistics;
         private ResolutionError m_currentError;
 
         ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
+        {
+            this(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates, null, false, true);
+        }
+
+        ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates,
+            ConcurrentMap<Resource, CachedPackages> packagesCache, boolean backjumping, boolean permutationMemo)
         {
             m_resolveContext = resolveContext;
             m_executor = executor;
+            m_packagesCache = packagesCache;
+            m_nogoods = (backjumping && (dynamicHost == null)) ? new ArrayList<Nogood>() : null;
+            m_permutationMemo = permutationMemo && (dynamicHost == null);
+            m_statistics = (resolveContext instanceof ResolveStatisticsListener)
+                ? new ResolveStatistics(dynamicHost != null) : null;
             m_dynamicHost = dynamicHost;
             m_dynamicReq = dynamicReq;
             m_dynamicCandidates = dynamicCandidates;
@@ -120,6 +156,212 @@ public class ResolverImpl implements Resolver
             return m_usesCache;
         }
 
+        ResolveStatistics getStatistics() {
+            return m_statistics;
+        }
+
+        /**
+         * Returns the start time of a phase to pass to {@link #endPhase},
+         * or zero if no statistics are collected.
+         */
+        long startPhase() {
+            return (m_statistics != null) ? System.nanoTime() : 0;
+        }
+
+        void endPhase(ResolveStatistics.Phase phase, long start) {
+            if (m_statistics != null)
+            {
+                m_statistics.addPhaseTime(phase, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Returns the package spaces computed for a previous permutation
+         * that are still valid for the specified wire candidates, which
+         * are those of the current permutation.
+         */
+        Map<Resource, Packages> getPermutationPackages(Map<Resource, List<WireCandidate>> allWireCandidates)
+        {
+            m_currentResults.clear();
+            Map<Resource, Packages> packages = new HashMap<Resource, Packages>();
+            if (!m_permutationMemo)
+            {
+                return packages;
+            }
+            for (Resource resource : allWireCandidates.keySet())
+            {
+                PermutationResult result = m_permutationResults.get(resource);
+                if ((result != null) && result.isValid(allWireCandidates))
+                {
+                    m_currentResults.put(resource, result);
+                    packages.put(resource, result.m_packages);
+                }
+            }
+            return packages;
+        }
+
+        /**
+         * Records the package spaces computed for the current permutation
+         * along with the wire candidates they depend on.
+         */
+        void setPermutationPackages(
+            Collection<Resource> resources, Map<Resource, List<WireCandidate>> allWireCandidates,
+            Map<Resource, Packages> allPackages)
+        {
+            if (!m_permutationMemo)
+            {
+                return;
+            }
+            for (Resource resource : resources)
+            {
+                PermutationResult result = new PermutationResult(
+                    resource, allWireCandidates, allPackages.get(resource));
+                m_permutationResults.put(resource, result);
+                m_currentResults.put(resource, result);
+            }
+        }
+
+        /**
+         * Checks whether the specified resource and all resources it depends
+         * on were found consistent with the same candidates before.
+         */
+        boolean isConsistent(Resource resource)
+        {
+            PermutationResult result = m_currentResults.get(resource);
+            return (result != null) && result.m_consistent;
+        }
+
+        void startConsistencyCheck()
+        {
+            m_checked.clear();
+            m_checkedUnverified = false;
+        }
+
+        void addChecked(Resource resource)
+        {
+            m_checked.add(resource);
+        }
+
+        void addCheckedUnverified()
+        {
+            m_checkedUnverified = true;
+        }
+
+        /**
+         * Ends a top-level consistency check. If it succeeded, every resource
+         * it checked is consistent along with everything it depends on,
+         * unless it relied on resources whose dependencies were not fully
+         * checked by a failed check.
+         * @return the resources checked by a failed check.
+         */
+        List<Resource> endConsistencyCheck(boolean failed)
+        {
+            if (failed)
+            {
+                return m_checked;
+            }
+            if (!m_checkedUnverified)
+            {
+                for (Resource resource : m_checked)
+                {
+                    PermutationResult result = m_currentResults.get(resource);
+                    if (result != null)
+                    {
+                        result.m_consistent = true;
+                    }
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        /**
+         * Records the candidate choices that caused a uses constraint
+         * violation, so later permutations making the same choices are
+         * not checked again.
+         */
+        void addNogood(Nogood nogood)
+        {
+            if ((m_nogoods != null) && (nogood != null))
+            {
+                m_nogoods.add(nogood);
+            }
+        }
+
+        /**
+         * Returns a recorded nogood whose choices are all made by the
+         * specified permutation, along with the requirements through which
+         * the consistency check reaches its resource, or null if the
+         * permutation does not repeat any known conflict.
+         */
+        Nogood findNogood(Candidates allCandidates, Collection<Resource> hosts, Map<Resource, Requirement> reachedBy)
+        {
+            if ((m_nogoods == null) || m_nogoods.isEmpty())
+            {
+                return null;
+            }
+            for (Nogood nogood : m_nogoods)
+            {
+                if (nogood.matches(allCandidates))
+                {
+                    // The conflict only happens again if its resource
+                    // is still checked by this permutation.
+                    if (reachedBy.isEmpty())
+                    {
+                        getCheckedResources(this, allCandidates, hosts, reachedBy);
+                    }
+                    if (reachedBy.containsKey(nogood.m_resource))
+                    {
+                        return nogood;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the cached package space of the specified resource if it
+         * is resolved and its wiring has not changed since it was cached.
+         */
+        CachedPackages getCachedPackages(Resource resource)
+        {
+            if ((m_packagesCache == null) || resource.equals(m_dynamicHost))
+            {
+                return null;
+            }
+            CachedPackages cached = m_packagesCache.get(resource);
+            if ((cached != null)
+                && (cached.m_wiring != m_resolveContext.getWirings().get(resource)))
+            {
+                m_packagesCache.remove(resource, cached);
+                cached = null;
+            }
+            return cached;
+        }
+
+        /**
+         * Caches the package space of the specified resource if it is
+         * resolved; the package space of a resolved resource only depends
+         * on its wiring and the wirings of its providers, which are fixed.
+         */
+        void cachePackages(Resource resource, Packages packages, List<WireCandidate> wireCandidates)
+        {
+            if ((m_packagesCache == null) || resource.equals(m_dynamicHost))
+            {
+                return;
+            }
+            Wiring wiring = m_resolveContext.getWirings().get(resource);
+            if (wiring != null)
+            {
+                Set<Resource> providers = new LinkedHashSet<Resource>();
+                for (WireCandidate w : wireCandidates)
+                {
+                    providers.add(w.capability.getResource());
+                }
+                m_packagesCache.put(resource, new CachedPackages(
+                    wiring, packages, providers.toArray(new Resource[providers.size()])));
+            }
+        }
+
         void permutateIfNeeded(PermutationType type, Requirement req, Candidates permutation) {
             List<Capability> candidates = permutation.getCandidates(req);
             if ((candidates != null) && (candidates.size() > 1))
@@ -213,6 +455,10 @@ public class ResolverImpl implements Resolver
             m_multipleCardCandidates = null;
             m_processedDeltas.clear();
             m_currentError = null;
+            if (m_nogoods != null)
+            {
+                m_nogoods.clear();
+            }
         }
 
         boolean checkMultiple(
@@ -315,13 +561,69 @@ public class ResolverImpl implements Resolver
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_packagesCache = null;
+        this.m_backjumping = false;
+        this.m_permutationMemo = true;
     }
 
     public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, false);
+    }
+
+    /**
+     * Creates a resolver. In incremental mode, the package spaces of
+     * resolved resources are kept across resolve operations as long as
+     * their wirings do not change, so a resolve operation mostly costs
+     * what the resources being resolved add to the existing wiring.
+     * @param logger the logger.
+     * @param executor the executor used to compute package spaces.
+     * @param incremental whether to use incremental mode.
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental)
+    {
+        this(logger, executor, incremental, false);
+    }
+
+    /**
+     * Creates a resolver. With backjumping, each uses constraint violation
+     * is recorded as the set of candidate choices that caused it, and
+     * queued permutations that make all of these choices again are not
+     * checked; only their permutations changing one of the blamed choices
+     * are queued instead.
+     * @param logger the logger.
+     * @param executor the executor used to compute package spaces.
+     * @param incremental whether to use incremental mode.
+     * @param backjumping whether to skip permutations repeating known conflicts.
+     */
+    public ResolverImpl(Logger logger, Executor executor, boolean incremental, boolean backjumping)
+    {
+        this(logger, executor, incremental, backjumping, true);
+    }
+
+    /**
+     * Creates a resolver. With the permutation memo, which is always used
+     * by the public constructors, the package spaces and consistency
+     * results of resources are reused by later candidate permutations of
+     * the same resolve operation as long as the wire candidates of every
+     * resource they depend on are the same. Turning it off is only meant
+     * for tests comparing the results with and without it.
+     * @param logger the logger.
+     * @param executor the executor used to compute package spaces.
+     * @param incremental whether to use incremental mode.
+     * @param backjumping whether to skip permutations repeating known conflicts.
+     * @param permutationMemo whether to reuse results across permutations.
+     */
+    ResolverImpl(Logger logger, Executor executor, boolean incremental, boolean backjumping,
+        boolean permutationMemo)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_packagesCache = incremental
+            ? new ConcurrentHashMap<Resource, CachedPackages>() : null;
+        this.m_backjumping = backjumping;
+        this.m_permutationMemo = permutationMemo;
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
@@ -373,95 +675,164 @@ public class ResolverImpl implements Resolver
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor) throws ResolutionException
     {
-        ResolveSession session = new ResolveSession(rc, executor, null, null, null);
+        pruneCachedPackages(rc);
+        ResolveSession session = new ResolveSession(
+            rc, executor, null, null, null, m_packagesCache, m_backjumping, m_permutationMemo);
         return doResolve(session);
     }
 
+    /**
+     * Removes the cached package spaces of resources that are no longer
+     * resolved or whose wiring changed, so they do not keep stale
+     * resources alive.
+     */
+    private void pruneCachedPackages(ResolveContext rc)
+    {
+        if (m_packagesCache != null)
+        {
+            Map<Resource, Wiring> wirings = rc.getWirings();
+            for (Iterator<Map.Entry<Resource, CachedPackages>> it =
+                m_packagesCache.entrySet().iterator(); it.hasNext(); )
+            {
+                Map.Entry<Resource, CachedPackages> entry = it.next();
+                if (entry.getValue().m_wiring != wirings.get(entry.getKey()))
+                {
+                    it.remove();
+                }
+            }
+        }
+    }
+
     private Map<Resource, List<Wire>> doResolve(ResolveSession session) throws ResolutionException {
         Map<Resource, List<Wire>> wireMap = new HashMap<Resource, List<Wire>>();
 
-        boolean retry;
-        do
+        String error = null;
+        try
         {
-            retry = false;
-            try
+            boolean retry;
+            do
             {
-                getInitialCandidates(session);
-                if (session.getCurrentError() != null) {
-                    throw session.getCurrentError().toException();
-                }
+                retry = false;
+                try
+                {
+                    getInitialCandidates(session);
+                    if (session.getCurrentError() != null) {
+                        throw session.getCurrentError().toException();
+                    }
 
-                Map<Resource, ResolutionError> faultyResources = new HashMap<Resource, ResolutionError>();
-                Candidates allCandidates = findValidCandidates(session, faultyResources);
+                    Map<Resource, ResolutionError> faultyResources = new HashMap<Resource, ResolutionError>();
+                    Candidates allCandidates = findValidCandidates(session, faultyResources);
 
-                // If there is a resolve exception, then determine if an
-                // optionally resolved resource is to blame (typically a fragment).
-                // If so, then remove the optionally resolved resolved and try
-                // again; otherwise, m_currentError the resolve exception.
-                if (session.getCurrentError() != null)
-                {
-                    Set<Resource> resourceKeys = faultyResources.keySet();
-                    retry = (session.getOptionalResources().removeAll(resourceKeys));
-                    for (Resource faultyResource : resourceKeys)
+                    // If there is a resolve exception, then determine if an
+                    // optionally resolved resource is to blame (typically a fragment).
+                    // If so, then remove the optionally resolved resolved and try
+                    // again; otherwise, m_currentError the resolve exception.
+                    if (session.getCurrentError() != null)
                     {
-                        if (session.invalidateOnDemandResource(faultyResource))
+                        Set<Resource> resourceKeys = faultyResources.keySet();
+                        retry = (session.getOptionalResources().removeAll(resourceKeys));
+                        for (Resource faultyResource : resourceKeys)
                         {
-                            retry = true;
+                            if (session.invalidateOnDemandResource(faultyResource))
+                            {
+                                retry = true;
+                            }
+                        }
+                        // log all the resolution exceptions for the uses constraint violations
+                        for (Map.Entry<Resource, ResolutionError> usesError : faultyResources.entrySet())
+                        {
+                            m_logger.logUsesConstraintViolation(usesError.getKey(), usesError.getValue());
+                        }
+                        if (!retry)
+                        {
+                            throw session.getCurrentError().toException();
+                        }
+                        if (session.getStatistics() != null)
+                        {
+                            session.getStatistics().retried();
                         }
                     }
-                    // log all the resolution exceptions for the uses constraint violations
-                    for (Map.Entry<Resource, ResolutionError> usesError : faultyResources.entrySet())
-                    {
-                        m_logger.logUsesConstraintViolation(usesError.getKey(), usesError.getValue());
-                    }
-                    if (!retry)
-                    {
-                        throw session.getCurrentError().toException();
-                    }
-                }
-                // If there is no exception to m_currentError, then this was a clean
-                // resolve, so populate the wire map.
-                else
-                {
-                    if (session.getMultipleCardCandidates() != null)
-                    {
-                        // Candidates for multiple cardinality requirements were
-                        // removed in order to provide a consistent class space.
-                        // Use the consistent permutation
-                        allCandidates = session.getMultipleCardCandidates();
-                    }
-                    if (session.isDynamic() )
-                    {
-                        wireMap = populateDynamicWireMap(session.getContext(),
-                            session.getDynamicHost(), session.getDynamicRequirement(),
-                            wireMap, allCandidates);
-                    }
+                    // If there is no exception to m_currentError, then this was a clean
+                    // resolve, so populate the wire map.
                     else
                     {
-                        for (Resource resource : allCandidates.getRootHosts().keySet())
+                        long start = session.startPhase();
+                        if (session.getMultipleCardCandidates() != null)
+                        {
+                            // Candidates for multiple cardinality requirements were
+                            // removed in order to provide a consistent class space.
+                            // Use the consistent permutation
+                            allCandidates = session.getMultipleCardCandidates();
+                        }
+                        if (session.isDynamic() )
+                        {
+                            wireMap = populateDynamicWireMap(session.getContext(),
+                                session.getDynamicHost(), session.getDynamicRequirement(),
+                                wireMap, allCandidates);
+                        }
+                        else
                         {
-                            if (allCandidates.isPopulated(resource))
+                            for (Resource resource : allCandidates.getRootHosts().keySet())
                             {
-                                wireMap =
-                                    populateWireMap(
-                                        session.getContext(), allCandidates.getWrappedHost(resource),
-                                        wireMap, allCandidates);
+                                if (allCandidates.isPopulated(resource))
+                                {
+                                    wireMap =
+                                        populateWireMap(
+                                            session.getContext(), allCandidates.getWrappedHost(resource),
+                                            wireMap, allCandidates);
+                                }
                             }
                         }
+                        session.endPhase(ResolveStatistics.Phase.WIRES, start);
                     }
                 }
+                finally
+                {
+                    // Always clear the state.
+                    session.clearPermutations();
+                }
             }
-            finally
-            {
-                // Always clear the state.
-                session.clearPermutations();
-            }
+            while (retry);
+        }
+        catch (ResolutionException ex)
+        {
+            error = ex.getMessage();
+            throw ex;
+        }
+        catch (RuntimeException ex)
+        {
+            error = ex.toString();
+            throw ex;
+        }
+        finally
+        {
+            reportStatistics(session, error);
         }
-        while (retry);
 
         return wireMap;
     }
 
+    /**
+     * Completes the statistics of the specified resolve session, if any,
+     * and passes them to its resolve context.
+     */
+    private void reportStatistics(ResolveSession session, String error)
+    {
+        ResolveStatistics statistics = session.getStatistics();
+        if (statistics != null)
+        {
+            statistics.completed(error);
+            try
+            {
+                ((ResolveStatisticsListener) session.getContext()).resolveCompleted(statistics);
+            }
+            catch (Throwable t)
+            {
+                m_logger.log(Logger.LOG_WARNING, "Unable to report resolve statistics.", t);
+            }
+        }
+    }
+
     private void getInitialCandidates(ResolveSession session) {
         // Create object to hold all candidates.
         Candidates initialCandidates;
@@ -469,7 +840,9 @@ public class ResolverImpl implements Resolver
             // Create all candidates pre-populated with the single candidate set
             // for the resolving dynamic import of the host.
             initialCandidates = new Candidates(session);
+            long start = session.startPhase();
             ResolutionError prepareError = initialCandidates.populateDynamic();
+            session.endPhase(ResolveStatistics.Phase.POPULATE, start);
             if (prepareError != null) {
                 session.setCurrentError(prepareError);
                 return;
@@ -497,11 +870,20 @@ public class ResolverImpl implements Resolver
             }
 
             initialCandidates = new Candidates(session);
+            long start = session.startPhase();
             initialCandidates.populate(toPopulate);
+            session.endPhase(ResolveStatistics.Phase.POPULATE, start);
         }
 
         // Merge any fragments into hosts.
+        long start = session.startPhase();
         ResolutionError prepareError = initialCandidates.prepare();
+        session.endPhase(ResolveStatistics.Phase.PREPARE, start);
+        if (session.getStatistics() != null)
+        {
+            session.getStatistics().setCandidates(initialCandidates.getNbResources(),
+                initialCandidates.getNbRequirements(), initialCandidates.getNbCandidates());
+        }
         if (prepareError != null)
         {
             session.setCurrentError(prepareError);
@@ -526,6 +908,11 @@ public class ResolverImpl implements Resolver
 
 //allCandidates.dump();
 
+            if (session.getStatistics() != null)
+            {
+                session.getStatistics().permutationTried();
+            }
+
             Map<Resource, ResolutionError> currentFaultyResources = new HashMap<Resource, ResolutionError>();
 
             session.setCurrentError(
@@ -561,24 +948,54 @@ public class ResolverImpl implements Resolver
         Candidates allCandidates,
         Map<Resource, ResolutionError> currentFaultyResources)
     {
+        long start = session.startPhase();
         ResolutionError rethrow = allCandidates.checkSubstitutes();
+        session.endPhase(ResolveStatistics.Phase.SUBSTITUTION, start);
         if (rethrow != null)
         {
             return rethrow;
         }
         Map<Resource, Resource> allhosts = allCandidates.getRootHosts();
+        // Skip the permutation if it repeats the choices of a known conflict
+        Map<Resource, Requirement> reachedBy = new HashMap<Resource, Requirement>();
+        Nogood nogood = session.findNogood(allCandidates, allhosts.values(), reachedBy);
+        if (nogood != null)
+        {
+            permuteNogood(session, allCandidates, nogood, reachedBy);
+            if (session.getStatistics() != null)
+            {
+                session.getStatistics().permutationSkipped();
+            }
+            if (m_logger.isDebugEnabled())
+            {
+                m_logger.debug("Candidate permutation skipped because it repeats the "
+                        + "choices of a previous conflict; will try another if possible."
+                        + " (" + nogood.m_error.getMessage() + ")");
+            }
+            return nogood.m_error;
+        }
         // Calculate package spaces
+        start = session.startPhase();
         Map<Resource, Packages> resourcePkgMap =
             calculatePackageSpaces(session, allCandidates, allhosts.values());
+        session.endPhase(ResolveStatistics.Phase.PACKAGE_SPACES, start);
+        start = session.startPhase();
         ResolutionError error = null;
         // Check package consistency
         Map<Resource, Object> resultCache =
                 new OpenHashMap<Resource, Object>(resourcePkgMap.size());
         for (Entry<Resource, Resource> entry : allhosts.entrySet())
         {
+            session.startConsistencyCheck();
             rethrow = checkPackageSpaceConsistency(
                     session, entry.getValue(),
                     allCandidates, session.isDynamic(), resourcePkgMap, resultCache);
+            // Resources checked by a failed check may not have had all
+            // their dependencies checked.
+            for (Resource resource : session.endConsistencyCheck(rethrow != null))
+            {
+                resultCache.put(resource, UNVERIFIED);
+            }
             if (rethrow != null)
             {
                 Resource faultyResource = entry.getKey();
@@ -595,8 +1012,13 @@ public class ResolverImpl implements Resolver
                 }
                 currentFaultyResources.put(faultyResource, rethrow);
                 error = rethrow;
+                if ((session.getStatistics() != null) && (rethrow instanceof UseConstraintError))
+                {
+                    session.getStatistics().conflict(((UseConstraintError) rethrow).m_pkgName);
+                }
             }
         }
+        session.endPhase(ResolveStatistics.Phase.CONSISTENCY, start);
         return error;
     }
 
@@ -647,7 +1069,7 @@ public class ResolverImpl implements Resolver
                         "Matching candidate does not provide a package name.");
                 }
             }
-            ResolveSession session = new ResolveSession(rc,  new DumbExecutor(), host, dynamicReq, matches);
+            ResolveSession session = new ResolveSession(rc,  new DumbExecutor(), host, dynamicReq, matches, m_packagesCache, false, false);
             return doResolve(session);
         }
 
@@ -1105,8 +1527,10 @@ public class ResolverImpl implements Resolver
     {
         final EnhancedExecutor executor = new EnhancedExecutor(session.getExecutor());
 
-        // Parallel compute wire candidates
+        // Parallel compute wire candidates; resolved resources with a cached
+        // package space are only visited to reach their providers.
         final Map<Resource, List<WireCandidate>> allWireCandidates = new ConcurrentHashMap<Resource, List<WireCandidate>>();
+        final Map<Resource, Packages> cachedPackages = new ConcurrentHashMap<Resource, Packages>();
         {
             final ConcurrentMap<Resource, Runnable> tasks = new ConcurrentHashMap<Resource, Runnable>(allCandidates.getNbResources());
             class Computer implements Runnable
@@ -1118,18 +1542,31 @@ public class ResolverImpl implements Resolver
                 }
                 public void run()
                 {
+                    CachedPackages cached = session.getCachedPackages(resource);
+                    if (cached != null)
+                    {
+                        cachedPackages.put(resource, cached.m_packages);
+                        for (Resource u : cached.m_providers)
+                        {
+                            visit(u);
+                        }
+                        return;
+                    }
                     List<WireCandidate> wireCandidates = getWireCandidates(session, allCandidates, resource);
                     allWireCandidates.put(resource, wireCandidates);
                     for (WireCandidate w : wireCandidates)
                     {
-                        Resource u = w.capability.getResource();
-                        if (!tasks.containsKey(u))
+                        visit(w.capability.getResource());
+                    }
+                }
+                private void visit(Resource u)
+                {
+                    if (!tasks.containsKey(u))
+                    {
+                        Computer c = new Computer(u);
+                        if (tasks.putIfAbsent(u, c) == null)
                         {
-                            Computer c = new Computer(u);
-                            if (tasks.putIfAbsent(u, c) == null)
-                            {
-                                executor.execute(c);
-                            }
+                            executor.execute(c);
                         }
                     }
                 }
@@ -1141,9 +1578,23 @@ public class ResolverImpl implements Resolver
             executor.await();
         }
 
+        // Reuse the package spaces of resources whose dependencies have the
+        // same candidates as in a previous permutation.
+        Map<Resource, Packages> permutationPackages = session.getPermutationPackages(allWireCandidates);
+        List<Resource> resources = new ArrayList<Resource>(allWireCandidates.size());
+        for (Resource resource : allWireCandidates.keySet())
+        {
+            if (!permutationPackages.containsKey(resource))
+            {
+                resources.add(resource);
+            }
+        }
+
         // Parallel get all exported packages
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
-        for (final Resource resource : allWireCandidates.keySet())
+        allPackages.putAll(cachedPackages);
+        allPackages.putAll(permutationPackages);
+        for (final Resource resource : resources)
         {
             final Packages packages = new Packages(resource);
             allPackages.put(resource, packages);
@@ -1159,7 +1610,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute package lists
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : resources)
         {
             executor.execute(new Runnable()
             {
@@ -1175,10 +1626,9 @@ public class ResolverImpl implements Resolver
         // First, sequentially compute packages for resources
         // that have required packages, so that all recursive
         // calls can be done without threading problems
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (Resource resource : resources)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (!packages.m_requiredPkgs.isEmpty())
             {
                 getPackageSourcesInternal(session, allPackages, resource, packages);
@@ -1186,10 +1636,9 @@ public class ResolverImpl implements Resolver
         }
         // Next, for all remaining resources, we can compute them
         // in parallel, as they won't refer to other resource packages
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (final Resource resource : resources)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (packages.m_sources.isEmpty())
             {
                 executor.execute(new Runnable()
@@ -1204,7 +1653,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute uses
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : resources)
         {
             executor.execute(new Runnable()
             {
@@ -1216,6 +1665,15 @@ public class ResolverImpl implements Resolver
         }
         executor.await();
 
+        // Keep the package spaces for later permutations and the package
+        // spaces of resolved resources for later resolve operations.
+        session.setPermutationPackages(resources, allWireCandidates, allPackages);
+        for (Resource resource : resources)
+        {
+            session.cachePackages(
+                resource, allPackages.get(resource), allWireCandidates.get(resource));
+        }
+
         return allPackages;
     }
 
@@ -1284,8 +1742,16 @@ public class ResolverImpl implements Resolver
         Object cache = resultCache.get(resource);
         if (cache != null)
         {
+            if (cache == UNVERIFIED)
+            {
+                session.addCheckedUnverified();
+            }
             return cache instanceof ResolutionError ? (ResolutionError) cache : null;
         }
+        if (session.isConsistent(resource))
+        {
+            return null;
+        }
 
         Packages pkgs = resourcePkgMap.get(resource);
 
@@ -1367,6 +1833,8 @@ public class ResolverImpl implements Resolver
 
             if (rethrow != null)
             {
+                session.addNogood(createNogood(
+                    session, allCandidates, resource, (UseConstraintError) rethrow));
                 if (!mutated.isEmpty())
                 {
                     session.addPermutation(PermutationType.USES, permRef1.get());
@@ -1429,6 +1897,13 @@ public class ResolverImpl implements Resolver
                 // for the conflicting uses constraint.
                 if (rethrow != null)
                 {
+                    // With split packages, the conflict also depends on the
+                    // other requirements bringing in the package.
+                    if (requirementBlames.size() == 1)
+                    {
+                        session.addNogood(createNogood(
+                            session, allCandidates, resource, (UseConstraintError) rethrow));
+                    }
                     // Add uses permutation if we m_mutated any candidates.
                     if (!mutated.isEmpty())
                     {
@@ -1465,6 +1940,7 @@ public class ResolverImpl implements Resolver
         }
 
         resultCache.put(resource, Boolean.TRUE);
+        session.addChecked(resource);
 
         // Now check the consistency of all resources on which the
         // current resource depends. Keep track of the current number
@@ -1592,6 +2068,160 @@ public class ResolverImpl implements Resolver
         return false;
     }
 
+    /**
+     * Queues the permutations that the consistency check would have queued
+     * for the conflict of the specified nogood, which change one of the
+     * candidates blamed for it.
+     */
+    private void permuteNogood(ResolveSession session, Candidates allCandidates,
+        Nogood nogood, Map<Resource, Requirement> reachedBy)
+    {
+        long permCount = session.getPermutationCount();
+        Set<Requirement> mutated = new HashSet<Requirement>();
+        List<Requirement> usedReqs = nogood.m_usedBlame.m_reqs;
+        Candidates perm1 = allCandidates.copy();
+        for (int reqIdx = usedReqs.size() - 1; reqIdx >= 0; reqIdx--)
+        {
+            if (permuteUsedBlameRequirement(usedReqs.get(reqIdx), mutated, perm1))
+            {
+                break;
+            }
+        }
+        Candidates perm2 = allCandidates.copy();
+        for (int reqIdx = 0; reqIdx < usedReqs.size(); reqIdx++)
+        {
+            if (permuteUsedBlameRequirement(usedReqs.get(reqIdx), mutated, perm2))
+            {
+                break;
+            }
+        }
+        if (!mutated.isEmpty())
+        {
+            session.addPermutation(PermutationType.USES, perm1);
+            session.addPermutation(PermutationType.USES, perm2);
+        }
+        if (nogood.m_requirementBlame != null)
+        {
+            Requirement req = nogood.m_requirementBlame.m_reqs.get(0);
+            if (!mutated.contains(req))
+            {
+                session.permutateIfNeeded(PermutationType.IMPORT, req, allCandidates);
+            }
+        }
+        // Like the consistency check, backtrack on the requirements through
+        // which the resource was reached if nothing else can be permuted.
+        Resource resource = nogood.m_resource;
+        while (permCount == session.getPermutationCount())
+        {
+            Requirement req = reachedBy.get(resource);
+            if (req == null)
+            {
+                break;
+            }
+            session.addPermutation(PermutationType.IMPORT, allCandidates.permutate(req));
+            resource = req.getResource();
+        }
+    }
+
+    /**
+     * Returns the resources the consistency check of the specified
+     * permutation visits, mapped to the requirement through which each
+     * of them is first reached, or to null for the hosts.
+     */
+    private static void getCheckedResources(ResolveSession session,
+        Candidates allCandidates, Collection<Resource> hosts, Map<Resource, Requirement> reachedBy)
+    {
+        Map<Resource, Wiring> wirings = session.getContext().getWirings();
+        LinkedList<Resource> toVisit = new LinkedList<Resource>();
+        for (Resource host : hosts)
+        {
+            if (!wirings.containsKey(host) && !reachedBy.containsKey(host))
+            {
+                reachedBy.put(host, null);
+                toVisit.add(host);
+            }
+        }
+        while (!toVisit.isEmpty())
+        {
+            Resource resource = toVisit.removeFirst();
+            for (Requirement req : resource.getRequirements(null))
+            {
+                Capability cap = allCandidates.getFirstCandidate(req);
+                if (cap != null)
+                {
+                    Resource provider = cap.getResource();
+                    if (!wirings.containsKey(provider) && !reachedBy.containsKey(provider))
+                    {
+                        reachedBy.put(provider, req);
+                        toVisit.add(provider);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the nogood of a uses constraint violation found in the package
+     * space of the specified resource. The nogood holds every candidate
+     * choice of the resources involved in the conflict: the package spaces
+     * of these resources, and so the dependency chains of the conflict, only
+     * depend on these choices. Returns null if the conflict may depend on
+     * other choices, which is the case when an involved resource requires
+     * bundles, has multiple cardinality requirements or hosts fragments.
+     */
+    private static Nogood createNogood(ResolveSession session,
+        Candidates allCandidates, Resource resource, UseConstraintError error)
+    {
+        Map<Resource, Wiring> wirings = session.getContext().getWirings();
+        Set<Resource> involved = new LinkedHashSet<Resource>();
+        involved.add(resource);
+        for (Blame blame : new Blame[] { error.m_blame1, error.m_blame2 })
+        {
+            if (blame == null)
+            {
+                continue;
+            }
+            involved.add(blame.m_cap.getResource());
+            for (Requirement req : blame.m_reqs)
+            {
+                involved.add(req.getResource());
+                Capability cap = allCandidates.getFirstCandidate(req);
+                if (cap != null)
+                {
+                    involved.add(cap.getResource());
+                }
+            }
+        }
+        List<Requirement> reqs = new ArrayList<Requirement>();
+        List<Capability> caps = new ArrayList<Capability>();
+        for (Resource r : involved)
+        {
+            if (wirings.containsKey(r))
+            {
+                continue;
+            }
+            if ((r instanceof WrappedResource) || Util.isFragment(r))
+            {
+                return null;
+            }
+            for (Requirement req : r.getRequirements(null))
+            {
+                if (req.getNamespace().equals(BundleNamespace.BUNDLE_NAMESPACE)
+                    || Util.isMultiple(req))
+                {
+                    return null;
+                }
+                reqs.add(req);
+                caps.add(allCandidates.getFirstCandidate(req));
+            }
+        }
+        Blame requirementBlame = (error.m_blame2 != null) ? error.m_blame1 : null;
+        Blame usedBlame = (error.m_blame2 != null) ? error.m_blame2 : error.m_blame1;
+        return new Nogood(resource, requirementBlame, usedBlame,
+            reqs.toArray(new Requirement[reqs.size()]),
+            caps.toArray(new Capability[caps.size()]), error);
+    }
+
     private static OpenHashMap<String, Blame> calculateExportedPackages(
             ResolveSession session,
             Candidates allCandidates,
@@ -2115,6 +2745,142 @@ public class ResolverImpl implements Resolver
             this.requirement = requirement;
             this.capability = capability;
         }
+
+        public static boolean equals(List<WireCandidate> l1, List<WireCandidate> l2)
+        {
+            if (l1 == l2)
+            {
+                return true;
+            }
+            if (l1.size() != l2.size())
+            {
+                return false;
+            }
+            for (int i = 0; i < l1.size(); i++)
+            {
+                WireCandidate w1 = l1.get(i);
+                WireCandidate w2 = l2.get(i);
+                if (!w1.requirement.equals(w2.requirement)
+                    || ((w1.capability != w2.capability)
+                        && ((w1.capability == null) || !w1.capability.equals(w2.capability))))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Marks resources that passed their own consistency check during a
+    // failed check of another resource.
+    private static final Object UNVERIFIED = new Object();
+
+    /**
+     * The package space and consistency of a resource for a permutation,
+     * along with the wire candidates of every resource it depends on.
+     */
+    private static final class PermutationResult
+    {
+        public final Resource[] m_resources;
+        public final List<WireCandidate>[] m_wireCandidates;
+        public final Packages m_packages;
+        public boolean m_consistent;
+
+        @SuppressWarnings("unchecked")
+        public PermutationResult(
+            Resource resource, Map<Resource, List<WireCandidate>> allWireCandidates,
+            Packages packages)
+        {
+            List<Resource> resources = new ArrayList<Resource>();
+            Set<Resource> visited = new HashSet<Resource>();
+            resources.add(resource);
+            visited.add(resource);
+            for (int i = 0; i < resources.size(); i++)
+            {
+                for (WireCandidate w : allWireCandidates.get(resources.get(i)))
+                {
+                    Resource provider = w.capability.getResource();
+                    if (allWireCandidates.containsKey(provider) && visited.add(provider))
+                    {
+                        resources.add(provider);
+                    }
+                }
+            }
+            m_resources = resources.toArray(new Resource[resources.size()]);
+            m_wireCandidates = new List[m_resources.length];
+            for (int i = 0; i < m_resources.length; i++)
+            {
+                m_wireCandidates[i] = allWireCandidates.get(m_resources[i]);
+            }
+            m_packages = packages;
+        }
+
+        public boolean isValid(Map<Resource, List<WireCandidate>> allWireCandidates)
+        {
+            for (int i = 0; i < m_resources.length; i++)
+            {
+                List<WireCandidate> current = allWireCandidates.get(m_resources[i]);
+                if ((current == null) || !WireCandidate.equals(current, m_wireCandidates[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The candidate choices that caused a uses constraint violation, along
+     * with the blames of the violation. Any permutation making all of these
+     * choices violates the constraint again, as long as the consistency
+     * check reaches the resource.
+     */
+    private static final class Nogood
+    {
+        final Resource m_resource;
+        final Blame m_requirementBlame;
+        final Blame m_usedBlame;
+        final Requirement[] m_reqs;
+        final Capability[] m_caps;
+        final ResolutionError m_error;
+
+        Nogood(Resource resource, Blame requirementBlame, Blame usedBlame,
+            Requirement[] reqs, Capability[] caps, ResolutionError error)
+        {
+            m_resource = resource;
+            m_requirementBlame = requirementBlame;
+            m_usedBlame = usedBlame;
+            m_reqs = reqs;
+            m_caps = caps;
+            m_error = error;
+        }
+
+        boolean matches(Candidates allCandidates)
+        {
+            for (int i = 0; i < m_reqs.length; i++)
+            {
+                Capability cap = allCandidates.getFirstCandidate(m_reqs[i]);
+                if ((cap == null) ? (m_caps[i] != null) : !cap.equals(m_caps[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class CachedPackages
+    {
+        public final Wiring m_wiring;
+        public final Packages m_packages;
+        public final Resource[] m_providers;
+
+        public CachedPackages(Wiring wiring, Packages packages, Resource[] providers)
+        {
+            m_wiring = wiring;
+            m_packages = packages;
+            m_providers = providers;
+        }
     }
 
     public static class Packages
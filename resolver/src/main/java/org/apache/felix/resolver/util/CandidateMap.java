@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.resource.Requirement;
+
+/**
+ * Maps requirements to their candidates. While candidates are populated,
+ * this is a plain hash map. Once the map is frozen, the set of requirements
+ * no longer changes: each requirement gets an integer id, and the selectors
+ * move into a persistent trie indexed by id that copies share. Copying a
+ * frozen map takes constant time, and changing one of its entries only
+ * copies the path to that entry.
+ * <p>
+ * The selectors of a frozen map must not be modified in place; they are
+ * shared with the copies of the map, so they must be copied and put back.
+ */
+public class CandidateMap {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    // The entries until the map is frozen.
+    private OpenHashMapList m_map;
+    // The ids of the requirements once the map is frozen; shared by all copies.
+    private Index m_index;
+    private Node m_root;
+    private int m_shift;
+    private int m_size;
+    // Nodes created by this map, which it may modify in place.
+    private Object m_owner;
+
+    public CandidateMap() {
+        m_map = new OpenHashMapList();
+    }
+
+    private CandidateMap(CandidateMap map) {
+        if (map.m_map != null) {
+            m_map = map.m_map.deepClone();
+        } else {
+            m_index = map.m_index;
+            m_root = map.m_root;
+            m_shift = map.m_shift;
+            m_size = map.m_size;
+            m_owner = new Object();
+            // Both maps now share the nodes
+            map.m_owner = new Object();
+        }
+    }
+
+    /**
+     * Returns a copy of this map; the copy of a frozen map shares its nodes.
+     */
+    public CandidateMap copy() {
+        return new CandidateMap(this);
+    }
+
+    /**
+     * Assigns the ids of the requirements and moves the selectors into the
+     * trie. No requirement can be added to the map afterwards.
+     */
+    public void freeze() {
+        if (m_map == null) {
+            return;
+        }
+        Requirement[] keys = new Requirement[m_map.size()];
+        int id = 0;
+        for (Map.Entry<Requirement, CandidateSelector> entry : m_map.fast()) {
+            keys[id++] = entry.getKey();
+        }
+        m_index = new Index(keys);
+        m_shift = 0;
+        while ((WIDTH << m_shift) < keys.length) {
+            m_shift += BITS;
+        }
+        m_owner = new Object();
+        m_root = new Node(m_owner);
+        m_size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            set(i, m_map.get(keys[i]));
+        }
+        m_map = null;
+    }
+
+    public int size() {
+        return (m_map != null) ? m_map.size() : m_size;
+    }
+
+    public CandidateSelector get(Requirement req) {
+        if (m_map != null) {
+            return m_map.get(req);
+        }
+        int id = m_index.getId(req);
+        if (id < 0) {
+            return null;
+        }
+        Node node = m_root;
+        for (int shift = m_shift; shift > 0; shift -= BITS) {
+            node = (Node) node.slots[(id >>> shift) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (CandidateSelector) node.slots[id & MASK];
+    }
+
+    public CandidateSelector put(Requirement req, CandidateSelector candidates) {
+        if (m_map != null) {
+            return m_map.put(req, candidates);
+        }
+        int id = m_index.getId(req);
+        if (id < 0) {
+            throw new IllegalStateException("Requirement added after candidates have been prepared: " + req);
+        }
+        return set(id, candidates);
+    }
+
+    public CandidateSelector remove(Requirement req) {
+        if (m_map != null) {
+            return m_map.remove(req);
+        }
+        int id = m_index.getId(req);
+        return (id >= 0) ? set(id, null) : null;
+    }
+
+    public void trim() {
+        if (m_map != null) {
+            m_map.trim();
+        }
+    }
+
+    /**
+     * Returns the entries of this map; they are a snapshot if the map is
+     * frozen.
+     */
+    public Iterable<Map.Entry<Requirement, CandidateSelector>> fast() {
+        if (m_map != null) {
+            return m_map.fast();
+        }
+        List<Map.Entry<Requirement, CandidateSelector>> entries =
+                new ArrayList<Map.Entry<Requirement, CandidateSelector>>(m_size);
+        for (int id = 0; id < m_index.m_keys.length; id++) {
+            CandidateSelector candidates = get(m_index.m_keys[id]);
+            if (candidates != null) {
+                entries.add(new Entry(m_index.m_keys[id], candidates));
+            }
+        }
+        return entries;
+    }
+
+    private CandidateSelector set(int id, CandidateSelector candidates) {
+        Node node = m_root = editable(m_root);
+        for (int shift = m_shift; shift > 0; shift -= BITS) {
+            int i = (id >>> shift) & MASK;
+            Node child = editable((Node) node.slots[i]);
+            node.slots[i] = child;
+            node = child;
+        }
+        CandidateSelector old = (CandidateSelector) node.slots[id & MASK];
+        node.slots[id & MASK] = candidates;
+        if (old == null && candidates != null) {
+            m_size++;
+        } else if (old != null && candidates == null) {
+            m_size--;
+        }
+        return old;
+    }
+
+    private Node editable(Node node) {
+        if (node == null) {
+            return new Node(m_owner);
+        }
+        return (node.owner == m_owner) ? node : new Node(m_owner, node.slots.clone());
+    }
+
+    private static final class Node {
+        final Object owner;
+        final Object[] slots;
+
+        Node(Object owner) {
+            this(owner, new Object[WIDTH]);
+        }
+
+        Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Open addressing table of requirement ids.
+     */
+    private static final class Index {
+        final Requirement[] m_keys;
+        final Requirement[] m_table;
+        final int[] m_ids;
+        final int m_mask;
+
+        Index(Requirement[] keys) {
+            m_keys = keys;
+            int capacity = 2;
+            while (capacity < keys.length * 2) {
+                capacity <<= 1;
+            }
+            m_table = new Requirement[capacity];
+            m_ids = new int[capacity];
+            m_mask = capacity - 1;
+            for (int id = 0; id < keys.length; id++) {
+                int pos = mix(keys[id].hashCode()) & m_mask;
+                while (m_table[pos] != null) {
+                    pos = (pos + 1) & m_mask;
+                }
+                m_table[pos] = keys[id];
+                m_ids[pos] = id;
+            }
+        }
+
+        int getId(Requirement req) {
+            int pos = mix(req.hashCode()) & m_mask;
+            Requirement key;
+            while ((key = m_table[pos]) != null) {
+                if (key.equals(req)) {
+                    return m_ids[pos];
+                }
+                pos = (pos + 1) & m_mask;
+            }
+            return -1;
+        }
+
+        private static int mix(int x) {
+            int h = x * -1640531527;
+            return h ^ h >>> 16;
+        }
+    }
+
+    private static final class Entry implements Map.Entry<Requirement, CandidateSelector> {
+        private final Requirement key;
+        private final CandidateSelector value;
+
+        Entry(Requirement key, CandidateSelector value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Requirement getKey() {
+            return key;
+        }
+
+        public CandidateSelector getValue() {
+            return value;
+        }
+
+        public CandidateSelector setValue(CandidateSelector value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Gives tests outside of this package access to the package-private
+ * resolver options.
+ */
+public class ResolverImplFactory
+{
+    private ResolverImplFactory()
+    {
+    }
+
+    /**
+     * Creates a resolver that uses the specified executor, optionally
+     * without the permutation memo.
+     */
+    public static ResolverImpl create(Logger logger, Executor executor, boolean permutationMemo)
+    {
+        return new ResolverImpl(logger, executor, false, false, permutationMemo);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.felix.resolver.test.util.GenericCapability;
+import org.apache.felix.resolver.test.util.GenericRequirement;
+import org.apache.felix.resolver.test.util.ResourceImpl;
+import org.apache.felix.resolver.util.CandidateMap;
+import org.apache.felix.resolver.util.CandidateSelector;
+import org.junit.Test;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CandidateMapTest {
+
+    private final ResourceImpl m_resource = new ResourceImpl("R");
+    private int m_capabilities;
+
+    @Test
+    public void testCopyIsolation() {
+        // More requirements than fit in one trie node
+        List<Requirement> reqs = requirements(100, false);
+        for (boolean frozen : new boolean[] {false, true}) {
+            CandidateMap map = new CandidateMap();
+            Map<Requirement, CandidateSelector> expected = new HashMap<Requirement, CandidateSelector>();
+            for (Requirement req : reqs) {
+                expected.put(req, selector());
+                map.put(req, expected.get(req));
+            }
+            if (frozen) {
+                map.freeze();
+            }
+            Map<Requirement, CandidateSelector> copyExpected = new HashMap<Requirement, CandidateSelector>(expected);
+
+            // Changes to the copy do not show in the map
+            CandidateMap copy = map.copy();
+            copyExpected.put(reqs.get(0), selector());
+            copy.put(reqs.get(0), copyExpected.get(reqs.get(0)));
+            copyExpected.remove(reqs.get(99));
+            copy.remove(reqs.get(99));
+            assertContents(expected, map);
+            assertContents(copyExpected, copy);
+
+            // Changes to the map do not show in the copy
+            expected.put(reqs.get(50), selector());
+            map.put(reqs.get(50), expected.get(reqs.get(50)));
+            expected.remove(reqs.get(1));
+            map.remove(reqs.get(1));
+            assertContents(expected, map);
+            assertContents(copyExpected, copy);
+
+            // A copy of a copy is isolated from both
+            CandidateMap copy2 = copy.copy();
+            copy2.remove(reqs.get(2));
+            assertContents(expected, map);
+            assertContents(copyExpected, copy);
+            copyExpected.remove(reqs.get(2));
+            assertContents(copyExpected, copy2);
+        }
+    }
+
+    @Test
+    public void testHashCollisions() {
+        List<Requirement> reqs = requirements(40, true);
+        CandidateMap map = new CandidateMap();
+        Map<Requirement, CandidateSelector> expected = new HashMap<Requirement, CandidateSelector>();
+        for (Requirement req : reqs) {
+            expected.put(req, selector());
+            map.put(req, expected.get(req));
+        }
+        map.freeze();
+        assertContents(expected, map);
+
+        // A colliding requirement that is not in the map
+        Requirement unknown = requirements(1, true).get(0);
+        assertNull(map.get(unknown));
+        assertNull(map.remove(unknown));
+        try {
+            map.put(unknown, selector());
+            fail("Requirement added to a frozen map");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // Removing some colliding requirements leaves the others reachable
+        for (int i = 0; i < reqs.size(); i += 2) {
+            assertSame(expected.remove(reqs.get(i)), map.remove(reqs.get(i)));
+        }
+        assertContents(expected, map);
+    }
+
+    @Test
+    public void testRemoveToEmpty() {
+        List<Requirement> reqs = requirements(40, false);
+        CandidateMap map = new CandidateMap();
+        for (Requirement req : reqs) {
+            map.put(req, selector());
+        }
+        map.freeze();
+        CandidateMap copy = map.copy();
+
+        for (Requirement req : reqs) {
+            assertTrue(map.remove(req) != null);
+            assertNull(map.remove(req));
+        }
+        assertContents(Collections.<Requirement, CandidateSelector>emptyMap(), map);
+        assertEquals(reqs.size(), copy.size());
+
+        // An emptied map still takes its requirements back
+        CandidateSelector selector = selector();
+        map.put(reqs.get(39), selector);
+        assertContents(Collections.singletonMap(reqs.get(39), selector), map);
+    }
+
+    @Test
+    public void testIterationAfterMixedPutsAndRemoves() {
+        // Enough requirements for a trie of three levels
+        List<Requirement> reqs = requirements(1100, false);
+        Random random = new Random(42);
+        CandidateMap map = new CandidateMap();
+        Map<Requirement, CandidateSelector> expected = new HashMap<Requirement, CandidateSelector>();
+        for (Requirement req : reqs) {
+            expected.put(req, selector());
+            map.put(req, expected.get(req));
+        }
+        map.freeze();
+
+        List<CandidateMap> copies = new ArrayList<CandidateMap>();
+        List<Map<Requirement, CandidateSelector>> copiesExpected = new ArrayList<Map<Requirement, CandidateSelector>>();
+        for (int round = 0; round < 5; round++) {
+            copies.add(map.copy());
+            copiesExpected.add(new HashMap<Requirement, CandidateSelector>(expected));
+            for (int i = 0; i < 500; i++) {
+                Requirement req = reqs.get(random.nextInt(reqs.size()));
+                if (random.nextBoolean()) {
+                    assertSame(expected.remove(req), map.remove(req));
+                } else {
+                    CandidateSelector selector = selector();
+                    assertSame(expected.put(req, selector), map.put(req, selector));
+                }
+            }
+            assertContents(expected, map);
+        }
+        for (int i = 0; i < copies.size(); i++) {
+            assertContents(copiesExpected.get(i), copies.get(i));
+        }
+    }
+
+    // Compares the candidates rather than the selectors, which the copy of
+    // a map that is not frozen clones.
+    private void assertContents(Map<Requirement, CandidateSelector> expected, CandidateMap map) {
+        assertEquals(expected.size(), map.size());
+        Map<Requirement, List<Capability>> entries = new HashMap<Requirement, List<Capability>>();
+        for (Map.Entry<Requirement, CandidateSelector> entry : map.fast()) {
+            assertFalse("Duplicate entry " + entry.getKey(), entries.containsKey(entry.getKey()));
+            entries.put(entry.getKey(), entry.getValue().getRemainingCandidates());
+        }
+        Map<Requirement, List<Capability>> expectedEntries = new HashMap<Requirement, List<Capability>>();
+        for (Map.Entry<Requirement, CandidateSelector> entry : expected.entrySet()) {
+            expectedEntries.put(entry.getKey(), entry.getValue().getRemainingCandidates());
+            assertEquals(entry.getValue().getRemainingCandidates(), map.get(entry.getKey()).getRemainingCandidates());
+        }
+        assertEquals(expectedEntries, entries);
+    }
+
+    private List<Requirement> requirements(int count, final boolean colliding) {
+        List<Requirement> reqs = new ArrayList<Requirement>();
+        for (int i = 0; i < count; i++) {
+            reqs.add(new GenericRequirement(m_resource, "req" + i) {
+                @Override
+                public int hashCode() {
+                    return colliding ? 42 : super.hashCode();
+                }
+            });
+        }
+        return reqs;
+    }
+
+    // Returns a selector with a candidate of its own
+    private CandidateSelector selector() {
+        Capability cap = new GenericCapability(m_resource, "cap" + m_capabilities++);
+        return new CandidateSelector(Collections.singletonList(cap), new AtomicBoolean());
+    }
+}
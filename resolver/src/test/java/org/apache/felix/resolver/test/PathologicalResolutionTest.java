@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolveStatistics;
+import org.apache.felix.resolver.ResolveStatisticsListener;
+import org.apache.felix.resolver.ResolverImpl;
+import org.apache.felix.resolver.test.util.PackageCapability;
+import org.apache.felix.resolver.test.util.PackageRequirement;
+import org.apache.felix.resolver.test.util.ResolveContextImpl;
+import org.apache.felix.resolver.test.util.ResourceImpl;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Repositories with uses constraint violations that take many candidate
+ * permutations to get around, resolved with and without backjumping.
+ */
+public class PathologicalResolutionTest {
+
+    @Test
+    public void testIndependentConflicts() throws Exception {
+        ResolveContext rc = buildResolutionContext(8, 4, 0, true);
+
+        Map<Resource, List<Wire>> wires = resolve(rc, false);
+        assertEquals(wires, resolve(rc, true));
+        for (Resource resource : rc.getMandatoryResources()) {
+            // Only the last provider of each host is consistent
+            Resource provider = wires.get(resource).get(1).getProvider();
+            assertEquals(resource.toString().replace("H", "A") + "_3", provider.toString());
+        }
+    }
+
+    @Test
+    public void testDeepConflicts() throws Exception {
+        ResolveContext rc = buildResolutionContext(4, 3, 5, true);
+
+        assertEquals(resolve(rc, false), resolve(rc, true));
+    }
+
+    @Test
+    public void testUnsatisfiableConflicts() throws Exception {
+        ResolveContext rc = buildResolutionContext(4, 3, 2, false);
+
+        assertNotNull(resolveError(rc, false));
+        assertNotNull(resolveError(rc, true));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        StatisticsResolveContext rc = buildResolutionContext(2, 3, 1, true);
+
+        resolve(rc, false);
+        assertEquals(1, rc.m_statistics.size());
+        ResolveStatistics statistics = rc.m_statistics.get(0);
+        assertTrue(statistics.isSuccessful());
+        assertFalse(statistics.isDynamic());
+        // Two hosts, six providers with a link each, P0 and P1
+        assertEquals(16, statistics.getResourceCount());
+        assertEquals(16, statistics.getRequirementCount());
+        assertEquals(20, statistics.getCandidateCount());
+        assertTrue(statistics.getPermutationCount() > 1);
+        assertEquals(Collections.singleton("p"), statistics.getConflicts().keySet());
+        assertTrue(statistics.getDuration() >= statistics.getDuration(ResolveStatistics.Phase.POPULATE));
+
+        rc = buildResolutionContext(2, 3, 1, false);
+        assertNotNull(resolveError(rc, true));
+        statistics = rc.m_statistics.get(0);
+        assertFalse(statistics.isSuccessful());
+        assertNotNull(statistics.getError());
+        assertTrue(statistics.getSkippedPermutationCount() > 0);
+    }
+
+    @Test
+    @Ignore
+    public void testBackjumpingSpeed() throws Exception {
+        int[][] sizes = {
+                // hosts, providers, depth, solvable
+                {40, 8, 0, 1},
+                {20, 4, 10, 1},
+                {6, 4, 2, 0},
+                {8, 3, 4, 0},
+        };
+        for (int[] size : sizes) {
+            ResolveContext rc = buildResolutionContext(size[0], size[1], size[2], size[3] != 0);
+            System.out.println("Hosts: " + size[0] + ", providers: " + size[1]
+                    + ", depth: " + size[2] + ", solvable: " + (size[3] != 0));
+            for (boolean backjumping : new boolean[] {false, true}) {
+                // Warm up
+                resolveError(rc, backjumping);
+                BigResolutionTest.RunningStat stats = new BigResolutionTest.RunningStat();
+                for (int i = 0; i < 10; i++) {
+                    long t0 = System.nanoTime();
+                    resolveError(rc, backjumping);
+                    long t1 = System.nanoTime();
+                    stats.put((t1 - t0) * 1E-6);
+                }
+                System.out.println("    Backjumping " + (backjumping ? "on: " : "off:")
+                        + " avg " + String.format("%9.2f", stats.getAverage()) + " ms,"
+                        + " min " + String.format("%9.2f", stats.getMin()) + " ms");
+            }
+        }
+    }
+
+    private static Map<Resource, List<Wire>> resolve(ResolveContext rc, boolean backjumping) throws ResolutionException {
+        return createResolver(backjumping).resolve(rc);
+    }
+
+    private static ResolutionException resolveError(ResolveContext rc, boolean backjumping) {
+        try {
+            resolve(rc, backjumping);
+            return null;
+        } catch (ResolutionException e) {
+            return e;
+        }
+    }
+
+    private static ResolverImpl createResolver(boolean backjumping) {
+        return new ResolverImpl(new Logger(Logger.LOG_ERROR), new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, false, backjumping);
+    }
+
+    /**
+     * Builds a repository where each host Hi imports package p, which only
+     * P1 provides, and package ai, which providers Ai_0 to Ai_n export.
+     * Package ai uses p through a chain of the specified depth; the chain
+     * of every provider but the last one ends with an import of p from P0,
+     * so the conflict is only found at the end of the chain. If the
+     * repository is not solvable, the last provider of the last host also
+     * imports p from P0.
+     */
+    private static StatisticsResolveContext buildResolutionContext(int hosts, int providers, int depth, boolean solvable) {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Resource> mandatory = new ArrayList<Resource>();
+
+        ResourceImpl p0 = new ResourceImpl("P0");
+        Capability badCap = addCap(p0, "p", null);
+        ResourceImpl p1 = new ResourceImpl("P1");
+        Capability goodCap = addCap(p1, "p", null);
+
+        for (int i = 0; i < hosts; i++) {
+            ResourceImpl host = new ResourceImpl("H" + i);
+            addReq(host, "p", candMap, goodCap);
+            List<Capability> candidates = new ArrayList<Capability>();
+            for (int j = 0; j < providers; j++) {
+                boolean consistent = (j == providers - 1) && (solvable || i < hosts - 1);
+                String name = "A" + i + "_" + j;
+                ResourceImpl provider = new ResourceImpl(name);
+                String pkg = "a" + i;
+                candidates.add(addCap(provider, pkg, depth > 0 ? "c" + name + "_0" : "p"));
+                ResourceImpl current = provider;
+                for (int k = 0; k < depth; k++) {
+                    String chainPkg = "c" + name + "_" + k;
+                    ResourceImpl link = new ResourceImpl("C" + name + "_" + k);
+                    addReq(current, chainPkg, candMap,
+                            addCap(link, chainPkg, k < depth - 1 ? "c" + name + "_" + (k + 1) : "p"));
+                    current = link;
+                }
+                addReq(current, "p", candMap, consistent ? goodCap : badCap);
+            }
+            addReq(host, "a" + i, candMap, candidates.toArray(new Capability[candidates.size()]));
+            mandatory.add(host);
+        }
+
+        return new StatisticsResolveContext(candMap, mandatory);
+    }
+
+    private static class StatisticsResolveContext extends ResolveContextImpl implements ResolveStatisticsListener {
+
+        private final List<ResolveStatistics> m_statistics = new ArrayList<ResolveStatistics>();
+
+        StatisticsResolveContext(Map<Requirement, List<Capability>> candMap, List<Resource> mandatory) {
+            super(Collections.<Resource, Wiring>emptyMap(), candMap, mandatory, Collections.<Resource>emptyList());
+        }
+
+        public void resolveCompleted(ResolveStatistics statistics) {
+            m_statistics.add(statistics);
+        }
+    }
+
+    private static Capability addCap(ResourceImpl res, String pkg, String uses) {
+        PackageCapability cap = new PackageCapability(res, pkg);
+        if (uses != null) {
+            cap.addDirective(Namespace.CAPABILITY_USES_DIRECTIVE, uses);
+        }
+        res.addCapability(cap);
+        return cap;
+    }
+
+    private static void addReq(ResourceImpl res, String pkg, Map<Requirement, List<Capability>> candMap,
+                               Capability... candidates) {
+        Requirement req = new PackageRequirement(res, pkg);
+        res.addRequirement(req);
+        List<Capability> list = new ArrayList<Capability>();
+        Collections.addAll(list, candidates);
+        candMap.put(req, list);
+    }
+}
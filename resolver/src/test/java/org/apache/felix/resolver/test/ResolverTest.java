@@ -32,9 +32,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.ResolveStatistics;
+import org.apache.felix.resolver.ResolveStatisticsListener;
 import org.apache.felix.resolver.ResolverImpl;
+import org.apache.felix.resolver.ResolverImplFactory;
 import org.apache.felix.resolver.test.util.BundleCapability;
 import org.apache.felix.resolver.test.util.BundleRequirement;
 import org.apache.felix.resolver.test.util.GenericCapability;
@@ -433,6 +437,43 @@ public class ResolverTest
         assertEquals(resC1, wiresB.get(1).getProvider());
     }
 
+    @Test
+    public void testScenario9Incremental() throws Exception
+    {
+        Resolver resolver = new ResolverImpl(new Logger(Logger.LOG_DEBUG), new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, true);
+
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Resource> mandatory = populateScenario9(wirings, candMap);
+
+        // The second resolve operation uses the package spaces of the
+        // resolved resources kept by the first one.
+        for (int i = 0; i < 2; i++)
+        {
+            ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap, mandatory, Collections.<Resource> emptyList());
+
+            Map<Resource, List<Wire>> wireMap = resolver.resolve(rci);
+
+            Resource resB = findResource("B", wireMap.keySet());
+            Resource resA = findResource("A", wirings.keySet());
+            Resource resC1 = findResource("C1", wirings.keySet());
+
+            assertEquals(1, wireMap.size());
+
+            List<Wire> wiresB = wireMap.get(resB);
+            assertEquals(2, wiresB.size());
+            // should be wired to A and C1
+            assertEquals(resA, wiresB.get(0).getProvider());
+            assertEquals(resC1, wiresB.get(1).getProvider());
+        }
+    }
+
     /**
      * Test dynamic resolution with a resolved fragment
      */
@@ -913,6 +954,193 @@ public class ResolverTest
         resolver.resolve(rci);
     }
 
+    @Test
+    public void testPermutationMemoUsesConflict() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl c1 = new ResourceImpl("C1");
+        Capability c1_q = addCap(c1, PackageNamespace.PACKAGE_NAMESPACE, "q");
+        ResourceImpl c2 = new ResourceImpl("C2");
+        Capability c2_q = addCap(c2, PackageNamespace.PACKAGE_NAMESPACE, "q");
+
+        // B prefers C2 and A prefers C1, while D only accepts C2, so the
+        // permutation changing the import of B invalidates its package space
+        // and the one changing the import of A is the solution.
+        ResourceImpl b = new ResourceImpl("B");
+        Capability b_p = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "p", "q");
+        candMap.put(addReq(b, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(c2_q, c1_q));
+
+        ResourceImpl a = new ResourceImpl("A");
+        candMap.put(addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "p"), Arrays.asList(b_p));
+        candMap.put(addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(c1_q, c2_q));
+
+        ResourceImpl d = new ResourceImpl("D");
+        candMap.put(addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "p"), Arrays.asList(b_p));
+        candMap.put(addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(c2_q));
+
+        Map<String, List<String>> wires = assertSameWithoutPermutationMemo(
+            candMap, Arrays.<Resource> asList(a, d));
+        assertEquals(Arrays.asList("p=B", "q=C2"), wires.get("A"));
+        assertEquals(Arrays.asList("q=C2"), wires.get("B"));
+        assertEquals(Arrays.asList("p=B", "q=C2"), wires.get("D"));
+    }
+
+    @Test
+    public void testPermutationMemoSubstitution() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl r1 = new ResourceImpl("R1");
+        Capability r1_r = addCap(r1, PackageNamespace.PACKAGE_NAMESPACE, "r");
+        ResourceImpl r2 = new ResourceImpl("R2");
+        Capability r2_r = addCap(r2, PackageNamespace.PACKAGE_NAMESPACE, "r");
+
+        ResourceImpl c = new ResourceImpl("C");
+        Capability c_q = addCap(c, PackageNamespace.PACKAGE_NAMESPACE, "q", "r");
+        candMap.put(addReq(c, PackageNamespace.PACKAGE_NAMESPACE, "r"), Arrays.asList(r1_r));
+
+        // B substitutes its export of q with the one of C first, which
+        // conflicts with the import of r by A; the permutation importing q
+        // from B itself changes only that substitution.
+        ResourceImpl b = new ResourceImpl("B");
+        Capability b_q = addCap(b, PackageNamespace.PACKAGE_NAMESPACE, "q");
+        candMap.put(addReq(b, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(c_q, b_q));
+
+        ResourceImpl a = new ResourceImpl("A");
+        candMap.put(addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(b_q, c_q));
+        candMap.put(addReq(a, PackageNamespace.PACKAGE_NAMESPACE, "r"), Arrays.asList(r2_r));
+
+        Map<String, List<String>> wires = assertSameWithoutPermutationMemo(
+            candMap, Arrays.<Resource> asList(a));
+        assertEquals(Arrays.asList("q=B", "r=R2"), wires.get("A"));
+        assertEquals(Collections.emptyList(), wires.get("B"));
+    }
+
+    @Test
+    public void testPermutationMemoUnverified() throws Exception
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        ResourceImpl q1 = new ResourceImpl("Q1");
+        Capability q1_q = addCap(q1, PackageNamespace.PACKAGE_NAMESPACE, "q");
+        ResourceImpl q2 = new ResourceImpl("Q2");
+        Capability q2_q = addCap(q2, PackageNamespace.PACKAGE_NAMESPACE, "q");
+        ResourceImpl p = new ResourceImpl("P");
+        Capability p_p = addCap(p, PackageNamespace.PACKAGE_NAMESPACE, "p", "q");
+        candMap.put(addReq(p, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(q2_q));
+
+        // D has a uses conflict no permutation can fix.
+        ResourceImpl d = new ResourceImpl("D");
+        Capability d_d = addCap(d, PackageNamespace.PACKAGE_NAMESPACE, "d");
+        candMap.put(addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "q"), Arrays.asList(q1_q));
+        candMap.put(addReq(d, PackageNamespace.PACKAGE_NAMESPACE, "p"), Arrays.asList(p_p));
+
+        ResourceImpl x = new ResourceImpl("X");
+        Capability x_x = addCap(x, PackageNamespace.PACKAGE_NAMESPACE, "x");
+        candMap.put(addReq(x, PackageNamespace.PACKAGE_NAMESPACE, "d"), Arrays.asList(d_d));
+        ResourceImpl x2 = new ResourceImpl("X2");
+        Capability x2_x = addCap(x2, PackageNamespace.PACKAGE_NAMESPACE, "x");
+
+        // The failed check of H1 passes X without checking D, so the check
+        // of H2 relying on X must not mark X consistent for the permutation
+        // wiring H1 to X2, which leaves the candidates of X unchanged.
+        ResourceImpl h1 = new ResourceImpl("H1");
+        candMap.put(addReq(h1, PackageNamespace.PACKAGE_NAMESPACE, "x"), Arrays.asList(x_x, x2_x));
+        ResourceImpl h2 = new ResourceImpl("H2");
+        candMap.put(addReq(h2, PackageNamespace.PACKAGE_NAMESPACE, "x"), Arrays.asList(x_x));
+
+        for (boolean memo : new boolean[] {false, true})
+        {
+            final List<ResolveStatistics> statistics = new ArrayList<ResolveStatistics>();
+            ResolveContext rci = new StatisticsResolveContext(
+                candMap, Arrays.<Resource> asList(h1, h2), statistics);
+            try
+            {
+                createResolver(memo).resolve(rci);
+                fail("Resolution should fail with memo " + memo);
+            }
+            catch (ResolutionException ex)
+            {
+                // expected
+            }
+            assertEquals(1, statistics.size());
+            assertTrue(statistics.get(0).getPermutationCount() > 1);
+        }
+    }
+
+    /**
+     * Resolves the specified resources with and without the permutation
+     * memo, checking that the results are the same and that more than one
+     * permutation was needed.
+     * @return the wires of the resources by name.
+     */
+    private static Map<String, List<String>> assertSameWithoutPermutationMemo(
+        Map<Requirement, List<Capability>> candMap, List<Resource> mandatory) throws ResolutionException
+    {
+        Map<String, List<String>> expected = null;
+        for (boolean memo : new boolean[] {false, true})
+        {
+            final List<ResolveStatistics> statistics = new ArrayList<ResolveStatistics>();
+            ResolveContext rci = new StatisticsResolveContext(candMap, mandatory, statistics);
+
+            Map<String, List<String>> wires = getWiresByName(createResolver(memo).resolve(rci));
+            assertEquals(1, statistics.size());
+            assertTrue(statistics.get(0).getPermutationCount() > 1);
+            if (expected == null)
+            {
+                expected = wires;
+            }
+            else
+            {
+                assertEquals(expected, wires);
+            }
+        }
+        return expected;
+    }
+
+    private static ResolverImpl createResolver(boolean permutationMemo)
+    {
+        return ResolverImplFactory.create(new Logger(Logger.LOG_DEBUG), new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, permutationMemo);
+    }
+
+    private static Map<String, List<String>> getWiresByName(Map<Resource, List<Wire>> wireMap)
+    {
+        Map<String, List<String>> wires = new HashMap<String, List<String>>();
+        for (Map.Entry<Resource, List<Wire>> entry : wireMap.entrySet())
+        {
+            List<String> names = new ArrayList<String>();
+            for (Wire wire : entry.getValue())
+            {
+                names.add(wire.getCapability().getAttributes().get(wire.getCapability().getNamespace())
+                    + "=" + getResourceName(wire.getProvider()));
+            }
+            Collections.sort(names);
+            wires.put(getResourceName(entry.getKey()), names);
+        }
+        return wires;
+    }
+
+    private static class StatisticsResolveContext extends ResolveContextImpl implements ResolveStatisticsListener
+    {
+        private final List<ResolveStatistics> m_statistics;
+
+        StatisticsResolveContext(Map<Requirement, List<Capability>> candMap, List<Resource> mandatory,
+            List<ResolveStatistics> statistics)
+        {
+            super(new HashMap<Resource, Wiring>(), candMap, mandatory, Collections.<Resource> emptyList());
+            m_statistics = statistics;
+        }
+
+        public void resolveCompleted(ResolveStatistics statistics)
+        {
+            m_statistics.add(statistics);
+        }
+    }
+
     private ResolveContext populateScenario17(boolean realSubstitute,
         boolean felixResolveContext, boolean existingWirings)
     {
@@ -18,6 +18,7 @@
  */
 package org.apache.felix.scr.impl;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.text.MessageFormat;
 import java.util.HashMap;
@@ -30,6 +31,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.felix.scr.impl.config.ScrConfigurationImpl;
 import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.inject.ClassUtils;
+import org.apache.felix.scr.impl.metadata.DescriptorCache;
 import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.apache.felix.utils.extender.AbstractExtender;
 import org.apache.felix.utils.extender.Extension;
@@ -76,13 +78,20 @@ public class Activator extends AbstractExtender implements SimpleLogger
     // registry of managed component
     private ComponentRegistry m_componentRegistry;
 
-    //  thread acting upon configurations
-    private ComponentActorThread m_componentActor;
+    //  threads acting upon configurations
+    private ComponentActorPool m_componentActor;
 
     private ServiceRegistration<?> m_runtime_reg;
 
     private ScrCommand m_scrCommand;
 
+    // cache of the component metadata read from the descriptors, null if
+    // the framework has no file system support
+    private DescriptorCache m_descriptorCache;
+
+    // activates the components to warm up, null if there are none
+    private ComponentWarmup m_warmup;
+
     public Activator()
     {
         m_configuration = new ScrConfigurationImpl( this );
@@ -156,23 +165,36 @@ public class Activator extends AbstractExtender implements SimpleLogger
         m_componentBundles = new HashMap<Long, BundleComponentActivator>();
         m_componentRegistry = new ComponentRegistry( this );
 
-        final ServiceComponentRuntime runtime = new ServiceComponentRuntimeImpl( m_globalContext, m_componentRegistry );
+        // prepare the descriptor cache, dropping the bundles uninstalled meanwhile
+        final File cacheDir = m_context.getDataFile( "descriptors" );
+        if ( cacheDir != null )
+        {
+            m_descriptorCache = new DescriptorCache( cacheDir );
+            m_descriptorCache.removeStale( m_globalContext );
+        }
+
+        // create the component actor
+        m_componentActor = new ComponentActorPool( this, m_configuration.actorThreads() );
+
+        final ServiceComponentRuntime runtime = new ServiceComponentRuntimeImpl( m_globalContext, m_componentRegistry,
+            m_componentActor );
         m_runtime_reg = m_context.registerService( ServiceComponentRuntime.class, runtime, null );
 
         // log SCR startup
         log( LogService.LOG_INFO, m_bundle, " Version = {0}",
             new Object[] { m_bundle.getVersion().toString() }, null);
 
-        // create and start the component actor
-        m_componentActor = new ComponentActorThread( this );
-        Thread t = new Thread( m_componentActor, "SCR Component Actor" );
-        t.setDaemon( true );
-        t.start();
-
         super.doStart();
 
         m_scrCommand = ScrCommand.register( m_context, runtime, m_configuration );
         m_configuration.setScrCommand( m_scrCommand );
+
+        final String[] warmup = m_configuration.activationWarmup();
+        if ( warmup.length > 0 )
+        {
+            m_warmup = new ComponentWarmup( m_context, m_componentActor, this, warmup );
+            m_warmup.open();
+        }
     }
 
     @Override
@@ -191,6 +213,13 @@ public class Activator extends AbstractExtender implements SimpleLogger
     @Override
     public void doStop() throws Exception
     {
+        // release the warmed up components
+        if ( m_warmup != null )
+        {
+            m_warmup.close();
+            m_warmup = null;
+        }
+
         // stop tracking
         super.doStop();
 
@@ -210,7 +239,7 @@ public class Activator extends AbstractExtender implements SimpleLogger
             m_componentRegistry = null;
         }
 
-        // terminate the actor thread
+        // terminate the actor threads
         if ( m_componentActor != null )
         {
             m_componentActor.terminate();
@@ -386,7 +415,7 @@ public class Activator extends AbstractExtender implements SimpleLogger
         try
         {
             BundleComponentActivator ga = new BundleComponentActivator( this, m_componentRegistry, m_componentActor,
-                context, m_configuration );
+                context, m_configuration, m_configuration.cacheMetadata() ? m_descriptorCache : null );
             ga.initialEnable();
 
             // replace bundle activator in the map
@@ -46,6 +46,7 @@ import org.apache.felix.scr.impl.manager.ExtendedServiceListener;
 import org.apache.felix.scr.impl.manager.RegionConfigurationSupport;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DescriptorCache;
 import org.apache.felix.scr.impl.parser.KXml2SAXParser;
 import org.apache.felix.scr.impl.xml.XmlHandler;
 import org.osgi.framework.Bundle;
@@ -83,8 +84,8 @@ public class BundleComponentActivator implements ComponentActivator
     // The Configuration Admin tracker providing configuration for components
     private final ServiceTracker<LogService, LogService> m_logService;
 
-    // thread acting upon configurations
-    private final ComponentActorThread m_componentActor;
+    // threads acting upon configurations
+    private final ComponentActorPool m_componentActor;
 
     // true as long as the dispose method is not called
     private final AtomicBoolean m_active = new AtomicBoolean( true );
@@ -99,6 +100,9 @@ public class BundleComponentActivator implements ComponentActivator
 
     private final SimpleLogger m_logger;
 
+    // the cache of the component metadata, null if not caching
+    private final DescriptorCache m_descriptorCache;
+
     private static class ListenerInfo implements ServiceListener
     {
         private Map<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> filterMap = new HashMap<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>>();
@@ -238,10 +242,12 @@ public class BundleComponentActivator implements ComponentActivator
      *      register components with to ensure uniqueness of component names
      *      and to ensure configuration updates.
      * @param   context  The bundle context owning the components
+     * @param descriptorCache The cache of the component metadata read from
+     *      the descriptors, or <code>null</code> to always parse them.
      *
      * @throws ComponentException if any error occurrs initializing this class
      */
-    public BundleComponentActivator(SimpleLogger logger, ComponentRegistry componentRegistry, ComponentActorThread componentActor, BundleContext context, ScrConfiguration configuration) throws ComponentException
+    public BundleComponentActivator(SimpleLogger logger, ComponentRegistry componentRegistry, ComponentActorPool componentActor, BundleContext context, ScrConfiguration configuration, DescriptorCache descriptorCache) throws ComponentException
     {
         // keep the parameters for later
         m_logger = logger;
@@ -254,6 +260,7 @@ public class BundleComponentActivator implements ComponentActivator
         m_logService = new ServiceTracker<LogService, LogService>( context, Activator.LOGSERVICE_CLASS, null );
         m_logService.open();
         m_configuration = configuration;
+        m_descriptorCache = descriptorCache;
 
         log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] active",
             new Object[] { m_bundle.getBundleId() }, null, null, null );
@@ -420,25 +427,50 @@ public class BundleComponentActivator implements ComponentActivator
         // simple path for log messages
         final String descriptorLocation = descriptorURL.getPath();
 
+        final boolean factoryEnabled = getConfiguration().isFactoryEnabled();
+        final boolean keepInstances = getConfiguration().keepInstances();
+        final String cacheKey = descriptorURL.toExternalForm();
+
         InputStream stream = null;
         try
         {
-            stream = descriptorURL.openStream();
+            List<ComponentMetadata> components = null;
+            byte[] cacheData = null;
+            if ( m_descriptorCache != null )
+            {
+                components = m_descriptorCache.load( m_bundle, cacheKey, factoryEnabled, keepInstances );
+            }
+
+            if ( components != null )
+            {
+                log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle [{0}] read descriptor {1} from cache",
+                    new Object[] { m_bundle.getBundleId(), descriptorLocation }, null, null, null );
+            }
+            else
+            {
+                stream = descriptorURL.openStream();
+
+                BufferedReader in = new BufferedReader( new InputStreamReader( stream, "UTF-8" ) );
+                XmlHandler handler = new XmlHandler( m_bundle, this, factoryEnabled, keepInstances );
+                KXml2SAXParser parser;
+
+                parser = new KXml2SAXParser( in );
 
-            BufferedReader in = new BufferedReader( new InputStreamReader( stream, "UTF-8" ) );
-            XmlHandler handler = new XmlHandler( m_bundle, this, getConfiguration().isFactoryEnabled(),
-                getConfiguration().keepInstances() );
-            KXml2SAXParser parser;
+                parser.parseXML( handler );
 
-            parser = new KXml2SAXParser( in );
+                components = handler.getComponentMetadataList();
 
-            parser.parseXML( handler );
+                // keep the metadata as declared, it is cached once it is known to be valid
+                if ( m_descriptorCache != null )
+                {
+                    cacheData = toCacheData( descriptorLocation, components );
+                }
+            }
 
             // 112.4.2 Component descriptors may contain a single, root component element
             // or one or more component elements embedded in a larger document
-            for ( Object o : handler.getComponentMetadataList() )
+            for ( ComponentMetadata metadata : components )
             {
-                ComponentMetadata metadata = (ComponentMetadata) o;
                 ComponentRegistryKey key = null;
                 try
                 {
@@ -469,6 +501,10 @@ public class BundleComponentActivator implements ComponentActivator
                     // and proceed to the next one
                     log( LogService.LOG_ERROR, "Cannot register Component", metadata, null, t );
 
+                    // do not cache the descriptor, so the problem is reported
+                    // the same way next time
+                    cacheData = null;
+
                     // make sure the name is not reserved any more
                     if ( key != null )
                     {
@@ -476,6 +512,11 @@ public class BundleComponentActivator implements ComponentActivator
                     }
                 }
             }
+
+            if ( cacheData != null )
+            {
+                storeDescriptor( cacheKey, factoryEnabled, keepInstances, cacheData );
+            }
         }
         catch ( IOException ex )
         {
@@ -505,6 +546,36 @@ public class BundleComponentActivator implements ComponentActivator
         }
     }
 
+    private byte[] toCacheData(String descriptorLocation, List<ComponentMetadata> components)
+    {
+        try
+        {
+            return DescriptorCache.toBytes( components );
+        }
+        catch ( IOException ex )
+        {
+            // not fatal, e.g. a string too long for the cache format,
+            // the descriptor is just parsed again next time
+            log( LogService.LOG_DEBUG, "Not caching descriptor entry ''{0}''",
+                new Object[] { descriptorLocation }, null, null, ex );
+            return null;
+        }
+    }
+
+    private void storeDescriptor(String cacheKey, boolean factoryEnabled, boolean keepInstances, byte[] cacheData)
+    {
+        try
+        {
+            m_descriptorCache.store( m_bundle, cacheKey, factoryEnabled, keepInstances, cacheData );
+        }
+        catch ( IOException ex )
+        {
+            // not fatal, the descriptor is just parsed again next time
+            log( LogService.LOG_WARNING, "Cannot cache descriptor entry ''{0}''",
+                new Object[] { cacheKey }, null, null, ex );
+        }
+    }
+
     /**
     * Dispose of this component activator instance and all the component
     * managers.
@@ -683,6 +754,11 @@ public class BundleComponentActivator implements ComponentActivator
         m_componentRegistry.unregisterComponentId( componentManager.getId() );
     }
 
+    public AbstractComponentManager<?> getComponentManager(long componentId)
+    {
+        return m_componentRegistry.getComponentManager( componentId );
+    }
+
     //---------- Asynchronous Component Handling ------------------------------
 
     /**
@@ -693,13 +769,45 @@ public class BundleComponentActivator implements ComponentActivator
      * @param task The component task to execute
      */
     public void schedule(Runnable task)
+    {
+        schedule( null, task );
+    }
+
+    /**
+     * Schedules the given <code>task</code> for asynchrounous execution after
+     * the tasks already scheduled with the same <code>key</code>, or
+     * synchronously runs the task if the threads are not running. If this
+     * instance is {@link #isActive() not active}, the task is not executed.
+     *
+     * @param key The key, usually the component manager the task acts upon,
+     *      or <code>null</code> to run the task after the other tasks
+     *      scheduled without a key.
+     * @param task The component task to execute
+     */
+    public void schedule(Object key, Runnable task)
+    {
+        schedule( key, task, 0 );
+    }
+
+    /**
+     * Schedules the given <code>task</code> like {@link #schedule(Object, Runnable)}
+     * once the given <code>delay</code> has elapsed. If the threads are not
+     * running, the task is run synchronously without delay.
+     *
+     * @param key The key, usually the component manager the task acts upon,
+     *      or <code>null</code> to run the task after the other tasks
+     *      scheduled without a key.
+     * @param task The component task to execute
+     * @param delay The delay in milliseconds
+     */
+    public void schedule(Object key, Runnable task, long delay)
     {
         if ( isActive() )
         {
-            ComponentActorThread cat = m_componentActor;
+            ComponentActorPool cat = m_componentActor;
             if ( cat != null )
             {
-                cat.schedule( task );
+                cat.schedule( key, task, delay );
             }
             else
             {
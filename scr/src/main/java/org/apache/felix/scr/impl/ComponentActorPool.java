@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.impl.helper.SimpleLogger;
+import org.osgi.service.log.LogService;
+
+
+/**
+ * The <code>ComponentActorPool</code> runs the tasks acting upon registered
+ * components of the service component runtime on a pool of threads.
+ * <p>
+ * The tasks are scheduled with a key, usually the component manager they
+ * act upon. The tasks scheduled with the same key are run one after the
+ * other in the order they have been scheduled, while tasks scheduled with
+ * different keys may run concurrently. With a single thread all tasks run
+ * in the order they have been scheduled, regardless of their key.
+ */
+public class ComponentActorPool
+{
+
+    // the key of the tasks scheduled without a key
+    private static final Object DEFAULT_KEY = new Object();
+
+    private final SimpleLogger logger;
+
+    private final int threads;
+
+    private final ThreadPoolExecutor executor;
+
+    // the queues of the keys having tasks to run, guarded by itself
+    private final Map<Object, TaskQueue> queues = new HashMap<Object, TaskQueue>();
+
+    // whether the pool has been terminated, guarded by queues
+    private boolean terminated;
+
+    // holds back the tasks scheduled with a delay, created on demand,
+    // guarded by queues
+    private Timer timer;
+
+    // statistics, guarded by queues
+    private long scheduled;
+    private long completed;
+    private int queued;
+    private int maxQueued;
+    private int running;
+    private long totalWaitTime;
+    private long maxWaitTime;
+    private long totalRunTime;
+    private long maxRunTime;
+
+
+    ComponentActorPool( SimpleLogger log, int threads )
+    {
+        this.logger = log;
+        this.threads = Math.max( 1, threads );
+        this.executor = new ThreadPoolExecutor( this.threads, this.threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+
+                public Thread newThread( Runnable r )
+                {
+                    String name = "SCR Component Actor";
+                    if ( ComponentActorPool.this.threads > 1 )
+                    {
+                        name += " " + count.incrementAndGet();
+                    }
+                    Thread t = new Thread( r, name );
+                    t.setDaemon( true );
+                    return t;
+                }
+            } );
+        this.executor.allowCoreThreadTimeOut( true );
+        logger.log( LogService.LOG_DEBUG, "Starting ComponentActorPool with {0} threads",
+            new Object[] { this.threads }, null );
+    }
+
+
+    // wait for all tasks to be run, including those scheduled meanwhile,
+    // and stop the threads
+    void terminate()
+    {
+        synchronized ( queues )
+        {
+            boolean interrupted = Thread.interrupted();
+            try
+            {
+                while ( queued > 0 || running > 0 )
+                {
+                    try
+                    {
+                        queues.wait();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                        logger.log( LogService.LOG_ERROR, "Interrupted exception waiting for queue to empty", e );
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                if ( interrupted )
+                { // restore interrupt status
+                    Thread.currentThread().interrupt();
+                }
+            }
+            terminated = true;
+            if ( timer != null )
+            {
+                // tasks still delayed are dropped
+                timer.cancel();
+                timer = null;
+            }
+        }
+        executor.shutdown();
+        logger.log( LogService.LOG_DEBUG, "Shutting down ComponentActorPool", null );
+    }
+
+
+    // queue the given runnable to be run as soon as possible
+    void schedule( Runnable task )
+    {
+        schedule( DEFAULT_KEY, task );
+    }
+
+
+    // queue the given runnable to be run as soon as possible after the tasks
+    // already scheduled with the same key, a null key being the default key
+    void schedule( Object key, Runnable task )
+    {
+        if ( threads == 1 || key == null )
+        {
+            key = DEFAULT_KEY;
+        }
+        synchronized ( queues )
+        {
+            if ( terminated )
+            {
+                logger.log( LogService.LOG_WARNING, "ComponentActorPool is terminated; not scheduling {0}",
+                    new Object[] { task }, null );
+                return;
+            }
+
+            TaskQueue queue = queues.get( key );
+            final boolean idle = queue == null;
+            if ( idle )
+            {
+                queue = new TaskQueue( key );
+                queues.put( key, queue );
+            }
+            queue.tasks.add( new Task( task ) );
+            scheduled++;
+            queued++;
+            maxQueued = Math.max( maxQueued, queued );
+
+            logger.log( LogService.LOG_DEBUG, "Adding task [{0}] as #{1} in the queue", new Object[]
+                { task, queued }, null );
+
+            if ( idle )
+            {
+                executor.execute( queue );
+            }
+        }
+    }
+
+
+    // queue the given runnable once the delay in milliseconds has elapsed
+    void schedule( final Object key, final Runnable task, final long delay )
+    {
+        if ( delay <= 0 )
+        {
+            schedule( key, task );
+            return;
+        }
+        synchronized ( queues )
+        {
+            if ( terminated )
+            {
+                logger.log( LogService.LOG_WARNING, "ComponentActorPool is terminated; not scheduling {0}",
+                    new Object[] { task }, null );
+                return;
+            }
+            if ( timer == null )
+            {
+                timer = new Timer( "SCR Component Actor Timer", true );
+            }
+            timer.schedule( new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    schedule( key, task );
+                }
+            }, delay );
+        }
+    }
+
+
+    /**
+     * Returns the statistics of this pool: the number of threads, the number
+     * of tasks scheduled, completed, queued and running, the maximum number
+     * of tasks queued at once, and the average and maximum time in
+     * milliseconds tasks waited in the queue and ran.
+     */
+    public Map<String, Long> getStatistics()
+    {
+        final Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        synchronized ( queues )
+        {
+            statistics.put( "threads", ( long ) threads );
+            statistics.put( "scheduled", scheduled );
+            statistics.put( "completed", completed );
+            statistics.put( "queued", ( long ) queued );
+            statistics.put( "maxQueued", ( long ) maxQueued );
+            statistics.put( "running", ( long ) running );
+            statistics.put( "averageWaitTime", toMillis( completed == 0 ? 0 : totalWaitTime / completed ) );
+            statistics.put( "maxWaitTime", toMillis( maxWaitTime ) );
+            statistics.put( "averageRunTime", toMillis( completed == 0 ? 0 : totalRunTime / completed ) );
+            statistics.put( "maxRunTime", toMillis( maxRunTime ) );
+        }
+        return statistics;
+    }
+
+
+    private static long toMillis( long nanos )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( nanos );
+    }
+
+
+    private static final class Task
+    {
+        final Runnable runnable;
+        final long scheduled = System.nanoTime();
+
+
+        Task( Runnable runnable )
+        {
+            this.runnable = runnable;
+        }
+    }
+
+
+    // runs the next task of a key and resubmits itself while there are
+    // more, so the tasks of other keys get their turn in between
+    private final class TaskQueue implements Runnable
+    {
+        private final Object key;
+
+        final LinkedList<Task> tasks = new LinkedList<Task>();
+
+
+        TaskQueue( Object key )
+        {
+            this.key = key;
+        }
+
+
+        public void run()
+        {
+            final Task task;
+            final long start = System.nanoTime();
+            synchronized ( queues )
+            {
+                task = tasks.removeFirst();
+                queued--;
+                running++;
+                final long waitTime = start - task.scheduled;
+                totalWaitTime += waitTime;
+                maxWaitTime = Math.max( maxWaitTime, waitTime );
+            }
+
+            try
+            {
+                // execute the task, log any issues
+                logger.log( LogService.LOG_DEBUG, "Running task: " + task.runnable, null );
+                task.runnable.run();
+            }
+            catch ( Throwable t )
+            {
+                logger.log( LogService.LOG_ERROR, "Unexpected problem executing task " + task.runnable, t );
+            }
+            finally
+            {
+                synchronized ( queues )
+                {
+                    final long runTime = System.nanoTime() - start;
+                    totalRunTime += runTime;
+                    maxRunTime = Math.max( maxRunTime, runTime );
+                    running--;
+                    completed++;
+                    if ( tasks.isEmpty() )
+                    {
+                        queues.remove( key );
+                    }
+                    else
+                    {
+                        executor.execute( this );
+                    }
+                    queues.notifyAll();
+                }
+            }
+        }
+    }
+}
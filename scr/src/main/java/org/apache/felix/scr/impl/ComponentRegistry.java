@@ -164,6 +164,19 @@ public class ComponentRegistry
     }
 
 
+    /**
+     * Returns the component registered with the given component ID or
+     * <code>null</code> if there is none.
+     */
+    final AbstractComponentManager<?> getComponentManager( final long componentId )
+    {
+        synchronized ( m_componentsById )
+        {
+            return m_componentsById.get( componentId );
+        }
+    }
+
+
     //---------- ComponentHolder registration by component name
 
     /**
@@ -579,7 +592,7 @@ public class ComponentRegistry
      * @param serviceReference
      * @param actor
      */
-    public synchronized <T> void missingServicePresent( final ServiceReference<T> serviceReference, ComponentActorThread actor )
+    public synchronized <T> void missingServicePresent( final ServiceReference<T> serviceReference, ComponentActorPool actor )
     {
         final List<Entry<?, ?>> dependencyManagers = m_missingDependencies.remove( serviceReference );
         if ( dependencyManagers != null )
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.felix.scr.impl.helper.SimpleLogger;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentConstants;
+import org.osgi.service.log.LogService;
+
+
+/**
+ * The <code>ComponentWarmup</code> activates the components listed in the
+ * <code>ds.activation.warmup</code> configuration in the background once the
+ * framework has started or its start level has changed, so that the first
+ * request for their services does not pay for activating them.
+ * <p>
+ * The components are activated concurrently on the actor threads by getting
+ * their services. The services are used by the SCR bundle until it is
+ * stopped, so that delayed components are not deactivated again.
+ */
+class ComponentWarmup implements FrameworkListener
+{
+
+    private final BundleContext context;
+
+    private final ComponentActorPool actor;
+
+    private final SimpleLogger logger;
+
+    private final String[] names;
+
+    // the services in use, guarded by itself
+    private final Map<ServiceReference<?>, Object> services = new HashMap<ServiceReference<?>, Object>();
+
+    // whether the warm-up has been closed, guarded by services
+    private boolean closed;
+
+
+    ComponentWarmup( BundleContext context, ComponentActorPool actor, SimpleLogger logger, String[] names )
+    {
+        this.context = context;
+        this.actor = actor;
+        this.logger = logger;
+        this.names = names;
+    }
+
+
+    void open()
+    {
+        context.addFrameworkListener( this );
+        // the framework is active once its beginning start level is reached
+        if ( context.getBundle( Constants.SYSTEM_BUNDLE_LOCATION ).getState() == Bundle.ACTIVE )
+        {
+            warmup();
+        }
+    }
+
+
+    void close()
+    {
+        context.removeFrameworkListener( this );
+        final ServiceReference<?>[] refs;
+        synchronized ( services )
+        {
+            closed = true;
+            refs = services.keySet().toArray( new ServiceReference<?>[services.size()] );
+            services.clear();
+        }
+        for ( ServiceReference<?> ref : refs )
+        {
+            ungetService( ref );
+        }
+    }
+
+
+    public void frameworkEvent( FrameworkEvent event )
+    {
+        if ( event.getType() == FrameworkEvent.STARTED || event.getType() == FrameworkEvent.STARTLEVEL_CHANGED )
+        {
+            warmup();
+        }
+    }
+
+
+    private void warmup()
+    {
+        for ( final String name : names )
+        {
+            actor.schedule( name, new Runnable()
+            {
+                public void run()
+                {
+                    activate( name );
+                }
+
+
+                @Override
+                public String toString()
+                {
+                    return "Warm-up " + name;
+                }
+            } );
+        }
+    }
+
+
+    private void activate( String name )
+    {
+        final ServiceReference<?>[] refs;
+        try
+        {
+            refs = context.getAllServiceReferences( null,
+                "(" + ComponentConstants.COMPONENT_NAME + "=" + escape( name ) + ")" );
+        }
+        catch ( InvalidSyntaxException e )
+        {
+            logger.log( LogService.LOG_WARNING, "Cannot warm up component {0}", new Object[] { name }, e );
+            return;
+        }
+        catch ( IllegalStateException e )
+        {
+            // SCR is being stopped
+            return;
+        }
+        if ( refs == null )
+        {
+            logger.log( LogService.LOG_DEBUG, "Component {0} provides no service to warm up", new Object[] { name },
+                null );
+            return;
+        }
+        for ( ServiceReference<?> ref : refs )
+        {
+            synchronized ( services )
+            {
+                if ( closed || services.containsKey( ref ) )
+                {
+                    continue;
+                }
+            }
+            Object service = null;
+            try
+            {
+                service = context.getService( ref );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.log( LogService.LOG_WARNING, "Failure warming up component {0}", new Object[] { name }, e );
+            }
+            if ( service == null )
+            {
+                continue;
+            }
+            boolean release;
+            synchronized ( services )
+            {
+                release = closed || services.containsKey( ref );
+                if ( !release )
+                {
+                    services.put( ref, service );
+                }
+            }
+            if ( release )
+            {
+                ungetService( ref );
+            }
+            else
+            {
+                logger.log( LogService.LOG_DEBUG, "Warmed up component {0}", new Object[] { name }, null );
+            }
+        }
+    }
+
+
+    private void ungetService( ServiceReference<?> ref )
+    {
+        try
+        {
+            context.ungetService( ref );
+        }
+        catch ( IllegalStateException e )
+        {
+            // bundle context no longer valid
+        }
+    }
+
+
+    // escapes the characters having a special meaning in a filter value
+    static String escape( String value )
+    {
+        final StringBuilder buf = new StringBuilder( value.length() );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if ( c == '\\' || c == '(' || c == ')' || c == '*' )
+            {
+                buf.append( '\\' );
+            }
+            buf.append( c );
+        }
+        return buf.toString();
+    }
+}
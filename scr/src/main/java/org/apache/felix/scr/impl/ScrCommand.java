@@ -34,6 +34,7 @@ import java.util.regex.Pattern;
 
 import org.apache.felix.scr.impl.config.ScrConfigurationImpl;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
+import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.apache.felix.scr.info.ScrInfo;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -562,6 +563,19 @@ public class ScrCommand implements ScrInfo
         out.println(scrConfiguration.globalExtender());
         out.print("Info Service registered: ");
         out.println(scrConfiguration.infoAsService() ? "Supported" : "Unsupported");
+        out.print("Actor threads: ");
+        out.println(scrConfiguration.actorThreads());
+        out.print("Activation prefetch: ");
+        out.println(scrConfiguration.activationPrefetch());
+        out.print("Activation warm-up: ");
+        out.println(Arrays.asList(scrConfiguration.activationWarmup()));
+        out.print("Bind batch window milliseconds: ");
+        out.println(scrConfiguration.bindBatchWindow());
+        if (scrService instanceof ServiceComponentRuntimeImpl)
+        {
+            out.print("Actor statistics: ");
+            out.println(((ServiceComponentRuntimeImpl) scrService).getActorStatistics());
+        }
         out.flush();
     }
 
@@ -19,8 +19,12 @@
 package org.apache.felix.scr.impl.config;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.apache.felix.scr.impl.Activator;
 import org.apache.felix.scr.impl.ScrCommand;
@@ -59,6 +63,8 @@ public class ScrConfigurationImpl implements ScrConfiguration
 
     private static final String VALUE_TRUE = Boolean.TRUE.toString();
 
+    private static final String VALUE_FALSE = Boolean.FALSE.toString();
+
     private static final String LOG_LEVEL_DEBUG = "debug";
 
     private static final String LOG_LEVEL_INFO = "info";
@@ -87,6 +93,16 @@ public class ScrConfigurationImpl implements ScrConfiguration
 
     private Boolean globalExtender;
 
+    private boolean cacheMetadata = true;
+
+    private int actorThreads = DEFAULT_ACTOR_THREADS;
+
+    private boolean activationPrefetch;
+
+    private String[] activationWarmup = new String[0];
+
+    private long bindBatchWindow;
+
     private BundleContext bundleContext;
 
     private ServiceRegistration<ManagedService> managedService;
@@ -155,6 +171,11 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         lockTimeout = DEFAULT_LOCK_TIMEOUT_MILLISECONDS;
                         stopTimeout = DEFAULT_STOP_TIMEOUT_MILLISECONDS;
                         newGlobalExtender = false;
+                        cacheMetadata = true;
+                        actorThreads = DEFAULT_ACTOR_THREADS;
+                        activationPrefetch = false;
+                        activationWarmup = new String[0];
+                        bindBatchWindow = 0;
                     }
                     else
                     {
@@ -165,6 +186,11 @@ public class ScrConfigurationImpl implements ScrConfiguration
                         lockTimeout = getDefaultLockTimeout();
                         stopTimeout = getDefaultStopTimeout();
                         newGlobalExtender = getDefaultGlobalExtender();
+                        cacheMetadata = getDefaultCacheMetadata();
+                        actorThreads = getDefaultActorThreads();
+                        activationPrefetch = getDefaultActivationPrefetch();
+                        activationWarmup = getDefaultActivationWarmup();
+                        bindBatchWindow = getDefaultBindBatchWindow();
                     }
                 }
                 else
@@ -183,6 +209,12 @@ public class ScrConfigurationImpl implements ScrConfiguration
                 timeout = ( Long ) config.get( PROP_STOP_TIMEOUT );
                 stopTimeout = timeout == null? DEFAULT_STOP_TIMEOUT_MILLISECONDS: timeout;
                 newGlobalExtender = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_GLOBAL_EXTENDER) ) );
+                cacheMetadata = !VALUE_FALSE.equalsIgnoreCase( String.valueOf( config.get( PROP_CACHE_METADATA ) ) );
+                actorThreads = getActorThreads( config.get( PROP_ACTOR_THREADS ) );
+                activationPrefetch = VALUE_TRUE.equalsIgnoreCase( String.valueOf( config.get( PROP_ACTIVATION_PREFETCH ) ) );
+                activationWarmup = getActivationWarmup( config.get( PROP_ACTIVATION_WARMUP ) );
+                Long window = ( Long ) config.get( PROP_BIND_BATCH_WINDOW );
+                bindBatchWindow = window == null? 0: Math.max( 0, window );
             }
             if ( scrCommand != null )
             {
@@ -238,6 +270,31 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return globalExtender;
     }
 
+    public boolean cacheMetadata()
+    {
+        return cacheMetadata;
+    }
+
+    public int actorThreads()
+    {
+        return actorThreads;
+    }
+
+    public boolean activationPrefetch()
+    {
+        return activationPrefetch;
+    }
+
+    public String[] activationWarmup()
+    {
+        return activationWarmup.clone();
+    }
+
+    public long bindBatchWindow()
+    {
+        return bindBatchWindow;
+    }
+
     private boolean getDefaultFactoryEnabled()
     {
         return VALUE_TRUE.equals( bundleContext.getProperty( PROP_FACTORY_ENABLED ) );
@@ -286,6 +343,87 @@ public class ScrConfigurationImpl implements ScrConfiguration
         return VALUE_TRUE.equalsIgnoreCase( bundleContext.getProperty( PROP_GLOBAL_EXTENDER) );
     }
 
+    private boolean getDefaultCacheMetadata()
+    {
+        return !VALUE_FALSE.equalsIgnoreCase( bundleContext.getProperty( PROP_CACHE_METADATA ) );
+    }
+
+    private int getDefaultActorThreads()
+    {
+        return getActorThreads( bundleContext.getProperty( PROP_ACTOR_THREADS ) );
+    }
+
+    private int getActorThreads( final Object threadsObject )
+    {
+        if ( threadsObject instanceof Number )
+        {
+            return Math.max( 1, ( ( Number ) threadsObject ).intValue() );
+        }
+        if ( threadsObject != null )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( threadsObject.toString().trim() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // fall back to the default
+            }
+        }
+        return DEFAULT_ACTOR_THREADS;
+    }
+
+    private long getDefaultBindBatchWindow()
+    {
+        String val = bundleContext.getProperty( PROP_BIND_BATCH_WINDOW );
+        if ( val == null )
+        {
+            return 0;
+        }
+        return Math.max( 0, Long.parseLong( val ) );
+    }
+
+    private boolean getDefaultActivationPrefetch()
+    {
+        return VALUE_TRUE.equalsIgnoreCase( bundleContext.getProperty( PROP_ACTIVATION_PREFETCH ) );
+    }
+
+    private String[] getDefaultActivationWarmup()
+    {
+        return getActivationWarmup( bundleContext.getProperty( PROP_ACTIVATION_WARMUP ) );
+    }
+
+    // accepts a comma separated list as well as an array or a collection of names
+    private String[] getActivationWarmup( final Object warmupObject )
+    {
+        final List<String> names = new ArrayList<String>();
+        if ( warmupObject instanceof String[] )
+        {
+            names.addAll( Arrays.asList( ( String[] ) warmupObject ) );
+        }
+        else if ( warmupObject instanceof Collection )
+        {
+            for ( Object name : ( Collection<?> ) warmupObject )
+            {
+                names.add( String.valueOf( name ) );
+            }
+        }
+        else if ( warmupObject != null )
+        {
+            names.addAll( Arrays.asList( warmupObject.toString().split( "," ) ) );
+        }
+        final List<String> warmup = new ArrayList<String>();
+        for ( String name : names )
+        {
+            name = name.trim();
+            if ( name.length() > 0 && !warmup.contains( name ) )
+            {
+                warmup.add( name );
+            }
+        }
+        return warmup.toArray( new String[warmup.size()] );
+    }
+
     private int getLogLevel( final Object levelObject )
     {
         if ( levelObject != null )
@@ -124,6 +124,51 @@ class ScrManagedServiceMetaTypeProvider extends ScrManagedService
                 "Whether to extend all bundles whether or not visible to this bundle.",
                 false ) );
 
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_CACHE_METADATA,
+                "Cache Metadata",
+                "Whether to cache the component metadata read from the descriptors of the bundles "
+                    + "so that the descriptors need not be parsed again when the bundles are started again.",
+                true ) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTOR_THREADS,
+                "Actor Threads",
+                "The number of threads enabling, disabling and reconfiguring components asynchronously. "
+                    + "Tasks acting upon different components run concurrently if this is more than one. "
+                    + "Changes take effect when the Service Component Runtime is restarted.",
+                AttributeDefinition.INTEGER,
+                new String[] { String.valueOf(this.getScrConfiguration().actorThreads())},
+                0, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_PREFETCH,
+                "Activation Prefetch",
+                "Whether to activate the components providing the mandatory references of a delayed component "
+                    + "concurrently on the actor threads when the component is activated. This is most effective "
+                    + "with more than one actor thread.",
+                false ) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_ACTIVATION_WARMUP,
+                "Activation Warm-up",
+                "The names of the delayed components to activate in the background once the framework has started, "
+                    + "so that the first request for their services does not pay for their activation.",
+                AttributeDefinition.STRING,
+                this.getScrConfiguration().activationWarmup(),
+                Integer.MAX_VALUE, null, null) );
+
+        adList.add( new AttributeDefinitionImpl(
+                ScrConfiguration.PROP_BIND_BATCH_WINDOW,
+                "Bind batch window milliseconds",
+                "How long services added to a dynamic multiple reference of an active component are collected "
+                    + "before they are bound together, so that a field holding the services is updated and the "
+                    + "service properties of the component are changed once per batch. Zero binds each service "
+                    + "as it comes.",
+                AttributeDefinition.LONG,
+                new String[] { String.valueOf(this.getScrConfiguration().bindBatchWindow())},
+                0, null, null) );
+
         return new ObjectClassDefinition()
         {
 
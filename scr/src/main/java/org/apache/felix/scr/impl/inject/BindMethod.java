@@ -27,7 +27,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.felix.scr.impl.helper.MethodResult;
-import org.apache.felix.scr.impl.helper.ReadOnlyDictionary;
 import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.inject.BindMethod.ParamType;
 import org.apache.felix.scr.impl.manager.ComponentContextImpl;
@@ -53,7 +52,10 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
     }
 
     //initialized for cases where there is no method.
-    private volatile List<ParamType> m_paramTypes = Collections.emptyList();
+    private volatile ParamType[] m_paramTypes = new ParamType[0];
+
+    // whether the method takes the service object, so it must be got
+    private volatile boolean m_takesServiceObject;
 
 
     public BindMethod( final String methodName,
@@ -369,7 +371,9 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
     @Override
     protected void setTypes(List<ParamType> types)
     {
-        m_paramTypes = types;
+        // resolve the parameters once, so calls just fill them in
+        m_paramTypes = types.toArray( new ParamType[types.size()] );
+        m_takesServiceObject = types.contains( ParamType.serviceType );
     }
 
     /**
@@ -647,7 +651,7 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
         //??? this resolves which we need.... better way?
         if ( refPair.getServiceObject(key) == null && methodExists( logger ) )
         {
-            if ( m_paramTypes.contains(ParamType.serviceType) ) {
+            if ( m_takesServiceObject ) {
                 return refPair.getServiceObject(key, context, logger);
             }
         }
@@ -662,10 +666,11 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
     protected Object[] getParameters( Method method, BindParameters bp )
     {
         ComponentContextImpl key = bp.getComponentContext();
-        Object[] result = new Object[ m_paramTypes.size()];
+        final ParamType[] paramTypes = m_paramTypes;
+        Object[] result = new Object[ paramTypes.length ];
         RefPair<?, ?> refPair = bp.getRefPair();
         int i = 0;
-        for ( ParamType pt: m_paramTypes ) {
+        for ( ParamType pt: paramTypes ) {
             switch (pt) {
                 case serviceReference:
                     result[i++] = refPair.getRef();
@@ -676,7 +681,7 @@ implements org.apache.felix.scr.impl.helper.ReferenceMethod
                     break;
 
                 case map:
-                    result[i++] = new ReadOnlyDictionary( refPair.getRef() );
+                    result[i++] = refPair.getServiceProperties();
                     break;
 
                 case serviceType:
@@ -33,7 +33,6 @@ import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.felix.scr.impl.helper.InitReferenceMethod;
 import org.apache.felix.scr.impl.helper.MethodResult;
-import org.apache.felix.scr.impl.helper.ReadOnlyDictionary;
 import org.apache.felix.scr.impl.helper.ReferenceMethod;
 import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.apache.felix.scr.impl.manager.ComponentContextImpl;
@@ -466,8 +465,8 @@ public class FieldHandler
             case serviceType : obj = refPair.getServiceObject(key); break;
             case serviceReference : obj = refPair.getRef(); break;
             case serviceObjects : obj = key.getComponentServiceObjectsHelper().getServiceObjects(refPair.getRef()); break;
-            case map : obj = new ReadOnlyDictionary( refPair.getRef() ); break;
-            case tuple : final Object tupleKey = new ReadOnlyDictionary( refPair.getRef() );
+            case map : obj = refPair.getServiceProperties(); break;
+            case tuple : final Object tupleKey = refPair.getServiceProperties();
                          final Object tupleValue = refPair.getServiceObject(key);
                          obj = new MapEntryImpl(tupleKey, tupleValue, refPair.getRef());
                          break;
@@ -549,15 +548,85 @@ public class FieldHandler
     }
 
     private Collection<Object> getReplaceCollection(final BindParameters bp)
+    {
+        return getReplaceCollection(bp.getComponentContext());
+    }
+
+    private Collection<Object> getReplaceCollection(final ComponentContextImpl<?> key)
     {
         final List<Object> objects = new ArrayList<Object>();
-        for(final Object val : bp.getComponentContext().getBoundValues(metadata.getName()).values())
+        for(final Object val : key.getBoundValues(metadata.getName()).values())
         {
             objects.add(val);
         }
         return objects;
     }
 
+    /**
+     * Defers the update of the collection field with the bound value to the
+     * end of the batch of binds in progress, so that the field is replaced or
+     * the collection is added to once for the whole batch.
+     * @return <code>false</code> if no batch is in progress
+     */
+    private boolean deferFieldUpdate(final Object componentInstance,
+            final ComponentContextImpl<?> key,
+            final Object obj,
+            final SimpleLogger logger)
+    {
+        synchronized ( key )
+        {
+            if ( !key.isFieldBatch(metadata.getName()) )
+            {
+                return false;
+            }
+            BatchedFieldUpdate update = (BatchedFieldUpdate) key.getFieldBatchUpdate(metadata.getName());
+            if ( update == null )
+            {
+                update = new BatchedFieldUpdate(componentInstance, key, logger);
+                key.setFieldBatchUpdate(metadata.getName(), update);
+            }
+            update.values.add(obj);
+            return true;
+        }
+    }
+
+    private final class BatchedFieldUpdate implements Runnable
+    {
+        private final Object componentInstance;
+        private final ComponentContextImpl<?> key;
+        private final SimpleLogger logger;
+        final List<Object> values = new ArrayList<Object>();
+
+        BatchedFieldUpdate(final Object componentInstance, final ComponentContextImpl<?> key, final SimpleLogger logger)
+        {
+            this.componentInstance = componentInstance;
+            this.key = key;
+            this.logger = logger;
+        }
+
+        public void run()
+        {
+            try
+            {
+                if ( metadata.isReplace() )
+                {
+                    setFieldValue(componentInstance, getReplaceCollection(key));
+                }
+                else
+                {
+                    @SuppressWarnings("unchecked")
+                    final Collection<Object> col = (Collection<Object>)getFieldValue(componentInstance);
+                    col.addAll(values);
+                }
+            }
+            catch ( final InvocationTargetException ite )
+            {
+                logger.log( LogService.LOG_ERROR, "The {0} field has thrown an exception", new Object[]
+                    { metadata.getField() }, ite.getCause() );
+            }
+        }
+    }
+
     private MethodResult updateField(final METHOD_TYPE mType,
                                      final Object componentInstance,
                                      final BindParameters bp,
@@ -617,15 +686,19 @@ public class FieldHandler
             {
                 final Object obj = getValue(key, refPair);
                 bp.getComponentContext().getBoundValues(metadata.getName()).put(refPair, obj);
-                if ( metadata.isReplace() )
+                // within a batch of binds, the field is updated at its end
+                if ( !deferFieldUpdate(componentInstance, key, obj, logger) )
                 {
-                    this.setFieldValue(componentInstance, getReplaceCollection(bp));
-                }
-                else
-                {
-                    @SuppressWarnings("unchecked")
-                    final Collection<Object> col = (Collection<Object>)this.getFieldValue(componentInstance);
-                    col.add(obj);
+                    if ( metadata.isReplace() )
+                    {
+                        this.setFieldValue(componentInstance, getReplaceCollection(bp));
+                    }
+                    else
+                    {
+                        @SuppressWarnings("unchecked")
+                        final Collection<Object> col = (Collection<Object>)this.getFieldValue(componentInstance);
+                        col.add(obj);
+                    }
                 }
             }
             // unbind needs only be done, if reference is dynamic
@@ -441,7 +441,7 @@ public abstract class AbstractComponentManager<S> implements SimpleLogger, Compo
         if (async)
         {
             final Deferred<Void> latch = enableLatch;
-            getActivator().schedule(new Runnable()
+            getActivator().schedule(this, new Runnable()
             {
 
                 long count = taskCounter.incrementAndGet();
@@ -532,7 +532,7 @@ public abstract class AbstractComponentManager<S> implements SimpleLogger, Compo
         if (async)
         {
             final Deferred<Void> latch = enableLatch;
-            getActivator().schedule(new Runnable()
+            getActivator().schedule(this, new Runnable()
             {
 
                 long count = taskCounter.incrementAndGet();
@@ -1001,15 +1001,26 @@ public abstract class AbstractComponentManager<S> implements SimpleLogger, Compo
     protected boolean collectDependencies(ComponentContextImpl<S> componentContext)
     {
         initDependencyManagers();
-        for (DependencyManager<S, ?> dependencyManager : m_dependencyManagers)
+        ActivationPlanner planner = ActivationPlanner.prefetch(this);
+        try
         {
-            if (!dependencyManager.prebind(componentContext))
+            for (DependencyManager<S, ?> dependencyManager : m_dependencyManagers)
             {
-                //not actually satisfied any longer
-                deactivateDependencyManagers();
-                log(LogService.LOG_DEBUG, "Could not get required dependency for dependency manager: {0}",
-                    new Object[] { dependencyManager.getName() }, null);
-                return false;
+                if (!dependencyManager.prebind(componentContext))
+                {
+                    //not actually satisfied any longer
+                    deactivateDependencyManagers();
+                    log(LogService.LOG_DEBUG, "Could not get required dependency for dependency manager: {0}",
+                        new Object[] { dependencyManager.getName() }, null);
+                    return false;
+                }
+            }
+        }
+        finally
+        {
+            if (planner != null)
+            {
+                planner.release();
             }
         }
         log(LogService.LOG_DEBUG, "This thread collected dependencies", null);
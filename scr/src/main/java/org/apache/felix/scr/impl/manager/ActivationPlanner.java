@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentConstants;
+import org.osgi.service.log.LogService;
+
+/**
+ * ActivationPlanner activates the components providing the mandatory references of a component concurrently
+ * on the actor threads before the component collects its dependencies. Without it, a chain of delayed components
+ * is activated one level at a time on the thread requesting the first of them.
+ *
+ * The planner walks the reference graph from the component, following the services tracked by the dependency
+ * managers that are provided by other components. It gives up if the graph has a cycle, as the components of a
+ * cycle may deadlock when activated on different threads. Otherwise it gets the service of each component of the
+ * required subgraph in a task of its own, deepest first. The thread waiting for the tasks runs those not started
+ * yet itself, so it never waits for a task queued behind other work.
+ *
+ * The services are used by the bundle of the component until the planner is released, so that the delayed
+ * components are not deactivated before the component binds them.
+ */
+class ActivationPlanner
+{
+    // set while a thread activates a planned subgraph, so that the components of the subgraph do not plan again
+    private static final ThreadLocal<Boolean> PLANNED = new ThreadLocal<Boolean>();
+
+    private final AbstractComponentManager<?> m_manager;
+    private final BundleContext m_bundleContext;
+    private final List<Fetch> m_fetches = new ArrayList<Fetch>();
+
+    // guarded by this
+    private boolean m_released;
+
+    ActivationPlanner(AbstractComponentManager<?> manager, BundleContext bundleContext,
+        List<ServiceReference<?>> required)
+    {
+        m_manager = manager;
+        m_bundleContext = bundleContext;
+        for (ServiceReference<?> ref : required)
+        {
+            m_fetches.add(new Fetch(ref));
+        }
+        PLANNED.set(Boolean.TRUE);
+    }
+
+    /**
+     * Activates the required subgraph of the component if activation prefetch is enabled.
+     * @return the planner to release once the component collected its dependencies, or <code>null</code> if
+     *     nothing was activated.
+     */
+    static ActivationPlanner prefetch(AbstractComponentManager<?> manager)
+    {
+        if (PLANNED.get() != null)
+        {
+            return null;
+        }
+        final ComponentActivator activator = manager.getActivator();
+        final ScrConfiguration configuration = activator == null ? null : activator.getConfiguration();
+        if (configuration == null || !configuration.activationPrefetch())
+        {
+            return null;
+        }
+        final BundleContext bundleContext = manager.getBundleContext();
+        if (bundleContext == null)
+        {
+            return null;
+        }
+        final List<ServiceReference<?>> required = new ArrayList<ServiceReference<?>>();
+        if (!visit(manager, true, activator, new HashSet<Long>(), new HashMap<Long, Boolean>(), required))
+        {
+            manager.log(LogService.LOG_DEBUG, "Not prefetching dependencies: the reference graph has a cycle",
+                null);
+            return null;
+        }
+        if (required.isEmpty())
+        {
+            return null;
+        }
+        manager.log(LogService.LOG_DEBUG, "Prefetching {0} dependencies", new Object[] { required.size() }, null);
+        ActivationPlanner planner = new ActivationPlanner(manager, bundleContext, required);
+        planner.activate(activator);
+        return planner;
+    }
+
+    /**
+     * Visits the components providing the references of a component, depth first.
+     * @param required whether the component is part of the required subgraph
+     * @param path the ids of the components being visited
+     * @param visited the ids of the components visited, mapped to whether they were visited as required
+     * @param refs collects the services of the required components, deepest first
+     * @return <code>false</code> if a cycle was found
+     */
+    private static boolean visit(AbstractComponentManager<?> manager, boolean required, ComponentActivator activator,
+        Set<Long> path, Map<Long, Boolean> visited, List<ServiceReference<?>> refs)
+    {
+        final Long id = manager.getId();
+        path.add(id);
+        for (DependencyManager<?, ?> dm : manager.getDependencyManagers())
+        {
+            final boolean mandatory = required && !dm.isEffectivelyOptional();
+            for (ServiceReference<?> ref : dm.getBindCandidates())
+            {
+                final Object providerId = ref.getProperty(ComponentConstants.COMPONENT_ID);
+                if (!(providerId instanceof Long))
+                {
+                    // not provided by a component
+                    continue;
+                }
+                if (path.contains(providerId))
+                {
+                    return false;
+                }
+                final AbstractComponentManager<?> provider = activator.getComponentManager((Long) providerId);
+                if (provider == null)
+                {
+                    continue;
+                }
+                final Boolean visitedRequired = visited.get(providerId);
+                if (visitedRequired == null || (mandatory && !visitedRequired))
+                {
+                    if (!visit(provider, mandatory, activator, path, visited, refs))
+                    {
+                        return false;
+                    }
+                }
+                if (mandatory && !refs.contains(ref))
+                {
+                    refs.add(ref);
+                }
+            }
+        }
+        path.remove(id);
+        visited.put(id, required);
+        return true;
+    }
+
+    void activate(ComponentActivator activator)
+    {
+        for (Fetch fetch : m_fetches)
+        {
+            activator.schedule(fetch, fetch);
+        }
+        // run the tasks the actor threads did not start yet, then wait for the others
+        for (Fetch fetch : m_fetches)
+        {
+            fetch.run();
+        }
+        final long timeout = m_manager.getLockTimeout();
+        final long end = System.currentTimeMillis() + timeout;
+        synchronized (this)
+        {
+            for (Fetch fetch : m_fetches)
+            {
+                while (!fetch.m_done)
+                {
+                    long wait = end - System.currentTimeMillis();
+                    if (wait <= 0)
+                    {
+                        m_manager.log(LogService.LOG_WARNING,
+                            "Dependency {0} not activated after {1} ms, collecting dependencies anyway",
+                            new Object[] { fetch.m_ref, timeout }, null);
+                        return;
+                    }
+                    try
+                    {
+                        wait(wait);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the services of the activated components. Tasks still running get and release their service once done.
+     */
+    void release()
+    {
+        PLANNED.remove();
+        final List<Fetch> fetched = new ArrayList<Fetch>();
+        synchronized (this)
+        {
+            m_released = true;
+            for (Fetch fetch : m_fetches)
+            {
+                if (fetch.m_service != null)
+                {
+                    fetched.add(fetch);
+                    fetch.m_service = null;
+                }
+            }
+        }
+        for (Fetch fetch : fetched)
+        {
+            ungetService(fetch.m_ref);
+        }
+    }
+
+    private void ungetService(ServiceReference<?> ref)
+    {
+        try
+        {
+            m_bundleContext.ungetService(ref);
+        }
+        catch (IllegalStateException e)
+        {
+            // bundle context no longer valid
+        }
+    }
+
+    private class Fetch implements Runnable
+    {
+        private final ServiceReference<?> m_ref;
+
+        // guarded by the planner
+        private boolean m_started;
+        private boolean m_done;
+        private Object m_service;
+
+        Fetch(ServiceReference<?> ref)
+        {
+            m_ref = ref;
+        }
+
+        public void run()
+        {
+            synchronized (ActivationPlanner.this)
+            {
+                if (m_started || m_released)
+                {
+                    return;
+                }
+                m_started = true;
+            }
+            final Boolean planned = PLANNED.get();
+            PLANNED.set(Boolean.TRUE);
+            Object service = null;
+            try
+            {
+                service = m_bundleContext.getService(m_ref);
+            }
+            catch (RuntimeException e)
+            {
+                m_manager.log(LogService.LOG_DEBUG, "Could not prefetch dependency {0}", new Object[] { m_ref }, e);
+            }
+            finally
+            {
+                if (planned == null)
+                {
+                    PLANNED.remove();
+                }
+            }
+            boolean release;
+            synchronized (ActivationPlanner.this)
+            {
+                m_done = true;
+                release = m_released && service != null;
+                if (!release)
+                {
+                    m_service = service;
+                }
+                ActivationPlanner.this.notifyAll();
+            }
+            if (release)
+            {
+                ungetService(m_ref);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Prefetch " + m_ref + " for " + m_manager.getComponentMetadata().getName();
+        }
+    }
+}
@@ -33,10 +33,16 @@ public interface ComponentActivator extends Logger, ExtendedServiceListenerConte
 
     void schedule(Runnable runnable);
 
+    void schedule(Object key, Runnable runnable);
+
+    void schedule(Object key, Runnable runnable, long delay);
+
     long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager);
 
     void unregisterComponentId(AbstractComponentManager<?> sAbstractComponentManager);
 
+    AbstractComponentManager<?> getComponentManager(long componentId);
+
     <T> boolean enterCreate(ServiceReference<T> reference);
 
     <T> void leaveCreate(ServiceReference<T> reference);
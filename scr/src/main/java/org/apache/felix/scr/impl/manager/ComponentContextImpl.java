@@ -65,6 +65,9 @@ public class ComponentContextImpl<S> implements ExtComponentContext {
     /** Mapping of ref pairs to value bound */
     private Map<String, Map<RefPair<?, ?>, Object>> boundValues;
 
+    // the field updates deferred to the end of the batch of binds in progress, by reference name
+    private Map<String, Runnable> batchedFieldUpdates;
+
 
 
     public ComponentContextImpl( final SingleComponentManager<S> componentManager, final Bundle usingBundle, ServiceRegistration<S> serviceRegistration )
@@ -313,6 +316,50 @@ public class ComponentContextImpl<S> implements ExtComponentContext {
         return map;
     }
 
+    /**
+     * Starts a batch of binds for the reference: field updates are deferred
+     * until {@link #endFieldBatch(String)}.
+     */
+    synchronized void startFieldBatch(final String key)
+    {
+        if ( this.batchedFieldUpdates == null )
+        {
+            this.batchedFieldUpdates = new HashMap<String, Runnable>();
+        }
+        this.batchedFieldUpdates.put(key, null);
+    }
+
+    /**
+     * Ends the batch of binds for the reference.
+     * @return the field update deferred during the batch or <code>null</code>
+     */
+    synchronized Runnable endFieldBatch(final String key)
+    {
+        return this.batchedFieldUpdates == null ? null : this.batchedFieldUpdates.remove(key);
+    }
+
+    public synchronized boolean isFieldBatch(final String key)
+    {
+        return this.batchedFieldUpdates != null && this.batchedFieldUpdates.containsKey(key);
+    }
+
+    public synchronized Runnable getFieldBatchUpdate(final String key)
+    {
+        return this.batchedFieldUpdates == null ? null : this.batchedFieldUpdates.get(key);
+    }
+
+    /**
+     * Defers the field update of the reference to the end of the batch of
+     * binds in progress, replacing the update deferred so far.
+     */
+    public synchronized void setFieldBatchUpdate(final String key, final Runnable update)
+    {
+        if ( isFieldBatch(key) )
+        {
+            this.batchedFieldUpdates.put(key, update);
+        }
+    }
+
     private Map<RefPair<?, ?>, Object> createNewFieldHandlerMap()
     {
         return new TreeMap<RefPair<?,?>, Object>(
@@ -22,6 +22,7 @@ import java.security.Permission;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -76,6 +77,12 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
 
     private volatile int m_minCardinality;
 
+    // the services added to a dynamic multiple reference waiting to be bound together
+    private final PendingBinds m_pendingBinds = new PendingBinds();
+
+    // the batch of binds in progress, if any
+    private volatile BindBatch m_bindBatch;
+
     /**
      * Constructor that receives several parameters.
      * @param dependency An object that contains data about the dependency
@@ -312,7 +319,14 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             boolean tracked = false;
             if (getPreviousRefMap().remove(serviceReference) == null)
             {
-                if (isActive())
+                if (isActive() && m_pendingBinds.add(refPair, trackingCount))
+                {
+                    // tracked right away, the bind checks whether the instance is still in range
+                    m_componentManager.log(LogService.LOG_DEBUG,
+                        "dm {0} tracking {1} MultipleDynamic already active, binding {2} with the next batch",
+                        new Object[] { getName(), trackingCount, serviceReference }, null);
+                }
+                else if (isActive())
                 {
                     m_componentManager.log(LogService.LOG_DEBUG,
                         "dm {0} tracking {1} MultipleDynamic already active, binding {2}",
@@ -352,7 +366,10 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         {
             m_componentManager.log(LogService.LOG_DEBUG, "dm {0} tracking {1} MultipleDynamic modified {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
-            if (isActive())
+            // the properties handed to bind methods and fields are out of date
+            refPair.propertiesModified();
+            // a service not bound yet gets the new properties when bound, one being bound is updated afterwards
+            if (isActive() && !m_pendingBinds.awaitBound(refPair))
             {
                 m_componentManager.invokeUpdatedMethod(DependencyManager.this, refPair, trackingCount);
             }
@@ -367,10 +384,12 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             m_componentManager.log(LogService.LOG_DEBUG, "dm {0} tracking {1} MultipleDynamic removed {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
             refPair.markDeleted();
+            // a service not bound yet need not be unbound, one being bound is unbound afterwards
+            boolean pending = m_pendingBinds.remove(refPair);
             boolean unbind = cardinalitySatisfied(getTracker().getServiceCount());
             if (unbind)
             {
-                if (isActive())
+                if (isActive() && !pending)
                 {
                     m_componentManager.invokeUnbindMethod(DependencyManager.this, refPair, trackingCount);
                 }
@@ -493,6 +512,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             m_componentManager.log(LogService.LOG_DEBUG,
                 "dm {0} tracking {1} MultipleStaticGreedy modified {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
+            // the properties handed to bind methods and fields are out of date
+            refPair.propertiesModified();
             boolean reactivate = false;
             if (isActive())
             {
@@ -615,6 +636,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             m_componentManager.log(LogService.LOG_DEBUG,
                 "dm {0} tracking {1} MultipleStaticReluctant modified {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
+            // the properties handed to bind methods and fields are out of date
+            refPair.propertiesModified();
             boolean reactivate = false;
             Collection<RefPair<S, T>> refs = this.refs.get();
             if (isActive() && refs.contains(refPair))
@@ -813,6 +836,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         {
             m_componentManager.log(LogService.LOG_DEBUG, "dm {0} tracking {1} SingleDynamic modified {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
+            // the properties handed to bind methods and fields are out of date
+            refPair.propertiesModified();
             boolean invokeUpdated;
             synchronized (getTracker().tracked())
             {
@@ -1026,6 +1051,8 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         {
             m_componentManager.log(LogService.LOG_DEBUG, "dm {0} tracking {1} SingleStatic modified {2} (enter)",
                 new Object[] { getName(), trackingCount, serviceReference }, null);
+            // the properties handed to bind methods and fields are out of date
+            refPair.propertiesModified();
             boolean invokeUpdated;
             final Object sync = getTracker().tracked();
             synchronized (sync)
@@ -1228,7 +1255,7 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         return m_dependencyMetadata.isOptional();
     }
 
-    private boolean isEffectivelyOptional()
+    boolean isEffectivelyOptional()
     {
         return m_minCardinality == 0;
     }
@@ -1281,6 +1308,28 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         return m_tracker.getTracked(null, trackingCount).size();
     }
 
+    /**
+     * Returns the references of the services this dependency manager binds
+     * when the component is activated: all tracked services of a multiple
+     * reference, the best of them for a unary one.
+     */
+    List<ServiceReference<T>> getBindCandidates()
+    {
+        final ServiceTracker<T, RefPair<S, T>, ExtendedServiceEvent> tracker = m_tracker;
+        if (tracker == null)
+        {
+            return Collections.emptyList();
+        }
+        AtomicInteger trackingCount = new AtomicInteger();
+        List<ServiceReference<T>> refs = new ArrayList<ServiceReference<T>>(
+            tracker.getTracked(null, trackingCount).keySet());
+        if (!isMultiple() && refs.size() > 1)
+        {
+            return refs.subList(0, 1);
+        }
+        return refs;
+    }
+
     private ServiceReference<T>[] getFrameworkServiceReferences(String targetFilter)
     {
         if (hasGetPermission())
@@ -1592,10 +1641,12 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
         m_componentManager.log(LogService.LOG_DEBUG,
             "DependencyManager: {0} close component unbinding from {1} at tracking count {2} refpairs: {3}",
             new Object[] { getName(), componentContext, trackingCount.get(), refPairs }, null);
+        // the services waiting to be bound are never bound to this instance, a batch being bound completes first
+        Collection<RefPair<S, T>> pending = m_pendingBinds.clear();
         m_componentManager.waitForTracked(trackingCount.get());
         for (RefPair<S, T> boundRef : refPairs)
         {
-            if (doUnbind && !boundRef.isFailed())
+            if (doUnbind && !boundRef.isFailed() && !pending.contains(boundRef))
             {
                 invokeUnbindMethod(componentContext, boundRef, trackingCount.get(), edgeInfo);
             }
@@ -1719,16 +1770,342 @@ public class DependencyManager<S, T> implements ReferenceManager<S, T>
             return false;
 
         }
+        final BindBatch batch = m_bindBatch;
+        final boolean batched = batch != null && batch.m_thread == Thread.currentThread();
+        if (batched)
+        {
+            batch.enter(componentContext);
+        }
         MethodResult result = m_bindMethods.getBind().invoke(componentContext.getImplementationObject(false),
             componentContext, refPair, MethodResult.VOID, m_componentManager);
         if (result == null)
         {
             return false;
         }
-        m_componentManager.setServiceProperties(result, trackingCount);
+        if (batched)
+        {
+            batch.bound(result, trackingCount);
+        }
+        else
+        {
+            m_componentManager.setServiceProperties(result, trackingCount);
+        }
         return true;
     }
 
+    /**
+     * Binds the services waiting in {@link #m_pendingBinds} together: collection fields are updated and the
+     * service properties returned by the bind methods are applied once for the whole batch.
+     */
+    private void bindPending()
+    {
+        final List<PendingBind<S, T>> binds = m_pendingBinds.take();
+        if (binds.isEmpty())
+        {
+            return;
+        }
+        m_componentManager.log(LogService.LOG_DEBUG, "dm {0} binding a batch of {1} services",
+            new Object[] { getName(), binds.size() }, null);
+        final BindBatch batch = new BindBatch();
+        m_bindBatch = batch;
+        try
+        {
+            for (PendingBind<S, T> bind : binds)
+            {
+                // a service removed meanwhile is skipped, a service removed from now on is unbound after the batch
+                if (m_pendingBinds.start(bind))
+                {
+                    m_componentManager.invokeBindMethod(this, bind.m_refPair, bind.m_trackingCount);
+                    if (bind.m_refPair.isFailed())
+                    {
+                        m_componentManager.registerMissingDependency(this, bind.m_refPair.getRef(),
+                            bind.m_trackingCount);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            m_bindBatch = null;
+            try
+            {
+                batch.end();
+            }
+            finally
+            {
+                m_pendingBinds.flushed();
+            }
+        }
+    }
+
+    private static final class PendingBind<S, T>
+    {
+        final RefPair<S, T> m_refPair;
+        final int m_trackingCount;
+        // guarded by the PendingBinds, set once the batch binds the service or once it is dropped from the batch
+        boolean m_started;
+        boolean m_dropped;
+
+        PendingBind(RefPair<S, T> refPair, int trackingCount)
+        {
+            m_refPair = refPair;
+            m_trackingCount = trackingCount;
+        }
+    }
+
+    /**
+     * The services added to a dynamic multiple reference of the active component, collected during the bind batch
+     * window before they are bound together. The services are tracked as soon as they are added, so waiting for the
+     * tracked services does not wait for the window; closing an instance drops the services waiting and waits for
+     * the services being bound instead.
+     * <p>
+     * The batch is bound on another thread than the service events, so a service removed or modified while its batch
+     * is bound is dropped from the batch if its bind has not started yet, and otherwise waits for the batch. The
+     * bind, updated and unbind calls for a service thus keep the order of its events.
+     */
+    private final class PendingBinds implements Runnable
+    {
+        // guarded by this
+        private final List<PendingBind<S, T>> m_binds = new ArrayList<PendingBind<S, T>>();
+        private boolean m_scheduled;
+        // the thread binding a batch and the services of the batch, if any
+        private Thread m_flushThread;
+        private List<PendingBind<S, T>> m_batch = Collections.emptyList();
+
+        /**
+         * Adds the service to the next batch.
+         * @return <code>false</code> if the service is to be bound right away
+         */
+        boolean add(RefPair<S, T> refPair, int trackingCount)
+        {
+            final ComponentActivator activator = m_componentManager.getActivator();
+            final ScrConfiguration configuration = activator == null ? null : activator.getConfiguration();
+            // instances of service factories come and go on their own, so they are bound right away
+            if (configuration == null || configuration.bindBatchWindow() <= 0 || !activator.isActive()
+                || m_componentManager.getComponentMetadata().getServiceScope() != Scope.singleton)
+            {
+                return false;
+            }
+            final boolean schedule;
+            synchronized (this)
+            {
+                m_binds.add(new PendingBind<S, T>(refPair, trackingCount));
+                schedule = !m_scheduled;
+                m_scheduled = true;
+            }
+            if (schedule)
+            {
+                activator.schedule(DependencyManager.this, this, configuration.bindBatchWindow());
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether the service is still to be bound, after waiting for the batch binding it, if any, at most
+         * for the lock timeout.
+         * @return <code>true</code> if the service was not bound yet and gets its current properties when bound
+         */
+        synchronized boolean awaitBound(RefPair<S, T> refPair)
+        {
+            if (find(m_binds, refPair) != null)
+            {
+                return true;
+            }
+            final PendingBind<S, T> bind = find(m_batch, refPair);
+            if (bind == null)
+            {
+                return false;
+            }
+            if (!bind.m_started)
+            {
+                return true;
+            }
+            awaitFlushed();
+            return false;
+        }
+
+        /**
+         * Removes the service from the next batch or from the batch being bound if its bind has not started yet,
+         * otherwise waits for that batch, at most for the lock timeout.
+         * @return <code>true</code> if the service was not bound
+         */
+        synchronized boolean remove(RefPair<S, T> refPair)
+        {
+            for (Iterator<PendingBind<S, T>> i = m_binds.iterator(); i.hasNext();)
+            {
+                if (i.next().m_refPair == refPair)
+                {
+                    i.remove();
+                    return true;
+                }
+            }
+            final PendingBind<S, T> bind = find(m_batch, refPair);
+            if (bind == null)
+            {
+                return false;
+            }
+            if (!bind.m_started)
+            {
+                bind.m_dropped = true;
+                return true;
+            }
+            awaitFlushed();
+            return false;
+        }
+
+        /**
+         * Drops the services waiting to be bound, including those of the batch being bound whose bind has not
+         * started yet, and waits for the batch, if any, at most for the lock timeout.
+         * @return the services dropped
+         */
+        synchronized Collection<RefPair<S, T>> clear()
+        {
+            final List<RefPair<S, T>> refPairs = new ArrayList<RefPair<S, T>>(m_binds.size());
+            for (PendingBind<S, T> bind : m_binds)
+            {
+                refPairs.add(bind.m_refPair);
+            }
+            m_binds.clear();
+            for (PendingBind<S, T> bind : m_batch)
+            {
+                if (!bind.m_started)
+                {
+                    bind.m_dropped = true;
+                    refPairs.add(bind.m_refPair);
+                }
+            }
+            awaitFlushed();
+            return refPairs;
+        }
+
+        // a bind method removing a service or closing the instance does not wait for itself
+        private void awaitFlushed()
+        {
+            if (m_flushThread != null && m_flushThread != Thread.currentThread())
+            {
+                final long end = System.currentTimeMillis() + m_componentManager.getLockTimeout();
+                long wait;
+                while (m_flushThread != null && (wait = end - System.currentTimeMillis()) > 0)
+                {
+                    try
+                    {
+                        wait(wait);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (m_flushThread != null)
+                {
+                    m_componentManager.log(LogService.LOG_ERROR,
+                        "dm {0} timed out waiting for a batch of binds to complete,  Expect further errors",
+                        new Object[] { getName() }, null);
+                }
+            }
+        }
+
+        private PendingBind<S, T> find(List<PendingBind<S, T>> binds, RefPair<S, T> refPair)
+        {
+            for (PendingBind<S, T> bind : binds)
+            {
+                if (bind.m_refPair == refPair && !bind.m_dropped)
+                {
+                    return bind;
+                }
+            }
+            return null;
+        }
+
+        synchronized List<PendingBind<S, T>> take()
+        {
+            m_scheduled = false;
+            final List<PendingBind<S, T>> binds = new ArrayList<PendingBind<S, T>>(m_binds);
+            m_binds.clear();
+            if (!binds.isEmpty())
+            {
+                m_flushThread = Thread.currentThread();
+                m_batch = binds;
+            }
+            return binds;
+        }
+
+        /**
+         * Starts binding a service of the batch.
+         * @return <code>false</code> if the service was dropped from the batch
+         */
+        synchronized boolean start(PendingBind<S, T> bind)
+        {
+            bind.m_started = !bind.m_dropped;
+            return bind.m_started;
+        }
+
+        synchronized void flushed()
+        {
+            m_flushThread = null;
+            m_batch = Collections.emptyList();
+            notifyAll();
+        }
+
+        public void run()
+        {
+            bindPending();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Bind batch for " + getName() + " of " + m_componentManager.getComponentMetadata().getName();
+        }
+    }
+
+    /**
+     * A batch of binds in progress on a thread: the field updates of each component instance and the service
+     * properties returned by the bind methods are applied at its end.
+     */
+    private final class BindBatch
+    {
+        final Thread m_thread = Thread.currentThread();
+        private final List<ComponentContextImpl<S>> m_contexts = new ArrayList<ComponentContextImpl<S>>();
+        private MethodResult m_result;
+        private int m_trackingCount;
+
+        void enter(ComponentContextImpl<S> componentContext)
+        {
+            if (!m_contexts.contains(componentContext))
+            {
+                componentContext.startFieldBatch(getName());
+                m_contexts.add(componentContext);
+            }
+        }
+
+        void bound(MethodResult result, int trackingCount)
+        {
+            if (result.hasResult())
+            {
+                m_result = result;
+                m_trackingCount = trackingCount;
+            }
+        }
+
+        void end()
+        {
+            for (ComponentContextImpl<S> componentContext : m_contexts)
+            {
+                Runnable update = componentContext.endFieldBatch(getName());
+                if (update != null)
+                {
+                    update.run();
+                }
+            }
+            if (m_result != null)
+            {
+                m_componentManager.setServiceProperties(m_result, m_trackingCount);
+            }
+        }
+    }
+
     /**
      * Calls the updated method.
      *
@@ -20,6 +20,9 @@
 
 package org.apache.felix.scr.impl.manager;
 
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+import org.apache.felix.scr.impl.helper.ReadOnlyDictionary;
 import org.apache.felix.scr.impl.helper.SimpleLogger;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceObjects;
@@ -35,6 +38,12 @@ public abstract class RefPair<S, T>
     boolean failed;
     volatile boolean deleted;
 
+    // the service properties handed to bind methods and fields, created on
+    // first use and shared by all calls until the service is modified; the
+    // stamp counts the modifications
+    private final AtomicStampedReference<ReadOnlyDictionary> properties =
+        new AtomicStampedReference<ReadOnlyDictionary>( null, 0 );
+
     public RefPair( ServiceReference<T> ref )
     {
         this.ref = ref;
@@ -45,6 +54,46 @@ public abstract class RefPair<S, T>
         return ref;
     }
 
+    /**
+     * Returns a read only copy of the properties of the service, which is
+     * created once and reused until {@link #propertiesModified()} is called.
+     */
+    public ReadOnlyDictionary getServiceProperties()
+    {
+        final int[] modCount = new int[1];
+        ReadOnlyDictionary props = properties.get( modCount );
+        if ( props == null )
+        {
+            props = new ReadOnlyDictionary( ref );
+            // keep the copy only if the service was not modified meanwhile,
+            // so a stale copy is never shared
+            if ( !properties.compareAndSet( null, props, modCount[0], modCount[0] ) )
+            {
+                final ReadOnlyDictionary current = properties.getReference();
+                if ( current != null )
+                {
+                    props = current;
+                }
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Drops the copy of the service properties after the service has been
+     * modified.
+     */
+    public void propertiesModified()
+    {
+        final int[] modCount = new int[1];
+        ReadOnlyDictionary props;
+        do
+        {
+            props = properties.get( modCount );
+        }
+        while ( !properties.compareAndSet( props, null, modCount[0], modCount[0] + 1 ) );
+    }
+
     public ServiceObjects<T> getServiceObjects()
     {
         return null;
@@ -64,6 +64,18 @@ public interface ScrConfiguration
 
     String PROP_GLOBAL_EXTENDER="ds.global.extender";
 
+    String PROP_CACHE_METADATA = "ds.cache.metadata";
+
+    String PROP_ACTOR_THREADS = "ds.actor.threads";
+
+    int DEFAULT_ACTOR_THREADS = 1;
+
+    String PROP_ACTIVATION_PREFETCH = "ds.activation.prefetch";
+
+    String PROP_ACTIVATION_WARMUP = "ds.activation.warmup";
+
+    String PROP_BIND_BATCH_WINDOW = "ds.bind.batch.window.milliseconds";
+
     /**
      * Returns the current log level.
      * @return
@@ -82,4 +94,38 @@ public interface ScrConfiguration
 
     long stopTimeout();
 
+    /**
+     * Returns whether the component metadata read from the descriptors of
+     * the bundles is cached so that the descriptors need not be parsed
+     * again when the bundles are started again.
+     */
+    boolean cacheMetadata();
+
+    /**
+     * Returns the number of threads running the asynchronous tasks acting
+     * upon the components, like enabling and disabling them. Tasks acting
+     * upon different components run concurrently if this is more than one.
+     */
+    int actorThreads();
+
+    /**
+     * Returns whether the references a delayed component requires are
+     * activated concurrently on the actor threads when the component is
+     * activated, rather than one after the other on the requesting thread.
+     */
+    boolean activationPrefetch();
+
+    /**
+     * Returns the names of the components to activate in the background
+     * once the framework has started, never <code>null</code>.
+     */
+    String[] activationWarmup();
+
+    /**
+     * Returns how long services added to a dynamic multiple reference of an
+     * active component are collected before they are bound together, in
+     * milliseconds. The services are bound as they come if this is zero.
+     */
+    long bindBatchWindow();
+
 }
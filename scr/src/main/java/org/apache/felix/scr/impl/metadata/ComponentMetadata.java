@@ -19,6 +19,9 @@
 package org.apache.felix.scr.impl.metadata;
 
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -941,6 +944,101 @@ public class ComponentMetadata
     }
 
 
+    /////////////////////////////////////////// PERSISTENCE //////////////////////////////////////
+
+    /**
+     * Writes the metadata as declared in the descriptor. This must be called
+     * before the metadata is validated, so that validating the metadata read
+     * back yields the same state.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        out.writeUTF( m_dsVersion.name() );
+        DescriptorCache.writeString( out, m_name );
+        out.writeBoolean( m_enabled );
+        DescriptorCache.writeString( out, m_factory );
+        DescriptorCache.writeBoolean( out, m_immediate );
+        DescriptorCache.writeString( out, m_implementationClassName );
+        out.writeBoolean( m_activateDeclared );
+        DescriptorCache.writeString( out, m_activate );
+        out.writeBoolean( m_deactivateDeclared );
+        DescriptorCache.writeString( out, m_deactivate );
+        DescriptorCache.writeString( out, m_modified );
+        DescriptorCache.writeString( out, m_configurationPolicy );
+        DescriptorCache.writeStrings( out, m_configurationPid );
+        out.writeInt( m_propertyMetaData.size() );
+        for ( PropertyMetadata property : m_propertyMetaData )
+        {
+            property.write( out );
+        }
+        out.writeBoolean( m_service != null );
+        if ( m_service != null )
+        {
+            m_service.write( out );
+        }
+        out.writeInt( m_references.size() );
+        for ( ReferenceMetadata reference : m_references )
+        {
+            reference.write( out );
+        }
+        out.writeBoolean( m_configurableServiceProperties );
+        out.writeBoolean( m_persistentFactoryComponent );
+        out.writeBoolean( m_deleteCallsModify );
+        DescriptorCache.writeBoolean( out, m_obsoleteFactoryComponentFactory );
+        out.writeBoolean( m_configureWithInterfaces );
+        out.writeBoolean( m_delayedKeepInstances );
+    }
+
+
+    /**
+     * Reads metadata written by {@link #write(DataOutputStream)}. The
+     * metadata must be validated before it is used.
+     */
+    static ComponentMetadata read( DataInputStream in ) throws IOException
+    {
+        final ComponentMetadata metadata;
+        try
+        {
+            metadata = new ComponentMetadata( DSVersion.valueOf( in.readUTF() ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new IOException( "Unknown DS version: " + iae.getMessage() );
+        }
+        metadata.m_name = DescriptorCache.readString( in );
+        metadata.m_enabled = in.readBoolean();
+        metadata.m_factory = DescriptorCache.readString( in );
+        metadata.m_immediate = DescriptorCache.readBoolean( in );
+        metadata.m_implementationClassName = DescriptorCache.readString( in );
+        metadata.m_activateDeclared = in.readBoolean();
+        metadata.m_activate = DescriptorCache.readString( in );
+        metadata.m_deactivateDeclared = in.readBoolean();
+        metadata.m_deactivate = DescriptorCache.readString( in );
+        metadata.m_modified = DescriptorCache.readString( in );
+        metadata.m_configurationPolicy = DescriptorCache.readString( in );
+        metadata.m_configurationPid = DescriptorCache.readStrings( in );
+        for ( int i = in.readInt(); i > 0; i-- )
+        {
+            metadata.m_propertyMetaData.add( PropertyMetadata.read( in ) );
+        }
+        if ( in.readBoolean() )
+        {
+            metadata.m_service = ServiceMetadata.read( in );
+        }
+        for ( int i = in.readInt(); i > 0; i-- )
+        {
+            metadata.m_references.add( ReferenceMetadata.read( in ) );
+        }
+        metadata.m_configurableServiceProperties = in.readBoolean();
+        metadata.m_persistentFactoryComponent = in.readBoolean();
+        metadata.m_deleteCallsModify = in.readBoolean();
+        metadata.m_obsoleteFactoryComponentFactory = DescriptorCache.readBoolean( in );
+        metadata.m_configureWithInterfaces = in.readBoolean();
+        metadata.m_delayedKeepInstances = in.readBoolean();
+        return metadata;
+    }
+
+
     /**
      * Returns a <code>ComponentException</code> for this compeonent with the
      * given explanation for failure.
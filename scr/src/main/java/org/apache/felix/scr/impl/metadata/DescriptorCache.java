@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+
+/**
+ * The <code>DescriptorCache</code> keeps the component metadata read from
+ * the component descriptors of the bundles in a compact binary form, so that
+ * the descriptors need not be parsed again when the bundles are started
+ * again. Each descriptor is cached in its own file in a directory per bundle.
+ * A cached descriptor is used as long as the bundle and its fragments are
+ * not updated and the SCR configuration affecting the metadata is unchanged.
+ * <p>
+ * The metadata is cached as declared, before it is validated. It is
+ * validated again when it is loaded, which is cheap compared to parsing and
+ * reports the same problems as the first time.
+ */
+public class DescriptorCache
+{
+
+    private static final int MAGIC = 0x53435244;
+
+    // to be increased whenever the format of the metadata changes
+    private static final int FORMAT_VERSION = 1;
+
+    private final File m_directory;
+
+
+    public DescriptorCache( File directory )
+    {
+        m_directory = directory;
+    }
+
+
+    /**
+     * Returns the metadata of the components declared in the descriptor, or
+     * <code>null</code> if the descriptor is not cached or the cached
+     * metadata is stale. A corrupt cache entry is removed. The metadata must
+     * be validated before it is used.
+     */
+    public List<ComponentMetadata> load( Bundle bundle, String descriptor, boolean factoryEnabled,
+        boolean keepInstances )
+    {
+        File file = getFile( bundle, descriptor );
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        DataInputStream in = null;
+        boolean corrupt = false;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            if ( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                || !descriptor.equals( in.readUTF() ) || !getStamp( bundle ).equals( in.readUTF() )
+                || in.readBoolean() != factoryEnabled || in.readBoolean() != keepInstances )
+            {
+                return null;
+            }
+            int count = in.readInt();
+            List<ComponentMetadata> components = new ArrayList<ComponentMetadata>( count );
+            for ( int i = 0; i < count; i++ )
+            {
+                components.add( ComponentMetadata.read( in ) );
+            }
+            return components;
+        }
+        catch ( IOException ioe )
+        {
+            // corrupt or truncated, parse the descriptor again
+            corrupt = true;
+            return null;
+        }
+        catch ( RuntimeException re )
+        {
+            // corrupt, such as a negative count, parse the descriptor again
+            corrupt = true;
+            return null;
+        }
+        finally
+        {
+            close( in );
+            if ( corrupt )
+            {
+                file.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the binary form of the metadata of the components declared in
+     * a descriptor, which may be {@link #store(Bundle, String, boolean, boolean, byte[]) stored}
+     * once the metadata is known to be valid. This must be called before the
+     * metadata is validated.
+     */
+    public static byte[] toBytes( List<ComponentMetadata> components ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( components.size() );
+        for ( ComponentMetadata metadata : components )
+        {
+            metadata.write( out );
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * Stores the binary form of the metadata of the components declared in
+     * the descriptor.
+     */
+    public void store( Bundle bundle, String descriptor, boolean factoryEnabled, boolean keepInstances,
+        byte[] components ) throws IOException
+    {
+        File file = getFile( bundle, descriptor );
+        file.getParentFile().mkdirs();
+
+        // write to a temporary file first so that a concurrent or
+        // interrupted write never leaves a partial file behind
+        File tmp = new File( file.getPath() + ".tmp" );
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeUTF( descriptor );
+            out.writeUTF( getStamp( bundle ) );
+            out.writeBoolean( factoryEnabled );
+            out.writeBoolean( keepInstances );
+            out.write( components );
+            out.close();
+            out = null;
+
+            file.delete();
+            if ( !tmp.renameTo( file ) )
+            {
+                throw new IOException( "Cannot rename " + tmp + " to " + file );
+            }
+        }
+        finally
+        {
+            close( out );
+            tmp.delete();
+        }
+    }
+
+
+    /**
+     * Removes the cached descriptors of the bundles which are not installed
+     * any more.
+     */
+    public void removeStale( BundleContext context )
+    {
+        File[] dirs = m_directory.listFiles();
+        if ( dirs == null )
+        {
+            return;
+        }
+        for ( File dir : dirs )
+        {
+            try
+            {
+                if ( context.getBundle( Long.parseLong( dir.getName() ) ) != null )
+                {
+                    continue;
+                }
+            }
+            catch ( NumberFormatException nfe )
+            {
+                // not ours, remove
+            }
+            delete( dir );
+        }
+    }
+
+
+    private File getFile( Bundle bundle, String descriptor )
+    {
+        File dir = new File( m_directory, String.valueOf( bundle.getBundleId() ) );
+        return new File( dir, Integer.toHexString( descriptor.hashCode() ) + ".bin" );
+    }
+
+
+    /**
+     * Returns a stamp which changes whenever the bundle or one of its
+     * attached fragments, which may contribute descriptors, is updated.
+     */
+    private static String getStamp( Bundle bundle )
+    {
+        StringBuilder stamp = new StringBuilder();
+        stamp.append( bundle.getLastModified() );
+        BundleWiring wiring = bundle.adapt( BundleWiring.class );
+        if ( wiring != null )
+        {
+            for ( BundleWire wire : wiring.getProvidedWires( HostNamespace.HOST_NAMESPACE ) )
+            {
+                Bundle fragment = wire.getRequirer().getBundle();
+                stamp.append( ';' ).append( fragment.getBundleId() ).append( ':' ).append(
+                    fragment.getLastModified() );
+            }
+        }
+        return stamp.toString();
+    }
+
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+
+    private static void close( Closeable closeable )
+    {
+        if ( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch ( IOException ignore )
+            {
+                // don't care
+            }
+        }
+    }
+
+
+    //---------- helpers for the metadata classes
+
+    static void writeString( DataOutputStream out, String value ) throws IOException
+    {
+        out.writeBoolean( value != null );
+        if ( value != null )
+        {
+            out.writeUTF( value );
+        }
+    }
+
+
+    static String readString( DataInputStream in ) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+
+    static void writeBoolean( DataOutputStream out, Boolean value ) throws IOException
+    {
+        out.writeByte( value == null ? 0 : ( value ? 1 : 2 ) );
+    }
+
+
+    static Boolean readBoolean( DataInputStream in ) throws IOException
+    {
+        switch ( in.readByte() )
+        {
+            case 0:
+                return null;
+            case 1:
+                return Boolean.TRUE;
+            default:
+                return Boolean.FALSE;
+        }
+    }
+
+
+    static void writeStrings( DataOutputStream out, List<String> values ) throws IOException
+    {
+        out.writeInt( values == null ? -1 : values.size() );
+        if ( values != null )
+        {
+            for ( String value : values )
+            {
+                writeString( out, value );
+            }
+        }
+    }
+
+
+    static List<String> readStrings( DataInputStream in ) throws IOException
+    {
+        int size = in.readInt();
+        if ( size < 0 )
+        {
+            return null;
+        }
+        List<String> values = new ArrayList<String>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            values.add( readString( in ) );
+        }
+        return values;
+    }
+}
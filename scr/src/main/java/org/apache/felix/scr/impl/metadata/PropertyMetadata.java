@@ -18,7 +18,11 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
 
@@ -130,6 +134,50 @@ public class PropertyMetadata {
         return m_value;
     }
 
+    /**
+     * Writes the property as declared, before it is validated.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        DescriptorCache.writeString( out, m_name );
+        DescriptorCache.writeString( out, m_type );
+        if ( m_value instanceof String[] )
+        {
+            out.writeByte( 2 );
+            DescriptorCache.writeStrings( out, Arrays.asList( ( String[] ) m_value ) );
+        }
+        else
+        {
+            out.writeByte( m_value == null ? 0 : 1 );
+            if ( m_value != null )
+            {
+                out.writeUTF( ( String ) m_value );
+            }
+        }
+    }
+
+    /**
+     * Reads a property written by {@link #write(DataOutputStream)}.
+     */
+    static PropertyMetadata read( DataInputStream in ) throws IOException
+    {
+        PropertyMetadata property = new PropertyMetadata();
+        property.m_name = DescriptorCache.readString( in );
+        property.m_type = DescriptorCache.readString( in );
+        switch ( in.readByte() )
+        {
+            case 0:
+                break;
+            case 1:
+                property.m_value = in.readUTF();
+                break;
+            default:
+                List<String> values = DescriptorCache.readStrings( in );
+                property.m_value = values.toArray( new String[values.size()] );
+        }
+        return property;
+    }
+
     /**
      * Method used to verify if the semantics of this metadata are correct
      */
@@ -18,6 +18,9 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -595,6 +598,68 @@ public class ReferenceMetadata
 		return m_scope;
 	}
 
+    /**
+     * Writes the reference as declared, before it is validated.
+     */
+    void write( final DataOutputStream out ) throws IOException
+    {
+        DescriptorCache.writeString( out, m_name );
+        DescriptorCache.writeString( out, m_interface );
+        DescriptorCache.writeString( out, m_cardinality );
+        DescriptorCache.writeString( out, m_target );
+        DescriptorCache.writeString( out, m_bind );
+        DescriptorCache.writeString( out, m_updated );
+        DescriptorCache.writeString( out, m_unbind );
+        DescriptorCache.writeString( out, m_field );
+        DescriptorCache.writeString( out, m_field_option );
+        DescriptorCache.writeString( out, m_field_collection_type );
+        DescriptorCache.writeString( out, m_policy );
+        DescriptorCache.writeString( out, m_policy_option );
+        DescriptorCache.writeString( out, m_scopeName );
+    }
+
+
+    /**
+     * Reads a reference written by {@link #write(DataOutputStream)}. The
+     * setters derive the secondary properties of the attributes that were
+     * declared; validation derives the others.
+     */
+    static ReferenceMetadata read( final DataInputStream in ) throws IOException
+    {
+        final ReferenceMetadata reference = new ReferenceMetadata();
+        reference.m_name = DescriptorCache.readString( in );
+        reference.m_interface = DescriptorCache.readString( in );
+        final String cardinality = DescriptorCache.readString( in );
+        if ( cardinality != null )
+        {
+            reference.setCardinality( cardinality );
+        }
+        reference.m_target = DescriptorCache.readString( in );
+        reference.m_bind = DescriptorCache.readString( in );
+        reference.m_updated = DescriptorCache.readString( in );
+        reference.m_unbind = DescriptorCache.readString( in );
+        reference.m_field = DescriptorCache.readString( in );
+        final String fieldOption = DescriptorCache.readString( in );
+        if ( fieldOption != null )
+        {
+            reference.setFieldOption( fieldOption );
+        }
+        reference.m_field_collection_type = DescriptorCache.readString( in );
+        final String policy = DescriptorCache.readString( in );
+        if ( policy != null )
+        {
+            reference.setPolicy( policy );
+        }
+        final String policyOption = DescriptorCache.readString( in );
+        if ( policyOption != null )
+        {
+            reference.setPolicyOption( policyOption );
+        }
+        reference.m_scopeName = DescriptorCache.readString( in );
+        return reference;
+    }
+
+
     /**
      *  Method used to verify if the semantics of this metadata are correct
      *
@@ -18,6 +18,9 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -90,6 +93,28 @@ public class ServiceMetadata {
         return m_provides.toArray( new String[m_provides.size()] );
     }
 
+    /**
+     * Writes the service as declared, before it is validated.
+     */
+    void write( DataOutputStream out ) throws IOException
+    {
+        DescriptorCache.writeBoolean( out, m_serviceFactory );
+        DescriptorCache.writeString( out, m_scopeName );
+        DescriptorCache.writeStrings( out, m_provides );
+    }
+
+    /**
+     * Reads a service written by {@link #write(DataOutputStream)}.
+     */
+    static ServiceMetadata read( DataInputStream in ) throws IOException
+    {
+        ServiceMetadata service = new ServiceMetadata();
+        service.m_serviceFactory = DescriptorCache.readBoolean( in );
+        service.m_scopeName = DescriptorCache.readString( in );
+        service.m_provides = DescriptorCache.readStrings( in );
+        return service;
+    }
+
     /**
      * Verify if the semantics of this metadata are correct
      *
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.felix.scr.impl.ComponentActorPool;
 import org.apache.felix.scr.impl.ComponentRegistry;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
 import org.apache.felix.scr.impl.manager.ComponentManager;
@@ -54,12 +55,34 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
 
 	private final BundleContext context;
 	private final ComponentRegistry componentRegistry;
+	private final ComponentActorPool componentActor;
 
 
 	public ServiceComponentRuntimeImpl(BundleContext context,ComponentRegistry componentRegistry)
+	{
+		this(context, componentRegistry, null);
+	}
+
+	public ServiceComponentRuntimeImpl(BundleContext context,ComponentRegistry componentRegistry, ComponentActorPool componentActor)
 	{
 		this.context = context;
 		this.componentRegistry = componentRegistry;
+		this.componentActor = componentActor;
+	}
+
+	/**
+	 * Returns the statistics of the threads running the asynchronous tasks
+	 * acting upon the components, or an empty map if they are not known.
+	 *
+	 * @see ComponentActorPool#getStatistics()
+	 */
+	public Map<String, Long> getActorStatistics()
+	{
+		if (componentActor == null)
+		{
+			return Collections.emptyMap();
+		}
+		return componentActor.getStatistics();
 	}
 
 	/**
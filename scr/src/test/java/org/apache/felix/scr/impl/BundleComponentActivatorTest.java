@@ -18,16 +18,29 @@
  */
 package org.apache.felix.scr.impl;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 import junit.framework.TestCase;
 
+import org.apache.felix.scr.impl.helper.SimpleLogger;
+import org.apache.felix.scr.impl.manager.ScrConfiguration;
+import org.apache.felix.scr.impl.metadata.DescriptorCache;
 import org.easymock.EasyMock;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.log.LogService;
 
 public class BundleComponentActivatorTest extends TestCase
 {
@@ -184,4 +197,111 @@ public class BundleComponentActivatorTest extends TestCase
         assertEquals( "Descriptor length", 0, actualUrls.length );
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Test that a descriptor the cache cannot hold, here because of a property
+     * value too long for the cache format, still registers its components and
+     * is just not cached.
+     */
+    public void test_loadDescriptor_notCacheable() throws Exception
+    {
+        final File directory = File.createTempFile( "scr-activator", ".dir" );
+        directory.delete();
+        directory.mkdirs();
+        try
+        {
+            final StringBuilder value = new StringBuilder();
+            while ( value.length() <= 65535 )
+            {
+                value.append( "0123456789" );
+            }
+            final File descriptor = new File( directory, "component.xml" );
+            final Writer out = new OutputStreamWriter( new FileOutputStream( descriptor ), "UTF-8" );
+            out.write( "<scr:component xmlns:scr=\"http://www.osgi.org/xmlns/scr/v1.1.0\" name=\"oversized\">"
+                + "<implementation class=\"test.Oversized\" />"
+                + "<property name=\"value\" value=\"" + value + "\" />"
+                + "</scr:component>" );
+            out.close();
+            final URL url = descriptor.toURI().toURL();
+
+            final Bundle bundle = new MockBundle()
+            {
+                @Override
+                public Dictionary getHeaders( String locale )
+                {
+                    final Hashtable<String, String> headers = new Hashtable<String, String>();
+                    headers.put( "Service-Component", "OSGI-INF/component.xml" );
+                    return headers;
+                }
+
+
+                @Override
+                public Enumeration findEntries( String path, String filePattern, boolean recurse )
+                {
+                    return new Vector<URL>( Arrays.asList( url ) ).elements();
+                }
+
+
+                @Override
+                public long getLastModified()
+                {
+                    return 1000;
+                }
+            };
+            final BundleContext context = ( BundleContext ) EasyMock.createNiceMock( BundleContext.class );
+            EasyMock.expect( context.getBundle() ).andReturn( bundle ).anyTimes();
+            final List<String> errors = new ArrayList<String>();
+            final SimpleLogger logger = new SimpleLogger()
+            {
+                public void log( int level, String message, Throwable ex )
+                {
+                    if ( level == LogService.LOG_ERROR )
+                    {
+                        errors.add( message );
+                    }
+                }
+
+
+                public void log( int level, String message, Object[] arguments, Throwable ex )
+                {
+                    log( level, message, ex );
+                }
+
+
+                public boolean isLogEnabled( int level )
+                {
+                    return true;
+                }
+            };
+            final ScrConfiguration configuration = ( ScrConfiguration ) EasyMock.createNiceMock( ScrConfiguration.class );
+            EasyMock.expect( configuration.getLogLevel() ).andReturn( LogService.LOG_DEBUG ).anyTimes();
+            EasyMock.replay( new Object[] { context, configuration } );
+            final ComponentRegistry registry = new ComponentRegistry( logger );
+            final DescriptorCache cache = new DescriptorCache( new File( directory, "cache" ) );
+
+            new BundleComponentActivator( logger, registry, null, context, configuration, cache );
+
+            assertTrue( errors.toString(), errors.isEmpty() );
+            assertNotNull( "Component registered", registry.getComponentHolder( bundle, "oversized" ) );
+            assertNull( "Descriptor not cached", cache.load( bundle, url.toExternalForm(), false, false ) );
+        }
+        finally
+        {
+            delete( directory );
+        }
+    }
+
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.helper.SimpleLogger;
+
+
+public class ComponentActorPoolTest extends TestCase
+{
+
+    private final SimpleLogger logger = new SimpleLogger()
+    {
+
+        public void log( int level, String message, Throwable ex )
+        {
+        }
+
+
+        public void log( int level, String message, Object[] arguments, Throwable ex )
+        {
+        }
+
+
+        public boolean isLogEnabled( int level )
+        {
+            return false;
+        }
+    };
+
+
+    public void test_keys_run_concurrently() throws Exception
+    {
+        final ComponentActorPool pool = new ComponentActorPool( logger, 2 );
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+
+        // the first task of key a waits for the task of key b
+        pool.schedule( "a", new Task( order, "a1" )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+                }
+                catch ( InterruptedException e )
+                {
+                    fail();
+                }
+                super.run();
+            }
+        } );
+        pool.schedule( "a", new Task( order, "a2" ) );
+        pool.schedule( "b", new Task( order, "b1" )
+        {
+            @Override
+            public void run()
+            {
+                super.run();
+                latch.countDown();
+            }
+        } );
+        pool.terminate();
+
+        assertEquals( Arrays.asList( "b1", "a1", "a2" ), order );
+        assertEquals( Long.valueOf( 3 ), pool.getStatistics().get( "completed" ) );
+        assertEquals( Long.valueOf( 0 ), pool.getStatistics().get( "queued" ) );
+    }
+
+
+    public void test_key_runs_serially() throws Exception
+    {
+        final ComponentActorPool pool = new ComponentActorPool( logger, 4 );
+        final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+        final AtomicBoolean running = new AtomicBoolean();
+        final List<String> expected = new ArrayList<String>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            expected.add( "t" + i );
+            pool.schedule( "key", new Task( order, "t" + i )
+            {
+                @Override
+                public void run()
+                {
+                    assertTrue( running.compareAndSet( false, true ) );
+                    Thread.yield();
+                    super.run();
+                    running.set( false );
+                }
+            } );
+            pool.schedule( "other" + i, new Task( new ArrayList<String>(), "o" + i ) );
+        }
+        pool.terminate();
+
+        assertEquals( expected, order );
+        assertEquals( Long.valueOf( 200 ), pool.getStatistics().get( "scheduled" ) );
+    }
+
+
+    public void test_single_thread_keeps_order() throws Exception
+    {
+        final ComponentActorPool pool = new ComponentActorPool( logger, 1 );
+        final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+        pool.schedule( "a", new Task( order, "a1" ) );
+        pool.schedule( new Task( order, "x" ) );
+        pool.schedule( "b", new Task( order, "b1" ) );
+        pool.schedule( "a", new Task( order, "a2" ) );
+        pool.terminate();
+
+        assertEquals( Arrays.asList( "a1", "x", "b1", "a2" ), order );
+
+        // terminated pools do not run tasks any more
+        pool.schedule( "a", new Task( order, "a3" ) );
+        assertEquals( 4, order.size() );
+    }
+
+    public void test_delayed_task_runs_after_delay() throws Exception
+    {
+        final ComponentActorPool pool = new ComponentActorPool( logger, 2 );
+        final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        final long start = System.nanoTime();
+        pool.schedule( "a", new Task( order, "d" )
+        {
+            @Override
+            public void run()
+            {
+                super.run();
+                latch.countDown();
+            }
+        }, 100 );
+        pool.schedule( "a", new Task( order, "a1" ) );
+        assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) >= 100 );
+        pool.terminate();
+
+        assertEquals( Arrays.asList( "a1", "d" ), order );
+    }
+
+    public void test_delayed_task_dropped_on_terminate() throws Exception
+    {
+        final ComponentActorPool pool = new ComponentActorPool( logger, 2 );
+        final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+        pool.schedule( "a", new Task( order, "d" ), 100 );
+        pool.schedule( "a", new Task( order, "a1" ) );
+        pool.terminate();
+        assertEquals( Arrays.asList( "a1" ), order );
+
+        // the task still delayed when the pool was terminated is dropped
+        Thread.sleep( 300 );
+        assertEquals( Arrays.asList( "a1" ), order );
+        assertEquals( 0, pool.getStatistics().get( "queued" ).longValue() );
+    }
+
+    private static class Task implements Runnable
+    {
+        private final List<String> order;
+        private final String name;
+
+
+        Task( List<String> order, String name )
+        {
+            this.order = order;
+            this.name = name;
+        }
+
+
+        public void run()
+        {
+            order.add( name );
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.helper.SimpleLogger;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+
+public class ComponentWarmupTest extends TestCase
+{
+
+    private final SimpleLogger logger = new SimpleLogger()
+    {
+
+        public void log( int level, String message, Throwable ex )
+        {
+        }
+
+
+        public void log( int level, String message, Object[] arguments, Throwable ex )
+        {
+        }
+
+
+        public boolean isLogEnabled( int level )
+        {
+            return false;
+        }
+    };
+
+    private final ComponentActorPool actor = new ComponentActorPool( logger, 2 );
+
+    // the service references by filter
+    private final Map<String, ServiceReference<?>[]> refs = new HashMap<String, ServiceReference<?>[]>();
+
+    // the references got and ungot through the bundle context
+    private final List<Object> got = Collections.synchronizedList( new ArrayList<Object>() );
+    private final List<Object> ungot = Collections.synchronizedList( new ArrayList<Object>() );
+
+    // released by the bundle context once getService is called, and awaited before returning the service
+    private volatile CountDownLatch getting = new CountDownLatch( 0 );
+    private volatile CountDownLatch proceed = new CountDownLatch( 0 );
+
+    private volatile int systemBundleState = Bundle.ACTIVE;
+
+    private final Bundle systemBundle = Mockito.mock( Bundle.class );
+
+
+    @Override
+    protected void setUp()
+    {
+        Mockito.when( systemBundle.getState() ).thenAnswer( new Answer<Integer>()
+        {
+            public Integer answer( InvocationOnMock invocation )
+            {
+                return systemBundleState;
+            }
+        } );
+    }
+
+
+    @Override
+    protected void tearDown()
+    {
+        proceed.countDown();
+        actor.terminate();
+    }
+
+
+    public void test_escape()
+    {
+        assertEquals( "org.example.Component", ComponentWarmup.escape( "org.example.Component" ) );
+        assertEquals( "a\\(b\\)\\*c\\\\d", ComponentWarmup.escape( "a(b)*c\\d" ) );
+    }
+
+
+    public void test_warmup_gets_services_by_escaped_name()
+    {
+        final ServiceReference<?> ref = reference();
+        refs.put( "(component.name=a\\*)", new ServiceReference<?>[] { ref } );
+
+        final ComponentWarmup warmup = new ComponentWarmup( bundleContext(), actor, logger, new String[] { "a*" } );
+        warmup.open();
+        actor.terminate();
+        assertEquals( Collections.singletonList( ref ), got );
+    }
+
+
+    public void test_close_ungets_warmed_up_services()
+    {
+        final ServiceReference<?> a1 = reference();
+        final ServiceReference<?> a2 = reference();
+        final ServiceReference<?> b = reference();
+        refs.put( "(component.name=a)", new ServiceReference<?>[] { a1, a2 } );
+        refs.put( "(component.name=b)", new ServiceReference<?>[] { b } );
+
+        final ComponentWarmup warmup = new ComponentWarmup( bundleContext(), actor, logger,
+            new String[] { "a", "b", "missing" } );
+        warmup.open();
+        actor.terminate();
+        assertEquals( new HashSet<Object>( Arrays.asList( a1, a2, b ) ), new HashSet<Object>( got ) );
+        assertTrue( ungot.isEmpty() );
+
+        warmup.close();
+        assertEquals( new HashSet<Object>( Arrays.asList( a1, a2, b ) ), new HashSet<Object>( ungot ) );
+        assertEquals( 3, ungot.size() );
+    }
+
+
+    public void test_service_got_after_close_is_ungot() throws Exception
+    {
+        final ServiceReference<?> ref = reference();
+        refs.put( "(component.name=a)", new ServiceReference<?>[] { ref } );
+        getting = new CountDownLatch( 1 );
+        proceed = new CountDownLatch( 1 );
+
+        final ComponentWarmup warmup = new ComponentWarmup( bundleContext(), actor, logger, new String[] { "a" } );
+        warmup.open();
+        assertTrue( getting.await( 5, TimeUnit.SECONDS ) );
+        warmup.close();
+        assertTrue( ungot.isEmpty() );
+
+        // the service returned once closed is not kept
+        proceed.countDown();
+        actor.terminate();
+        assertEquals( Collections.singletonList( ref ), ungot );
+    }
+
+
+    public void test_warmup_waits_for_framework_started()
+    {
+        final ServiceReference<?> ref = reference();
+        refs.put( "(component.name=a)", new ServiceReference<?>[] { ref } );
+        systemBundleState = Bundle.STARTING;
+
+        final ComponentWarmup warmup = new ComponentWarmup( bundleContext(), actor, logger, new String[] { "a" } );
+        warmup.open();
+        warmup.frameworkEvent( new FrameworkEvent( FrameworkEvent.PACKAGES_REFRESHED, systemBundle, null ) );
+        actor.terminate();
+        assertTrue( got.isEmpty() );
+
+        final ComponentActorPool started = new ComponentActorPool( logger, 1 );
+        new ComponentWarmup( bundleContext(), started, logger, new String[] { "a" } ).frameworkEvent(
+            new FrameworkEvent( FrameworkEvent.STARTED, systemBundle, null ) );
+        started.terminate();
+        assertEquals( Collections.singletonList( ref ), got );
+    }
+
+
+    private ServiceReference<?> reference()
+    {
+        return Mockito.mock( ServiceReference.class );
+    }
+
+
+    private BundleContext bundleContext()
+    {
+        final BundleContext context = Mockito.mock( BundleContext.class );
+        try
+        {
+            Mockito.when( context.getAllServiceReferences( ( String ) Mockito.isNull(), Mockito.anyString() ) ).thenAnswer(
+                new Answer<ServiceReference<?>[]>()
+                {
+                    public ServiceReference<?>[] answer( InvocationOnMock invocation )
+                    {
+                        return refs.get( invocation.getArguments()[1] );
+                    }
+                } );
+        }
+        catch ( InvalidSyntaxException e )
+        {
+            // not thrown by the mock
+            throw new IllegalStateException( e );
+        }
+        Mockito.when( context.getBundle( Mockito.anyString() ) ).thenReturn( systemBundle );
+        Mockito.when( context.getService( Mockito.any( ServiceReference.class ) ) ).thenAnswer( new Answer<Object>()
+        {
+            public Object answer( InvocationOnMock invocation ) throws InterruptedException
+            {
+                got.add( invocation.getArguments()[0] );
+                getting.countDown();
+                assertTrue( proceed.await( 5, TimeUnit.SECONDS ) );
+                return new Object();
+            }
+        } );
+        Mockito.when( context.ungetService( Mockito.any( ServiceReference.class ) ) ).thenAnswer( new Answer<Boolean>()
+        {
+            public Boolean answer( InvocationOnMock invocation )
+            {
+                ungot.add( invocation.getArguments()[0] );
+                return true;
+            }
+        } );
+        return context;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.inject.ComponentMethodsImpl;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.osgi.framework.BundleContext;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.ServiceReference;
+
+public class ActivationPlannerTest extends TestCase
+{
+
+    private final ServiceReference<?> ref1 = Mockito.mock(ServiceReference.class);
+    private final ServiceReference<?> ref2 = Mockito.mock(ServiceReference.class);
+
+    // the references got and ungot through the bundle context
+    private final List<Object> got = Collections.synchronizedList(new ArrayList<Object>());
+    private final List<Object> ungot = Collections.synchronizedList(new ArrayList<Object>());
+
+    // released by the bundle context once getService is called, and awaited before returning the service
+    private volatile CountDownLatch getting = new CountDownLatch(0);
+    private volatile CountDownLatch proceed = new CountDownLatch(0);
+
+    // the threads started by the activator, null to leave the scheduled tasks to the planning thread
+    private List<Thread> actors;
+
+    private ComponentActivator activator;
+
+    public void test_release_ungets_fetched_services()
+    {
+        final ActivationPlanner planner = planner(5000, ref1, ref2);
+        planner.activate(activator);
+        assertEquals(Arrays.asList(ref1, ref2), got);
+        assertTrue(ungot.isEmpty());
+
+        planner.release();
+        assertEquals(Arrays.asList(ref1, ref2), ungot);
+
+        planner.release();
+        assertEquals(2, ungot.size());
+    }
+
+    public void test_fetch_completed_after_release_is_ungot() throws Exception
+    {
+        actors = new ArrayList<Thread>();
+        getting = new CountDownLatch(1);
+        proceed = new CountDownLatch(1);
+
+        // the actor thread gets the service, which outlasts the lock timeout
+        final ActivationPlanner planner = planner(100, ref1);
+        planner.activate(activator);
+        planner.release();
+        assertTrue(ungot.isEmpty());
+
+        proceed.countDown();
+        for (Thread actor : actors)
+        {
+            actor.join(5000);
+        }
+        assertEquals(Collections.singletonList(ref1), got);
+        assertEquals(Collections.singletonList(ref1), ungot);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ActivationPlanner planner(long lockTimeout, ServiceReference<?>... refs)
+    {
+        activator = activator(lockTimeout);
+        final ComponentMetadata metadata = new ComponentMetadata(DSVersion.DS13);
+        metadata.setName("planned");
+        metadata.setImplementationClassName("planned.Component");
+        metadata.validate(null);
+        final ComponentContainer<Object> container = Mockito.mock(ComponentContainer.class);
+        Mockito.when(container.getActivator()).thenReturn(activator);
+        Mockito.when(container.getComponentMetadata()).thenReturn(metadata);
+        return new ActivationPlanner(new SingleComponentManager<Object>(container, new ComponentMethodsImpl()),
+            bundleContext(), Arrays.<ServiceReference<?>> asList(refs));
+    }
+
+    private ComponentActivator activator(long lockTimeout)
+    {
+        final ScrConfiguration configuration = Mockito.mock(ScrConfiguration.class);
+        Mockito.when(configuration.lockTimeout()).thenReturn(lockTimeout);
+        final ComponentActivator activator = Mockito.mock(ComponentActivator.class);
+        Mockito.when(activator.getConfiguration()).thenReturn(configuration);
+        Mockito.doAnswer(new Answer<Object>()
+        {
+            public Object answer(InvocationOnMock invocation) throws InterruptedException
+            {
+                if (actors != null)
+                {
+                    // start the task on an actor thread before the planning thread gets to it
+                    final Thread actor = new Thread((Runnable) invocation.getArguments()[1]);
+                    actors.add(actor);
+                    actor.start();
+                    assertTrue(getting.await(5, TimeUnit.SECONDS));
+                }
+                return null;
+            }
+        }).when(activator).schedule(Mockito.any(), Mockito.any(Runnable.class));
+        return activator;
+    }
+
+    private BundleContext bundleContext()
+    {
+        final BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getService(Mockito.any(ServiceReference.class))).thenAnswer(new Answer<Object>()
+        {
+            public Object answer(InvocationOnMock invocation) throws InterruptedException
+            {
+                got.add(invocation.getArguments()[0]);
+                getting.countDown();
+                assertTrue(proceed.await(5, TimeUnit.SECONDS));
+                return new Object();
+            }
+        });
+        Mockito.when(context.ungetService(Mockito.any(ServiceReference.class))).thenAnswer(new Answer<Boolean>()
+        {
+            public Boolean answer(InvocationOnMock invocation)
+            {
+                ungot.add(invocation.getArguments()[0]);
+                return true;
+            }
+        });
+        return context;
+    }
+}
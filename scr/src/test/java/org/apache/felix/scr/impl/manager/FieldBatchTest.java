@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.BundleComponentActivator;
+import org.apache.felix.scr.impl.MockBundle;
+import org.apache.felix.scr.impl.helper.ComponentMethods;
+import org.apache.felix.scr.impl.helper.MethodResult;
+import org.apache.felix.scr.impl.inject.ComponentMethodsImpl;
+import org.apache.felix.scr.impl.inject.FieldHandler;
+import org.apache.felix.scr.impl.manager.components.FakeService;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+
+
+public class FieldBatchTest extends TestCase
+{
+
+    public void test_replace_field_set_at_end_of_batch()
+    {
+        final ReplaceComponent component = new ReplaceComponent();
+        final Fixture fixture = new Fixture( component, "replace" );
+        final FakeService s1 = new FakeServiceImpl();
+        final FakeService s2 = new FakeServiceImpl();
+
+        fixture.context.startFieldBatch( "services" );
+        fixture.bind( 1, s1 );
+        fixture.bind( 2, s2 );
+        assertNull( "Field not set during the batch", component.services );
+
+        fixture.endBatch();
+        assertEquals( list( s1, s2 ), component.services );
+
+        // outside a batch, the field is replaced right away
+        final FakeService s3 = new FakeServiceImpl();
+        fixture.bind( 3, s3 );
+        assertEquals( list( s1, s2, s3 ), component.services );
+    }
+
+
+    public void test_update_collection_added_to_once_per_batch()
+    {
+        final UpdateComponent component = new UpdateComponent();
+        final Fixture fixture = new Fixture( component, "update" );
+        final FakeService s1 = new FakeServiceImpl();
+        final FakeService s2 = new FakeServiceImpl();
+        final FakeService s3 = new FakeServiceImpl();
+
+        fixture.context.startFieldBatch( "services" );
+        fixture.bind( 1, s1 );
+        fixture.bind( 2, s2 );
+        fixture.bind( 3, s3 );
+        assertTrue( "Collection not updated during the batch", component.services.isEmpty() );
+
+        fixture.endBatch();
+        assertEquals( list( s1, s2, s3 ), component.services );
+        assertEquals( 1, component.services.addAllCalls );
+        assertEquals( 0, component.services.addCalls );
+
+        // outside a batch, the collection is added to right away
+        final FakeService s4 = new FakeServiceImpl();
+        fixture.bind( 4, s4 );
+        assertEquals( list( s1, s2, s3, s4 ), component.services );
+        assertEquals( 1, component.services.addAllCalls );
+        assertEquals( 1, component.services.addCalls );
+    }
+
+
+    public void test_empty_batch()
+    {
+        final UpdateComponent component = new UpdateComponent();
+        final Fixture fixture = new Fixture( component, "update" );
+
+        fixture.context.startFieldBatch( "services" );
+        assertNull( fixture.context.endFieldBatch( "services" ) );
+        assertFalse( fixture.context.isFieldBatch( "services" ) );
+        assertEquals( 0, component.services.addAllCalls );
+    }
+
+
+    private static List<FakeService> list( FakeService... services )
+    {
+        final List<FakeService> list = new ArrayList<FakeService>();
+        for ( FakeService service : services )
+        {
+            list.add( service );
+        }
+        return list;
+    }
+
+    private static final class Fixture
+    {
+        final Object component;
+        final SingleComponentManager<Object> manager;
+        final ComponentContextImpl<Object> context;
+        final FieldHandler handler;
+
+
+        Fixture( final Object component, final String fieldOption )
+        {
+            this.component = component;
+            final ComponentMetadata metadata = new ComponentMetadata( DSVersion.DS13 );
+            metadata.setName( "foo" );
+            metadata.setImplementationClassName( component.getClass().getName() );
+            final ReferenceMetadata reference = new ReferenceMetadata();
+            reference.setName( "services" );
+            reference.setInterface( FakeService.class.getName() );
+            reference.setCardinality( "0..n" );
+            reference.setPolicy( "dynamic" );
+            reference.setField( "services" );
+            reference.setFieldOption( fieldOption );
+            metadata.addDependency( reference );
+            metadata.validate( null );
+
+            final ComponentContainer<Object> container = new ComponentContainer<Object>()
+            {
+                public BundleComponentActivator getActivator()
+                {
+                    return null;
+                }
+
+
+                public ComponentMetadata getComponentMetadata()
+                {
+                    return metadata;
+                }
+
+
+                public void disposed( SingleComponentManager<Object> component )
+                {
+                }
+
+
+                public boolean isEnabled()
+                {
+                    return false;
+                }
+            };
+            final ComponentMethods methods = new ComponentMethodsImpl();
+            this.manager = new SingleComponentManager<Object>( container, methods );
+            this.context = new ComponentContextImpl<Object>( manager, new MockBundle(), null );
+            this.handler = new FieldHandler( reference, component.getClass() );
+        }
+
+
+        void bind( final long id, final FakeService service )
+        {
+            final RefPair<Object, FakeService> refPair = new SingleRefPair<Object, FakeService>(
+                new MockServiceReference( id ) );
+            refPair.setServiceObject( context, service );
+            final MethodResult result = handler.getBind().invoke( component, context, refPair, null, manager );
+            assertNotNull( "Bound", result );
+        }
+
+
+        void endBatch()
+        {
+            final Runnable update = context.endFieldBatch( "services" );
+            assertNotNull( "Field update deferred", update );
+            update.run();
+        }
+    }
+
+    public static class ReplaceComponent
+    {
+        protected volatile List<FakeService> services;
+    }
+
+    public static class UpdateComponent
+    {
+        protected final CountingList services = new CountingList();
+    }
+
+    public static class CountingList extends ArrayList<FakeService>
+    {
+        private static final long serialVersionUID = 1L;
+
+        int addCalls;
+
+        int addAllCalls;
+
+
+        @Override
+        public boolean add( FakeService service )
+        {
+            addCalls++;
+            return super.add( service );
+        }
+
+
+        @Override
+        public boolean addAll( Collection<? extends FakeService> services )
+        {
+            addAllCalls++;
+            return super.addAll( services );
+        }
+    }
+
+    private static class FakeServiceImpl implements FakeService
+    {
+    }
+
+    private static class MockServiceReference implements ServiceReference<FakeService>
+    {
+        private final Long id;
+
+
+        MockServiceReference( final long id )
+        {
+            this.id = id;
+        }
+
+
+        public Object getProperty( String key )
+        {
+            return "service.id".equals( key ) ? id : null;
+        }
+
+
+        public String[] getPropertyKeys()
+        {
+            return new String[] { "service.id" };
+        }
+
+
+        public Bundle getBundle()
+        {
+            return null;
+        }
+
+
+        public Bundle[] getUsingBundles()
+        {
+            return null;
+        }
+
+
+        public boolean isAssignableTo( Bundle bundle, String className )
+        {
+            return true;
+        }
+
+
+        public int compareTo( Object reference )
+        {
+            // bound values are ordered by id
+            return id.compareTo( ( ( MockServiceReference ) reference ).id );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.manager;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.helper.ReadOnlyDictionary;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.ServiceReference;
+
+
+public class RefPairTest extends TestCase
+{
+
+    private final Map<String, Object> serviceProperties = new ConcurrentHashMap<String, Object>();
+
+    // released by the service reference once the properties are being read,
+    // and awaited before reading them
+    private volatile CountDownLatch reading = new CountDownLatch( 0 );
+    private volatile CountDownLatch proceed = new CountDownLatch( 0 );
+
+
+    public void test_properties_shared_until_modified()
+    {
+        serviceProperties.put( "prop", "1" );
+        final RefPair<Object, Object> refPair = new SingleRefPair<Object, Object>( reference() );
+
+        final ReadOnlyDictionary props = refPair.getServiceProperties();
+        assertEquals( "1", props.get( "prop" ) );
+        assertSame( props, refPair.getServiceProperties() );
+
+        serviceProperties.put( "prop", "2" );
+        assertSame( props, refPair.getServiceProperties() );
+
+        refPair.propertiesModified();
+        assertEquals( "2", refPair.getServiceProperties().get( "prop" ) );
+        assertSame( refPair.getServiceProperties(), refPair.getServiceProperties() );
+    }
+
+
+    public void test_copy_made_during_modification_not_shared() throws Exception
+    {
+        serviceProperties.put( "prop", "1" );
+        final RefPair<Object, Object> refPair = new SingleRefPair<Object, Object>( reference() );
+        reading = new CountDownLatch( 1 );
+        proceed = new CountDownLatch( 1 );
+
+        // a bind reads the properties while the service is being modified
+        final ReadOnlyDictionary[] stale = new ReadOnlyDictionary[1];
+        final Thread binder = new Thread()
+        {
+            public void run()
+            {
+                stale[0] = refPair.getServiceProperties();
+            }
+        };
+        binder.start();
+        assertTrue( reading.await( 5, TimeUnit.SECONDS ) );
+        serviceProperties.put( "added", "2" );
+        refPair.propertiesModified();
+
+        proceed.countDown();
+        binder.join( 5000 );
+        assertNull( stale[0].get( "added" ) );
+        assertEquals( "2", refPair.getServiceProperties().get( "added" ) );
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private ServiceReference<Object> reference()
+    {
+        final ServiceReference<Object> reference = Mockito.mock( ServiceReference.class );
+        Mockito.when( reference.getPropertyKeys() ).thenAnswer( new Answer<String[]>()
+        {
+            public String[] answer( InvocationOnMock invocation ) throws InterruptedException
+            {
+                final String[] keys = serviceProperties.keySet().toArray( new String[0] );
+                reading.countDown();
+                assertTrue( proceed.await( 5, TimeUnit.SECONDS ) );
+                return keys;
+            }
+        } );
+        Mockito.when( reference.getProperty( Mockito.anyString() ) ).thenAnswer( new Answer<Object>()
+        {
+            public Object answer( InvocationOnMock invocation )
+            {
+                return serviceProperties.get( invocation.getArguments()[0] );
+            }
+        } );
+        return reference;
+    }
+}
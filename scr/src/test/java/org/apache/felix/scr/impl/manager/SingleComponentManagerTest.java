@@ -105,6 +105,14 @@ public class SingleComponentManagerTest
             
         }
 
+        public void schedule(Object key, Runnable runnable)
+        {
+        }
+
+        public void schedule(Object key, Runnable runnable, long delay)
+        {
+        }
+
         public long registerComponentId(AbstractComponentManager<?> sAbstractComponentManager)
         {
             // TODO Auto-generated method stub
@@ -117,6 +125,11 @@ public class SingleComponentManagerTest
             
         }
 
+        public AbstractComponentManager<?> getComponentManager(long componentId)
+        {
+            return null;
+        }
+
         public <T> boolean enterCreate(ServiceReference<T> reference)
         {
             // TODO Auto-generated method stub
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.scr.impl.MockBundle;
+import org.apache.felix.scr.impl.MockLogger;
+import org.apache.felix.scr.impl.parser.KXml2SAXParser;
+import org.apache.felix.scr.impl.xml.XmlHandler;
+
+
+public class DescriptorCacheTest extends TestCase
+{
+    private MockLogger logger;
+
+    private File directory;
+
+    private long lastModified;
+
+    private final MockBundle bundle = new MockBundle()
+    {
+        @Override
+        public long getBundleId()
+        {
+            return 42;
+        }
+
+
+        @Override
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+    };
+
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        logger = new MockLogger();
+        directory = File.createTempFile( "scr-descriptors", ".dir" );
+        directory.delete();
+        lastModified = 1000;
+    }
+
+
+    protected void tearDown() throws Exception
+    {
+        delete( directory );
+        super.tearDown();
+    }
+
+
+    public void test_round_trip() throws Exception
+    {
+        final String[] descriptors =
+            { "/components_activate_11.xml", "/components_properties_11.xml",
+                "/integration_test_simple_components.xml", "/integration_test_min_cardinality.xml" };
+        for ( String descriptor : descriptors )
+        {
+            final List<ComponentMetadata> parsed = readMetadata( descriptor );
+            final byte[] data = DescriptorCache.toBytes( parsed );
+
+            final DescriptorCache cache = new DescriptorCache( directory );
+            cache.store( bundle, descriptor, false, false, data );
+            final List<ComponentMetadata> loaded = cache.load( bundle, descriptor, false, false );
+            assertNotNull( descriptor, loaded );
+            assertEquals( descriptor, parsed.size(), loaded.size() );
+            assertTrue( descriptor, Arrays.equals( data, DescriptorCache.toBytes( loaded ) ) );
+
+            for ( int i = 0; i < parsed.size(); i++ )
+            {
+                final ComponentMetadata expected = parsed.get( i );
+                final ComponentMetadata actual = loaded.get( i );
+                expected.validate( logger );
+                actual.validate( logger );
+
+                assertEquals( expected.getDSVersion(), actual.getDSVersion() );
+                assertEquals( expected.getName(), actual.getName() );
+                assertEquals( expected.getImplementationClassName(), actual.getImplementationClassName() );
+                assertEquals( expected.isImmediate(), actual.isImmediate() );
+                assertEquals( expected.isFactory(), actual.isFactory() );
+                assertEquals( expected.getConfigurationPid(), actual.getConfigurationPid() );
+                assertEquals( expected.getProperties().keySet(), actual.getProperties().keySet() );
+                for ( String key : expected.getProperties().keySet() )
+                {
+                    // property values may be arrays of primitives
+                    assertTrue( key, Arrays.deepEquals( new Object[] { expected.getProperties().get( key ) },
+                        new Object[] { actual.getProperties().get( key ) } ) );
+                }
+                assertEquals( expected.getDependencies().size(), actual.getDependencies().size() );
+                for ( int j = 0; j < expected.getDependencies().size(); j++ )
+                {
+                    final ReferenceMetadata expectedRef = expected.getDependencies().get( j );
+                    final ReferenceMetadata actualRef = actual.getDependencies().get( j );
+                    assertEquals( expectedRef.getName(), actualRef.getName() );
+                    assertEquals( expectedRef.getCardinality(), actualRef.getCardinality() );
+                    assertEquals( expectedRef.isOptional(), actualRef.isOptional() );
+                    assertEquals( expectedRef.isMultiple(), actualRef.isMultiple() );
+                    assertEquals( expectedRef.isStatic(), actualRef.isStatic() );
+                    assertEquals( expectedRef.isReluctant(), actualRef.isReluctant() );
+                    assertEquals( expectedRef.getTarget(), actualRef.getTarget() );
+                }
+                if ( expected.getServiceMetadata() == null )
+                {
+                    assertNull( actual.getServiceMetadata() );
+                }
+                else
+                {
+                    assertTrue( Arrays.equals( expected.getServiceMetadata().getProvides(),
+                        actual.getServiceMetadata().getProvides() ) );
+                    assertEquals( expected.getServiceScope(), actual.getServiceScope() );
+                }
+            }
+        }
+    }
+
+
+    public void test_stale_entries() throws Exception
+    {
+        final String descriptor = "/components_all_elements_10.xml";
+        final byte[] data = DescriptorCache.toBytes( readMetadata( descriptor ) );
+        final DescriptorCache cache = new DescriptorCache( directory );
+
+        assertNull( "Nothing cached yet", cache.load( bundle, descriptor, false, false ) );
+
+        cache.store( bundle, descriptor, false, false, data );
+        assertNotNull( cache.load( bundle, descriptor, false, false ) );
+
+        // a different configuration may yield different metadata
+        assertNull( cache.load( bundle, descriptor, true, false ) );
+        assertNull( cache.load( bundle, descriptor, false, true ) );
+
+        // and so may another descriptor or an updated bundle
+        assertNull( cache.load( bundle, "/components_properties_11.xml", false, false ) );
+        lastModified++;
+        assertNull( cache.load( bundle, descriptor, false, false ) );
+    }
+
+
+    public void test_corrupt_entries() throws Exception
+    {
+        final String descriptor = "/components_all_elements_10.xml";
+        final byte[] data = DescriptorCache.toBytes( readMetadata( descriptor ) );
+        final DescriptorCache cache = new DescriptorCache( directory );
+
+        // a negative count of components
+        cache.store( bundle, descriptor, false, false, new byte[] { -1, -1, -1, -1 } );
+        assertEquals( 1, countFiles( directory ) );
+        assertNull( cache.load( bundle, descriptor, false, false ) );
+        assertEquals( "Corrupt entry removed", 0, countFiles( directory ) );
+
+        // truncated metadata
+        cache.store( bundle, descriptor, false, false, Arrays.copyOf( data, data.length / 2 ) );
+        assertNull( cache.load( bundle, descriptor, false, false ) );
+        assertEquals( "Truncated entry removed", 0, countFiles( directory ) );
+
+        cache.store( bundle, descriptor, false, false, data );
+        assertNotNull( cache.load( bundle, descriptor, false, false ) );
+    }
+
+
+    private static int countFiles( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children == null )
+        {
+            return file.isFile() ? 1 : 0;
+        }
+        int count = 0;
+        for ( File child : children )
+        {
+            count += countFiles( child );
+        }
+        return count;
+    }
+
+
+    private List<ComponentMetadata> readMetadata( String filename ) throws Exception
+    {
+        BufferedReader in = new BufferedReader( new InputStreamReader( getClass().getResourceAsStream( filename ),
+            "UTF-8" ) );
+        try
+        {
+            final KXml2SAXParser parser = new KXml2SAXParser( in );
+            XmlHandler handler = new XmlHandler( new MockBundle(), logger, false, false );
+            parser.parseXML( handler );
+            return handler.getComponentMetadataList();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import org.apache.felix.scr.integration.components.prefetch.PrefetchComponent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.junit.JUnit4TestRunner;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
+
+/**
+ * Tests activating the required dependencies of a component concurrently
+ * before it collects them.
+ */
+@RunWith(JUnit4TestRunner.class)
+public class ActivationPrefetchTest extends ComponentTestBase
+{
+    private static final String SCR_PID = "org.apache.felix.scr.ScrService";
+
+    static
+    {
+        descriptorFile = "/integration_test_activation_prefetch.xml";
+        COMPONENT_PACKAGE = COMPONENT_PACKAGE + ".prefetch";
+    }
+
+    @Test
+    public void test_chain_activated_before_bind() throws Exception
+    {
+        prefetch();
+
+        getDisabledConfigurationAndEnable( "chain.A", ComponentConfigurationDTO.ACTIVE );
+        findComponentConfigurationByName( "chain.B", ComponentConfigurationDTO.ACTIVE );
+        findComponentConfigurationByName( "chain.C", ComponentConfigurationDTO.ACTIVE );
+        assertEquals( Arrays.asList( "activate chain.C", "bind chain.C", "activate chain.B", "bind chain.B",
+            "activate chain.A" ), PrefetchComponent.EVENTS );
+
+        // the prefetched services are released, so chain.B goes away with chain.A
+        disableAndCheck( "chain.A" );
+        delay();
+        findComponentConfigurationByName( "chain.B", ComponentConfigurationDTO.SATISFIED );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_cycle_not_prefetched() throws Exception
+    {
+        prefetch();
+
+        // activated one after the other on this thread as without prefetch, the framework reporting that
+        // cycle.C cannot get cycle.B while it is being activated
+        getDisabledConfigurationAndEnable( "cycle.A", ComponentConfigurationDTO.ACTIVE );
+        findComponentConfigurationByName( "cycle.B", ComponentConfigurationDTO.ACTIVE );
+        findComponentConfigurationByName( "cycle.C", ComponentConfigurationDTO.ACTIVE );
+        delay();
+        assertEquals( Arrays.asList( "activate cycle.C", "bind cycle.C", "activate cycle.B", "bind cycle.B",
+            "activate cycle.A", "bind cycle.B" ), PrefetchComponent.EVENTS );
+    }
+
+    private void prefetch()
+    {
+        final Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put( "ds.activation.prefetch", "true" );
+        configure( SCR_PID, null, props );
+        delay();
+        PrefetchComponent.EVENTS.clear();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.integration.components.SimpleServiceImpl;
+import org.apache.felix.scr.integration.components.bindbatch.BatchComponent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.junit.JUnit4TestRunner;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
+
+/**
+ * Tests binding the services added to a dynamic multiple reference of an
+ * active component in batches.
+ */
+@RunWith(JUnit4TestRunner.class)
+public class BindBatchTest extends ComponentTestBase
+{
+    private static final String SCR_PID = "org.apache.felix.scr.ScrService";
+
+    private static final long WINDOW = 1000;
+
+    static
+    {
+        descriptorFile = "/integration_test_bind_batch.xml";
+        COMPONENT_PACKAGE = COMPONENT_PACKAGE + ".bindbatch," + COMPONENT_PACKAGE;
+    }
+
+    @Test
+    public void test_batch_updates_field_and_service_properties_once() throws Exception
+    {
+        final BatchComponent component = activate();
+        final AtomicInteger modified = new AtomicInteger();
+        final ServiceListener listener = new ServiceListener()
+        {
+            public void serviceChanged(ServiceEvent event)
+            {
+                if ( event.getType() == ServiceEvent.MODIFIED )
+                {
+                    modified.incrementAndGet();
+                }
+            }
+        };
+        bundleContext.addServiceListener( listener,
+            "(objectClass=" + BatchComponent.class.getName() + ")" );
+        try
+        {
+            final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+            final SimpleServiceImpl s2 = SimpleServiceImpl.create( bundleContext, "s2" );
+            final SimpleServiceImpl s3 = SimpleServiceImpl.create( bundleContext, "s3" );
+            assertEquals( "Bound before the window ended", 0, component.bindCalls.get() );
+
+            delay( ( int ) WINDOW + 500 );
+            assertEquals( 3, component.bindCalls.get() );
+            assertEquals( 3, component.services.size() );
+            assertTrue( component.services.containsAll( Arrays.asList( s1, s2, s3 ) ) );
+            assertEquals( "Expected a single update of the field", 1, component.services.addAllCalls.get() );
+            assertEquals( 0, component.services.addCalls.get() );
+            assertEquals( "Expected a single update of the service properties", 1, modified.get() );
+            final ServiceReference<BatchComponent> ref = bundleContext.getServiceReference( BatchComponent.class );
+            assertEquals( 3, ref.getProperty( "bound" ) );
+        }
+        finally
+        {
+            bundleContext.removeServiceListener( listener );
+        }
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_removed_while_pending_is_never_bound() throws Exception
+    {
+        final BatchComponent component = activate();
+
+        final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+        final SimpleServiceImpl s2 = SimpleServiceImpl.create( bundleContext, "s2" );
+        s1.drop();
+
+        delay( ( int ) WINDOW + 500 );
+        assertEquals( 1, component.bindCalls.get() );
+        assertEquals( 0, component.unbindCalls.get() );
+        assertEquals( Arrays.asList( s2 ), component.services );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_modified_while_pending_is_bound_with_new_properties() throws Exception
+    {
+        final BatchComponent component = activate();
+
+        final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+        s1.update( "s1.modified" );
+
+        delay( ( int ) WINDOW + 500 );
+        assertEquals( 1, component.bindCalls.get() );
+        assertEquals( Arrays.<Object> asList( "s1.modified" ), component.boundValues );
+        assertEquals( 0, component.updatedCalls.get() );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_removed_while_binding_is_unbound_after_bind() throws Exception
+    {
+        final BatchComponent component = activate();
+        component.binding = new CountDownLatch( 1 );
+        component.proceed = new CountDownLatch( 1 );
+
+        final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+        assertTrue( component.binding.await( WINDOW + 5000, TimeUnit.MILLISECONDS ) );
+        final Thread remover = new Thread()
+        {
+            public void run()
+            {
+                s1.drop();
+            }
+        };
+        remover.start();
+        delay( 200 );
+        assertEquals( "Unbound while binding", Arrays.asList( "bind" ), component.calls );
+
+        component.proceed.countDown();
+        remover.join( 5000 );
+        assertEquals( Arrays.asList( "bind", "unbind" ), component.calls );
+        assertTrue( component.services.isEmpty() );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_modified_while_binding_is_updated_after_bind() throws Exception
+    {
+        final BatchComponent component = activate();
+        component.binding = new CountDownLatch( 1 );
+        component.proceed = new CountDownLatch( 1 );
+
+        final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+        assertTrue( component.binding.await( WINDOW + 5000, TimeUnit.MILLISECONDS ) );
+        final Thread modifier = new Thread()
+        {
+            public void run()
+            {
+                s1.update( "s1.modified" );
+            }
+        };
+        modifier.start();
+        delay( 200 );
+        assertEquals( "Updated while binding", Arrays.asList( "bind" ), component.calls );
+
+        component.proceed.countDown();
+        modifier.join( 5000 );
+        assertEquals( Arrays.asList( "bind", "updated" ), component.calls );
+        assertEquals( Arrays.asList( s1 ), component.services );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_target_changed_while_pending_does_not_wait_for_window() throws Exception
+    {
+        final BatchComponent component = activate();
+
+        final SimpleServiceImpl s1 = SimpleServiceImpl.create( bundleContext, "s1" );
+        final long start = System.currentTimeMillis();
+        final Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put( "simple.target", "(value=s1)" );
+        configure( "bindbatch", null, props );
+        while ( component.modifiedCalls.get() == 0 && System.currentTimeMillis() - start < WINDOW )
+        {
+            delay( 10 );
+        }
+        assertEquals( "Changing the target waited for the window", 1, component.modifiedCalls.get() );
+
+        delay( ( int ) WINDOW + 500 );
+        assertEquals( 1, component.bindCalls.get() );
+        assertEquals( Arrays.asList( s1 ), component.services );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    @Test
+    public void test_deactivated_while_pending_is_never_bound() throws Exception
+    {
+        final BatchComponent component = activate();
+
+        SimpleServiceImpl.create( bundleContext, "s1" );
+        final long start = System.currentTimeMillis();
+        disableAndCheck( "bindbatch" );
+        assertTrue( "Deactivation waited for the window", System.currentTimeMillis() - start < WINDOW );
+        assertTrue( component.deactivated );
+
+        delay( ( int ) WINDOW + 500 );
+        assertEquals( 0, component.bindCalls.get() );
+        assertEquals( 0, component.unbindCalls.get() );
+        assertTrue( component.services.isEmpty() );
+        assertTrue( "Expected no errors or warnings: " + log.foundWarnings(), log.foundWarnings().isEmpty() );
+    }
+
+    private BatchComponent activate()
+    {
+        final Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put( "ds.bind.batch.window.milliseconds", WINDOW );
+        configure( SCR_PID, null, props );
+        delay();
+
+        findComponentConfigurationByName( "bindbatch", ComponentConfigurationDTO.ACTIVE );
+        final BatchComponent component = BatchComponent.INSTANCE;
+        assertNotNull( component );
+        assertFalse( component.deactivated );
+        return component;
+    }
+}
@@ -149,6 +149,7 @@ public abstract class ComponentTestBase
             "org.apache.felix.scr.integration.components,"
                 + "org.apache.felix.scr.integration.components.activatesignature,"
                 + "org.apache.felix.scr.integration.components.annoconfig,"
+                + "org.apache.felix.scr.integration.components.bindbatch,"
                 + "org.apache.felix.scr.integration.components.circular,"
                 + "org.apache.felix.scr.integration.components.circularFactory,"
                 + "org.apache.felix.scr.integration.components.concurrency,"
@@ -157,7 +158,8 @@ public abstract class ComponentTestBase
                 + "org.apache.felix.scr.integration.components.felix3680_2,"
                 + "org.apache.felix.scr.integration.components.felix4984,"
                 + "org.apache.felix.scr.integration.components.felix5248,"
-                + "org.apache.felix.scr.integration.components.felix5276" );
+                + "org.apache.felix.scr.integration.components.felix5276,"
+                + "org.apache.felix.scr.integration.components.prefetch" );
         builder.setHeader( "Import-Package", "org.apache.felix.scr.component" );
         builder.setHeader( "Bundle-ManifestVersion", "2" );
         return builder;
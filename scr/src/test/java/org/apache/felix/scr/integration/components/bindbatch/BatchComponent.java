@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.integration.components.bindbatch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.integration.components.SimpleService;
+
+public class BatchComponent
+{
+    public static volatile BatchComponent INSTANCE;
+
+    // the field updated by SCR, counting how often it is added to
+    public final CountingList services = new CountingList();
+
+    public final AtomicInteger bindCalls = new AtomicInteger();
+
+    public final AtomicInteger unbindCalls = new AtomicInteger();
+
+    public final AtomicInteger updatedCalls = new AtomicInteger();
+
+    public final List<Object> boundValues = new CopyOnWriteArrayList<Object>();
+
+    public final AtomicInteger modifiedCalls = new AtomicInteger();
+
+    // the bind, unbind and updated calls in order
+    public final List<String> calls = new CopyOnWriteArrayList<String>();
+
+    // if set, bind methods count down binding and wait for proceed
+    public volatile CountDownLatch binding;
+    public volatile CountDownLatch proceed;
+
+    public volatile boolean deactivated;
+
+    private void activate()
+    {
+        INSTANCE = this;
+    }
+
+    private void modified()
+    {
+        modifiedCalls.incrementAndGet();
+    }
+
+    private void deactivate()
+    {
+        deactivated = true;
+    }
+
+    private Map<String, Object> bindSimple(SimpleService service, Map<String, ?> properties)
+    {
+        boundValues.add(properties.get("value"));
+        calls.add("bind");
+        if (proceed != null)
+        {
+            binding.countDown();
+            try
+            {
+                proceed.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return Collections.<String, Object> singletonMap("bound", bindCalls.incrementAndGet());
+    }
+
+    private Map<String, Object> unbindSimple(SimpleService service)
+    {
+        calls.add("unbind");
+        return Collections.<String, Object> singletonMap("unbound", unbindCalls.incrementAndGet());
+    }
+
+    private Map<String, Object> updatedSimple(SimpleService service)
+    {
+        calls.add("updated");
+        return Collections.<String, Object> singletonMap("updated", updatedCalls.incrementAndGet());
+    }
+
+    public static class CountingList extends CopyOnWriteArrayList<SimpleService>
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final AtomicInteger addCalls = new AtomicInteger();
+
+        public final AtomicInteger addAllCalls = new AtomicInteger();
+
+        @Override
+        public boolean add(SimpleService service)
+        {
+            addCalls.incrementAndGet();
+            return super.add(service);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends SimpleService> services)
+        {
+            addAllCalls.incrementAndGet();
+            return super.addAll(services);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.integration.components.prefetch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.osgi.service.component.ComponentConstants;
+
+public class PrefetchComponent
+{
+    // the activations, deactivations and binds of all instances in the order they happened
+    public static final List<String> EVENTS = new CopyOnWriteArrayList<String>();
+
+    private String name;
+
+    public String getName()
+    {
+        return name;
+    }
+
+    private void activate(Map<String, ?> properties)
+    {
+        name = (String) properties.get(ComponentConstants.COMPONENT_NAME);
+        EVENTS.add("activate " + name);
+    }
+
+    private void deactivate()
+    {
+        EVENTS.add("deactivate " + name);
+    }
+
+    private void bind(PrefetchComponent other)
+    {
+        EVENTS.add("bind " + other.getName());
+    }
+
+    private void unbind(PrefetchComponent other)
+    {
+        EVENTS.add("unbind " + other.getName());
+    }
+}